@@ -0,0 +1,235 @@
+package com.gbce.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.codec.MarketDataDecoder;
+import com.gbce.stockmarket.codec.MarketDataEncoder;
+import com.gbce.stockmarket.codec.WireFormat;
+import com.gbce.stockmarket.service.StockService;
+import com.gbce.stockmarket.util.HighResolutionClock;
+
+/**
+ * TCP front end serving Stock Service over the compact binary protocol, see
+ * {@link com.gbce.server.BinaryProtocol}. <br>
+ * 
+ * Every connection is served on its own virtual thread, reading and writing
+ * its socket channel in blocking mode: a virtual thread waiting for a socket
+ * parks and frees its carrier thread, so tens of thousands of idle or slow
+ * connections cost their buffers, not threads. <br>
+ * 
+ * Pipelined requests are answered in order. All complete requests read at
+ * once are answered into the output buffer, which is only written to the
+ * socket once no complete request is left, so a client sending many requests
+ * at a time gets its responses in few writes.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class BinaryFrontEnd implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(BinaryFrontEnd.class);
+
+	/** Size of the input and output buffers of each connection */
+	static final int BUFFER_SIZE = 4096;
+
+	private final StockService stockService;
+	private final ServerSocketChannel serverChannel;
+	private final ExecutorService connectionExecutor = Executors.newVirtualThreadPerTaskExecutor();
+	private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+	private final Thread acceptor;
+
+	/**
+	 * Creates a front end listening on a given address. Connections are only
+	 * accepted once started.
+	 * 
+	 * @param stockService
+	 *            Stock Service to be served
+	 * @param address
+	 *            address to listen on, port 0 for any free port
+	 * @param backlog
+	 *            highest number of connections waiting to be accepted
+	 * @throws IOException
+	 *             if the address cannot be listened on
+	 */
+	public BinaryFrontEnd(StockService stockService, InetSocketAddress address, int backlog) throws IOException {
+		this.stockService = stockService;
+		this.serverChannel = ServerSocketChannel.open();
+		serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		serverChannel.bind(address, backlog);
+		this.acceptor = Thread.ofVirtual().name("binary-acceptor").unstarted(this::acceptConnections);
+	}
+
+	public void start() {
+		acceptor.start();
+	}
+
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	public int getConnectionCount() {
+		return connections.size();
+	}
+
+	/**
+	 * Stops accepting connections and closes the open ones.
+	 */
+	@Override
+	public void close() throws IOException {
+		serverChannel.close();
+		for (SocketChannel channel : connections) {
+			channel.close();
+		}
+		connectionExecutor.shutdown();
+	}
+
+	private void acceptConnections() {
+		while (serverChannel.isOpen()) {
+			try {
+				SocketChannel channel = serverChannel.accept();
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				connections.add(channel);
+				connectionExecutor.execute(() -> serve(channel));
+			} catch (ClosedChannelException e) {
+				return;
+			} catch (IOException e) {
+				logger.error("Cannot accept connection : " + e.getMessage());
+			}
+		}
+	}
+
+	private void serve(SocketChannel channel) {
+		ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE).order(BinaryProtocol.BYTE_ORDER);
+		ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE).order(BinaryProtocol.BYTE_ORDER);
+		MarketDataDecoder decoder = new MarketDataDecoder();
+		try {
+			while (channel.read(input) >= 0) {
+				input.flip();
+				while (input.remaining() >= 4) {
+					int length = input.getInt(input.position());
+					if (length <= 0 || length > BinaryProtocol.MAX_REQUEST_LENGTH) {
+						throw new IOException("Request length out of range : " + length);
+					}
+					if (input.remaining() < 4 + length) {
+						break;
+					}
+					if (output.remaining() < BinaryProtocol.MAX_RESPONSE_SIZE) {
+						write(channel, output);
+					}
+					int start = input.position() + 4;
+					answer(input.slice(start, length).order(BinaryProtocol.BYTE_ORDER), output, decoder);
+					input.position(start + length);
+				}
+				input.compact();
+				write(channel, output);
+			}
+		} catch (IOException e) {
+			if (channel.isOpen()) {
+				logger.debug("Closing connection : " + e.getMessage());
+			}
+		} finally {
+			connections.remove(channel);
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// Nothing left to do with the connection.
+			}
+		}
+	}
+
+	private static void write(SocketChannel channel, ByteBuffer output) throws IOException {
+		output.flip();
+		while (output.hasRemaining()) {
+			channel.write(output);
+		}
+		output.clear();
+	}
+
+	/**
+	 * Answers a request into the output buffer, with an error response if the
+	 * request is malformed or refused by Stock Service.
+	 */
+	void answer(ByteBuffer request, ByteBuffer output, MarketDataDecoder decoder) {
+		int lengthPosition = output.position();
+		output.putInt(0);
+		try {
+			byte operation = request.get();
+			switch (operation) {
+			case BinaryProtocol.FIND_STOCK: {
+				Stock stock = stockService.findStock(BinaryProtocol.getSymbol(request));
+				output.put(BinaryProtocol.OK);
+				output.put((byte) stock.getType().ordinal());
+				output.putDouble(stock.getLastDividend());
+				output.putDouble(stock.getFixedDividend());
+				output.putDouble(stock.getParValue());
+				break;
+			}
+			case BinaryProtocol.RECORD_TRADE: {
+				if (!decoder.wrap(request, request.position()) || decoder.getMessageType() != WireFormat.TRADE) {
+					throw new RuntimeException("Trade message expected to record a trade");
+				}
+				Stock stock = stockService.findStock(decoder.getStockSymbol());
+				Trade trade = TradeRequests.newTrade(stock, decoder.getTradeType(), decoder.getQuantity(),
+						decoder.getPrice());
+				boolean recorded = stockService.recordTrade(trade);
+				output.put(BinaryProtocol.OK);
+				output.put((byte) (recorded ? 1 : 0));
+				break;
+			}
+			case BinaryProtocol.DIVIDEND_YIELD: {
+				String stockSymbol = BinaryProtocol.getSymbol(request);
+				double dividendYield = stockService.calculateDividendYield(stockSymbol, request.getDouble());
+				output.put(BinaryProtocol.OK);
+				output.putDouble(dividendYield);
+				break;
+			}
+			case BinaryProtocol.PE_RATIO: {
+				String stockSymbol = BinaryProtocol.getSymbol(request);
+				double peRatio = stockService.calculatePERatio(stockSymbol, request.getDouble());
+				output.put(BinaryProtocol.OK);
+				output.putDouble(peRatio);
+				break;
+			}
+			case BinaryProtocol.VOLUME_WEIGHTED_PRICE: {
+				String stockSymbol = BinaryProtocol.getSymbol(request);
+				int timeInMinutes = request.getInt();
+				double price = stockService.calculateVolumeStockPrice(stockSymbol, timeInMinutes);
+				output.put(BinaryProtocol.OK);
+				MarketDataEncoder.encodeVolumeWeightedPrice(output, stockSymbol,
+						HighResolutionClock.currentTimeNanos(), timeInMinutes, price);
+				break;
+			}
+			case BinaryProtocol.ALL_SHARE_INDEX: {
+				double allShareIndex = stockService.calculateAllShareIndex();
+				output.put(BinaryProtocol.OK);
+				MarketDataEncoder.encodeAllShareIndex(output, HighResolutionClock.currentTimeNanos(), allShareIndex);
+				break;
+			}
+			default:
+				throw new RuntimeException("Unknown operation : " + operation);
+			}
+		} catch (RuntimeException e) {
+			output.position(lengthPosition + 4);
+			output.put(BinaryProtocol.ERROR);
+			BinaryProtocol.putMessage(output, e.getMessage() != null ? e.getMessage() : e.toString());
+		}
+		output.putInt(lengthPosition, output.position() - lengthPosition - 4);
+	}
+
+}
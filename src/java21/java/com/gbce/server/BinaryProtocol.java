@@ -0,0 +1,140 @@
+package com.gbce.server;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import com.gbce.stockmarket.codec.WireFormat;
+
+/**
+ * Compact binary protocol of the TCP front end. <br>
+ * 
+ * Every request and response is a frame of its length (4 bytes, not counting
+ * itself) followed by its content, little endian like the wire format.
+ * A request starts with an operation code (1 byte), a response with a status
+ * (1 byte). Symbols are written as their length (1 byte) and ASCII bytes,
+ * error messages as their length (2 bytes) and UTF-8 bytes. <br>
+ * 
+ * Trades and analytics results are carried as messages of the market data
+ * wire format, see {@link com.gbce.stockmarket.codec.WireFormat}. <br>
+ * 
+ * Requests and responses: <br>
+ * FIND_STOCK symbol -> stock type (1 byte), last dividend, fixed dividend,
+ * par value (8 bytes each) <br>
+ * RECORD_TRADE TRADE message, whose trade id and time stamp are ignored as
+ * the trade is stamped when received -> recorded (1 byte) <br>
+ * DIVIDEND_YIELD symbol, price (8 bytes) -> dividend yield (8 bytes) <br>
+ * PE_RATIO symbol, price (8 bytes) -> P/E ratio (8 bytes) <br>
+ * VOLUME_WEIGHTED_PRICE symbol, time in minutes (4 bytes) ->
+ * VOLUME_WEIGHTED_PRICE message <br>
+ * ALL_SHARE_INDEX -> ALL_SHARE_INDEX message <br>
+ * <br>
+ * 
+ * Any request may instead get an ERROR status and a message. A client may
+ * send any number of requests without waiting for their responses, the
+ * responses come back in the order of the requests.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public final class BinaryProtocol {
+
+	public static final ByteOrder BYTE_ORDER = WireFormat.BYTE_ORDER;
+
+	/** Highest length of a request frame, past which the connection is closed */
+	public static final int MAX_REQUEST_LENGTH = 512;
+
+	/** Highest length of a response frame, including its length */
+	public static final int MAX_RESPONSE_SIZE = 4 + 1 + 2 + 256 * 3;
+
+	public static final byte FIND_STOCK = 1;
+	public static final byte RECORD_TRADE = 2;
+	public static final byte DIVIDEND_YIELD = 3;
+	public static final byte PE_RATIO = 4;
+	public static final byte VOLUME_WEIGHTED_PRICE = 5;
+	public static final byte ALL_SHARE_INDEX = 6;
+
+	public static final byte OK = 0;
+	public static final byte ERROR = 1;
+
+	private static final int MAX_MESSAGE_CHARS = 256;
+
+	private BinaryProtocol() {
+	}
+
+	/**
+	 * Writes a symbol as its length and ASCII bytes.
+	 * 
+	 * @param buffer
+	 *            buffer to write to
+	 * @param symbol
+	 *            symbol of at most 255 characters
+	 */
+	public static void putSymbol(ByteBuffer buffer, String symbol) {
+		int length = symbol.length();
+		if (length > 255) {
+			throw new RuntimeException("Stock symbol longer than 255 characters : " + symbol);
+		}
+		buffer.put((byte) length);
+		for (int i = 0; i < length; i++) {
+			buffer.put((byte) symbol.charAt(i));
+		}
+	}
+
+	/**
+	 * Reads a symbol written by {@link #putSymbol(ByteBuffer, String)}.
+	 * 
+	 * @param buffer
+	 *            buffer to read from
+	 * @return symbol
+	 */
+	public static String getSymbol(ByteBuffer buffer) {
+		int length = buffer.get() & 0xFF;
+		if (length > buffer.remaining()) {
+			throw new RuntimeException("Stock symbol of " + length + " characters cut at " + buffer.remaining());
+		}
+		String symbol = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+				StandardCharsets.US_ASCII);
+		buffer.position(buffer.position() + length);
+		return symbol;
+	}
+
+	/**
+	 * Writes an error message as its length and UTF-8 bytes, cut to 256
+	 * characters.
+	 * 
+	 * @param buffer
+	 *            buffer to write to
+	 * @param message
+	 *            message, may be null
+	 */
+	public static void putMessage(ByteBuffer buffer, String message) {
+		String text = message == null ? "" : message;
+		if (text.length() > MAX_MESSAGE_CHARS) {
+			text = text.substring(0, MAX_MESSAGE_CHARS);
+		}
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Reads an error message written by
+	 * {@link #putMessage(ByteBuffer, String)}.
+	 * 
+	 * @param buffer
+	 *            buffer to read from
+	 * @return message
+	 */
+	public static String getMessage(ByteBuffer buffer) {
+		int length = buffer.getShort() & 0xFFFF;
+		if (length > buffer.remaining()) {
+			throw new RuntimeException("Message of " + length + " bytes cut at " + buffer.remaining());
+		}
+		String message = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+				StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return message;
+	}
+
+}
@@ -0,0 +1,286 @@
+package com.gbce.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.TradeType;
+import com.gbce.stockmarket.service.StockService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP/JSON front end serving Stock Service on the HTTP server of the JDK.
+ * <br>
+ * 
+ * GET /stocks/{symbol} -> stock <br>
+ * GET /stocks/{symbol}/dividend-yield?price={price} -> dividend yield <br>
+ * GET /stocks/{symbol}/pe-ratio?price={price} -> P/E ratio <br>
+ * GET /stocks/{symbol}/volume-weighted-price?minutes={minutes} -> Volume
+ * Weighted Stock Price over the past minutes, 5 by default <br>
+ * GET /all-share-index -> All Share Index <br>
+ * POST /trades {"symbol":"TEA","type":"BUY","quantity":10,"price":101.5} ->
+ * 201 if recorded <br>
+ * <br>
+ * 
+ * Requests refused by Stock Service get a 400 response with the reason as
+ * {"error":"..."}, request bodies longer than 4 KB a 413 response. <br>
+ * 
+ * The server selects over all connections on one thread and runs every
+ * request on its own virtual thread. Connections are kept alive between
+ * requests, and requests pipelined on a connection are answered in order.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class HttpFrontEnd implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(HttpFrontEnd.class);
+
+	private static final String STOCKS_PATH = "/stocks/";
+
+	/** Highest length of a request body, far above the size of a trade */
+	static final int MAX_BODY_LENGTH = 4096;
+
+	/**
+	 * Keep-alive connections the JDK server keeps open between requests, 200
+	 * by default, past which it closes them
+	 */
+	private static final String MAX_IDLE_CONNECTIONS_PROPERTY = "sun.net.httpserver.maxIdleConnections";
+	private static final String MAX_IDLE_CONNECTIONS = "100000";
+
+	/**
+	 * The JDK server writes headers and body apart, so without TCP_NODELAY a
+	 * pipelined response waits for the client to acknowledge the previous one
+	 */
+	private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+	private final StockService stockService;
+	private final HttpServer server;
+	private final ExecutorService requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+	/**
+	 * Creates a front end listening on a given address. Requests are only
+	 * served once started.
+	 * 
+	 * @param stockService
+	 *            Stock Service to be served
+	 * @param address
+	 *            address to listen on, port 0 for any free port
+	 * @param backlog
+	 *            highest number of connections waiting to be accepted
+	 * @throws IOException
+	 *             if the address cannot be listened on
+	 */
+	public HttpFrontEnd(StockService stockService, InetSocketAddress address, int backlog) throws IOException {
+		this.stockService = stockService;
+		// Read by the JDK server once, when the first server is created,
+		// unless already set on the command line.
+		defaultProperty(MAX_IDLE_CONNECTIONS_PROPERTY, MAX_IDLE_CONNECTIONS);
+		defaultProperty(NO_DELAY_PROPERTY, "true");
+		this.server = HttpServer.create(address, backlog);
+		route(STOCKS_PATH, "GET");
+		route("/all-share-index", "GET");
+		route("/trades", "POST");
+		server.setExecutor(requestExecutor);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops the server, without waiting for the requests being served.
+	 */
+	@Override
+	public void close() {
+		server.stop(0);
+		requestExecutor.shutdown();
+	}
+
+	private static void defaultProperty(String name, String value) {
+		if (System.getProperty(name) == null) {
+			System.setProperty(name, value);
+		}
+	}
+
+	private void route(String path, final String method) {
+		server.createContext(path, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange, method);
+			}
+		});
+	}
+
+	private void serve(HttpExchange exchange, String method) throws IOException {
+		try {
+			if (!method.equals(exchange.getRequestMethod())) {
+				send(exchange, 405, new Json().add("error", "Method not allowed : " + exchange.getRequestMethod()));
+				return;
+			}
+			int status = 200;
+			Json response;
+			try {
+				String path = exchange.getRequestURI().getPath();
+				if (path.startsWith(STOCKS_PATH)) {
+					response = stock(path.substring(STOCKS_PATH.length()), query(exchange));
+				} else if (path.equals("/all-share-index")) {
+					response = new Json().add("allShareIndex", stockService.calculateAllShareIndex());
+				} else if (path.equals("/trades")) {
+					response = recordTrade(readBody(exchange));
+					status = 201;
+				} else {
+					response = null;
+				}
+			} catch (RequestTooLargeException e) {
+				send(exchange, 413, new Json().add("error", e.getMessage()));
+				return;
+			} catch (RuntimeException e) {
+				send(exchange, 400, new Json().add("error", e.getMessage() != null ? e.getMessage() : e.toString()));
+				return;
+			}
+			if (response == null) {
+				send(exchange, 404, new Json().add("error", "Not found : " + exchange.getRequestURI().getPath()));
+			} else {
+				send(exchange, status, response);
+			}
+		} catch (IOException e) {
+			logger.debug("Cannot answer request : " + e.getMessage());
+			throw e;
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Answers a request on a stock, given the path after /stocks/.
+	 */
+	private Json stock(String path, Map<String, String> query) {
+		int slash = path.indexOf('/');
+		String stockSymbol = slash < 0 ? path : path.substring(0, slash);
+		String measure = slash < 0 ? "" : path.substring(slash + 1);
+		switch (measure) {
+		case "": {
+			Stock stock = stockService.findStock(stockSymbol);
+			return new Json().add("symbol", stock.getSymbol()).add("type", stock.getType().name())
+					.add("lastDividend", stock.getLastDividend()).add("fixedDividend", stock.getFixedDividend())
+					.add("parValue", stock.getParValue());
+		}
+		case "dividend-yield": {
+			double price = Double.parseDouble(parameter(query, "price", null));
+			return new Json().add("symbol", stockSymbol).add("price", price).add("dividendYield",
+					stockService.calculateDividendYield(stockSymbol, price));
+		}
+		case "pe-ratio": {
+			double price = Double.parseDouble(parameter(query, "price", null));
+			return new Json().add("symbol", stockSymbol).add("price", price).add("peRatio",
+					stockService.calculatePERatio(stockSymbol, price));
+		}
+		case "volume-weighted-price": {
+			int minutes = Integer.parseInt(parameter(query, "minutes", "5"));
+			return new Json().add("symbol", stockSymbol).add("minutes", minutes).add("volumeWeightedPrice",
+					stockService.calculateVolumeStockPrice(stockSymbol, minutes));
+		}
+		default:
+			return null;
+		}
+	}
+
+	private Json recordTrade(String body) {
+		Map<String, String> members = Json.parseObject(body);
+		Stock stock = stockService.findStock(parameter(members, "symbol", null));
+		TradeType type = TradeType.valueOf(parameter(members, "type", null).toUpperCase());
+		int quantity = Integer.parseInt(parameter(members, "quantity", null));
+		double price = Double.parseDouble(parameter(members, "price", null));
+		Trade trade = TradeRequests.newTrade(stock, type, quantity, price);
+		return new Json().add("recorded", stockService.recordTrade(trade));
+	}
+
+	private static String parameter(Map<String, String> parameters, String name, String defaultValue) {
+		String value = parameters.get(name);
+		if (value == null) {
+			if (defaultValue == null) {
+				throw new RuntimeException("Missing parameter : " + name);
+			}
+			return defaultValue;
+		}
+		return value;
+	}
+
+	private static Map<String, String> query(HttpExchange exchange) {
+		Map<String, String> parameters = new HashMap<>();
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				int equals = parameter.indexOf('=');
+				if (equals > 0) {
+					parameters.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+							URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+				}
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * Reads the body of a request, refusing bodies longer than
+	 * {@link #MAX_BODY_LENGTH} before reading them when their length is given.
+	 */
+	private static String readBody(HttpExchange exchange) {
+		String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+		if (contentLength != null && Long.parseLong(contentLength.trim()) > MAX_BODY_LENGTH) {
+			throw new RequestTooLargeException();
+		}
+		try (InputStream body = exchange.getRequestBody()) {
+			byte[] bytes = body.readNBytes(MAX_BODY_LENGTH + 1);
+			if (bytes.length > MAX_BODY_LENGTH) {
+				throw new RequestTooLargeException();
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read request body : " + e.getMessage());
+		}
+	}
+
+	private static void send(HttpExchange exchange, int status, Json response) throws IOException {
+		byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(body);
+		}
+	}
+
+	/**
+	 * Thrown when a request body is longer than {@link #MAX_BODY_LENGTH}.
+	 */
+	private static final class RequestTooLargeException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		RequestTooLargeException() {
+			super("Request body longer than " + MAX_BODY_LENGTH + " bytes");
+		}
+
+	}
+
+}
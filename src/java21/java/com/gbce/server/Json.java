@@ -0,0 +1,209 @@
+package com.gbce.server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal JSON support of the HTTP front end: writes flat objects, and reads
+ * flat objects of string, number and boolean values, which is all the HTTP
+ * API exchanges.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+final class Json {
+
+	private final StringBuilder builder = new StringBuilder(128).append('{');
+
+	/**
+	 * Adds a string member.
+	 */
+	Json add(String name, String value) {
+		name(name);
+		quote(value);
+		return this;
+	}
+
+	/**
+	 * Adds a number member, null when not finite as JSON has no infinity.
+	 */
+	Json add(String name, double value) {
+		name(name);
+		builder.append(Double.isFinite(value) ? Double.toString(value) : "null");
+		return this;
+	}
+
+	/**
+	 * Adds a whole number member.
+	 */
+	Json add(String name, long value) {
+		name(name);
+		builder.append(value);
+		return this;
+	}
+
+	/**
+	 * Adds a boolean member.
+	 */
+	Json add(String name, boolean value) {
+		name(name);
+		builder.append(value);
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return builder.toString() + '}';
+	}
+
+	private void name(String name) {
+		if (builder.length() > 1) {
+			builder.append(',');
+		}
+		quote(name);
+		builder.append(':');
+	}
+
+	private void quote(String value) {
+		builder.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				builder.append('\\').append(c);
+			} else if (c < 0x20) {
+				builder.append(String.format("\\u%04x", (int) c));
+			} else {
+				builder.append(c);
+			}
+		}
+		builder.append('"');
+	}
+
+	/**
+	 * Reads a flat JSON object into a map of its members, numbers and booleans
+	 * as their text.
+	 * 
+	 * @param text
+	 *            JSON object
+	 * @return members of the object by name
+	 */
+	static Map<String, String> parseObject(String text) {
+		Parser parser = new Parser(text);
+		Map<String, String> members = new HashMap<>();
+		parser.expect('{');
+		if (!parser.skip('}')) {
+			do {
+				String name = parser.string();
+				parser.expect(':');
+				members.put(name, parser.value());
+			} while (parser.skip(','));
+			parser.expect('}');
+		}
+		parser.end();
+		return members;
+	}
+
+	/**
+	 * Cursor over the text of a JSON object.
+	 */
+	private static final class Parser {
+
+		private final String text;
+		private int position;
+
+		Parser(String text) {
+			this.text = text;
+		}
+
+		void expect(char c) {
+			if (!skip(c)) {
+				throw new RuntimeException("Invalid JSON, expected '" + c + "' at " + position);
+			}
+		}
+
+		boolean skip(char c) {
+			skipWhitespace();
+			if (position < text.length() && text.charAt(position) == c) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		void end() {
+			skipWhitespace();
+			if (position < text.length()) {
+				throw new RuntimeException("Invalid JSON, unexpected text at " + position);
+			}
+		}
+
+		String value() {
+			skipWhitespace();
+			if (position < text.length() && text.charAt(position) == '"') {
+				return string();
+			}
+			if (position < text.length() && (text.charAt(position) == '{' || text.charAt(position) == '[')) {
+				throw new RuntimeException("Invalid JSON, nested values are not supported at " + position);
+			}
+			int start = position;
+			while (position < text.length() && ",} \t\r\n".indexOf(text.charAt(position)) < 0) {
+				position++;
+			}
+			if (start == position) {
+				throw new RuntimeException("Invalid JSON, expected a value at " + position);
+			}
+			return text.substring(start, position);
+		}
+
+		String string() {
+			expect('"');
+			StringBuilder value = new StringBuilder();
+			while (position < text.length()) {
+				char c = text.charAt(position++);
+				if (c == '"') {
+					return value.toString();
+				}
+				if (c == '\\' && position < text.length()) {
+					char escaped = text.charAt(position++);
+					switch (escaped) {
+					case 'n':
+						value.append('\n');
+						break;
+					case 't':
+						value.append('\t');
+						break;
+					case 'r':
+						value.append('\r');
+						break;
+					case 'b':
+						value.append('\b');
+						break;
+					case 'f':
+						value.append('\f');
+						break;
+					case 'u':
+						if (position + 4 > text.length()) {
+							throw new RuntimeException("Invalid JSON, truncated escape at " + position);
+						}
+						value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+						position += 4;
+						break;
+					default:
+						value.append(escaped);
+					}
+				} else {
+					value.append(c);
+				}
+			}
+			throw new RuntimeException("Invalid JSON, unterminated string");
+		}
+
+		private void skipWhitespace() {
+			while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+				position++;
+			}
+		}
+
+	}
+
+}
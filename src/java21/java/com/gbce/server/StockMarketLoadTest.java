@@ -0,0 +1,304 @@
+package com.gbce.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.gbce.stockmarket.codec.MarketDataEncoder;
+import com.gbce.stockmarket.constants.TradeType;
+import com.gbce.stockmarket.metrics.LatencyHistogram;
+import com.gbce.stockmarket.service.StockService;
+
+import config.StockMarketSpringConfig;
+
+/**
+ * Load test of the network front ends: opens many connections at once, each
+ * on its own virtual thread, and sends every connection's requests in
+ * pipelined batches, waiting for the responses of a batch before sending the
+ * next one. Reports the throughput, the latencies from sending a batch to
+ * receiving each response, and the requests refused. <br>
+ * 
+ * Run with java --add-opens java.base/java.lang=ALL-UNNAMED -cp
+ * target/stockmarket-server.jar com.gbce.server.StockMarketLoadTest
+ * [binary|http] [connections] [requestsPerConnection] [pipelineDepth] [host
+ * port] <br>
+ * 
+ * Without host and port, a server is started in the same JVM on free ports,
+ * which then needs two file descriptors per connection. Requests are a mix of
+ * 10% trades and 90% queries on the stocks of the default configuration.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class StockMarketLoadTest {
+
+	private static final String[] SYMBOLS = { "TEA", "POP", "ALE", "GIN", "JOE" };
+	private static final String[] DIVIDEND_SYMBOLS = { "POP", "ALE", "GIN", "JOE" };
+
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	private final boolean http;
+	private final InetSocketAddress address;
+	private final int connections;
+	private final int requestsPerConnection;
+	private final int pipelineDepth;
+
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong failedConnections = new AtomicLong();
+	private final CountDownLatch connected;
+	private final CountDownLatch start = new CountDownLatch(1);
+
+	public StockMarketLoadTest(boolean http, InetSocketAddress address, int connections, int requestsPerConnection,
+			int pipelineDepth) {
+		this.http = http;
+		this.address = address;
+		this.connections = connections;
+		this.requestsPerConnection = requestsPerConnection;
+		this.pipelineDepth = pipelineDepth;
+		this.connected = new CountDownLatch(connections);
+	}
+
+	/**
+	 * Runs the load test and prints its results.
+	 */
+	public void run() throws InterruptedException {
+
+		ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+		long connectStart = System.nanoTime();
+		for (int i = 0; i < connections; i++) {
+			final int connection = i;
+			clients.execute(() -> runConnection(connection));
+		}
+		connected.await();
+		long connectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart);
+
+		long runStart = System.nanoTime();
+		start.countDown();
+		clients.shutdown();
+		clients.awaitTermination(1, TimeUnit.HOURS);
+		long runNanos = System.nanoTime() - runStart;
+
+		long requests = latencies.getCount();
+		System.out.println("Protocol        : " + (http ? "HTTP/JSON" : "binary") + " on " + address);
+		System.out.println("Connections     : " + connections + " (failed " + failedConnections.get()
+				+ "), connected in " + connectMillis + " ms");
+		System.out.println("Requests        : " + requests + " (errors " + errors.get() + "), pipeline depth "
+				+ pipelineDepth);
+		System.out.println("Elapsed         : " + TimeUnit.NANOSECONDS.toMillis(runNanos) + " ms");
+		System.out.println("Throughput      : " + Math.round(requests * 1e9 / runNanos) + " requests/s");
+		System.out.println("Latency (us)    : mean " + Math.round(latencies.getMeanNanos() / 1000) + ", p50 "
+				+ micros(50) + ", p90 " + micros(90) + ", p99 " + micros(99) + ", p99.9 " + micros(99.9)
+				+ ", max " + latencies.getMaxNanos() / 1000);
+	}
+
+	private long micros(double percentile) {
+		return latencies.getValueAtPercentile(percentile) / 1000;
+	}
+
+	private void runConnection(int connection) {
+		SocketChannel channel;
+		try {
+			channel = SocketChannel.open(address);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		} catch (IOException e) {
+			failedConnections.incrementAndGet();
+			connected.countDown();
+			return;
+		}
+		connected.countDown();
+
+		try (channel) {
+			start.await();
+			SplittableRandom random = new SplittableRandom(connection);
+			ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE).order(BinaryProtocol.BYTE_ORDER);
+			ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE).order(BinaryProtocol.BYTE_ORDER);
+			input.flip();
+
+			for (int sent = 0; sent < requestsPerConnection; sent += pipelineDepth) {
+				int batch = Math.min(pipelineDepth, requestsPerConnection - sent);
+				output.clear();
+				for (int i = 0; i < batch; i++) {
+					if (http) {
+						putHttpRequest(output, random);
+					} else {
+						putBinaryRequest(output, random);
+					}
+				}
+				output.flip();
+				long sendNanos = System.nanoTime();
+				while (output.hasRemaining()) {
+					channel.write(output);
+				}
+				for (int i = 0; i < batch; i++) {
+					while ((http ? httpResponseLength(input) : binaryResponseLength(input)) < 0) {
+						input.compact();
+						if (channel.read(input) < 0) {
+							throw new IOException("Connection closed by server");
+						}
+						input.flip();
+					}
+					boolean ok = http ? readHttpResponse(input) : readBinaryResponse(input);
+					latencies.record(System.nanoTime() - sendNanos);
+					if (!ok) {
+						errors.incrementAndGet();
+					}
+				}
+			}
+		} catch (IOException e) {
+			failedConnections.incrementAndGet();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void putBinaryRequest(ByteBuffer output, SplittableRandom random) {
+		int lengthPosition = output.position();
+		output.putInt(0);
+		int kind = random.nextInt(10);
+		if (kind == 0) {
+			output.put(BinaryProtocol.RECORD_TRADE);
+			MarketDataEncoder.encodeTrade(output, 0, SYMBOLS[random.nextInt(SYMBOLS.length)], 0,
+					random.nextBoolean() ? TradeType.BUY : TradeType.SELL, 1 + random.nextInt(100), price(random));
+		} else if (kind <= 2) {
+			output.put(BinaryProtocol.VOLUME_WEIGHTED_PRICE);
+			BinaryProtocol.putSymbol(output, SYMBOLS[random.nextInt(SYMBOLS.length)]);
+			output.putInt(5);
+		} else if (kind <= 4) {
+			output.put(BinaryProtocol.DIVIDEND_YIELD);
+			BinaryProtocol.putSymbol(output, SYMBOLS[random.nextInt(SYMBOLS.length)]);
+			output.putDouble(price(random));
+		} else if (kind <= 6) {
+			output.put(BinaryProtocol.PE_RATIO);
+			BinaryProtocol.putSymbol(output, DIVIDEND_SYMBOLS[random.nextInt(DIVIDEND_SYMBOLS.length)]);
+			output.putDouble(price(random));
+		} else if (kind == 7) {
+			output.put(BinaryProtocol.ALL_SHARE_INDEX);
+		} else {
+			output.put(BinaryProtocol.FIND_STOCK);
+			BinaryProtocol.putSymbol(output, SYMBOLS[random.nextInt(SYMBOLS.length)]);
+		}
+		output.putInt(lengthPosition, output.position() - lengthPosition - 4);
+	}
+
+	private void putHttpRequest(ByteBuffer output, SplittableRandom random) {
+		int kind = random.nextInt(10);
+		String request;
+		if (kind == 0) {
+			String body = "{\"symbol\":\"" + SYMBOLS[random.nextInt(SYMBOLS.length)] + "\",\"type\":\""
+					+ (random.nextBoolean() ? "BUY" : "SELL") + "\",\"quantity\":" + (1 + random.nextInt(100))
+					+ ",\"price\":" + price(random) + "}";
+			request = "POST /trades HTTP/1.1\r\nHost: " + address.getHostString()
+					+ "\r\nContent-Type: application/json\r\nContent-Length: " + body.length() + "\r\n\r\n" + body;
+		} else {
+			String path;
+			if (kind <= 2) {
+				path = "/stocks/" + SYMBOLS[random.nextInt(SYMBOLS.length)] + "/volume-weighted-price?minutes=5";
+			} else if (kind <= 4) {
+				path = "/stocks/" + SYMBOLS[random.nextInt(SYMBOLS.length)] + "/dividend-yield?price=" + price(random);
+			} else if (kind <= 6) {
+				path = "/stocks/" + DIVIDEND_SYMBOLS[random.nextInt(DIVIDEND_SYMBOLS.length)] + "/pe-ratio?price="
+						+ price(random);
+			} else if (kind == 7) {
+				path = "/all-share-index";
+			} else {
+				path = "/stocks/" + SYMBOLS[random.nextInt(SYMBOLS.length)];
+			}
+			request = "GET " + path + " HTTP/1.1\r\nHost: " + address.getHostString() + "\r\n\r\n";
+		}
+		output.put(request.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private static double price(SplittableRandom random) {
+		return 50 + random.nextInt(10000) / 100.0;
+	}
+
+	/**
+	 * @return length of the first binary response in the input, -1 if not
+	 *         fully read yet
+	 */
+	private static int binaryResponseLength(ByteBuffer input) {
+		if (input.remaining() < 4) {
+			return -1;
+		}
+		int length = 4 + input.getInt(input.position());
+		return input.remaining() >= length ? length : -1;
+	}
+
+	private static boolean readBinaryResponse(ByteBuffer input) {
+		int length = binaryResponseLength(input);
+		boolean ok = input.get(input.position() + 4) == BinaryProtocol.OK;
+		input.position(input.position() + length);
+		return ok;
+	}
+
+	/**
+	 * @return length of the first HTTP response in the input, -1 if not fully
+	 *         read yet
+	 */
+	private static int httpResponseLength(ByteBuffer input) {
+		int start = input.position();
+		int limit = input.limit();
+		for (int i = start; i + 3 < limit; i++) {
+			if (input.get(i) == '\r' && input.get(i + 1) == '\n' && input.get(i + 2) == '\r'
+					&& input.get(i + 3) == '\n') {
+				String headers = new String(input.array(), start, i - start, StandardCharsets.US_ASCII);
+				int length = i + 4 - start + contentLength(headers);
+				return input.remaining() >= length ? length : -1;
+			}
+		}
+		return -1;
+	}
+
+	private static int contentLength(String headers) {
+		for (String header : headers.split("\r\n")) {
+			if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+				return Integer.parseInt(header.substring(15).trim());
+			}
+		}
+		return 0;
+	}
+
+	private static boolean readHttpResponse(ByteBuffer input) {
+		int length = httpResponseLength(input);
+		// HTTP/1.1 2xx
+		boolean ok = input.get(input.position() + 9) == '2';
+		input.position(input.position() + length);
+		return ok;
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		boolean http = args.length > 0 && args[0].equalsIgnoreCase("http");
+		int connections = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		int requestsPerConnection = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		int pipelineDepth = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+
+		if (args.length > 5) {
+			InetSocketAddress address = new InetSocketAddress(args[4], Integer.parseInt(args[5]));
+			new StockMarketLoadTest(http, address, connections, requestsPerConnection, pipelineDepth).run();
+			return;
+		}
+
+		try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(
+				StockMarketSpringConfig.class);
+				StockMarketServer server = new StockMarketServer(context.getBean(StockService.class), 0, 0)) {
+			server.start();
+			int port = http ? server.getHttpPort() : server.getBinaryPort();
+			new StockMarketLoadTest(http, new InetSocketAddress("localhost", port), connections,
+					requestsPerConnection, pipelineDepth).run();
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+package com.gbce.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.gbce.stockmarket.service.StockService;
+
+import config.StockMarketSpringConfig;
+import config.TradeAuditSpringConfig;
+import config.TradeIngestionSpringConfig;
+import config.TradeRetentionSpringConfig;
+
+/**
+ * Network server of the GBCE Stock Market application, exposing Stock Service
+ * over HTTP/JSON and over a compact binary TCP protocol. <br>
+ * 
+ * Run with java -jar target/stockmarket-server.jar [httpPort] [binaryPort],
+ * by default 8080 and 9090. Serving tens of thousands of connections needs as
+ * many file descriptors, see ulimit -n. Trades are recorded through the
+ * asynchronous trade ingestion pipeline when run with -Dgbce.ingestion=true,
+ * and an audit trail of trades is appended to trades.audit, or the file set
+ * by -Dgbce.audit.file, when run with -Dgbce.audit=true. Trades older than
+ * -Dgbce.retention.millis, an hour by default, are dropped when run with
+ * -Dgbce.retention=true.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class StockMarketServer implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(StockMarketServer.class);
+
+	public static final int DEFAULT_HTTP_PORT = 8080;
+	public static final int DEFAULT_BINARY_PORT = 9090;
+
+	/** Connections waiting to be accepted, so bursts of connections are not refused */
+	public static final int BACKLOG = 16384;
+
+	private final HttpFrontEnd httpFrontEnd;
+	private final BinaryFrontEnd binaryFrontEnd;
+
+	/**
+	 * Creates the HTTP and binary front ends of a Stock Service.
+	 * 
+	 * @param stockService
+	 *            Stock Service to be served
+	 * @param httpPort
+	 *            port of the HTTP front end, 0 for any free port
+	 * @param binaryPort
+	 *            port of the binary front end, 0 for any free port
+	 * @throws IOException
+	 *             if a port cannot be listened on
+	 */
+	public StockMarketServer(StockService stockService, int httpPort, int binaryPort) throws IOException {
+		this.httpFrontEnd = new HttpFrontEnd(stockService, new InetSocketAddress(httpPort), BACKLOG);
+		try {
+			this.binaryFrontEnd = new BinaryFrontEnd(stockService, new InetSocketAddress(binaryPort), BACKLOG);
+		} catch (IOException e) {
+			httpFrontEnd.close();
+			throw e;
+		}
+	}
+
+	public void start() {
+		httpFrontEnd.start();
+		binaryFrontEnd.start();
+		logger.info("GBCE Stock Market serving HTTP on port " + getHttpPort() + " and binary TCP on port "
+				+ getBinaryPort());
+	}
+
+	public int getHttpPort() {
+		return httpFrontEnd.getPort();
+	}
+
+	public int getBinaryPort() {
+		return binaryFrontEnd.getPort();
+	}
+
+	@Override
+	public void close() throws IOException {
+		httpFrontEnd.close();
+		binaryFrontEnd.close();
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		int httpPort = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_HTTP_PORT;
+		int binaryPort = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BINARY_PORT;
+
+		final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.register(StockMarketSpringConfig.class);
+		if (Boolean.getBoolean("gbce.ingestion")) {
+			context.register(TradeIngestionSpringConfig.class);
+		}
+		if (Boolean.getBoolean("gbce.audit")) {
+			context.register(TradeAuditSpringConfig.class);
+		}
+		if (Boolean.getBoolean("gbce.retention")) {
+			context.register(TradeRetentionSpringConfig.class);
+		}
+		context.refresh();
+		final StockMarketServer server = new StockMarketServer(context.getBean(StockService.class), httpPort,
+				binaryPort);
+		Runtime.getRuntime().addShutdownHook(new Thread("stockmarket-shutdown") {
+			@Override
+			public void run() {
+				try {
+					server.close();
+				} catch (IOException e) {
+					logger.error("Cannot close server : " + e.getMessage());
+				}
+				context.close();
+			}
+		});
+		server.start();
+	}
+
+}
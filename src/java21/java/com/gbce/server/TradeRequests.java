@@ -0,0 +1,44 @@
+package com.gbce.server;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.TradeType;
+import com.gbce.stockmarket.util.HighResolutionClock;
+
+/**
+ * Trades requested through the front ends, checked as soon as they are read
+ * so a malformed request is refused before it reaches Stock Service.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+final class TradeRequests {
+
+	private TradeRequests() {
+	}
+
+	/**
+	 * Creates a trade requested by a client, stamped with the current time.
+	 * 
+	 * @param stock
+	 *            stock traded
+	 * @param type
+	 *            BUY or SELL
+	 * @param quantity
+	 *            number of stocks traded, above 0
+	 * @param price
+	 *            price of a stock, a finite number above 0
+	 * @return trade to be recorded
+	 */
+	static Trade newTrade(Stock stock, TradeType type, int quantity, double price) {
+		if (stock == null || type == null) {
+			throw new RuntimeException("Trade should have a stock and a type");
+		}
+		if (quantity <= 0 || !(price > 0) || Double.isInfinite(price)) {
+			throw new RuntimeException("Quantity and price should be positive numbers, got quantity " + quantity
+					+ " and price " + price);
+		}
+		return new Trade(stock, HighResolutionClock.currentTimeNanos(), type, quantity, price);
+	}
+
+}
@@ -0,0 +1,134 @@
+package com.gbce.server;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.codec.MarketDataDecoder;
+import com.gbce.stockmarket.codec.MarketDataEncoder;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+import com.gbce.stockmarket.service.StockService;
+
+/**
+ * TestNG Unit Test class for the binary protocol of the TCP front end
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Test
+public class BinaryProtocolTest {
+
+	private static final Stock STOCK = new Stock("TEA", StockType.COMMON, 0, 0, 100);
+
+	/**
+	 * Test to check symbols and messages are read as written, and cut ones
+	 * are rejected.
+	 * 
+	 */
+	@Test
+	public void testSymbolsAndMessages() {
+
+		ByteBuffer buffer = ByteBuffer.allocate(BinaryProtocol.MAX_RESPONSE_SIZE).order(BinaryProtocol.BYTE_ORDER);
+		BinaryProtocol.putSymbol(buffer, "TEA");
+		BinaryProtocol.putMessage(buffer, "Stock not found : \u00c9");
+		buffer.flip();
+
+		assertEquals(BinaryProtocol.getSymbol(buffer), "TEA");
+		assertEquals(BinaryProtocol.getMessage(buffer), "Stock not found : \u00c9");
+		assertEquals(buffer.remaining(), 0);
+
+		ByteBuffer cutSymbol = ByteBuffer.allocate(4).order(BinaryProtocol.BYTE_ORDER);
+		cutSymbol.put((byte) 5).put((byte) 'T').put((byte) 'E').put((byte) 'A').flip();
+		try {
+			BinaryProtocol.getSymbol(cutSymbol);
+			fail("Cut symbol should be rejected");
+		} catch (RuntimeException e) {
+			// expected
+		}
+
+		ByteBuffer cutMessage = ByteBuffer.allocate(4).order(BinaryProtocol.BYTE_ORDER);
+		cutMessage.putShort((short) 100).put((byte) 'N').put((byte) 'O').flip();
+		try {
+			BinaryProtocol.getMessage(cutMessage);
+			fail("Cut message should be rejected");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Test to check RECORD_TRADE requests record valid trades, and get an
+	 * error response for cut symbols, missing trade messages and trades of no
+	 * stocks or with an invalid price, without reaching Stock Service.
+	 * 
+	 */
+	@Test
+	public void testRecordTrade() throws IOException {
+
+		List<Trade> recordedTrades = new ArrayList<>();
+		StockService stockService = (StockService) Proxy.newProxyInstance(StockService.class.getClassLoader(),
+				new Class<?>[] { StockService.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "findStock":
+						return STOCK;
+					case "recordTrade":
+						recordedTrades.add((Trade) args[0]);
+						return true;
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+
+		try (BinaryFrontEnd frontEnd = new BinaryFrontEnd(stockService, new InetSocketAddress(0), 1)) {
+			MarketDataDecoder decoder = new MarketDataDecoder();
+
+			ByteBuffer response = answer(frontEnd, decoder, recordTradeRequest(10, 101.5));
+			assertEquals(response.get(), BinaryProtocol.OK);
+			assertEquals(response.get(), 1);
+			assertEquals(recordedTrades.size(), 1);
+			assertEquals(recordedTrades.get(0).getStocksQuantity(), 10);
+			assertEquals(recordedTrades.get(0).getPrice(), 101.5);
+
+			ByteBuffer[] invalidRequests = { recordTradeRequest(0, 101.5), recordTradeRequest(-5, 101.5),
+					recordTradeRequest(10, 0), recordTradeRequest(10, Double.NaN),
+					recordTradeRequest(10, Double.POSITIVE_INFINITY),
+					ByteBuffer.allocate(1).order(BinaryProtocol.BYTE_ORDER).put(BinaryProtocol.RECORD_TRADE).flip(),
+					ByteBuffer.allocate(3).order(BinaryProtocol.BYTE_ORDER).put(BinaryProtocol.DIVIDEND_YIELD)
+							.put((byte) 200).put((byte) 'T').flip() };
+			for (ByteBuffer request : invalidRequests) {
+				response = answer(frontEnd, decoder, request);
+				assertEquals(response.get(), BinaryProtocol.ERROR);
+				assertTrue(BinaryProtocol.getMessage(response).length() > 0);
+			}
+			assertEquals(recordedTrades.size(), 1);
+		}
+	}
+
+	private static ByteBuffer recordTradeRequest(int quantity, double price) {
+		ByteBuffer request = ByteBuffer.allocate(BinaryProtocol.MAX_REQUEST_LENGTH).order(BinaryProtocol.BYTE_ORDER);
+		request.put(BinaryProtocol.RECORD_TRADE);
+		MarketDataEncoder.encodeTrade(request, 0, "TEA", 0, TradeType.BUY, quantity, price);
+		return request.flip();
+	}
+
+	private static ByteBuffer answer(BinaryFrontEnd frontEnd, MarketDataDecoder decoder, ByteBuffer request) {
+		ByteBuffer output = ByteBuffer.allocate(BinaryFrontEnd.BUFFER_SIZE).order(BinaryProtocol.BYTE_ORDER);
+		frontEnd.answer(request, output, decoder);
+		output.flip();
+		assertEquals(output.getInt(), output.remaining());
+		return output;
+	}
+
+}
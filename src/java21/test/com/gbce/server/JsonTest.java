@@ -0,0 +1,80 @@
+package com.gbce.server;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Map;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * TestNG Unit Test class for the JSON support of the HTTP front end
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Test
+public class JsonTest {
+
+	@DataProvider
+	public Object[][] invalidObjects() {
+		return new Object[][] { { "" }, { "[]" }, { "{" }, { "{\"symbol\"}" }, { "{\"symbol\":}" },
+				{ "{\"symbol\":\"TEA}" }, { "{\"symbol\":\"TEA\",}" }, { "{\"symbol\":\"TEA\"} {}" },
+				{ "{\"stock\":{\"symbol\":\"TEA\"}}" }, { "{\"prices\":[1,2]}" }, { "{\"symbol\":\"\\u00\"}" } };
+	}
+
+	/**
+	 * Test to check flat objects are read into their members, numbers and
+	 * booleans as their text.
+	 * 
+	 */
+	@Test
+	public void testParseObject() {
+
+		Map<String, String> members = Json
+				.parseObject(" { \"symbol\" : \"TEA\", \"type\":\"buy\",\"quantity\":10 ,\"price\":101.5,\"ok\":true}\n");
+
+		assertEquals(members.size(), 5);
+		assertEquals(members.get("symbol"), "TEA");
+		assertEquals(members.get("type"), "buy");
+		assertEquals(members.get("quantity"), "10");
+		assertEquals(members.get("price"), "101.5");
+		assertEquals(members.get("ok"), "true");
+
+		assertTrue(Json.parseObject("{}").isEmpty());
+		assertEquals(Json.parseObject("{\"symbol\":\"T\\\"E\\\\A\\u0021\\n\"}").get("symbol"), "T\"E\\A!\n");
+	}
+
+	/**
+	 * Test to check malformed or nested objects are rejected.
+	 * 
+	 */
+	@Test(dataProvider = "invalidObjects")
+	public void testParseInvalidObject(String text) {
+		try {
+			Json.parseObject(text);
+			fail("Invalid JSON should be rejected : " + text);
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Test to check objects are written with escaped strings, and non-finite
+	 * numbers as null.
+	 * 
+	 */
+	@Test
+	public void testWriteObject() {
+
+		String text = new Json().add("symbol", "T\"EA\n").add("price", 101.5).add("peRatio", Double.NaN)
+				.add("count", 3L).add("recorded", true).toString();
+
+		assertEquals(text,
+				"{\"symbol\":\"T\\\"EA\\u000a\",\"price\":101.5,\"peRatio\":null,\"count\":3,\"recorded\":true}");
+		assertEquals(Json.parseObject(text).get("symbol"), "T\"EA\n");
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.gbce.stockmarket.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gbce.stockmarket.analytics.AllShareIndexCalculator;
+
+/**
+ * JMH benchmarks of calculating the All Share Index from scratch over large
+ * stock universes, sequentially and on fork-join pools of a given
+ * parallelism, for example -p parallelism=1,2,4,8 to measure the speed up
+ * with the number of cores.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AllShareIndexBenchmark {
+
+	@Param({ "50000", "1000000" })
+	public int symbolCount;
+
+	@Param({ "1", "2", "4" })
+	public int parallelism;
+
+	private double[] prices;
+	private ForkJoinPool pool;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(1);
+		prices = new double[symbolCount];
+		for (int i = 0; i < symbolCount; i++) {
+			prices[i] = 1 + random.nextInt(100000) / 100.0;
+		}
+		pool = new ForkJoinPool(parallelism);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public double calculateSequential() {
+		return AllShareIndexCalculator.calculate(prices, symbolCount);
+	}
+
+	@Benchmark
+	public double calculateParallel() {
+		return AllShareIndexCalculator.calculate(prices, symbolCount, pool);
+	}
+
+}
@@ -0,0 +1,17 @@
+package com.gbce.stockmarket.benchmark;
+
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Spring Java context configuration for JMH benchmarks. The Stock data bean
+ * is registered by {@link MarketState}, sized by the benchmark parameters.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Configuration
+@ComponentScan(basePackages = "com.gbce.stockmarket")
+public class BenchmarkSpringConfig {
+
+}
@@ -0,0 +1,112 @@
+package com.gbce.stockmarket.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.service.StockService;
+import com.gbce.stockmarket.util.HighResolutionClock;
+
+/**
+ * Stock market shared by the threads of a benchmark. <br>
+ * 
+ * Starts the Spring context with a given number of stocks, and loads a given
+ * number of trades per stock, spread over the past 4 minutes so that they
+ * fall within the Volume Weighted Stock Price window. By default markets of
+ * 1k trades per stock are run, deeper markets are run by overriding the
+ * parameters, for example -p symbolCount=5 -p tradesPerSymbol=100000,10000000
+ * with a heap large enough to hold them.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@State(Scope.Benchmark)
+public class MarketState {
+
+	private static final int BATCH_SIZE = 10000;
+	private static final long HISTORY_NANOS = TimeUnit.MINUTES.toNanos(4);
+
+	@Param({ "5", "100", "10000" })
+	public int symbolCount;
+
+	@Param({ "1000" })
+	public int tradesPerSymbol;
+
+	private AnnotationConfigApplicationContext context;
+
+	StockService stockService;
+	TradeDao tradeDao;
+	Stock[] stocks;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+
+		stocks = new Stock[symbolCount];
+		Map<String, Stock> stocksDatabase = new ConcurrentHashMap<>();
+		for (int i = 0; i < symbolCount; i++) {
+			Stock stock = i % 5 == 4 ? new Stock("S" + i, StockType.PREFERRED, 8, 0.02, 100) : new Stock("S" + i,
+					StockType.COMMON, 1 + i % 20, 0, 100);
+			stocks[i] = stock;
+			stocksDatabase.put(stock.getSymbol(), stock);
+		}
+
+		context = new AnnotationConfigApplicationContext();
+		context.getBeanFactory().registerSingleton("stocksDatabase", stocksDatabase);
+		context.register(BenchmarkSpringConfig.class);
+		context.refresh();
+
+		stockService = context.getBean(StockService.class);
+		tradeDao = context.getBean(TradeDao.class);
+
+		long startNanos = HighResolutionClock.currentTimeNanos() - HISTORY_NANOS;
+		long stepNanos = Math.max(1, HISTORY_NANOS / tradesPerSymbol);
+		List<Trade> batch = new ArrayList<>(BATCH_SIZE);
+		for (Stock stock : stocks) {
+			for (int i = 0; i < tradesPerSymbol; i++) {
+				batch.add(newTrade(stock, startNanos + i * stepNanos));
+				if (batch.size() == BATCH_SIZE) {
+					tradeDao.addTrades(batch);
+					batch = new ArrayList<>(BATCH_SIZE);
+				}
+			}
+		}
+		if (!batch.isEmpty()) {
+			tradeDao.addTrades(batch);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	/**
+	 * @return stock picked at random for the calling thread
+	 */
+	Stock nextStock() {
+		return stocks[ThreadLocalRandom.current().nextInt(symbolCount)];
+	}
+
+	static Trade newTrade(Stock stock, long timeStampNanos) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		return new Trade(stock, timeStampNanos, random.nextBoolean() ? TradeType.BUY : TradeType.SELL,
+				1 + random.nextInt(1000), 50 + random.nextInt(100));
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.gbce.stockmarket.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of a pricing grid evaluating Dividend Yields and P/E Ratios
+ * of every stock at a number of prices, comparing a call of the Stock Service
+ * per price against a single bulk call for the whole grid. Reports the time
+ * of a whole grid, run with -p symbolCount=100 -p pricesPerSymbol=10,1000 to
+ * vary its shape.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PriceGridBenchmark {
+
+	@Param({ "100" })
+	public int pricesPerSymbol;
+
+	private String[] stockSymbols;
+	private int[] priceOffsets;
+	private double[] prices;
+	private double[] results;
+	private byte[] statuses;
+
+	@Setup(Level.Trial)
+	public void setUp(MarketState market) {
+
+		int symbolCount = market.stocks.length;
+		stockSymbols = new String[symbolCount];
+		priceOffsets = new int[symbolCount + 1];
+		prices = new double[symbolCount * pricesPerSymbol];
+		results = new double[prices.length];
+		statuses = new byte[prices.length];
+
+		for (int i = 0; i < symbolCount; i++) {
+			stockSymbols[i] = market.stocks[i].getSymbol();
+			priceOffsets[i + 1] = priceOffsets[i] + pricesPerSymbol;
+		}
+		for (int i = 0; i < prices.length; i++) {
+			prices[i] = 50 + ThreadLocalRandom.current().nextInt(10000) / 100.0;
+		}
+	}
+
+	@Benchmark
+	public double[] calculateDividendYield(MarketState market) {
+		for (int i = 0; i < stockSymbols.length; i++) {
+			for (int j = priceOffsets[i]; j < priceOffsets[i + 1]; j++) {
+				results[j] = market.stockService.calculateDividendYield(stockSymbols[i], prices[j]);
+			}
+		}
+		return results;
+	}
+
+	@Benchmark
+	public double[] calculateDividendYields(MarketState market) {
+		market.stockService.calculateDividendYields(stockSymbols, priceOffsets, prices, results, statuses);
+		return results;
+	}
+
+	@Benchmark
+	public double[] calculatePERatio(MarketState market) {
+		for (int i = 0; i < stockSymbols.length; i++) {
+			for (int j = priceOffsets[i]; j < priceOffsets[i + 1]; j++) {
+				results[j] = market.stockService.calculatePERatio(stockSymbols[i], prices[j]);
+			}
+		}
+		return results;
+	}
+
+	@Benchmark
+	public double[] calculatePERatios(MarketState market) {
+		market.stockService.calculatePERatios(stockSymbols, priceOffsets, prices, results, statuses);
+		return results;
+	}
+
+}
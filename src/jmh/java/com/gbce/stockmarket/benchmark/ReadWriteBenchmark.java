@@ -0,0 +1,47 @@
+package com.gbce.stockmarket.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gbce.stockmarket.util.HighResolutionClock;
+
+/**
+ * JMH benchmark of recording trades while prices are read concurrently. Runs
+ * 1 writer and 3 reader threads by default, other mixes are run with the -tg
+ * option giving the writer and reader thread counts, for example -tg 4,4.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadWriteBenchmark {
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(1)
+	public boolean recordTrade(MarketState market) {
+		return market.stockService.recordTrade(MarketState.newTrade(market.nextStock(),
+				HighResolutionClock.currentTimeNanos()));
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(3)
+	public double calculateVolumeStockPrice(MarketState market) {
+		return market.stockService.calculateVolumeStockPrice(market.nextStock().getSymbol(), 5);
+	}
+
+}
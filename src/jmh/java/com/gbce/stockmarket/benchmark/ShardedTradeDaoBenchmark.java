@@ -0,0 +1,121 @@
+package com.gbce.stockmarket.benchmark;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.dao.ShardedTradeDaoImpl;
+import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.dao.TradeDaoImpl;
+import com.gbce.stockmarket.util.HighResolutionClock;
+
+/**
+ * JMH benchmark of recording trades while Volume Weighted Stock Prices of
+ * the last second are read concurrently, straight on the Trade DAO, comparing
+ * the sharded DAO against the default one. Runs 1 writer and 3 reader threads by default,
+ * run with -tg to scale both with the number of cores, for example -tg 2,6
+ * and -tg 4,12, and compare the throughput.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShardedTradeDaoBenchmark {
+
+	private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	@Param({ "TradeDaoImpl", "ShardedTradeDaoImpl" })
+	public String dao;
+
+	@Param({ "100" })
+	public int symbolCount;
+
+	@Param({ "1000" })
+	public int tradesPerSymbol;
+
+	private TradeDao tradeDao;
+	private ShardedTradeDaoImpl shardedTradeDao;
+	private Stock[] stocks;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+
+		if ("ShardedTradeDaoImpl".equals(dao)) {
+			shardedTradeDao = new ShardedTradeDaoImpl();
+			tradeDao = shardedTradeDao;
+		} else {
+			tradeDao = new TradeDaoImpl();
+		}
+
+		stocks = new Stock[symbolCount];
+		for (int i = 0; i < symbolCount; i++) {
+			stocks[i] = new Stock("S" + i, StockType.COMMON, 1 + i % 20, 0, 100);
+		}
+
+		long startNanos = HighResolutionClock.currentTimeNanos() - TimeUnit.MINUTES.toNanos(4);
+		long stepNanos = Math.max(1, TimeUnit.MINUTES.toNanos(4) / tradesPerSymbol);
+		for (Stock stock : stocks) {
+			List<Trade> trades = new ArrayList<>(tradesPerSymbol);
+			for (int i = 0; i < tradesPerSymbol; i++) {
+				trades.add(MarketState.newTrade(stock, startNanos + i * stepNanos));
+			}
+			tradeDao.addTrades(trades);
+		}
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(1)
+	public boolean addTrade() {
+		return tradeDao.addTrade(MarketState.newTrade(nextStock(), HighResolutionClock.currentTimeNanos()));
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(3)
+	public double calculateVolumeWeightedPrice() {
+		String stockSymbol = nextStock().getSymbol();
+		long toNanos = HighResolutionClock.currentTimeNanos();
+		if (shardedTradeDao != null) {
+			return shardedTradeDao.calculateVolumeWeightedPrice(stockSymbol, toNanos - WINDOW_NANOS, toNanos);
+		}
+		long totalQuantity = 0;
+		double totalPrice = 0.0;
+		for (Trade trade : tradeDao.getTradesForStock(stockSymbol, new Date(TimeUnit.NANOSECONDS
+				.toMillis(toNanos - WINDOW_NANOS)), null)) {
+			totalQuantity += trade.getStocksQuantity();
+			totalPrice += trade.getPrice() * trade.getStocksQuantity();
+		}
+		return totalQuantity > 0 ? totalPrice / totalQuantity : 0.0;
+	}
+
+	private Stock nextStock() {
+		return stocks[ThreadLocalRandom.current().nextInt(symbolCount)];
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.gbce.stockmarket.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gbce.stockmarket.util.HighResolutionClock;
+
+/**
+ * JMH benchmarks of the Stock Service operations. Run with one thread by
+ * default, more threads are run with the -t option.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StockServiceBenchmark {
+
+	@Benchmark
+	public boolean recordTrade(MarketState market) {
+		return market.stockService.recordTrade(MarketState.newTrade(market.nextStock(),
+				HighResolutionClock.currentTimeNanos()));
+	}
+
+	@Benchmark
+	public double calculateVolumeStockPrice(MarketState market) {
+		return market.stockService.calculateVolumeStockPrice(market.nextStock().getSymbol(), 5);
+	}
+
+	@Benchmark
+	public double calculateAllShareIndex(MarketState market) {
+		return market.stockService.calculateAllShareIndex();
+	}
+
+	@Benchmark
+	public double calculateDividendYield(MarketState market) {
+		return market.stockService.calculateDividendYield(market.nextStock().getSymbol(), 120);
+	}
+
+	@Benchmark
+	public double calculatePERatio(MarketState market) {
+		return market.stockService.calculatePERatio(market.nextStock().getSymbol(), 120);
+	}
+
+}
@@ -0,0 +1,46 @@
+package com.gbce.stockmarket.benchmark;
+
+import java.util.Date;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.dao.TradeKey;
+
+/**
+ * JMH benchmarks of looking up trades of a stock through Trade DAO.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TradeDaoBenchmark {
+
+	@Benchmark
+	public TreeMap<TradeKey, Trade> getAllTradesForStock(MarketState market) {
+		return market.tradeDao.getAllTradesForStock(market.nextStock().getSymbol());
+	}
+
+	@Benchmark
+	public long getTradesForStockInLastMinute(MarketState market) {
+		Date fromTime = new Date(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1));
+		long totalQuantity = 0;
+		for (Trade trade : market.tradeDao.getTradesForStock(market.nextStock().getSymbol(), fromTime, null)) {
+			totalQuantity += trade.getStocksQuantity();
+		}
+		return totalQuantity;
+	}
+
+}
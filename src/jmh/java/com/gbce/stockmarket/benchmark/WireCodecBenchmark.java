@@ -0,0 +1,75 @@
+package com.gbce.stockmarket.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.codec.MarketDataDecoder;
+import com.gbce.stockmarket.codec.MarketDataEncoder;
+import com.gbce.stockmarket.codec.WireFormat;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+
+/**
+ * JMH benchmarks of encoding and decoding trades with the market data wire
+ * codec, against turning them to text with toString. Run with -prof gc to
+ * compare the allocation rates.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WireCodecBenchmark {
+
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(WireFormat.MAX_MESSAGE_SIZE).order(
+			WireFormat.BYTE_ORDER);
+	private final MarketDataDecoder decoder = new MarketDataDecoder();
+
+	private Trade trade;
+
+	@Setup
+	public void setUp() {
+		trade = new Trade(new Stock("POP", StockType.COMMON, 8, 0, 100), System.currentTimeMillis() * 1000000L,
+				TradeType.BUY, 150, 120.25);
+		trade.setTradeId(1);
+		MarketDataEncoder.encodeTrade(buffer, trade);
+		buffer.flip();
+	}
+
+	@Benchmark
+	public int encodeTrade() {
+		buffer.clear();
+		return MarketDataEncoder.encodeTrade(buffer, trade);
+	}
+
+	@Benchmark
+	public double decodeTrade() {
+		buffer.clear();
+		decoder.wrap(buffer, 0);
+		return decoder.getPrice() * decoder.getQuantity() + decoder.getTimeStampNanos()
+				+ decoder.getStockSymbol().length() + decoder.getTradeType().ordinal();
+	}
+
+	@Benchmark
+	public String tradeToString() {
+		return trade.toString();
+	}
+
+}
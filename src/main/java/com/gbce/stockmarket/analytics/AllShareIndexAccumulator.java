@@ -0,0 +1,108 @@
+package com.gbce.stockmarket.analytics;
+
+/**
+ * Keeps the GBCE All Share Index up to date as Volume Weighted Stock Prices
+ * change. <br>
+ * 
+ * The geometric mean of Volume Weighted Stock Prices is kept as a running sum
+ * of their logarithms, together with the number of stocks contributing to it.
+ * Each change of a stock price updates the sum in constant time and publishes
+ * the new index, so reading the index is a plain volatile read. Changes of
+ * different stocks may be applied in any order, but the changes of one stock
+ * must be applied in the order they were made, which callers ensure by
+ * applying them under the lock of the stock. <br>
+ * 
+ * The sum is compensated (Neumaier summation), so the rounding errors of
+ * adding and later subtracting the same logarithms do not build up over a
+ * long trading session.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+class AllShareIndexAccumulator {
+
+	/**
+	 * Largest sum of logarithms taken for rounding errors once no stock
+	 * contributes to the index.
+	 */
+	private static final double RESIDUE = 1e-6;
+
+	private double logPriceSum;
+	private double logPriceCompensation;
+	private int priceCount;
+
+	private volatile double allShareIndex;
+
+	/**
+	 * Replaces the contribution of a stock to the index and publishes the new
+	 * index.
+	 * 
+	 * @param oldPrice
+	 *            previous Volume Weighted Stock Price of the stock, 0 if it
+	 *            did not contribute
+	 * @param newPrice
+	 *            current Volume Weighted Stock Price of the stock, 0 if it
+	 *            does not contribute any more
+	 */
+	synchronized void priceChanged(double oldPrice, double newPrice) {
+		replacePrice(oldPrice, newPrice);
+		publish();
+	}
+
+	/**
+	 * Replaces the contribution of a stock to the index without publishing
+	 * the new index, for batches of changes published once through
+	 * {@link #publish()}.
+	 * 
+	 * @param oldPrice
+	 *            previous Volume Weighted Stock Price of the stock, 0 if it
+	 *            did not contribute
+	 * @param newPrice
+	 *            current Volume Weighted Stock Price of the stock, 0 if it
+	 *            does not contribute any more
+	 */
+	synchronized void replacePrice(double oldPrice, double newPrice) {
+		if (oldPrice > 0) {
+			addLogPrice(-Math.log(oldPrice));
+			priceCount--;
+		}
+		if (newPrice > 0) {
+			addLogPrice(Math.log(newPrice));
+			priceCount++;
+		}
+	}
+
+	private void addLogPrice(double logPrice) {
+		double total = logPriceSum + logPrice;
+		if (Math.abs(logPriceSum) >= Math.abs(logPrice)) {
+			logPriceCompensation += (logPriceSum - total) + logPrice;
+		} else {
+			logPriceCompensation += (logPrice - total) + logPriceSum;
+		}
+		logPriceSum = total;
+	}
+
+	/**
+	 * Publishes the index after changes of the contribution of stocks. Once no
+	 * stock contributes any more, the sum left by rounding errors is cleared.
+	 */
+	synchronized void publish() {
+		if (priceCount > 0) {
+			allShareIndex = Math.exp((logPriceSum + logPriceCompensation) / priceCount);
+			return;
+		}
+		if (priceCount == 0 && Math.abs(logPriceSum + logPriceCompensation) < RESIDUE) {
+			logPriceSum = 0.0;
+			logPriceCompensation = 0.0;
+		}
+		allShareIndex = 0.0;
+	}
+
+	/**
+	 * @return latest published All Share Index, 0 if no stock has been traded
+	 */
+	double getAllShareIndex() {
+		return allShareIndex;
+	}
+
+}
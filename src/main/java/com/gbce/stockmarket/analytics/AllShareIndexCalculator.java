@@ -0,0 +1,140 @@
+package com.gbce.stockmarket.analytics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Calculates the GBCE All Share Index from scratch over the Volume Weighted
+ * Stock Prices of a whole stock universe. <br>
+ * 
+ * The geometric mean is taken in the log domain, as the exponential of the
+ * mean logarithm of the prices, so it neither overflows nor underflows however
+ * many stocks there are, unlike multiplying the prices together. The
+ * logarithms are added with compensated (Neumaier) summation, so rounding
+ * errors do not build up across tens of thousands of stocks. <br>
+ * 
+ * Large universes are split into ranges of prices summed in parallel on a
+ * fork-join pool, and the compensated partial sums combined pairwise.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public final class AllShareIndexCalculator {
+
+	/**
+	 * Number of prices below which a range is summed on the calling thread
+	 */
+	static final int SEQUENTIAL_THRESHOLD = 4096;
+
+	private AllShareIndexCalculator() {
+	}
+
+	/**
+	 * Calculates the All Share Index on the calling thread.
+	 * 
+	 * @param prices
+	 *            Volume Weighted Stock Prices, prices not above 0 are left out
+	 * @param count
+	 *            number of prices
+	 * @return All Share Index, 0 if no price is above 0
+	 */
+	public static double calculate(double[] prices, int count) {
+		return sum(prices, 0, count).geometricMean();
+	}
+
+	/**
+	 * Calculates the All Share Index, splitting the prices across a fork-join
+	 * pool.
+	 * 
+	 * @param prices
+	 *            Volume Weighted Stock Prices, prices not above 0 are left out
+	 * @param count
+	 *            number of prices
+	 * @param pool
+	 *            fork-join pool to sum the prices on
+	 * @return All Share Index, 0 if no price is above 0
+	 */
+	public static double calculate(double[] prices, int count, ForkJoinPool pool) {
+		if (count <= SEQUENTIAL_THRESHOLD) {
+			return calculate(prices, count);
+		}
+		return pool.invoke(new LogSumTask(prices, 0, count)).geometricMean();
+	}
+
+	private static LogSum sum(double[] prices, int from, int to) {
+		LogSum logSum = new LogSum();
+		for (int i = from; i < to; i++) {
+			double price = prices[i];
+			if (price > 0) {
+				logSum.add(Math.log(price));
+				logSum.count++;
+			}
+		}
+		return logSum;
+	}
+
+	/**
+	 * Compensated sum of the logarithms of a range of prices.
+	 */
+	private static final class LogSum {
+
+		private double sum;
+		private double compensation;
+		private int count;
+
+		void add(double value) {
+			double total = sum + value;
+			if (Math.abs(sum) >= Math.abs(value)) {
+				compensation += (sum - total) + value;
+			} else {
+				compensation += (value - total) + sum;
+			}
+			sum = total;
+		}
+
+		LogSum combine(LogSum other) {
+			add(other.sum);
+			compensation += other.compensation;
+			count += other.count;
+			return this;
+		}
+
+		double geometricMean() {
+			return count > 0 ? Math.exp((sum + compensation) / count) : 0.0;
+		}
+
+	}
+
+	/**
+	 * Fork-join task splitting a range of prices in halves until they are
+	 * small enough to be summed sequentially.
+	 */
+	private static final class LogSumTask extends RecursiveTask<LogSum> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] prices;
+		private final int from;
+		private final int to;
+
+		LogSumTask(double[] prices, int from, int to) {
+			this.prices = prices;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected LogSum compute() {
+			if (to - from <= SEQUENTIAL_THRESHOLD) {
+				return sum(prices, from, to);
+			}
+			int middle = (from + to) >>> 1;
+			LogSumTask left = new LogSumTask(prices, from, middle);
+			left.fork();
+			LogSum right = new LogSumTask(prices, middle, to).compute();
+			return left.join().combine(right);
+		}
+
+	}
+
+}
@@ -0,0 +1,308 @@
+package com.gbce.stockmarket.analytics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.gbce.stockmarket.beans.Candle;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.dao.TradeListener;
+import com.gbce.stockmarket.util.StockIdMap;
+import com.gbce.stockmarket.util.SymbolRegistry;
+
+/**
+ * Aggregator of trades into candle bars with open, high, low and close
+ * prices, volume and Volume Weighted Stock Price. <br>
+ * 
+ * Listens to the Trade DAO and updates the latest bar of each configured
+ * interval of the stock traded, so that the bars are ready to be read
+ * without fetching and binning trades. A bounded number of the latest bars
+ * is kept per stock and interval, and reading the last N bars takes time in
+ * proportion to N. <br>
+ * 
+ * When a trade is removed or replaced, the bars covering it are rebuilt from
+ * the trades remaining in their intervals. When trades are retired, the bars
+ * ending before them are dropped.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Component
+public class CandleAggregator implements TradeListener {
+
+	/**
+	 * Default intervals of the bars: 1 second, 1 minute, 5 minutes and 1 hour.
+	 */
+	public static final long[] DEFAULT_INTERVALS_MILLIS = { TimeUnit.SECONDS.toMillis(1),
+			TimeUnit.MINUTES.toMillis(1), TimeUnit.MINUTES.toMillis(5), TimeUnit.HOURS.toMillis(1) };
+
+	/**
+	 * Default number of bars kept per stock and interval.
+	 */
+	public static final int DEFAULT_CAPACITY = 1000;
+
+	/**
+	 * Trade DAO object injected via Spring Auto Wiring
+	 */
+	@Autowired
+	private TradeDao tradeDao;
+
+	/**
+	 * Bar series per stock id, one per interval
+	 */
+	private final StockIdMap<CandleSeries[]> seriesByStock = new StockIdMap<>();
+
+	private long[] intervalsMillis = DEFAULT_INTERVALS_MILLIS.clone();
+
+	private int capacity = DEFAULT_CAPACITY;
+
+	public CandleAggregator() {
+		super();
+	}
+
+	/**
+	 * Creates an aggregator listening to a given Trade DAO, for use outside of
+	 * Spring.
+	 * 
+	 * @param tradeDao
+	 *            Trade DAO to be listened to
+	 */
+	public CandleAggregator(TradeDao tradeDao) {
+		this.tradeDao = tradeDao;
+		init();
+	}
+
+	/**
+	 * Registers the aggregator with Trade DAO to be notified of trades.
+	 */
+	@PostConstruct
+	public void init() {
+		tradeDao.addTradeListener(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeListener#tradeAdded(com.gbce.stockmarket.
+	 * beans.Trade)
+	 */
+	@Override
+	public void tradeAdded(Trade trade) {
+		CandleSeries[] series = getSeries(trade.getStock().getStockId());
+		long timeStamp = trade.getTimeStamp().getTime();
+		synchronized (series) {
+			for (CandleSeries intervalSeries : series) {
+				intervalSeries.add(timeStamp, trade.getStocksQuantity(), trade.getPrice());
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeListener#tradesAdded(java.util.List)
+	 */
+	@Override
+	public void tradesAdded(List<Trade> trades) {
+
+		int tradeCount = trades.size();
+
+		// Trades of a stock are adjacent, so each series is locked once per
+		// stock.
+		int start = 0;
+		while (start < tradeCount) {
+			int stockId = trades.get(start).getStock().getStockId();
+			int end = start + 1;
+			while (end < tradeCount && trades.get(end).getStock().getStockId() == stockId) {
+				end++;
+			}
+
+			CandleSeries[] series = getSeries(stockId);
+			synchronized (series) {
+				for (int i = start; i < end; i++) {
+					Trade trade = trades.get(i);
+					long timeStamp = trade.getTimeStamp().getTime();
+					for (CandleSeries intervalSeries : series) {
+						intervalSeries.add(timeStamp, trade.getStocksQuantity(), trade.getPrice());
+					}
+				}
+			}
+			start = end;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeListener#tradeDeleted(com.gbce.stockmarket.
+	 * beans.Trade)
+	 */
+	@Override
+	public void tradeDeleted(Trade trade) {
+		CandleSeries[] series = seriesByStock.get(trade.getStock().getStockId());
+		if (series == null) {
+			return;
+		}
+		long timeStamp = trade.getTimeStamp().getTime();
+		synchronized (series) {
+			for (CandleSeries intervalSeries : series) {
+				rebuild(intervalSeries, trade, timeStamp);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeListener#tradeReplaced(com.gbce.stockmarket
+	 * .beans.Trade, com.gbce.stockmarket.beans.Trade)
+	 */
+	@Override
+	public void tradeReplaced(Trade replacedTrade, Trade trade) {
+		if (replacedTrade.getStock().getStockId() != trade.getStock().getStockId()) {
+			tradeDeleted(replacedTrade);
+			tradeAdded(trade);
+			return;
+		}
+
+		// The new trade is already in the database, so the bar of the replaced
+		// trade is rebuilt with it if it falls in the same interval, and it is
+		// only added to the series otherwise.
+		CandleSeries[] series = getSeries(trade.getStock().getStockId());
+		long replacedTimeStamp = replacedTrade.getTimeStamp().getTime();
+		long timeStamp = trade.getTimeStamp().getTime();
+		synchronized (series) {
+			for (CandleSeries intervalSeries : series) {
+				rebuild(intervalSeries, replacedTrade, replacedTimeStamp);
+				if (intervalSeries.toStartTime(timeStamp) != intervalSeries.toStartTime(replacedTimeStamp)) {
+					intervalSeries.add(timeStamp, trade.getStocksQuantity(), trade.getPrice());
+				}
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeListener#tradesEvicted(java.lang.String,
+	 * long)
+	 */
+	@Override
+	public void tradesEvicted(String stockSymbol, long timeStampNanos) {
+		CandleSeries[] series = seriesByStock.get(SymbolRegistry.getInstance().findId(stockSymbol));
+		if (series == null) {
+			return;
+		}
+		long time = TimeUnit.NANOSECONDS.toMillis(timeStampNanos);
+		synchronized (series) {
+			for (CandleSeries intervalSeries : series) {
+				intervalSeries.removeBefore(time);
+			}
+		}
+	}
+
+	/**
+	 * Fetches the latest bars of a stock for a given interval.
+	 * 
+	 * @param stockSymbol
+	 *            symbol representing a stock in GBCE Stock Market
+	 * @param intervalMillis
+	 *            interval of the bars, one of the configured intervals
+	 * @param count
+	 *            highest number of bars fetched
+	 * @return latest bars, oldest first, empty if the stock was not traded
+	 */
+	public List<Candle> getCandles(String stockSymbol, long intervalMillis, int count) {
+		int intervalIndex = indexOfInterval(intervalMillis);
+		int stockId = SymbolRegistry.getInstance().findId(stockSymbol);
+		CandleSeries[] series = seriesByStock.get(stockId);
+		if (series == null) {
+			return Collections.emptyList();
+		}
+		synchronized (series) {
+			return series[intervalIndex].latest(SymbolRegistry.getInstance().getSymbol(stockId), count);
+		}
+	}
+
+	public long[] getIntervalsMillis() {
+		return intervalsMillis.clone();
+	}
+
+	/**
+	 * Sets the intervals of the bars. Only to be set before any trade is
+	 * recorded.
+	 * 
+	 * @param intervalsMillis
+	 *            intervals of the bars in millis
+	 */
+	public void setIntervalsMillis(long... intervalsMillis) {
+		for (long intervalMillis : intervalsMillis) {
+			if (intervalMillis <= 0) {
+				throw new RuntimeException("Interval should be a positive number : " + intervalMillis);
+			}
+		}
+		this.intervalsMillis = intervalsMillis.clone();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the number of bars kept per stock and interval. Only to be set
+	 * before any trade is recorded.
+	 * 
+	 * @param capacity
+	 *            number of bars kept
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	private int indexOfInterval(long intervalMillis) {
+		for (int i = 0; i < intervalsMillis.length; i++) {
+			if (intervalsMillis[i] == intervalMillis) {
+				return i;
+			}
+		}
+		throw new RuntimeException("Candles are not aggregated for interval of " + intervalMillis
+				+ " millis, intervals are : " + Arrays.toString(intervalsMillis));
+	}
+
+	/**
+	 * Rebuilds the bar of a series covering a removed trade from the trades
+	 * now in the database within its interval.
+	 */
+	private void rebuild(CandleSeries intervalSeries, Trade trade, long timeStamp) {
+		long startTime = intervalSeries.toStartTime(timeStamp);
+		intervalSeries.rebuild(timeStamp, tradeDao.getTradesForStock(trade.getStock().getSymbol(), new Date(
+				startTime), new Date(startTime + intervalSeries.getIntervalMillis())));
+	}
+
+	private CandleSeries[] getSeries(int stockId) {
+		CandleSeries[] series = seriesByStock.get(stockId);
+		if (series == null) {
+			CandleSeries[] newSeries = new CandleSeries[intervalsMillis.length];
+			for (int i = 0; i < newSeries.length; i++) {
+				newSeries[i] = new CandleSeries(intervalsMillis[i], capacity);
+			}
+			series = seriesByStock.putIfAbsent(stockId, newSeries);
+			if (series == null) {
+				series = newSeries;
+			}
+		}
+		return series;
+	}
+
+}
@@ -0,0 +1,264 @@
+package com.gbce.stockmarket.analytics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import com.gbce.stockmarket.beans.Candle;
+import com.gbce.stockmarket.beans.Trade;
+
+/**
+ * Candle bars of one stock for one interval, used by the candle aggregator.
+ * <br>
+ * 
+ * The latest bars are kept in a bounded ring of primitive arrays ordered by
+ * start time, which grows up to a given capacity. A trade updates the bar of
+ * its interval in place, or starts a new bar, dropping the oldest bar once
+ * the ring is full. Intervals without
+ * trades have no bar. Trades mostly arrive in time order, so the bar of a
+ * trade is looked up from the tail of the ring. <br>
+ * 
+ * Instances are not thread safe, callers synchronize on the series.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+class CandleSeries {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final long intervalMillis;
+	private final int capacity;
+
+	private long[] startTimes;
+	private long[] openTimes;
+	private long[] closeTimes;
+	private double[] opens;
+	private double[] highs;
+	private double[] lows;
+	private double[] closes;
+	private long[] volumes;
+	private double[] totalPrices;
+
+	/** Position of the oldest bar in the ring */
+	private int head;
+
+	/** Number of bars in the ring */
+	private int size;
+
+	/**
+	 * @param intervalMillis
+	 *            interval covered by a bar
+	 * @param capacity
+	 *            number of bars kept, the ring grows up to it as bars are
+	 *            added
+	 */
+	CandleSeries(long intervalMillis, int capacity) {
+		this.intervalMillis = intervalMillis;
+		this.capacity = capacity;
+		allocate(Math.min(INITIAL_CAPACITY, capacity));
+	}
+
+	long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	/**
+	 * Adds a trade to the bar of its interval. Trades before the oldest bar
+	 * kept are ignored once the ring is full.
+	 */
+	void add(long timeStamp, int quantity, double price) {
+
+		long startTime = toStartTime(timeStamp);
+
+		int position = size;
+		while (position > 0 && startTimes[physical(position - 1)] > startTime) {
+			position--;
+		}
+		if (position > 0 && startTimes[physical(position - 1)] == startTime) {
+			update(physical(position - 1), timeStamp, quantity, price);
+			return;
+		}
+
+		if (size == capacity) {
+			if (position == 0) {
+				return;
+			}
+			head = physical(1);
+			size--;
+			position--;
+		} else if (size == startTimes.length) {
+			grow();
+		}
+
+		// make room for a bar before newer bars, only for late trades
+		for (int i = size; i > position; i--) {
+			copy(physical(i - 1), physical(i));
+		}
+		size++;
+
+		int index = physical(position);
+		startTimes[index] = startTime;
+		openTimes[index] = timeStamp;
+		closeTimes[index] = timeStamp;
+		opens[index] = price;
+		highs[index] = price;
+		lows[index] = price;
+		closes[index] = price;
+		volumes[index] = quantity;
+		totalPrices[index] = price * quantity;
+	}
+
+	/**
+	 * Rebuilds the bar covering a given time from the trades remaining in its
+	 * interval, after a trade was removed. The bar is removed if no trade
+	 * remains.
+	 * 
+	 * @param timeStamp
+	 *            time stamp of the trade removed
+	 * @param trades
+	 *            trades of the stock within the interval of the bar
+	 */
+	void rebuild(long timeStamp, Collection<Trade> trades) {
+
+		long startTime = toStartTime(timeStamp);
+
+		int position = size - 1;
+		while (position >= 0 && startTimes[physical(position)] > startTime) {
+			position--;
+		}
+		if (position < 0 || startTimes[physical(position)] != startTime) {
+			return;
+		}
+
+		for (int i = position + 1; i < size; i++) {
+			copy(physical(i), physical(i - 1));
+		}
+		size--;
+
+		for (Trade trade : trades) {
+			add(trade.getTimeStamp().getTime(), trade.getStocksQuantity(), trade.getPrice());
+		}
+	}
+
+	/**
+	 * Removes the bars whose interval ends at or before a given time.
+	 * 
+	 * @param time
+	 *            time in millis before which trades were retired
+	 */
+	void removeBefore(long time) {
+		int removed = 0;
+		while (removed < size && startTimes[physical(removed)] + intervalMillis <= time) {
+			removed++;
+		}
+		head = physical(removed);
+		size -= removed;
+	}
+
+	/**
+	 * Fetches the latest bars, in time order.
+	 * 
+	 * @param symbol
+	 *            symbol of the stock
+	 * @param count
+	 *            highest number of bars fetched
+	 * @return latest bars, oldest first
+	 */
+	List<Candle> latest(String symbol, int count) {
+		int first = Math.max(0, size - count);
+		List<Candle> candles = new ArrayList<>(size - first);
+		for (int position = first; position < size; position++) {
+			int index = physical(position);
+			candles.add(new Candle(symbol, new Date(startTimes[index]), intervalMillis, opens[index], highs[index],
+					lows[index], closes[index], volumes[index], volumes[index] > 0 ? totalPrices[index] / volumes[index]
+							: 0.0));
+		}
+		return candles;
+	}
+
+	/**
+	 * @return start of the interval covering a given time
+	 */
+	long toStartTime(long timeStamp) {
+		return Math.floorDiv(timeStamp, intervalMillis) * intervalMillis;
+	}
+
+	private void update(int index, long timeStamp, int quantity, double price) {
+		if (timeStamp < openTimes[index]) {
+			openTimes[index] = timeStamp;
+			opens[index] = price;
+		}
+		if (timeStamp >= closeTimes[index]) {
+			closeTimes[index] = timeStamp;
+			closes[index] = price;
+		}
+		highs[index] = Math.max(highs[index], price);
+		lows[index] = Math.min(lows[index], price);
+		volumes[index] += quantity;
+		totalPrices[index] += price * quantity;
+	}
+
+	private void copy(int from, int to) {
+		startTimes[to] = startTimes[from];
+		openTimes[to] = openTimes[from];
+		closeTimes[to] = closeTimes[from];
+		opens[to] = opens[from];
+		highs[to] = highs[from];
+		lows[to] = lows[from];
+		closes[to] = closes[from];
+		volumes[to] = volumes[from];
+		totalPrices[to] = totalPrices[from];
+	}
+
+	/**
+	 * Doubles the size of the ring, up to the capacity, moving the oldest bar
+	 * to the start.
+	 */
+	private void grow() {
+		long[] oldStartTimes = startTimes;
+		long[] oldOpenTimes = openTimes;
+		long[] oldCloseTimes = closeTimes;
+		double[] oldOpens = opens;
+		double[] oldHighs = highs;
+		double[] oldLows = lows;
+		double[] oldCloses = closes;
+		long[] oldVolumes = volumes;
+		double[] oldTotalPrices = totalPrices;
+		int oldHead = head;
+
+		allocate(Math.min(oldStartTimes.length * 2, capacity));
+		for (int position = 0; position < size; position++) {
+			int from = (oldHead + position) % oldStartTimes.length;
+			startTimes[position] = oldStartTimes[from];
+			openTimes[position] = oldOpenTimes[from];
+			closeTimes[position] = oldCloseTimes[from];
+			opens[position] = oldOpens[from];
+			highs[position] = oldHighs[from];
+			lows[position] = oldLows[from];
+			closes[position] = oldCloses[from];
+			volumes[position] = oldVolumes[from];
+			totalPrices[position] = oldTotalPrices[from];
+		}
+		head = 0;
+	}
+
+	private void allocate(int length) {
+		startTimes = new long[length];
+		openTimes = new long[length];
+		closeTimes = new long[length];
+		opens = new double[length];
+		highs = new double[length];
+		lows = new double[length];
+		closes = new double[length];
+		volumes = new long[length];
+		totalPrices = new double[length];
+	}
+
+	private int physical(int position) {
+		int index = head + position;
+		return index < startTimes.length ? index : index - startTimes.length;
+	}
+
+}
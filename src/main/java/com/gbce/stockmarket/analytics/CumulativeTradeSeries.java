@@ -0,0 +1,230 @@
+package com.gbce.stockmarket.analytics;
+
+import java.util.Arrays;
+
+/**
+ * Trades of one stock ordered by time stamp and trade id, with running sums
+ * of quantity and price x quantity, used by the Volume Weighted Stock Price
+ * index. <br>
+ * 
+ * The running sums are prefix sums: entry i holds the sums over the first i
+ * trades. The sums over the trades within any time frame are then the
+ * difference of the entries at the two ends of the time frame, each found by
+ * a binary search over the time stamps. <br>
+ * 
+ * A trade made after all others is appended in constant time. A trade made
+ * before others, or a trade removed, moves the later trades in the arrays and
+ * recomputes their sums, in time proportional to the number of later trades.
+ * Trades retired from Trade DAO are removed from the start of the series in
+ * one go. <br>
+ * 
+ * Instances are not thread safe, callers synchronize on the series.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+class CumulativeTradeSeries {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private long[] timeStamps = new long[INITIAL_CAPACITY];
+	private long[] tradeIds = new long[INITIAL_CAPACITY];
+	private int[] quantities = new int[INITIAL_CAPACITY];
+	private double[] prices = new double[INITIAL_CAPACITY];
+
+	/** Sums of quantity over the first i trades */
+	private long[] quantitySums = new long[INITIAL_CAPACITY + 1];
+
+	/** Sums of price x quantity over the first i trades */
+	private double[] totalPriceSums = new double[INITIAL_CAPACITY + 1];
+
+	/** Number of trades */
+	private int size;
+
+	/**
+	 * Adds a trade at its position in time stamp and trade id order.
+	 * 
+	 * @param timeStamp
+	 *            time stamp of the trade in nanoseconds
+	 */
+	void add(long timeStamp, long tradeId, int quantity, double price) {
+
+		if (size == timeStamps.length) {
+			grow();
+		}
+
+		int position = size;
+		if (position > 0 && compare(position - 1, timeStamp, tradeId) > 0) {
+			position = upperBound(timeStamp, tradeId);
+			int moved = size - position;
+			System.arraycopy(timeStamps, position, timeStamps, position + 1, moved);
+			System.arraycopy(tradeIds, position, tradeIds, position + 1, moved);
+			System.arraycopy(quantities, position, quantities, position + 1, moved);
+			System.arraycopy(prices, position, prices, position + 1, moved);
+		}
+
+		timeStamps[position] = timeStamp;
+		tradeIds[position] = tradeId;
+		quantities[position] = quantity;
+		prices[position] = price;
+		size++;
+
+		updateSums(position);
+	}
+
+	/**
+	 * Removes a trade.
+	 * 
+	 * @param timeStamp
+	 *            time stamp of the trade in nanoseconds
+	 * @return true if the trade was found
+	 */
+	boolean remove(long timeStamp, long tradeId) {
+
+		int position = upperBound(timeStamp, tradeId) - 1;
+		if (position < 0 || timeStamps[position] != timeStamp || tradeIds[position] != tradeId) {
+			return false;
+		}
+
+		int moved = size - position - 1;
+		System.arraycopy(timeStamps, position + 1, timeStamps, position, moved);
+		System.arraycopy(tradeIds, position + 1, tradeIds, position, moved);
+		System.arraycopy(quantities, position + 1, quantities, position, moved);
+		System.arraycopy(prices, position + 1, prices, position, moved);
+		size--;
+
+		updateSums(position);
+		return true;
+	}
+
+	/**
+	 * Removes the trades made before a given time, shrinking the arrays once
+	 * they are mostly empty.
+	 * 
+	 * @param time
+	 *            time in nanoseconds before which trades are removed
+	 * @return number of trades removed
+	 */
+	int removeBefore(long time) {
+
+		int removed = lowerBound(time);
+		if (removed == 0) {
+			return 0;
+		}
+
+		size -= removed;
+		System.arraycopy(timeStamps, removed, timeStamps, 0, size);
+		System.arraycopy(tradeIds, removed, tradeIds, 0, size);
+		System.arraycopy(quantities, removed, quantities, 0, size);
+		System.arraycopy(prices, removed, prices, 0, size);
+
+		int capacity = timeStamps.length;
+		while (capacity > INITIAL_CAPACITY && size < capacity / 4) {
+			capacity /= 2;
+		}
+		if (capacity < timeStamps.length) {
+			timeStamps = Arrays.copyOf(timeStamps, capacity);
+			tradeIds = Arrays.copyOf(tradeIds, capacity);
+			quantities = Arrays.copyOf(quantities, capacity);
+			prices = Arrays.copyOf(prices, capacity);
+			quantitySums = Arrays.copyOf(quantitySums, capacity + 1);
+			totalPriceSums = Arrays.copyOf(totalPriceSums, capacity + 1);
+		}
+
+		updateSums(0);
+		return removed;
+	}
+
+	/**
+	 * Calculates Volume Weighted Stock Price of the trades within a time
+	 * frame.
+	 * 
+	 * @param fromTime
+	 *            start of the time frame in nanoseconds (inclusive)
+	 * @param toTime
+	 *            end of the time frame in nanoseconds (exclusive)
+	 * @return Volume Weighted Stock Price, 0 if there are no trades
+	 */
+	double volumeWeightedPrice(long fromTime, long toTime) {
+		int from = lowerBound(fromTime);
+		int to = lowerBound(toTime);
+		if (to <= from) {
+			return 0.0;
+		}
+		long quantity = quantitySums[to] - quantitySums[from];
+		return quantity > 0 ? (totalPriceSums[to] - totalPriceSums[from]) / quantity : 0.0;
+	}
+
+	/**
+	 * @return position of the first trade made at or after a given time
+	 */
+	int lowerBound(long time) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (timeStamps[middle] < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	long getQuantitySum(int position) {
+		return quantitySums[position];
+	}
+
+	double getTotalPriceSum(int position) {
+		return totalPriceSums[position];
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return position of the first trade after a given time stamp and trade
+	 *         id
+	 */
+	private int upperBound(long timeStamp, long tradeId) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compare(middle, timeStamp, tradeId) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private int compare(int position, long timeStamp, long tradeId) {
+		int result = Long.compare(timeStamps[position], timeStamp);
+		return result != 0 ? result : Long.compare(tradeIds[position], tradeId);
+	}
+
+	/**
+	 * Recomputes the sums from a given position on.
+	 */
+	private void updateSums(int position) {
+		for (int i = position; i < size; i++) {
+			quantitySums[i + 1] = quantitySums[i] + quantities[i];
+			totalPriceSums[i + 1] = totalPriceSums[i] + prices[i] * quantities[i];
+		}
+	}
+
+	private void grow() {
+		int capacity = timeStamps.length * 2;
+		timeStamps = Arrays.copyOf(timeStamps, capacity);
+		tradeIds = Arrays.copyOf(tradeIds, capacity);
+		quantities = Arrays.copyOf(quantities, capacity);
+		prices = Arrays.copyOf(prices, capacity);
+		quantitySums = Arrays.copyOf(quantitySums, capacity + 1);
+		totalPriceSums = Arrays.copyOf(totalPriceSums, capacity + 1);
+	}
+
+}
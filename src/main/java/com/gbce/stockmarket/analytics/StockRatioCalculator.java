@@ -0,0 +1,135 @@
+package com.gbce.stockmarket.analytics;
+
+import java.util.Arrays;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.constants.StockType;
+
+/**
+ * Calculates Dividend Yields and P/E Ratios of a stock over many prices at
+ * once, for pricing grids evaluating thousands of prices per tick. <br>
+ * 
+ * The stock is looked up by the caller once for all its prices, and the
+ * ratios are written into an array supplied by the caller, so nothing is
+ * allocated. Each ratio is calculated by a plain loop dividing every price by
+ * a constant, or a constant by every price, which the JIT compiler turns into
+ * vector instructions. Invalid prices are then flagged in a status array in a
+ * second loop, with NaN as their ratio, instead of throwing an exception. <br>
+ * 
+ * A price is valid if it is above 0, NaN is not.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public final class StockRatioCalculator {
+
+	/** Status of a ratio calculated from a valid price */
+	public static final byte STATUS_OK = 0;
+
+	/** Status of a price not above 0 */
+	public static final byte STATUS_INVALID_PRICE = 1;
+
+	/** Status of a price of a stock not found in database */
+	public static final byte STATUS_UNKNOWN_STOCK = 2;
+
+	/** Status of a price of a stock with a Last Dividend of 0, for P/E Ratio */
+	public static final byte STATUS_ZERO_DIVIDEND = 3;
+
+	private StockRatioCalculator() {
+	}
+
+	/**
+	 * Calculates Dividend Yields of a stock for a range of prices.
+	 * 
+	 * @param stock
+	 *            stock of the prices, null if the stock was not found
+	 * @param prices
+	 *            prices of the stock
+	 * @param from
+	 *            index of the first price (inclusive)
+	 * @param to
+	 *            index of the last price (exclusive)
+	 * @param dividendYields
+	 *            array receiving the Dividend Yields at the indexes of the
+	 *            prices, NaN for invalid prices
+	 * @param statuses
+	 *            array receiving the status of each price
+	 * @return number of invalid prices
+	 */
+	public static int calculateDividendYields(Stock stock, double[] prices, int from, int to,
+			double[] dividendYields, byte[] statuses) {
+		if (stock == null) {
+			return reject(from, to, dividendYields, statuses, STATUS_UNKNOWN_STOCK);
+		}
+
+		double dividend = 0.0;
+		if (stock.getType() == StockType.COMMON) {
+			dividend = stock.getLastDividend();
+		} else if (stock.getType() == StockType.PREFERRED) {
+			dividend = stock.getFixedDividend() * stock.getParValue();
+		}
+
+		for (int i = from; i < to; i++) {
+			dividendYields[i] = dividend / prices[i];
+		}
+		return checkPrices(prices, from, to, dividendYields, statuses);
+	}
+
+	/**
+	 * Calculates P/E Ratios of a stock for a range of prices.
+	 * 
+	 * @param stock
+	 *            stock of the prices, null if the stock was not found
+	 * @param prices
+	 *            prices of the stock
+	 * @param from
+	 *            index of the first price (inclusive)
+	 * @param to
+	 *            index of the last price (exclusive)
+	 * @param peRatios
+	 *            array receiving the P/E Ratios at the indexes of the prices,
+	 *            NaN for invalid prices
+	 * @param statuses
+	 *            array receiving the status of each price
+	 * @return number of invalid prices
+	 */
+	public static int calculatePERatios(Stock stock, double[] prices, int from, int to, double[] peRatios,
+			byte[] statuses) {
+		if (stock == null) {
+			return reject(from, to, peRatios, statuses, STATUS_UNKNOWN_STOCK);
+		}
+		if (stock.getLastDividend() == 0.0) {
+			return reject(from, to, peRatios, statuses, STATUS_ZERO_DIVIDEND);
+		}
+
+		double dividend = stock.getLastDividend();
+		for (int i = from; i < to; i++) {
+			peRatios[i] = prices[i] / dividend;
+		}
+		return checkPrices(prices, from, to, peRatios, statuses);
+	}
+
+	/**
+	 * Flags the prices not above 0, replacing their ratio by NaN.
+	 */
+	private static int checkPrices(double[] prices, int from, int to, double[] ratios, byte[] statuses) {
+		int invalidCount = 0;
+		for (int i = from; i < to; i++) {
+			if (prices[i] > 0) {
+				statuses[i] = STATUS_OK;
+			} else {
+				statuses[i] = STATUS_INVALID_PRICE;
+				ratios[i] = Double.NaN;
+				invalidCount++;
+			}
+		}
+		return invalidCount;
+	}
+
+	private static int reject(int from, int to, double[] ratios, byte[] statuses, byte status) {
+		Arrays.fill(ratios, from, to, Double.NaN);
+		Arrays.fill(statuses, from, to, status);
+		return to - from;
+	}
+
+}
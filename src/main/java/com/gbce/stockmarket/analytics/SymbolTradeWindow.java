@@ -0,0 +1,236 @@
+package com.gbce.stockmarket.analytics;
+
+/**
+ * Sliding time window over the trades of one stock, used by the Volume
+ * Weighted Stock Price engine. <br>
+ * 
+ * Trades within the window are kept in a ring of primitive arrays ordered by
+ * time stamp, together with running sums of quantity and price x quantity.
+ * Trades falling out of the window are expired from the head of the ring as
+ * time moves on, so the Volume Weighted Stock Price of the whole window is
+ * available in constant time and without allocation. Running totals of all
+ * trades ever made on the stock are kept as well. <br>
+ * 
+ * Instances are not thread safe, callers synchronize on the window.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+class SymbolTradeWindow {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private long[] timeStamps = new long[INITIAL_CAPACITY];
+	private int[] quantities = new int[INITIAL_CAPACITY];
+	private double[] prices = new double[INITIAL_CAPACITY];
+
+	/** Position of the oldest trade in the ring */
+	private int head;
+
+	/** Number of trades in the ring */
+	private int size;
+
+	/** Trades made before this time (millis) have been expired */
+	private long expiredBefore = Long.MIN_VALUE;
+
+	private long windowQuantity;
+	private double windowTotalPrice;
+
+	private long totalQuantity;
+	private double totalPrice;
+
+	/**
+	 * Adds a trade to the totals, and to the window unless it was made before
+	 * the window start.
+	 */
+	void add(long timeStamp, int quantity, double price) {
+
+		totalQuantity += quantity;
+		totalPrice += price * quantity;
+
+		if (timeStamp < expiredBefore) {
+			return;
+		}
+
+		if (size == timeStamps.length) {
+			grow();
+		}
+
+		// Trades mostly arrive in time order, so look for the insert position
+		// from the tail of the ring.
+		int position = size;
+		while (position > 0 && timeStamps[physical(position - 1)] > timeStamp) {
+			int from = physical(position - 1);
+			int to = physical(position);
+			timeStamps[to] = timeStamps[from];
+			quantities[to] = quantities[from];
+			prices[to] = prices[from];
+			position--;
+		}
+
+		int index = physical(position);
+		timeStamps[index] = timeStamp;
+		quantities[index] = quantity;
+		prices[index] = price;
+		size++;
+
+		windowQuantity += quantity;
+		windowTotalPrice += price * quantity;
+	}
+
+	/**
+	 * Removes a trade from the totals, and from the window if it is still in
+	 * there.
+	 */
+	void remove(long timeStamp, int quantity, double price) {
+
+		totalQuantity -= quantity;
+		totalPrice -= price * quantity;
+		if (totalQuantity == 0) {
+			totalPrice = 0.0;
+		}
+
+		if (timeStamp < expiredBefore) {
+			return;
+		}
+
+		int position = search(timeStamp);
+		while (position < size) {
+			int index = physical(position);
+			if (timeStamps[index] != timeStamp) {
+				return;
+			}
+			if (quantities[index] == quantity && prices[index] == price) {
+				break;
+			}
+			position++;
+		}
+		if (position == size) {
+			return;
+		}
+
+		for (; position < size - 1; position++) {
+			int to = physical(position);
+			int from = physical(position + 1);
+			timeStamps[to] = timeStamps[from];
+			quantities[to] = quantities[from];
+			prices[to] = prices[from];
+		}
+		size--;
+
+		windowQuantity -= quantity;
+		windowTotalPrice -= price * quantity;
+		if (size == 0) {
+			windowTotalPrice = 0.0;
+		}
+	}
+
+	/**
+	 * Expires all trades made before the given time.
+	 */
+	void expire(long before) {
+
+		if (before <= expiredBefore) {
+			return;
+		}
+		expiredBefore = before;
+
+		while (size > 0 && timeStamps[head] < before) {
+			windowQuantity -= quantities[head];
+			windowTotalPrice -= prices[head] * quantities[head];
+			head = (head + 1) & (timeStamps.length - 1);
+			size--;
+		}
+
+		if (size == 0) {
+			head = 0;
+			windowQuantity = 0;
+			windowTotalPrice = 0.0;
+		}
+	}
+
+	/**
+	 * Calculates Volume Weighted Stock Price of trades made from the given
+	 * time onwards.
+	 * 
+	 * @return Volume Weighted Stock Price, 0 if there are no trades, NaN if
+	 *         trades from the given time have already been expired
+	 */
+	double volumeWeightedPrice(long from) {
+
+		if (from < expiredBefore) {
+			return Double.NaN;
+		}
+
+		long quantity = windowQuantity;
+		double total = windowTotalPrice;
+
+		if (size > 0 && timeStamps[head] < from) {
+			// Only part of the window is asked for, sum up the shorter side.
+			int start = search(from);
+			if (start < size / 2) {
+				for (int i = 0; i < start; i++) {
+					int index = physical(i);
+					quantity -= quantities[index];
+					total -= prices[index] * quantities[index];
+				}
+			} else {
+				quantity = 0;
+				total = 0.0;
+				for (int i = start; i < size; i++) {
+					int index = physical(i);
+					quantity += quantities[index];
+					total += prices[index] * quantities[index];
+				}
+			}
+		}
+
+		return quantity > 0 ? total / quantity : 0.0;
+	}
+
+	/**
+	 * Calculates Volume Weighted Stock Price of all trades.
+	 */
+	double volumeWeightedPrice() {
+		return totalQuantity > 0 ? totalPrice / totalQuantity : 0.0;
+	}
+
+	/**
+	 * Finds the position of the first trade made at or after the given time.
+	 */
+	private int search(long timeStamp) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (timeStamps[physical(middle)] < timeStamp) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private int physical(int position) {
+		return (head + position) & (timeStamps.length - 1);
+	}
+
+	private void grow() {
+		int capacity = timeStamps.length * 2;
+		long[] newTimeStamps = new long[capacity];
+		int[] newQuantities = new int[capacity];
+		double[] newPrices = new double[capacity];
+		for (int i = 0; i < size; i++) {
+			int index = physical(i);
+			newTimeStamps[i] = timeStamps[index];
+			newQuantities[i] = quantities[index];
+			newPrices[i] = prices[index];
+		}
+		timeStamps = newTimeStamps;
+		quantities = newQuantities;
+		prices = newPrices;
+		head = 0;
+	}
+
+}
@@ -0,0 +1,278 @@
+package com.gbce.stockmarket.analytics;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.dao.TradeListener;
+import com.gbce.stockmarket.util.MarketClock;
+import com.gbce.stockmarket.util.StockIdMap;
+import com.gbce.stockmarket.util.SymbolRegistry;
+
+/**
+ * Engine calculating Volume Weighted Stock Price incrementally. <br>
+ * 
+ * Listens to the Trade DAO and keeps a sliding time window of trades per
+ * stock, with running sums of quantity and price x quantity. Volume Weighted
+ * Stock Price over the window, or over all trades, is then read in constant
+ * time instead of summing up the trades on every request. Time frames longer
+ * than the window cannot be answered by the engine. <br>
+ * 
+ * The GBCE All Share Index is kept up to date along with the Volume Weighted
+ * Stock Price of all trades of each stock, under the lock of the window of
+ * the stock so that the changes of a stock reach the index in order.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Component
+public class VolumeWeightedPriceEngine implements TradeListener {
+
+	/**
+	 * Default length of the sliding window, matching the 5 minutes time frame
+	 * of the GBCE requirements.
+	 */
+	public static final long DEFAULT_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+	/**
+	 * Trade DAO object injected via Spring Auto Wiring
+	 */
+	@Autowired
+	private TradeDao tradeDao;
+
+	/**
+	 * Trade windows per stock id
+	 */
+	private final StockIdMap<SymbolTradeWindow> windows = new StockIdMap<>();
+
+	private final AllShareIndexAccumulator allShareIndex = new AllShareIndexAccumulator();
+
+	/**
+	 * Optional market clock injected via Spring Auto Wiring, moving the
+	 * windows on. The wall clock unless configured.
+	 */
+	@Autowired(required = false)
+	private MarketClock marketClock = MarketClock.SYSTEM;
+
+	private long windowMillis = DEFAULT_WINDOW_MILLIS;
+
+	/**
+	 * Registers the engine with Trade DAO to be notified of trades.
+	 */
+	@PostConstruct
+	public void init() {
+		tradeDao.addTradeListener(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeListener#tradeAdded(com.gbce.stockmarket.
+	 * beans.Trade)
+	 */
+	@Override
+	public void tradeAdded(Trade trade) {
+		SymbolTradeWindow window = getWindow(trade.getStock().getStockId());
+		synchronized (window) {
+			// Leave a second of slack, so that a request which started just
+			// before this trade does not find its time frame expired.
+			window.expire(marketClock.currentTimeMillis() - windowMillis - 1000);
+			double oldPrice = window.volumeWeightedPrice();
+			window.add(trade.getTimeStamp().getTime(), trade.getStocksQuantity(), trade.getPrice());
+			allShareIndex.priceChanged(oldPrice, window.volumeWeightedPrice());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeListener#tradesAdded(java.util.List)
+	 */
+	@Override
+	public void tradesAdded(List<Trade> trades) {
+
+		int tradeCount = trades.size();
+		long expireBefore = marketClock.currentTimeMillis() - windowMillis - 1000;
+
+		// Trades of a stock are adjacent, so each window is locked and its
+		// price passed on to the All Share Index once per stock, the index
+		// being published once for the batch.
+		int start = 0;
+		while (start < tradeCount) {
+			int stockId = trades.get(start).getStock().getStockId();
+			int end = start + 1;
+			while (end < tradeCount && trades.get(end).getStock().getStockId() == stockId) {
+				end++;
+			}
+
+			SymbolTradeWindow window = getWindow(stockId);
+			synchronized (window) {
+				window.expire(expireBefore);
+				double oldPrice = window.volumeWeightedPrice();
+				for (int i = start; i < end; i++) {
+					Trade trade = trades.get(i);
+					window.add(trade.getTimeStamp().getTime(), trade.getStocksQuantity(), trade.getPrice());
+				}
+				allShareIndex.replacePrice(oldPrice, window.volumeWeightedPrice());
+			}
+			start = end;
+		}
+
+		allShareIndex.publish();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeListener#tradeDeleted(com.gbce.stockmarket.
+	 * beans.Trade)
+	 */
+	@Override
+	public void tradeDeleted(Trade trade) {
+		SymbolTradeWindow window = getWindow(trade.getStock().getStockId());
+		synchronized (window) {
+			double oldPrice = window.volumeWeightedPrice();
+			window.remove(trade.getTimeStamp().getTime(), trade.getStocksQuantity(), trade.getPrice());
+			allShareIndex.priceChanged(oldPrice, window.volumeWeightedPrice());
+		}
+	}
+
+	/**
+	 * Calculates Volume Weighted Stock Price for a given stock based on trades
+	 * made from a given time onwards.
+	 * 
+	 * @param stockSymbol
+	 *            symbol representing a stock in GBCE Stock Market
+	 * @param fromTime
+	 *            start of the time frame in millis
+	 * @param currentTime
+	 *            current time in millis, used to move the window on
+	 * @return Volume Weighted Stock Price, 0 if there are no trades, NaN if the
+	 *         time frame is longer than the window of the engine
+	 */
+	public double getVolumeWeightedPrice(String stockSymbol, long fromTime, long currentTime) {
+		SymbolTradeWindow window = windows.get(SymbolRegistry.getInstance().findId(stockSymbol));
+		if (window == null) {
+			return 0.0;
+		}
+		synchronized (window) {
+			window.expire(currentTime - windowMillis);
+			return window.volumeWeightedPrice(fromTime);
+		}
+	}
+
+	/**
+	 * Calculates Volume Weighted Stock Price for a given stock based on all
+	 * trades made.
+	 * 
+	 * @param stockSymbol
+	 *            symbol representing a stock in GBCE Stock Market
+	 * @return Volume Weighted Stock Price, 0 if there are no trades
+	 */
+	public double getVolumeWeightedPrice(String stockSymbol) {
+		SymbolTradeWindow window = windows.get(SymbolRegistry.getInstance().findId(stockSymbol));
+		if (window == null) {
+			return 0.0;
+		}
+		synchronized (window) {
+			return window.volumeWeightedPrice();
+		}
+	}
+
+	/**
+	 * Fetches the GBCE All Share Index, the geometric mean of the Volume
+	 * Weighted Stock Price of all trades of each traded stock. The index is
+	 * published on every trade, so this is a constant time read.
+	 * 
+	 * @return All Share Index, 0 if no stock has been traded
+	 */
+	public double getAllShareIndex() {
+		return allShareIndex.getAllShareIndex();
+	}
+
+	/**
+	 * Calculates the GBCE All Share Index from scratch over the current
+	 * Volume Weighted Stock Price of every stock, splitting the stocks across
+	 * the common fork-join pool. Meant for large stock universes, and to check
+	 * the index kept up to date on every trade.
+	 * 
+	 * @return All Share Index, 0 if no stock has been traded
+	 */
+	public double recalculateAllShareIndex() {
+		return recalculateAllShareIndex(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Calculates the GBCE All Share Index from scratch over the current
+	 * Volume Weighted Stock Price of every stock, splitting the stocks across
+	 * a given fork-join pool.
+	 * 
+	 * @param pool
+	 *            fork-join pool to calculate the index on
+	 * @return All Share Index, 0 if no stock has been traded
+	 */
+	public double recalculateAllShareIndex(ForkJoinPool pool) {
+		List<SymbolTradeWindow> stockWindows = windows.values();
+		int stockCount = stockWindows.size();
+		double[] prices = new double[stockCount];
+		for (int i = 0; i < stockCount; i++) {
+			SymbolTradeWindow window = stockWindows.get(i);
+			synchronized (window) {
+				prices[i] = window.volumeWeightedPrice();
+			}
+		}
+		return AllShareIndexCalculator.calculate(prices, stockCount, pool);
+	}
+
+	public long getWindowMillis() {
+		return windowMillis;
+	}
+
+	/**
+	 * Sets length of the sliding window. Only to be set before any trade is
+	 * recorded.
+	 * 
+	 * @param windowMillis
+	 *            length of the window in millis
+	 */
+	public void setWindowMillis(long windowMillis) {
+		this.windowMillis = windowMillis;
+	}
+
+	public MarketClock getMarketClock() {
+		return marketClock;
+	}
+
+	/**
+	 * Sets clock moving the windows on. Only to be set before any trade is
+	 * recorded.
+	 * 
+	 * @param marketClock
+	 *            market clock
+	 */
+	public void setMarketClock(MarketClock marketClock) {
+		this.marketClock = marketClock;
+	}
+
+	private SymbolTradeWindow getWindow(int stockId) {
+		SymbolTradeWindow window = windows.get(stockId);
+		if (window == null) {
+			SymbolTradeWindow newWindow = new SymbolTradeWindow();
+			window = windows.putIfAbsent(stockId, newWindow);
+			if (window == null) {
+				window = newWindow;
+			}
+		}
+		return window;
+	}
+
+}
@@ -0,0 +1,239 @@
+package com.gbce.stockmarket.analytics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.beans.VolumeWeightedPrices;
+import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.dao.TradeListener;
+import com.gbce.stockmarket.util.StockIdMap;
+import com.gbce.stockmarket.util.SymbolRegistry;
+
+/**
+ * Index answering Volume Weighted Stock Price over any time frame. <br>
+ * 
+ * Listens to the Trade DAO and keeps, per stock, the trades in time order
+ * with prefix sums of quantity and price x quantity. Volume Weighted Stock
+ * Price between any two times, including time frames well in the past, then
+ * takes two binary searches and a subtraction, whatever the number of trades
+ * within the time frame. Unlike the Volume Weighted Stock Price engine, the
+ * index is not limited to a sliding window, and keeps every trade recorded
+ * until Trade DAO retires it.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Component
+public class VolumeWeightedPriceIndex implements TradeListener {
+
+	/**
+	 * Trade DAO object injected via Spring Auto Wiring
+	 */
+	@Autowired
+	private TradeDao tradeDao;
+
+	/**
+	 * Trade series per stock id
+	 */
+	private final StockIdMap<CumulativeTradeSeries> seriesByStock = new StockIdMap<>();
+
+	public VolumeWeightedPriceIndex() {
+		super();
+	}
+
+	/**
+	 * Creates an index listening to a given Trade DAO, for use outside of
+	 * Spring.
+	 * 
+	 * @param tradeDao
+	 *            Trade DAO to be listened to
+	 */
+	public VolumeWeightedPriceIndex(TradeDao tradeDao) {
+		this.tradeDao = tradeDao;
+		init();
+	}
+
+	/**
+	 * Registers the index with Trade DAO to be notified of trades.
+	 */
+	@PostConstruct
+	public void init() {
+		tradeDao.addTradeListener(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeListener#tradeAdded(com.gbce.stockmarket.
+	 * beans.Trade)
+	 */
+	@Override
+	public void tradeAdded(Trade trade) {
+		CumulativeTradeSeries series = getSeries(trade.getStock().getStockId());
+		synchronized (series) {
+			series.add(trade.getTimeStampNanos(), trade.getTradeId(), trade.getStocksQuantity(), trade.getPrice());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeListener#tradesAdded(java.util.List)
+	 */
+	@Override
+	public void tradesAdded(List<Trade> trades) {
+
+		int tradeCount = trades.size();
+
+		// Trades of a stock are adjacent, so each series is locked once per
+		// stock.
+		int start = 0;
+		while (start < tradeCount) {
+			int stockId = trades.get(start).getStock().getStockId();
+			int end = start + 1;
+			while (end < tradeCount && trades.get(end).getStock().getStockId() == stockId) {
+				end++;
+			}
+
+			CumulativeTradeSeries series = getSeries(stockId);
+			synchronized (series) {
+				for (int i = start; i < end; i++) {
+					Trade trade = trades.get(i);
+					series.add(trade.getTimeStampNanos(), trade.getTradeId(), trade.getStocksQuantity(),
+							trade.getPrice());
+				}
+			}
+			start = end;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeListener#tradeDeleted(com.gbce.stockmarket.
+	 * beans.Trade)
+	 */
+	@Override
+	public void tradeDeleted(Trade trade) {
+		CumulativeTradeSeries series = seriesByStock.get(trade.getStock().getStockId());
+		if (series != null) {
+			synchronized (series) {
+				series.remove(trade.getTimeStampNanos(), trade.getTradeId());
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeListener#tradesEvicted(java.lang.String,
+	 * long)
+	 */
+	@Override
+	public void tradesEvicted(String stockSymbol, long timeStampNanos) {
+		CumulativeTradeSeries series = seriesByStock.get(SymbolRegistry.getInstance().findId(stockSymbol));
+		if (series != null) {
+			synchronized (series) {
+				series.removeBefore(timeStampNanos);
+			}
+		}
+	}
+
+	/**
+	 * Calculates Volume Weighted Stock Price for a given stock based on trades
+	 * made within a given time frame.
+	 * 
+	 * @param stockSymbol
+	 *            symbol representing a stock in GBCE Stock Market
+	 * @param fromTimeNanos
+	 *            start of the time frame in nanoseconds since the epoch
+	 *            (inclusive)
+	 * @param toTimeNanos
+	 *            end of the time frame in nanoseconds since the epoch
+	 *            (exclusive)
+	 * @return Volume Weighted Stock Price, 0 if there are no trades
+	 */
+	public double getVolumeWeightedPrice(String stockSymbol, long fromTimeNanos, long toTimeNanos) {
+		CumulativeTradeSeries series = seriesByStock.get(SymbolRegistry.getInstance().findId(stockSymbol));
+		if (series == null) {
+			return 0.0;
+		}
+		synchronized (series) {
+			return series.volumeWeightedPrice(fromTimeNanos, toTimeNanos);
+		}
+	}
+
+	/**
+	 * Calculates Volume Weighted Stock Price of every stock over several past
+	 * time frames ending at a given time. <br>
+	 * 
+	 * Each stock is locked once, and all time frames share the position of
+	 * their end, so every further time frame costs one more binary search.
+	 * 
+	 * @param timesInMinutes
+	 *            past time frames in minutes
+	 * @param toTimeNanos
+	 *            end of the time frames in nanoseconds since the epoch
+	 *            (inclusive)
+	 * @return Volume Weighted Stock Prices, 0 for stocks without trades within
+	 *         a time frame
+	 */
+	public VolumeWeightedPrices getVolumeWeightedPrices(int[] timesInMinutes, long toTimeNanos) {
+
+		SymbolRegistry symbolRegistry = SymbolRegistry.getInstance();
+		int stockCount = symbolRegistry.size();
+		int timeFrameCount = timesInMinutes.length;
+
+		long[] fromTimesNanos = new long[timeFrameCount];
+		for (int i = 0; i < timeFrameCount; i++) {
+			fromTimesNanos[i] = toTimeNanos - TimeUnit.MINUTES.toNanos(timesInMinutes[i]);
+		}
+
+		String[] stockSymbols = new String[stockCount];
+		double[] prices = new double[stockCount * timeFrameCount];
+
+		for (int stockId = 0; stockId < stockCount; stockId++) {
+			stockSymbols[stockId] = symbolRegistry.getSymbol(stockId);
+			CumulativeTradeSeries series = seriesByStock.get(stockId);
+			if (series == null) {
+				continue;
+			}
+			synchronized (series) {
+				int to = toTimeNanos == Long.MAX_VALUE ? series.size() : series.lowerBound(toTimeNanos + 1);
+				long toQuantity = series.getQuantitySum(to);
+				double toTotalPrice = series.getTotalPriceSum(to);
+				for (int i = 0; i < timeFrameCount; i++) {
+					int from = series.lowerBound(fromTimesNanos[i]);
+					long quantity = toQuantity - series.getQuantitySum(from);
+					if (from < to && quantity > 0) {
+						prices[stockId * timeFrameCount + i] = (toTotalPrice - series.getTotalPriceSum(from))
+								/ quantity;
+					}
+				}
+			}
+		}
+
+		return new VolumeWeightedPrices(stockSymbols, timesInMinutes.clone(), prices);
+	}
+
+	private CumulativeTradeSeries getSeries(int stockId) {
+		CumulativeTradeSeries series = seriesByStock.get(stockId);
+		if (series == null) {
+			CumulativeTradeSeries newSeries = new CumulativeTradeSeries();
+			series = seriesByStock.putIfAbsent(stockId, newSeries);
+			if (series == null) {
+				series = newSeries;
+			}
+		}
+		return series;
+	}
+
+}
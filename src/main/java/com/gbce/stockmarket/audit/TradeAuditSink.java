@@ -0,0 +1,356 @@
+package com.gbce.stockmarket.audit;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.dao.TradeListener;
+import com.gbce.stockmarket.ingestion.WaitStrategy;
+
+/**
+ * Asynchronous, binary and batched audit trail of changes to the Trade data.
+ * <br>
+ * 
+ * Registered as a listener of Trade DAO, it copies the fields of each trade
+ * stored or removed into a slot of a preallocated ring buffer and returns
+ * straight away, so that recording a trade does no string formatting, no I/O
+ * and allocates nothing. A single writer thread encodes the published slots
+ * into fixed layout binary records, and writes them to a channel in batches.
+ * Should the writer fall behind until the ring buffer is full, audit records
+ * are dropped and counted rather than holding up the trading path. <br>
+ * 
+ * Each record is made of a record type byte (0 for a trade stored, 1 for a
+ * trade removed), the trade id, time stamp in nanoseconds, trade type
+ * ordinal, quantity and price, followed by the length of the stock symbol
+ * as a byte and the symbol in ASCII.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class TradeAuditSink implements TradeListener {
+
+	public static final byte TRADE_ADDED = 0;
+	public static final byte TRADE_DELETED = 1;
+
+	public static final int DEFAULT_CAPACITY = 64 * 1024;
+	public static final int DEFAULT_BATCH_BYTES = 64 * 1024;
+
+	/** Longest symbol stored, longer symbols are cut short */
+	public static final int MAX_SYMBOL_LENGTH = 127;
+
+	/** Record type, trade id, time stamp, trade type, quantity, price */
+	private static final int FIXED_RECORD_SIZE = 1 + 8 + 8 + 1 + 4 + 8;
+	private static final int MAX_RECORD_SIZE = FIXED_RECORD_SIZE + 1 + MAX_SYMBOL_LENGTH;
+
+	private static final long CLOSED = 1L << 62;
+
+	private static final Logger logger = LoggerFactory.getLogger(TradeAuditSink.class);
+
+	private final WritableByteChannel channel;
+	private final WaitStrategy waitStrategy;
+	private final ByteBuffer buffer;
+
+	private final byte[] recordTypes;
+	private final long[] tradeIds;
+	private final long[] timeStampNanos;
+	private final byte[] tradeTypes;
+	private final int[] quantities;
+	private final double[] prices;
+	private final String[] symbols;
+	private final AtomicLongArray published;
+	private final int mask;
+
+	/**
+	 * Number of claimed sequences, that is the next sequence to be claimed,
+	 * with the CLOSED flag once the sink is closed
+	 */
+	private final AtomicLong claimed = new AtomicLong();
+
+	/** Last consumed sequence, written by the writer thread only */
+	private final AtomicLong consumed = new AtomicLong(-1);
+
+	private final AtomicLong droppedRecords = new AtomicLong();
+	private volatile long writtenRecords;
+	private volatile long failedRecords;
+
+	private Thread writer;
+
+	/**
+	 * @param fileName
+	 *            name of the file the audit records are appended to
+	 */
+	public TradeAuditSink(String fileName) {
+		this(openFile(fileName), DEFAULT_CAPACITY, DEFAULT_BATCH_BYTES, WaitStrategy.PARK);
+	}
+
+	/**
+	 * @param channel
+	 *            channel the audit records are written to
+	 * @param capacity
+	 *            number of records the ring buffer can hold, rounded up to a
+	 *            power of 2
+	 * @param batchBytes
+	 *            size of the buffer records are encoded into before being
+	 *            written to the channel
+	 * @param waitStrategy
+	 *            strategy for the writer thread waiting for records
+	 */
+	public TradeAuditSink(WritableByteChannel channel, int capacity, int batchBytes, WaitStrategy waitStrategy) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		this.channel = channel;
+		this.waitStrategy = waitStrategy;
+		this.buffer = ByteBuffer.allocateDirect(Math.max(batchBytes, MAX_RECORD_SIZE));
+		recordTypes = new byte[size];
+		tradeIds = new long[size];
+		timeStampNanos = new long[size];
+		tradeTypes = new byte[size];
+		quantities = new int[size];
+		prices = new double[size];
+		symbols = new String[size];
+		published = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			published.set(i, -1);
+		}
+		mask = size - 1;
+	}
+
+	/**
+	 * Starts the writer thread.
+	 */
+	public synchronized void start() {
+		if (writer != null) {
+			throw new IllegalStateException("Trade audit sink is already started");
+		}
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "trade-audit");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeListener#tradeAdded(com.gbce.stockmarket.
+	 * beans.Trade)
+	 */
+	@Override
+	public void tradeAdded(Trade trade) {
+		append(TRADE_ADDED, trade);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeListener#tradesAdded(java.util.List)
+	 */
+	@Override
+	public void tradesAdded(List<Trade> trades) {
+		for (int i = 0, count = trades.size(); i < count; i++) {
+			append(TRADE_ADDED, trades.get(i));
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeListener#tradeDeleted(com.gbce.stockmarket.
+	 * beans.Trade)
+	 */
+	@Override
+	public void tradeDeleted(Trade trade) {
+		append(TRADE_DELETED, trade);
+	}
+
+	/**
+	 * Copies the fields of a trade into the next free slot and publishes it
+	 * to the writer thread.
+	 * 
+	 * @return true if the record was published, false if it was dropped
+	 *         because the ring buffer is full or the sink is closed
+	 */
+	private boolean append(byte recordType, Trade trade) {
+		long sequence = tryClaim();
+		if (sequence < 0) {
+			droppedRecords.incrementAndGet();
+			return false;
+		}
+		int index = (int) sequence & mask;
+		recordTypes[index] = recordType;
+		tradeIds[index] = trade.getTradeId();
+		timeStampNanos[index] = trade.getTimeStampNanos();
+		tradeTypes[index] = (byte) (trade.getType() == null ? -1 : trade.getType().ordinal());
+		quantities[index] = trade.getStocksQuantity();
+		prices[index] = trade.getPrice();
+		symbols[index] = trade.getStock() == null ? null : trade.getStock().getSymbol();
+		published.lazySet(index, sequence);
+		return true;
+	}
+
+	/**
+	 * Claims the next slot if it is free.
+	 * 
+	 * @return claimed sequence, -1 if the ring buffer is full or closed
+	 */
+	private long tryClaim() {
+		while (true) {
+			long next = claimed.get();
+			if ((next & CLOSED) != 0 || next - recordTypes.length > consumed.get()) {
+				return -1;
+			}
+			if (claimed.compareAndSet(next, next + 1)) {
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * Writer loop, encodes published records and writes them in batches until
+	 * the sink is closed and drained. Slots are freed once their batch is
+	 * written.
+	 */
+	private void write() {
+
+		long next = consumed.get() + 1;
+
+		while (true) {
+			boolean closed = (claimed.get() & CLOSED) != 0;
+			long first = next;
+			int index = (int) next & mask;
+
+			while (published.get(index) == next && buffer.remaining() >= MAX_RECORD_SIZE) {
+				encode(index);
+				symbols[index] = null;
+				next++;
+				index = (int) next & mask;
+			}
+
+			if (next > first) {
+				writeBuffer((int) (next - first));
+				consumed.lazySet(next - 1);
+			} else if (closed && next > (claimed.get() & ~CLOSED) - 1) {
+				return;
+			} else {
+				waitStrategy.idle();
+			}
+		}
+	}
+
+	private void encode(int index) {
+		buffer.put(recordTypes[index]);
+		buffer.putLong(tradeIds[index]);
+		buffer.putLong(timeStampNanos[index]);
+		buffer.put(tradeTypes[index]);
+		buffer.putInt(quantities[index]);
+		buffer.putDouble(prices[index]);
+		String symbol = symbols[index];
+		int length = symbol == null ? 0 : Math.min(symbol.length(), MAX_SYMBOL_LENGTH);
+		buffer.put((byte) length);
+		for (int i = 0; i < length; i++) {
+			char c = symbol.charAt(i);
+			buffer.put((byte) (c < 0x80 ? c : '?'));
+		}
+	}
+
+	/**
+	 * Writes the encoded records to the channel.
+	 * 
+	 * @param count
+	 *            number of records in the buffer
+	 */
+	private void writeBuffer(int count) {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			writtenRecords += count;
+		} catch (IOException e) {
+			failedRecords += count;
+			logger.error("Could not write " + count + " audit records : " + e.getMessage());
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Waits until all records published so far have been written. Only to be
+	 * called once the sink is started.
+	 */
+	public void flush() {
+		long sequence = (claimed.get() & ~CLOSED) - 1;
+		while (consumed.get() < sequence) {
+			waitStrategy.idle();
+		}
+	}
+
+	/**
+	 * Stops accepting records, waits until the writer thread has written all
+	 * records published before, and closes the channel.
+	 */
+	public void close() {
+		while (true) {
+			long current = claimed.get();
+			if ((current & CLOSED) != 0 || claimed.compareAndSet(current, current | CLOSED)) {
+				break;
+			}
+		}
+		Thread writerThread;
+		synchronized (this) {
+			writerThread = writer;
+		}
+		if (writerThread != null) {
+			try {
+				writerThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			logger.warn("Could not close audit channel : " + e.getMessage());
+		}
+	}
+
+	private static WritableByteChannel openFile(String fileName) {
+		try {
+			return new FileOutputStream(fileName, true).getChannel();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not open audit file : " + fileName, e);
+		}
+	}
+
+	/**
+	 * @return number of records dropped because the ring buffer was full or
+	 *         the sink was closed
+	 */
+	public long getDroppedRecords() {
+		return droppedRecords.get();
+	}
+
+	public long getWrittenRecords() {
+		return writtenRecords;
+	}
+
+	public long getFailedRecords() {
+		return failedRecords;
+	}
+
+	public int getCapacity() {
+		return recordTypes.length;
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.gbce.stockmarket.beans;
+
+import java.util.Date;
+
+/**
+ * Candle bar of the trades of a stock within an interval of time, with open,
+ * high, low and close prices, volume and Volume Weighted Stock Price.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class Candle {
+
+	private final String symbol;
+	private final Date startTime;
+	private final long intervalMillis;
+	private final double open;
+	private final double high;
+	private final double low;
+	private final double close;
+	private final long volume;
+	private final double volumeWeightedPrice;
+
+	public Candle(String symbol, Date startTime, long intervalMillis, double open, double high, double low,
+			double close, long volume, double volumeWeightedPrice) {
+		super();
+		this.symbol = symbol;
+		this.startTime = startTime;
+		this.intervalMillis = intervalMillis;
+		this.open = open;
+		this.high = high;
+		this.low = low;
+		this.close = close;
+		this.volume = volume;
+		this.volumeWeightedPrice = volumeWeightedPrice;
+	}
+
+	@Override
+	public String toString() {
+		return "Candle [symbol=" + symbol + ", startTime=" + startTime + ", intervalMillis=" + intervalMillis
+				+ ", open=" + open + ", high=" + high + ", low=" + low + ", close=" + close + ", volume=" + volume
+				+ ", volumeWeightedPrice=" + volumeWeightedPrice + "]";
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public Date getStartTime() {
+		return startTime;
+	}
+
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	public double getOpen() {
+		return open;
+	}
+
+	public double getHigh() {
+		return high;
+	}
+
+	public double getLow() {
+		return low;
+	}
+
+	public double getClose() {
+		return close;
+	}
+
+	public long getVolume() {
+		return volume;
+	}
+
+	public double getVolumeWeightedPrice() {
+		return volumeWeightedPrice;
+	}
+
+}
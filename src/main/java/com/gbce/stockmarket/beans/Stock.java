@@ -1,6 +1,7 @@
 package com.gbce.stockmarket.beans;
 
 import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.util.SymbolRegistry;
 
 /**
  * @author Ranjan Lal
@@ -14,6 +15,11 @@ public class Stock {
 	private double fixedDividend;
 	private double parValue;
 
+	/**
+	 * Id of the symbol in the symbol registry, assigned on first use
+	 */
+	private int stockId = SymbolRegistry.UNKNOWN;
+
 	public Stock() {
 		super();
 	}
@@ -96,6 +102,23 @@ public class Stock {
 
 	public void setSymbol(String symbol) {
 		this.symbol = symbol;
+		this.stockId = SymbolRegistry.UNKNOWN;
+	}
+
+	/**
+	 * Fetches the id of the stock, registering its symbol on first use.
+	 * 
+	 * @return dense id of the stock symbol, the same for all Stock objects
+	 *         with the symbol in any case, {@link SymbolRegistry#UNKNOWN} if
+	 *         the stock has no symbol
+	 */
+	public int getStockId() {
+		int id = stockId;
+		if (id == SymbolRegistry.UNKNOWN && symbol != null) {
+			id = SymbolRegistry.getInstance().register(symbol);
+			stockId = id;
+		}
+		return id;
 	}
 
 }
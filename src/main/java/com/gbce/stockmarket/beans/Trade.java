@@ -1,6 +1,7 @@
 package com.gbce.stockmarket.beans;
 
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import com.gbce.stockmarket.constants.TradeType;
 
@@ -10,8 +11,10 @@ import com.gbce.stockmarket.constants.TradeType;
  */
 public class Trade {
 
+	private long tradeId;
 	private Stock stock;
 	private Date timeStamp;
+	private long timeStampNanos;
 	private TradeType type;
 	private int stocksQuantity;
 	private double price;
@@ -23,7 +26,16 @@ public class Trade {
 	public Trade(Stock stock, Date timeStamp, TradeType type, int stocksQuantity, double price) {
 		super();
 		this.stock = stock;
-		this.timeStamp = timeStamp;
+		setTimeStamp(timeStamp);
+		this.type = type;
+		this.stocksQuantity = stocksQuantity;
+		this.price = price;
+	}
+
+	public Trade(Stock stock, long timeStampNanos, TradeType type, int stocksQuantity, double price) {
+		super();
+		this.stock = stock;
+		setTimeStampNanos(timeStampNanos);
 		this.type = type;
 		this.stocksQuantity = stocksQuantity;
 		this.price = price;
@@ -31,15 +43,16 @@ public class Trade {
 
 	@Override
 	public String toString() {
-		return "Trade [stock=" + stock + ", timeStamp=" + timeStamp + ", type=" + type + ", stocksQuantity="
-				+ stocksQuantity + ", price=" + price + "]";
+		return "Trade [tradeId=" + tradeId + ", stock=" + stock + ", timeStamp=" + timeStamp + ", timeStampNanos="
+				+ timeStampNanos + ", type=" + type + ", stocksQuantity=" + stocksQuantity + ", price=" + price + "]";
 	}
 
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((timeStamp == null) ? 0 : timeStamp.hashCode());
+		result = prime * result + (int) (tradeId ^ (tradeId >>> 32));
+		result = prime * result + (int) (timeStampNanos ^ (timeStampNanos >>> 32));
 		return result;
 	}
 
@@ -52,14 +65,28 @@ public class Trade {
 		if (getClass() != obj.getClass())
 			return false;
 		Trade other = (Trade) obj;
-		if (timeStamp == null) {
-			if (other.timeStamp != null)
-				return false;
-		} else if (!timeStamp.equals(other.timeStamp))
+		if (tradeId != other.tradeId)
+			return false;
+		if (timeStampNanos != other.timeStampNanos)
 			return false;
 		return true;
 	}
 
+	public long getTradeId() {
+		return tradeId;
+	}
+
+	/**
+	 * Sets the unique id of the trade. Assigned by Trade DAO when the trade is
+	 * stored, in the order trades are stored.
+	 * 
+	 * @param tradeId
+	 *            unique id of the trade
+	 */
+	public void setTradeId(long tradeId) {
+		this.tradeId = tradeId;
+	}
+
 	public Stock getStock() {
 		return stock;
 	}
@@ -72,8 +99,32 @@ public class Trade {
 		return timeStamp;
 	}
 
+	/**
+	 * Sets the time stamp of the trade, in millisecond resolution. Also sets
+	 * the time stamp in nanoseconds.
+	 * 
+	 * @param timeStamp
+	 *            time when the trade was made
+	 */
 	public void setTimeStamp(Date timeStamp) {
 		this.timeStamp = timeStamp;
+		this.timeStampNanos = timeStamp == null ? 0 : TimeUnit.MILLISECONDS.toNanos(timeStamp.getTime());
+	}
+
+	public long getTimeStampNanos() {
+		return timeStampNanos;
+	}
+
+	/**
+	 * Sets the time stamp of the trade, in nanoseconds since the epoch. Also
+	 * sets the time stamp in millisecond resolution.
+	 * 
+	 * @param timeStampNanos
+	 *            time when the trade was made, in nanoseconds since the epoch
+	 */
+	public void setTimeStampNanos(long timeStampNanos) {
+		this.timeStampNanos = timeStampNanos;
+		this.timeStamp = new Date(Math.floorDiv(timeStampNanos, TimeUnit.MILLISECONDS.toNanos(1)));
 	}
 
 	public TradeType getType() {
@@ -0,0 +1,113 @@
+package com.gbce.stockmarket.beans;
+
+import java.util.Arrays;
+
+import com.gbce.stockmarket.util.SymbolRegistry;
+
+/**
+ * Volume Weighted Stock Prices of all stocks over several past time frames
+ * (e.g. past 1, 5, 15 and 60 minutes), calculated at one point in time. <br>
+ * 
+ * Prices are kept in a single array, one row of time frames per stock, so
+ * the result of a query over every stock is a handful of objects whatever the
+ * number of stocks. Rows are ordered by stock id, as assigned by the symbol
+ * registry, so the row of a stock is found without comparing symbols.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class VolumeWeightedPrices {
+
+	private final String[] stockSymbols;
+	private final int[] timesInMinutes;
+	private final double[] prices;
+
+	/**
+	 * @param stockSymbols
+	 *            symbols of the stocks, one per row, the stock of each row
+	 *            having the row index as its stock id
+	 * @param timesInMinutes
+	 *            past time frames in minutes, one per column
+	 * @param prices
+	 *            Volume Weighted Stock Prices, row by row
+	 */
+	public VolumeWeightedPrices(String[] stockSymbols, int[] timesInMinutes, double[] prices) {
+		super();
+		if (prices.length != stockSymbols.length * timesInMinutes.length) {
+			throw new RuntimeException("Expected " + stockSymbols.length * timesInMinutes.length
+					+ " Volume Weighted Stock Prices. Cannot process " + prices.length);
+		}
+		this.stockSymbols = stockSymbols;
+		this.timesInMinutes = timesInMinutes;
+		this.prices = prices;
+	}
+
+	@Override
+	public String toString() {
+		return "VolumeWeightedPrices [stockSymbols=" + Arrays.toString(stockSymbols) + ", timesInMinutes="
+				+ Arrays.toString(timesInMinutes) + ", prices=" + Arrays.toString(prices) + "]";
+	}
+
+	public int getStockCount() {
+		return stockSymbols.length;
+	}
+
+	public String getStockSymbol(int stockIndex) {
+		return stockSymbols[stockIndex];
+	}
+
+	public int getTimeFrameCount() {
+		return timesInMinutes.length;
+	}
+
+	public int getTimeInMinutes(int timeFrameIndex) {
+		return timesInMinutes[timeFrameIndex];
+	}
+
+	/**
+	 * @param stockIndex
+	 *            index of the stock, below {@link #getStockCount()}
+	 * @param timeFrameIndex
+	 *            index of the time frame, below {@link #getTimeFrameCount()}
+	 * @return Volume Weighted Stock Price, 0 if there are no trades
+	 */
+	public double getPrice(int stockIndex, int timeFrameIndex) {
+		return prices[stockIndex * timesInMinutes.length + timeFrameIndex];
+	}
+
+	/**
+	 * Looks up the Volume Weighted Stock Price of a given stock over a given
+	 * time frame.
+	 * 
+	 * @param stockSymbol
+	 *            symbol representing a stock in GBCE Stock Market
+	 * @param timeInMinutes
+	 *            past time frame in minutes
+	 * @return Volume Weighted Stock Price, 0 if there are no trades
+	 */
+	public double getPrice(String stockSymbol, int timeInMinutes) {
+		int stockIndex = indexOf(stockSymbol);
+		int timeFrameIndex = -1;
+		for (int i = 0; i < this.timesInMinutes.length; i++) {
+			if (this.timesInMinutes[i] == timeInMinutes) {
+				timeFrameIndex = i;
+				break;
+			}
+		}
+		if (stockIndex < 0 || timeFrameIndex < 0) {
+			throw new RuntimeException("No Volume Weighted Stock Price calculated for stock with symbol : "
+					+ stockSymbol + " over " + timeInMinutes + " minutes");
+		}
+		return getPrice(stockIndex, timeFrameIndex);
+	}
+
+	/**
+	 * @return row of a stock, which is its stock id, -1 if the stock has no
+	 *         row
+	 */
+	private int indexOf(String stockSymbol) {
+		int stockId = SymbolRegistry.getInstance().findId(stockSymbol);
+		return stockId < stockSymbols.length ? stockId : -1;
+	}
+
+}
@@ -0,0 +1,262 @@
+package com.gbce.stockmarket.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.gbce.stockmarket.constants.TradeType;
+
+/**
+ * Decoder of the messages of {@link com.gbce.stockmarket.codec.WireFormat}.
+ * <br>
+ * 
+ * The decoder is a flyweight: it is wrapped over a message in a buffer, and
+ * each field is read straight from the buffer at its fixed offset when asked
+ * for, so decoding copies nothing and creates no object per message. Stock
+ * symbols are the exception, as they are handed out as strings: the decoder
+ * keeps the symbols it decoded in a small cache, and hands out the cached
+ * string when the bytes match, so decoding trades of a known set of stocks
+ * allocates nothing either. <br>
+ * 
+ * A decoder is meant to be reused by a single thread, and is not thread
+ * safe. Getters only apply to the message types documented, and read
+ * meaningless values from messages of other types.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class MarketDataDecoder {
+
+	private static final TradeType[] TRADE_TYPES = TradeType.values();
+
+	private static final int SYMBOL_CACHE_SIZE = 256;
+
+	private final String[] symbolCache = new String[SYMBOL_CACHE_SIZE];
+	private final byte[] symbolBytes = new byte[WireFormat.MAX_SYMBOL_LENGTH];
+
+	private ByteBuffer buffer;
+	private int offset;
+	private int length;
+	private byte messageType;
+
+	/**
+	 * Reads the length of the message at a given offset, without checking it.
+	 * 
+	 * @param buffer
+	 *            buffer holding messages
+	 * @param offset
+	 *            offset of the message in the buffer
+	 * @return length of the message, -1 if its header is not in the buffer yet
+	 */
+	public static int messageLength(ByteBuffer buffer, int offset) {
+		if (buffer.limit() - offset < WireFormat.HEADER_SIZE) {
+			return -1;
+		}
+		return buffer.getShort(offset + WireFormat.LENGTH_OFFSET) & 0xFFFF;
+	}
+
+	/**
+	 * Wraps the decoder over the message at a given offset of a buffer,
+	 * checking its header.
+	 * 
+	 * @param buffer
+	 *            buffer holding messages, in the byte order of the layout
+	 * @param offset
+	 *            offset of the message in the buffer
+	 * @return false if the whole message is not in the buffer yet, up to its
+	 *         limit
+	 * @throws RuntimeException
+	 *             if the message is not valid
+	 */
+	public boolean wrap(ByteBuffer buffer, int offset) {
+		if (buffer.order() != WireFormat.BYTE_ORDER) {
+			throw new RuntimeException("Buffer should be " + WireFormat.BYTE_ORDER + " to decode market data");
+		}
+		int messageLength = messageLength(buffer, offset);
+		if (messageLength < 0 || buffer.limit() - offset < messageLength) {
+			return false;
+		}
+		byte type = buffer.get(offset + WireFormat.TYPE_OFFSET);
+		byte version = buffer.get(offset + WireFormat.VERSION_OFFSET);
+		if (version != WireFormat.VERSION) {
+			throw new RuntimeException("Unsupported market data message version : " + version);
+		}
+		int blockSize = WireFormat.blockSize(type);
+		if (blockSize < 0) {
+			throw new RuntimeException("Unknown market data message type : " + type);
+		}
+		int symbolOffset = WireFormat.symbolOffset(type);
+		int expectedLength = symbolOffset < 0 || messageLength < blockSize ? blockSize
+				: blockSize + (buffer.get(offset + symbolOffset) & 0xFF);
+		if (messageLength != expectedLength) {
+			throw new RuntimeException("Invalid length of market data message of type " + type + " : "
+					+ messageLength);
+		}
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = messageLength;
+		this.messageType = type;
+		return true;
+	}
+
+	/**
+	 * @return type of the message, see the types of
+	 *         {@link com.gbce.stockmarket.codec.WireFormat}
+	 */
+	public byte getMessageType() {
+		return messageType;
+	}
+
+	/**
+	 * @return length of the message in bytes
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return offset of the end of the message in the buffer
+	 */
+	public int getEnd() {
+		return offset + length;
+	}
+
+	/**
+	 * @return time stamp in nanoseconds since the epoch, of TRADE,
+	 *         VOLUME_WEIGHTED_PRICE, ALL_SHARE_INDEX and TRADES_EVICTED
+	 *         messages
+	 */
+	public long getTimeStampNanos() {
+		return buffer.getLong(offset + WireFormat.TIME_STAMP_OFFSET);
+	}
+
+	/**
+	 * @return price of TRADE messages, Volume Weighted Stock Price of
+	 *         VOLUME_WEIGHTED_PRICE messages
+	 */
+	public double getPrice() {
+		return buffer.getDouble(offset + WireFormat.PRICE_OFFSET);
+	}
+
+	/**
+	 * @return trade id of TRADE and TRADE_DELETED messages
+	 */
+	public long getTradeId() {
+		return buffer.getLong(offset
+				+ (messageType == WireFormat.TRADE_DELETED ? WireFormat.DELETED_TRADE_ID_OFFSET
+						: WireFormat.TRADE_ID_OFFSET));
+	}
+
+	/**
+	 * @return quantity of TRADE messages
+	 */
+	public int getQuantity() {
+		return buffer.getInt(offset + WireFormat.QUANTITY_OFFSET);
+	}
+
+	/**
+	 * @return trade type of TRADE messages
+	 */
+	public TradeType getTradeType() {
+		int type = buffer.get(offset + WireFormat.TRADE_TYPE_OFFSET);
+		if (type < 0 || type >= TRADE_TYPES.length) {
+			throw new RuntimeException("Invalid trade type in market data message : " + type);
+		}
+		return TRADE_TYPES[type];
+	}
+
+	/**
+	 * @return time frame in minutes of VOLUME_WEIGHTED_PRICE messages
+	 */
+	public int getTimeInMinutes() {
+		return buffer.getInt(offset + WireFormat.TIME_IN_MINUTES_OFFSET);
+	}
+
+	/**
+	 * @return All Share Index of ALL_SHARE_INDEX messages
+	 */
+	public double getAllShareIndex() {
+		return buffer.getDouble(offset + WireFormat.PRICE_OFFSET);
+	}
+
+	/**
+	 * @return start time in millis since the epoch of CANDLE messages
+	 */
+	public long getStartTimeMillis() {
+		return buffer.getLong(offset + WireFormat.START_TIME_OFFSET);
+	}
+
+	/**
+	 * @return interval in millis of CANDLE messages
+	 */
+	public long getIntervalMillis() {
+		return buffer.getLong(offset + WireFormat.INTERVAL_OFFSET);
+	}
+
+	public double getOpen() {
+		return buffer.getDouble(offset + WireFormat.OPEN_OFFSET);
+	}
+
+	public double getHigh() {
+		return buffer.getDouble(offset + WireFormat.HIGH_OFFSET);
+	}
+
+	public double getLow() {
+		return buffer.getDouble(offset + WireFormat.LOW_OFFSET);
+	}
+
+	public double getClose() {
+		return buffer.getDouble(offset + WireFormat.CLOSE_OFFSET);
+	}
+
+	public long getVolume() {
+		return buffer.getLong(offset + WireFormat.VOLUME_OFFSET);
+	}
+
+	/**
+	 * @return Volume Weighted Stock Price of CANDLE messages
+	 */
+	public double getCandleVolumeWeightedPrice() {
+		return buffer.getDouble(offset + WireFormat.CANDLE_VOLUME_WEIGHTED_PRICE_OFFSET);
+	}
+
+	/**
+	 * Reads the stock symbol of TRADE, VOLUME_WEIGHTED_PRICE, CANDLE and
+	 * TRADES_EVICTED messages, from the cache of the decoder when it was
+	 * decoded before.
+	 * 
+	 * @return stock symbol
+	 */
+	public String getStockSymbol() {
+		int symbolOffset = offset + WireFormat.symbolOffset(messageType);
+		int symbolLength = buffer.get(symbolOffset) & 0xFF;
+		int hash = symbolLength;
+		for (int i = 1; i <= symbolLength; i++) {
+			hash = 31 * hash + buffer.get(symbolOffset + i);
+		}
+		int slot = (hash ^ hash >>> 16) & (SYMBOL_CACHE_SIZE - 1);
+
+		String cached = symbolCache[slot];
+		if (cached != null && matches(cached, symbolOffset + 1, symbolLength)) {
+			return cached;
+		}
+		for (int i = 0; i < symbolLength; i++) {
+			symbolBytes[i] = buffer.get(symbolOffset + 1 + i);
+		}
+		String symbol = new String(symbolBytes, 0, symbolLength, StandardCharsets.US_ASCII);
+		symbolCache[slot] = symbol;
+		return symbol;
+	}
+
+	private boolean matches(String symbol, int from, int symbolLength) {
+		if (symbol.length() != symbolLength) {
+			return false;
+		}
+		for (int i = 0; i < symbolLength; i++) {
+			if (symbol.charAt(i) != buffer.get(from + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
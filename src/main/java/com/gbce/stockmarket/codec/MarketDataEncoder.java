@@ -0,0 +1,244 @@
+package com.gbce.stockmarket.codec;
+
+import java.nio.ByteBuffer;
+
+import com.gbce.stockmarket.beans.Candle;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.TradeType;
+
+/**
+ * Encoder of trades and analytics results into the fixed binary layout of
+ * {@link com.gbce.stockmarket.codec.WireFormat}. <br>
+ * 
+ * Messages are written at the position of a buffer, which is moved past
+ * them, with absolute puts at fixed offsets and without any intermediate
+ * object, so encoding allocates nothing. The buffer must be in the byte order
+ * of the layout, and have room for the message.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public final class MarketDataEncoder {
+
+	private MarketDataEncoder() {
+	}
+
+	/**
+	 * Checks a trade can be encoded, without writing anything, so that a
+	 * trade or a batch of trades is rejected before any of it is written.
+	 * 
+	 * @param trade
+	 *            Trade object to be encoded
+	 * @throws RuntimeException
+	 *             if the trade has no stock or type, or its stock symbol
+	 *             cannot be encoded
+	 */
+	public static void checkTrade(Trade trade) {
+		if (trade.getStock() == null || trade.getStock().getSymbol() == null) {
+			throw new RuntimeException("Trade has no stock, cannot be encoded : " + trade);
+		}
+		if (trade.getType() == null) {
+			throw new RuntimeException("Trade has no type, cannot be encoded : " + trade);
+		}
+		checkSymbol(trade.getStock().getSymbol());
+	}
+
+	/**
+	 * Encodes a trade.
+	 * 
+	 * @param buffer
+	 *            buffer to write to
+	 * @param trade
+	 *            Trade object to be encoded
+	 * @return size of the message
+	 */
+	public static int encodeTrade(ByteBuffer buffer, Trade trade) {
+		return encodeTrade(buffer, trade.getTradeId(), trade.getStock().getSymbol(), trade.getTimeStampNanos(),
+				trade.getType(), trade.getStocksQuantity(), trade.getPrice());
+	}
+
+	/**
+	 * Encodes a trade.
+	 * 
+	 * @param buffer
+	 *            buffer to write to
+	 * @param tradeId
+	 *            id of the trade, 0 if not recorded yet
+	 * @param stockSymbol
+	 *            symbol of the stock traded, ASCII
+	 * @param timeStampNanos
+	 *            time stamp of the trade in nanoseconds since the epoch
+	 * @param type
+	 *            type of the trade
+	 * @param quantity
+	 *            quantity of stocks traded
+	 * @param price
+	 *            price of the trade
+	 * @return size of the message
+	 */
+	public static int encodeTrade(ByteBuffer buffer, long tradeId, String stockSymbol, long timeStampNanos,
+			TradeType type, int quantity, double price) {
+		if (type == null) {
+			throw new RuntimeException("Trade has no type, cannot be encoded : " + tradeId);
+		}
+		checkSymbol(stockSymbol);
+		int start = start(buffer);
+		buffer.putLong(start + WireFormat.TIME_STAMP_OFFSET, timeStampNanos);
+		buffer.putDouble(start + WireFormat.PRICE_OFFSET, price);
+		buffer.putLong(start + WireFormat.TRADE_ID_OFFSET, tradeId);
+		buffer.putInt(start + WireFormat.QUANTITY_OFFSET, quantity);
+		buffer.put(start + WireFormat.TRADE_TYPE_OFFSET, (byte) type.ordinal());
+		return end(buffer, start, WireFormat.TRADE, putSymbol(buffer, start + WireFormat.TRADE_SYMBOL_OFFSET,
+				stockSymbol));
+	}
+
+	/**
+	 * Encodes the removal of a trade.
+	 * 
+	 * @param buffer
+	 *            buffer to write to
+	 * @param tradeId
+	 *            id of the trade removed
+	 * @return size of the message
+	 */
+	public static int encodeTradeDeleted(ByteBuffer buffer, long tradeId) {
+		int start = start(buffer);
+		buffer.putLong(start + WireFormat.DELETED_TRADE_ID_OFFSET, tradeId);
+		return end(buffer, start, WireFormat.TRADE_DELETED, start + WireFormat.TRADE_DELETED_SIZE);
+	}
+
+	/**
+	 * Encodes the Volume Weighted Stock Price of a stock.
+	 * 
+	 * @param buffer
+	 *            buffer to write to
+	 * @param stockSymbol
+	 *            symbol of the stock, ASCII
+	 * @param timeStampNanos
+	 *            time of the calculation in nanoseconds since the epoch
+	 * @param timeInMinutes
+	 *            time frame of the calculation in minutes
+	 * @param price
+	 *            Volume Weighted Stock Price
+	 * @return size of the message
+	 */
+	public static int encodeVolumeWeightedPrice(ByteBuffer buffer, String stockSymbol, long timeStampNanos,
+			int timeInMinutes, double price) {
+		int start = start(buffer);
+		buffer.putLong(start + WireFormat.TIME_STAMP_OFFSET, timeStampNanos);
+		buffer.putDouble(start + WireFormat.PRICE_OFFSET, price);
+		buffer.putInt(start + WireFormat.TIME_IN_MINUTES_OFFSET, timeInMinutes);
+		return end(buffer, start, WireFormat.VOLUME_WEIGHTED_PRICE,
+				putSymbol(buffer, start + WireFormat.VOLUME_WEIGHTED_PRICE_SYMBOL_OFFSET, stockSymbol));
+	}
+
+	/**
+	 * Encodes the retirement of the trades of a stock made before a given
+	 * time.
+	 * 
+	 * @param buffer
+	 *            buffer to write to
+	 * @param stockSymbol
+	 *            symbol of the stock, ASCII
+	 * @param timeStampNanos
+	 *            time in nanoseconds since the epoch before which trades were
+	 *            retired
+	 * @return size of the message
+	 */
+	public static int encodeTradesEvicted(ByteBuffer buffer, String stockSymbol, long timeStampNanos) {
+		checkSymbol(stockSymbol);
+		int start = start(buffer);
+		buffer.putLong(start + WireFormat.TIME_STAMP_OFFSET, timeStampNanos);
+		return end(buffer, start, WireFormat.TRADES_EVICTED,
+				putSymbol(buffer, start + WireFormat.TRADES_EVICTED_SYMBOL_OFFSET, stockSymbol));
+	}
+
+	/**
+	 * Encodes the All Share Index.
+	 * 
+	 * @param buffer
+	 *            buffer to write to
+	 * @param timeStampNanos
+	 *            time of the calculation in nanoseconds since the epoch
+	 * @param allShareIndex
+	 *            All Share Index
+	 * @return size of the message
+	 */
+	public static int encodeAllShareIndex(ByteBuffer buffer, long timeStampNanos, double allShareIndex) {
+		int start = start(buffer);
+		buffer.putLong(start + WireFormat.TIME_STAMP_OFFSET, timeStampNanos);
+		buffer.putDouble(start + WireFormat.PRICE_OFFSET, allShareIndex);
+		return end(buffer, start, WireFormat.ALL_SHARE_INDEX, start + WireFormat.ALL_SHARE_INDEX_SIZE);
+	}
+
+	/**
+	 * Encodes a candle bar.
+	 * 
+	 * @param buffer
+	 *            buffer to write to
+	 * @param candle
+	 *            candle bar to be encoded
+	 * @return size of the message
+	 */
+	public static int encodeCandle(ByteBuffer buffer, Candle candle) {
+		int start = start(buffer);
+		buffer.putLong(start + WireFormat.START_TIME_OFFSET, candle.getStartTime().getTime());
+		buffer.putLong(start + WireFormat.INTERVAL_OFFSET, candle.getIntervalMillis());
+		buffer.putDouble(start + WireFormat.OPEN_OFFSET, candle.getOpen());
+		buffer.putDouble(start + WireFormat.HIGH_OFFSET, candle.getHigh());
+		buffer.putDouble(start + WireFormat.LOW_OFFSET, candle.getLow());
+		buffer.putDouble(start + WireFormat.CLOSE_OFFSET, candle.getClose());
+		buffer.putLong(start + WireFormat.VOLUME_OFFSET, candle.getVolume());
+		buffer.putDouble(start + WireFormat.CANDLE_VOLUME_WEIGHTED_PRICE_OFFSET, candle.getVolumeWeightedPrice());
+		return end(buffer, start, WireFormat.CANDLE,
+				putSymbol(buffer, start + WireFormat.CANDLE_SYMBOL_OFFSET, candle.getSymbol()));
+	}
+
+	private static int start(ByteBuffer buffer) {
+		if (buffer.order() != WireFormat.BYTE_ORDER) {
+			throw new RuntimeException("Buffer should be " + WireFormat.BYTE_ORDER + " to encode market data");
+		}
+		return buffer.position();
+	}
+
+	/**
+	 * Writes the header of a message ending at a given position, and moves
+	 * the buffer past the message.
+	 */
+	private static int end(ByteBuffer buffer, int start, byte messageType, int end) {
+		int length = end - start;
+		buffer.putShort(start + WireFormat.LENGTH_OFFSET, (short) length);
+		buffer.put(start + WireFormat.TYPE_OFFSET, messageType);
+		buffer.put(start + WireFormat.VERSION_OFFSET, WireFormat.VERSION);
+		buffer.position(end);
+		return length;
+	}
+
+	/**
+	 * Writes a symbol as its length and ASCII bytes.
+	 * 
+	 * @return position after the symbol
+	 */
+	private static int putSymbol(ByteBuffer buffer, int offset, String stockSymbol) {
+		checkSymbol(stockSymbol);
+		int length = stockSymbol.length();
+		buffer.put(offset, (byte) length);
+		for (int i = 0; i < length; i++) {
+			buffer.put(offset + 1 + i, (byte) stockSymbol.charAt(i));
+		}
+		return offset + 1 + length;
+	}
+
+	private static void checkSymbol(String stockSymbol) {
+		int length = stockSymbol.length();
+		if (length == 0 || length > WireFormat.MAX_SYMBOL_LENGTH) {
+			throw new RuntimeException("Stock symbol cannot be encoded : " + stockSymbol);
+		}
+		for (int i = 0; i < length; i++) {
+			if (stockSymbol.charAt(i) >= 0x80) {
+				throw new RuntimeException("Stock symbol is not ASCII, cannot be encoded : " + stockSymbol);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+package com.gbce.stockmarket.codec;
+
+import java.nio.ByteOrder;
+
+/**
+ * Fixed binary layout of trades and analytics results, shared by the trade
+ * journal, the binary trade files and the network front end. <br>
+ * 
+ * Every message starts with a header of its length in bytes (2 bytes,
+ * unsigned, header included), its type (1 byte) and the version of the
+ * layout (1 byte). Fields follow at fixed offsets, so each is read straight
+ * from the buffer without reading the ones before it, and the stock symbol
+ * comes last, as its length (1 byte) and ASCII bytes. Numbers are little
+ * endian. <br>
+ * <br>
+ * 
+ * TRADE : time stamp in nanoseconds (8), price (8), trade id (8), quantity
+ * (4), trade type (1), symbol <br>
+ * TRADE_DELETED : trade id (8) <br>
+ * VOLUME_WEIGHTED_PRICE : time stamp in nanoseconds (8), price (8), time
+ * frame in minutes (4), symbol <br>
+ * ALL_SHARE_INDEX : time stamp in nanoseconds (8), index (8) <br>
+ * CANDLE : start time in millis (8), interval in millis (8), open, high, low,
+ * close (8 each), volume (8), Volume Weighted Stock Price (8), symbol <br>
+ * TRADES_EVICTED : time in nanoseconds before which trades of the stock were
+ * retired (8), symbol <br>
+ * <br>
+ * 
+ * A trade of a 3 letter stock takes 37 bytes, a fraction of its text as JSON
+ * or toString.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public final class WireFormat {
+
+	public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	public static final byte VERSION = 1;
+
+	public static final byte TRADE = 1;
+	public static final byte TRADE_DELETED = 2;
+	public static final byte VOLUME_WEIGHTED_PRICE = 3;
+	public static final byte ALL_SHARE_INDEX = 4;
+	public static final byte CANDLE = 5;
+	public static final byte TRADES_EVICTED = 6;
+
+	public static final int HEADER_SIZE = 4;
+
+	public static final int MAX_SYMBOL_LENGTH = 255;
+
+	static final int LENGTH_OFFSET = 0;
+	static final int TYPE_OFFSET = 2;
+	static final int VERSION_OFFSET = 3;
+
+	static final int TIME_STAMP_OFFSET = 4;
+	static final int PRICE_OFFSET = 12;
+
+	static final int TRADE_ID_OFFSET = 20;
+	static final int QUANTITY_OFFSET = 28;
+	static final int TRADE_TYPE_OFFSET = 32;
+	static final int TRADE_SYMBOL_OFFSET = 33;
+
+	static final int DELETED_TRADE_ID_OFFSET = 4;
+	public static final int TRADE_DELETED_SIZE = 12;
+
+	static final int TIME_IN_MINUTES_OFFSET = 20;
+	static final int VOLUME_WEIGHTED_PRICE_SYMBOL_OFFSET = 24;
+
+	static final int ALL_SHARE_INDEX_SIZE = 20;
+
+	static final int START_TIME_OFFSET = 4;
+	static final int INTERVAL_OFFSET = 12;
+	static final int OPEN_OFFSET = 20;
+	static final int HIGH_OFFSET = 28;
+	static final int LOW_OFFSET = 36;
+	static final int CLOSE_OFFSET = 44;
+	static final int VOLUME_OFFSET = 52;
+	static final int CANDLE_VOLUME_WEIGHTED_PRICE_OFFSET = 60;
+	static final int CANDLE_SYMBOL_OFFSET = 68;
+
+	static final int TRADES_EVICTED_SYMBOL_OFFSET = 12;
+
+	/** Size of a trade message without its symbol bytes */
+	public static final int TRADE_BLOCK_SIZE = TRADE_SYMBOL_OFFSET + 1;
+
+	/** Size of a trades evicted message without its symbol bytes */
+	public static final int TRADES_EVICTED_BLOCK_SIZE = TRADES_EVICTED_SYMBOL_OFFSET + 1;
+
+	/** Largest size of any message */
+	public static final int MAX_MESSAGE_SIZE = CANDLE_SYMBOL_OFFSET + 1 + MAX_SYMBOL_LENGTH;
+
+	private WireFormat() {
+	}
+
+	/**
+	 * @param messageType
+	 *            type of a message
+	 * @return offset of the symbol length of messages of the type, -1 for
+	 *         messages without a symbol
+	 */
+	static int symbolOffset(int messageType) {
+		switch (messageType) {
+		case TRADE:
+			return TRADE_SYMBOL_OFFSET;
+		case VOLUME_WEIGHTED_PRICE:
+			return VOLUME_WEIGHTED_PRICE_SYMBOL_OFFSET;
+		case CANDLE:
+			return CANDLE_SYMBOL_OFFSET;
+		case TRADES_EVICTED:
+			return TRADES_EVICTED_SYMBOL_OFFSET;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * @param messageType
+	 *            type of a message
+	 * @return size of messages of the type without their symbol bytes, -1 for
+	 *         an unknown type
+	 */
+	static int blockSize(int messageType) {
+		switch (messageType) {
+		case TRADE_DELETED:
+			return TRADE_DELETED_SIZE;
+		case ALL_SHARE_INDEX:
+			return ALL_SHARE_INDEX_SIZE;
+		default:
+			int symbolOffset = symbolOffset(messageType);
+			return symbolOffset < 0 ? -1 : symbolOffset + 1;
+		}
+	}
+
+}
@@ -0,0 +1,697 @@
+package com.gbce.stockmarket.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.metrics.MetricsRegistry;
+import com.gbce.stockmarket.metrics.OperationMetrics;
+import com.gbce.stockmarket.util.StockIdMap;
+import com.gbce.stockmarket.util.SymbolRegistry;
+
+/**
+ * Implementation of Trade DAO Interface holding trades in primitive columns.
+ * <br>
+ * 
+ * Trades of each stock are kept in columns of time stamps, trade ids,
+ * quantities, prices and trade types, instead of as Trade objects in maps.
+ * That takes a few times less memory per trade and puts no object on the heap
+ * per trade stored. Trades are read without creating objects through
+ * {@link #forEachTrade}, which passes a flyweight view of each trade, and
+ * Volume Weighted Stock Price is summed up directly over the columns. Methods
+ * of Trade DAO returning Trade objects create them on each call, cursors a
+ * batch at a time under the read lock. <br>
+ * 
+ * Trades are looked up by id through an index of trade ids to the stock and
+ * time stamp of their row, held in primitive arrays as well. Adding a trade
+ * with the id of a stored trade replaces it, wherever it is stored. Writers
+ * lock the index before the columns of a stock, readers lock one of them at a
+ * time. <br>
+ * 
+ * Not a Spring component, to be configured as the Trade DAO bean in place of
+ * {@link TradeDaoImpl} where the memory footprint of trades matters.
+ * 
+ * @see com.gbce.stockmarket.dao.TradeDao
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class ColumnarTradeDaoImpl implements TradeDao {
+
+	/**
+	 * Trade columns per stock id.
+	 */
+	private final StockIdMap<TradeColumns> tradesByStock = new StockIdMap<>();
+
+	/**
+	 * Sequence of trade ids.
+	 */
+	private final AtomicLong tradeSequence = new AtomicLong();
+
+	/**
+	 * Index of trade ids to the stock id and time stamp of their row, guarded
+	 * by {@link #tradeIdLock}.
+	 */
+	private final TradeIdIndex tradeIdIndex = new TradeIdIndex();
+
+	/**
+	 * Lock of the trade id index, taken before the lock of any columns.
+	 */
+	private final ReadWriteLock tradeIdLock = new ReentrantReadWriteLock();
+
+	/**
+	 * Listeners notified of changes to the Trade data. Copied on write, so
+	 * that notifying them needs no locking.
+	 */
+	private volatile TradeListener[] tradeListeners = new TradeListener[0];
+
+	private OperationMetrics addTradeMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics addTradesMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics getTradeMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics getAllTradesMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics deleteTradeMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics getAllTradesForStockMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics getTradesForStockMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics evictTradesMetrics = OperationMetrics.DISABLED;
+
+	/**
+	 * Looks up the metrics of the DAO calls, under the same names as
+	 * {@link TradeDaoImpl} it stands in for. Injected via Spring Auto Wiring,
+	 * calls are not measured without a metrics registry.
+	 * 
+	 * @param metricsRegistry
+	 *            registry of metrics
+	 */
+	@Autowired(required = false)
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		addTradeMetrics = metricsRegistry.getOperationMetrics("TradeDao.addTrade");
+		addTradesMetrics = metricsRegistry.getOperationMetrics("TradeDao.addTrades");
+		getTradeMetrics = metricsRegistry.getOperationMetrics("TradeDao.getTrade");
+		getAllTradesMetrics = metricsRegistry.getOperationMetrics("TradeDao.getAllTrades");
+		deleteTradeMetrics = metricsRegistry.getOperationMetrics("TradeDao.deleteTrade");
+		getAllTradesForStockMetrics = metricsRegistry.getOperationMetrics("TradeDao.getAllTradesForStock");
+		getTradesForStockMetrics = metricsRegistry.getOperationMetrics("TradeDao.getTradesForStock");
+		evictTradesMetrics = metricsRegistry.getOperationMetrics("TradeDao.evictTradesBefore");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#addTrade(com.gbce.stockmarket.beans.
+	 * Trade)
+	 */
+	@Override
+	public boolean addTrade(Trade trade) {
+		long startNanos = System.nanoTime();
+		try {
+			assignTradeId(trade);
+
+			TradeColumns columns = getColumns(trade);
+			Trade replacedTrade;
+			Lock idLock = tradeIdLock.writeLock();
+			idLock.lock();
+			try {
+				Lock lock = columns.lock.writeLock();
+				lock.lock();
+				try {
+					replacedTrade = put(columns, trade);
+				} finally {
+					lock.unlock();
+				}
+			} finally {
+				idLock.unlock();
+			}
+
+			for (TradeListener listener : tradeListeners) {
+				if (replacedTrade != null) {
+					listener.tradeReplaced(replacedTrade, trade);
+				} else {
+					listener.tradeAdded(trade);
+				}
+			}
+
+			return true;
+		} catch (RuntimeException e) {
+			addTradeMetrics.recordError();
+			throw e;
+		} finally {
+			addTradeMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeDao#addTrades(java.util.Collection)
+	 */
+	@Override
+	public int addTrades(Collection<Trade> trades) {
+		long startNanos = System.nanoTime();
+		try {
+			Map<Integer, List<Trade>> tradesByStockId = new LinkedHashMap<>();
+			for (Trade trade : trades) {
+				int stockId = trade.getStock().getStockId();
+				List<Trade> stockTrades = tradesByStockId.get(stockId);
+				if (stockTrades == null) {
+					stockTrades = new ArrayList<>();
+					tradesByStockId.put(stockId, stockTrades);
+				}
+				stockTrades.add(trade);
+			}
+
+			List<Trade> addedTrades = new ArrayList<>(trades.size());
+			List<Trade> replacedTrades = null;
+			List<Trade> replacingTrades = null;
+
+			Lock idLock = tradeIdLock.writeLock();
+			idLock.lock();
+			try {
+				for (List<Trade> stockTrades : tradesByStockId.values()) {
+					TradeColumns columns = getColumns(stockTrades.get(0));
+					Lock lock = columns.lock.writeLock();
+					lock.lock();
+					try {
+						for (Trade trade : stockTrades) {
+							assignTradeId(trade);
+							Trade replacedTrade = put(columns, trade);
+							if (replacedTrade != null) {
+								if (replacedTrades == null) {
+									replacedTrades = new ArrayList<>();
+									replacingTrades = new ArrayList<>();
+								}
+								replacedTrades.add(replacedTrade);
+								replacingTrades.add(trade);
+							} else {
+								addedTrades.add(trade);
+							}
+						}
+					} finally {
+						lock.unlock();
+					}
+				}
+			} finally {
+				idLock.unlock();
+			}
+
+			for (TradeListener listener : tradeListeners) {
+				if (!addedTrades.isEmpty()) {
+					listener.tradesAdded(addedTrades);
+				}
+				if (replacedTrades != null) {
+					for (int i = 0; i < replacedTrades.size(); i++) {
+						listener.tradeReplaced(replacedTrades.get(i), replacingTrades.get(i));
+					}
+				}
+			}
+
+			return trades.size();
+		} catch (RuntimeException e) {
+			addTradesMetrics.recordError();
+			throw e;
+		} finally {
+			addTradesMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeDao#getTrade(long)
+	 */
+	@Override
+	public Trade getTrade(long tradeId) {
+		long startNanos = System.nanoTime();
+		try {
+			Lock idLock = tradeIdLock.readLock();
+			idLock.lock();
+			try {
+				int slot = tradeIdIndex.find(tradeId);
+				if (slot >= 0) {
+					TradeColumns columns = tradesByStock.get(tradeIdIndex.getStockId(slot));
+					Lock lock = columns.lock.readLock();
+					lock.lock();
+					try {
+						TradeView view = new TradeView();
+						view.moveTo(columns, columns.find(tradeIdIndex.getTimeStamp(slot), tradeId));
+						return view.toTrade();
+					} finally {
+						lock.unlock();
+					}
+				}
+			} finally {
+				idLock.unlock();
+			}
+
+			throw new RuntimeException("Could not find trade in database with trade id : " + tradeId);
+		} catch (RuntimeException e) {
+			getTradeMetrics.recordError();
+			throw e;
+		} finally {
+			getTradeMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#deleteTrade(com.gbce.stockmarket.beans.
+	 * Trade)
+	 */
+	@Override
+	public void deleteTrade(Trade trade) {
+		long startNanos = System.nanoTime();
+		try {
+			TradeColumns columns = tradesByStock.get(trade.getStock().getStockId());
+			if (columns == null) {
+				return;
+			}
+
+			boolean removed;
+			Lock idLock = tradeIdLock.writeLock();
+			idLock.lock();
+			try {
+				Lock lock = columns.lock.writeLock();
+				lock.lock();
+				try {
+					removed = columns.remove(trade.getTimeStampNanos(), trade.getTradeId());
+				} finally {
+					lock.unlock();
+				}
+				if (removed) {
+					tradeIdIndex.remove(trade.getTradeId());
+				}
+			} finally {
+				idLock.unlock();
+			}
+
+			if (removed) {
+				for (TradeListener listener : tradeListeners) {
+					listener.tradeDeleted(trade);
+				}
+			}
+		} catch (RuntimeException e) {
+			deleteTradeMetrics.recordError();
+			throw e;
+		} finally {
+			deleteTradeMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeDao#getAllTrades()
+	 */
+	@Override
+	public TreeMap<TradeKey, Trade> getAllTrades() {
+		long startNanos = System.nanoTime();
+		try {
+			TreeMap<TradeKey, Trade> allTrades = new TreeMap<>();
+			for (TradeColumns columns : tradesByStock.values()) {
+				TradeRangeSpliterator.putAll(new Cursor(columns, null, null, false), allTrades);
+			}
+			return allTrades;
+		} catch (RuntimeException e) {
+			getAllTradesMetrics.recordError();
+			throw e;
+		} finally {
+			getAllTradesMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#getAllTradesForStock(java.lang.String)
+	 */
+	@Override
+	public TreeMap<TradeKey, Trade> getAllTradesForStock(String stockSymbol) {
+		long startNanos = System.nanoTime();
+		try {
+			return TradeRangeSpliterator.putAll(getTradeCursor(stockSymbol, null, null, false),
+					new TreeMap<TradeKey, Trade>());
+		} catch (RuntimeException e) {
+			getAllTradesForStockMetrics.recordError();
+			throw e;
+		} finally {
+			getAllTradesForStockMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#getTradesForStock(java.lang.String,
+	 * java.util.Date, java.util.Date)
+	 */
+	@Override
+	public Collection<Trade> getTradesForStock(String stockSymbol, Date fromTime, Date toTime) {
+		long startNanos = System.nanoTime();
+		try {
+			TradeColumns columns = tradesByStock.get(SymbolRegistry.getInstance().findId(stockSymbol));
+			if (columns == null) {
+				return Collections.emptyList();
+			}
+			return Collections.unmodifiableList(getTrades(columns, toNanos(fromTime, Long.MIN_VALUE),
+					toNanos(toTime, Long.MAX_VALUE)));
+		} catch (RuntimeException e) {
+			getTradesForStockMetrics.recordError();
+			throw e;
+		} finally {
+			getTradesForStockMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#getTradeCursor(java.lang.String,
+	 * java.util.Date, java.util.Date, boolean)
+	 */
+	@Override
+	public Spliterator<Trade> getTradeCursor(String stockSymbol, Date fromTime, Date toTime, boolean descending) {
+		TradeColumns columns = tradesByStock.get(SymbolRegistry.getInstance().findId(stockSymbol));
+		if (columns == null) {
+			return Spliterators.emptySpliterator();
+		}
+		return new Cursor(columns, fromTime == null ? null : TradeKey.first(toNanos(fromTime, 0)),
+				toTime == null ? null : TradeKey.first(toNanos(toTime, 0)), descending);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#evictTradesBefore(java.lang.String,
+	 * java.util.Date)
+	 */
+	@Override
+	public int evictTradesBefore(String stockSymbol, Date time) {
+		long startNanos = System.nanoTime();
+		try {
+			TradeColumns columns = tradesByStock.get(SymbolRegistry.getInstance().findId(stockSymbol));
+			if (columns == null) {
+				return 0;
+			}
+			long timeStampNanos = TimeUnit.MILLISECONDS.toNanos(time.getTime());
+			int evictedTrades;
+			Lock idLock = tradeIdLock.writeLock();
+			idLock.lock();
+			try {
+				Lock lock = columns.lock.writeLock();
+				lock.lock();
+				try {
+					evictedTrades = columns.removeChunksBefore(timeStampNanos, tradeIdIndex);
+				} finally {
+					lock.unlock();
+				}
+			} finally {
+				idLock.unlock();
+			}
+			if (evictedTrades > 0) {
+				for (TradeListener listener : tradeListeners) {
+					listener.tradesEvicted(stockSymbol, timeStampNanos);
+				}
+			}
+			return evictedTrades;
+		} catch (RuntimeException e) {
+			evictTradesMetrics.recordError();
+			throw e;
+		} finally {
+			evictTradesMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeDao#getStockSymbols()
+	 */
+	@Override
+	public Set<String> getStockSymbols() {
+		SymbolRegistry symbolRegistry = SymbolRegistry.getInstance();
+		Set<String> stockSymbols = new LinkedHashSet<>();
+		for (int stockId = 0; stockId < symbolRegistry.size(); stockId++) {
+			if (tradesByStock.get(stockId) != null) {
+				stockSymbols.add(symbolRegistry.getSymbol(stockId));
+			}
+		}
+		return Collections.unmodifiableSet(stockSymbols);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#addTradeListener(com.gbce.stockmarket.
+	 * dao.TradeListener)
+	 */
+	@Override
+	public synchronized void addTradeListener(TradeListener listener) {
+		TradeListener[] listeners = Arrays.copyOf(tradeListeners, tradeListeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+		tradeListeners = listeners;
+	}
+
+	/**
+	 * Visits trades of a given stock made within a given time frame, in order
+	 * of time stamp, passing the same flyweight view for every trade.
+	 * 
+	 * @param stockSymbol
+	 *            symbol of stock to look up for trades
+	 * @param fromTimeNanos
+	 *            start of the time frame in nanoseconds since the epoch
+	 *            (inclusive)
+	 * @param toTimeNanos
+	 *            end of the time frame in nanoseconds since the epoch
+	 *            (exclusive)
+	 * @param visitor
+	 *            callback visiting each trade
+	 */
+	public void forEachTrade(String stockSymbol, long fromTimeNanos, long toTimeNanos, TradeVisitor visitor) {
+		TradeColumns columns = tradesByStock.get(SymbolRegistry.getInstance().findId(stockSymbol));
+		if (columns == null) {
+			return;
+		}
+		TradeView view = new TradeView();
+		Lock lock = columns.lock.readLock();
+		lock.lock();
+		try {
+			int toRow = columns.lowerBound(toTimeNanos, Long.MIN_VALUE);
+			for (int row = columns.lowerBound(fromTimeNanos, Long.MIN_VALUE); row < toRow; row++) {
+				view.moveTo(columns, row);
+				visitor.visit(view);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Calculates Volume Weighted Stock Price of trades of a given stock made
+	 * within a given time frame, summing up the price and quantity columns.
+	 * 
+	 * @param stockSymbol
+	 *            symbol of stock to look up for trades
+	 * @param fromTimeNanos
+	 *            start of the time frame in nanoseconds since the epoch
+	 *            (inclusive)
+	 * @param toTimeNanos
+	 *            end of the time frame in nanoseconds since the epoch
+	 *            (exclusive)
+	 * @return Volume Weighted Stock Price, 0 if there are no trades
+	 */
+	public double calculateVolumeWeightedPrice(String stockSymbol, long fromTimeNanos, long toTimeNanos) {
+		TradeColumns columns = tradesByStock.get(SymbolRegistry.getInstance().findId(stockSymbol));
+		if (columns == null) {
+			return 0.0;
+		}
+		double[] sums = new double[2];
+		Lock lock = columns.lock.readLock();
+		lock.lock();
+		try {
+			columns.sum(columns.lowerBound(fromTimeNanos, Long.MIN_VALUE),
+					columns.lowerBound(toTimeNanos, Long.MIN_VALUE), sums);
+		} finally {
+			lock.unlock();
+		}
+		return sums[0] > 0 ? sums[1] / sums[0] : 0.0;
+	}
+
+	/**
+	 * Creates Trade objects for trades of a stock within a time frame.
+	 */
+	private List<Trade> getTrades(TradeColumns columns, long fromTimeNanos, long toTimeNanos) {
+		TradeView view = new TradeView();
+		Lock lock = columns.lock.readLock();
+		lock.lock();
+		try {
+			int fromRow = columns.lowerBound(fromTimeNanos, Long.MIN_VALUE);
+			int toRow = columns.lowerBound(toTimeNanos, Long.MIN_VALUE);
+			List<Trade> trades = new ArrayList<>(toRow - fromRow);
+			for (int row = fromRow; row < toRow; row++) {
+				view.moveTo(columns, row);
+				trades.add(view.toTrade());
+			}
+			return trades;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stores a trade in the columns of its stock, replacing the trade stored
+	 * before with the same trade id. A replaced trade of another time stamp or
+	 * stock is removed from its row. Called with the write locks of trade ids
+	 * and of the columns held. A trade without type is stored with type -1.
+	 * 
+	 * @return Trade object with data of the replaced trade, null if no trade
+	 *         was replaced
+	 */
+	private Trade put(TradeColumns columns, Trade trade) {
+		byte type = (byte) (trade.getType() == null ? -1 : trade.getType().ordinal());
+		Trade replacedTrade = null;
+		int slot = tradeIdIndex.find(trade.getTradeId());
+		if (slot >= 0) {
+			TradeColumns replacedColumns = tradesByStock.get(tradeIdIndex.getStockId(slot));
+			long replacedTimeStamp = tradeIdIndex.getTimeStamp(slot);
+			Lock lock = replacedColumns.lock.writeLock();
+			lock.lock();
+			try {
+				int row = replacedColumns.find(replacedTimeStamp, trade.getTradeId());
+				TradeView view = new TradeView();
+				view.moveTo(replacedColumns, row);
+				replacedTrade = view.toTrade();
+				if (replacedColumns == columns && replacedTimeStamp == trade.getTimeStampNanos()) {
+					columns.set(row, trade.getStocksQuantity(), trade.getPrice(), type);
+					return replacedTrade;
+				}
+				replacedColumns.remove(replacedTimeStamp, trade.getTradeId());
+			} finally {
+				lock.unlock();
+			}
+		}
+		columns.add(trade.getTimeStampNanos(), trade.getTradeId(), trade.getStocksQuantity(), trade.getPrice(), type);
+		tradeIdIndex.put(trade.getTradeId(), trade.getStock().getStockId(), trade.getTimeStampNanos());
+		return replacedTrade;
+	}
+
+	/**
+	 * Assigns the next id of the sequence to a trade without an id. For a
+	 * trade which already has an id, moves the sequence past it.
+	 */
+	private void assignTradeId(Trade trade) {
+		long tradeId = trade.getTradeId();
+		if (tradeId == 0) {
+			trade.setTradeId(tradeSequence.incrementAndGet());
+		} else {
+			long lastTradeId;
+			do {
+				lastTradeId = tradeSequence.get();
+			} while (lastTradeId < tradeId && !tradeSequence.compareAndSet(lastTradeId, tradeId));
+		}
+	}
+
+	/**
+	 * Fetches the columns of the stock of a trade, creating them on first use.
+	 */
+	private TradeColumns getColumns(Trade trade) {
+		int stockId = trade.getStock().getStockId();
+		TradeColumns columns = tradesByStock.get(stockId);
+		if (columns == null) {
+			TradeColumns newColumns = new TradeColumns(trade.getStock());
+			columns = tradesByStock.putIfAbsent(stockId, newColumns);
+			if (columns == null) {
+				columns = newColumns;
+			}
+		}
+		return columns;
+	}
+
+	private static long toNanos(Date time, long defaultNanos) {
+		return time == null ? defaultNanos : TimeUnit.MILLISECONDS.toNanos(time.getTime());
+	}
+
+	/**
+	 * Cursor over the trades of one stock, creating the Trade objects of a
+	 * batch of rows at a time under the read lock.
+	 */
+	private static final class Cursor extends TradeRangeSpliterator {
+
+		private final TradeColumns columns;
+		private final TradeView view = new TradeView();
+
+		Cursor(TradeColumns columns, TradeKey fromKey, TradeKey toKey, boolean descending) {
+			super(fromKey, toKey, descending);
+			this.columns = columns;
+		}
+
+		@Override
+		int read(TradeKey fromKey, TradeKey toKey, boolean descending, Trade[] batch) {
+			Lock lock = columns.lock.readLock();
+			lock.lock();
+			try {
+				int fromRow = lowerBound(columns, fromKey, 0);
+				int toRow = lowerBound(columns, toKey, columns.size());
+				int count = Math.min(batch.length, toRow - fromRow);
+				for (int i = 0; i < count; i++) {
+					view.moveTo(columns, descending ? toRow - 1 - i : fromRow + i);
+					batch[i] = view.toTrade();
+				}
+				return count;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		TradeKey middleKey(TradeKey fromKey, TradeKey toKey) {
+			Lock lock = columns.lock.readLock();
+			lock.lock();
+			try {
+				int fromRow = lowerBound(columns, fromKey, 0);
+				int toRow = lowerBound(columns, toKey, columns.size());
+				if (toRow - fromRow < 2 * BATCH_SIZE) {
+					return null;
+				}
+				int row = (fromRow + toRow) >>> 1;
+				return new TradeKey(columns.getTimeStamp(row), columns.getTradeId(row));
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		TradeRangeSpliterator newSpliterator(TradeKey fromKey, TradeKey toKey, boolean descending) {
+			return new Cursor(columns, fromKey, toKey, descending);
+		}
+
+		private static int lowerBound(TradeColumns columns, TradeKey key, int defaultRow) {
+			return key == null ? defaultRow : columns.lowerBound(key.getTimeStampNanos(), key.getTradeId());
+		}
+	}
+
+}
@@ -0,0 +1,742 @@
+package com.gbce.stockmarket.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.metrics.MetricsRegistry;
+import com.gbce.stockmarket.metrics.OperationMetrics;
+import com.gbce.stockmarket.util.StockIdMap;
+import com.gbce.stockmarket.util.SymbolRegistry;
+
+/**
+ * Implementation of Trade DAO Interface sharding trades over lock stripes.
+ * <br>
+ * 
+ * Stocks are spread over a power of two number of stripes by stock id, and
+ * each stripe holds the trades of its stocks by trade id and, per stock, in
+ * an array ordered by time stamp. A stripe is changed by one writer at a time
+ * under the write lock of its {@link StampedLock}, so writers of stocks of
+ * different stripes never contend. Readers of the trades of a stock read
+ * optimistically, without writing to the lock, and only take the read lock
+ * when a write to the stripe raced them: Volume Weighted Stock Price readers
+ * neither contend with each other nor with writers of other stripes. <br>
+ * 
+ * Trades of a stock within a time frame are returned as a copy of the trades
+ * ordered by time stamp, rather than as a view, while cursors read them a
+ * batch at a time, optimistically as well. The stripe holding each trade id
+ * is kept in a concurrent map, which writers update and only trade lookups by
+ * id read. A trade stored with the id of a trade of a stock of another stripe
+ * replaces it: the replaced trade is removed from its stripe once the lock of
+ * the new stripe is released, so no two stripe locks are ever held at once.
+ * <br>
+ * 
+ * Calls are timed inline, so that the optimistic reads stay free of
+ * allocations when metrics are on. <br>
+ * 
+ * Not a Spring component, to be configured as the Trade DAO bean in place of
+ * {@link TradeDaoImpl} where many threads record and read trades.
+ * 
+ * @see com.gbce.stockmarket.dao.TradeDao
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class ShardedTradeDaoImpl implements TradeDao {
+
+	/**
+	 * Stripes per core by default, so writers of different stocks seldom
+	 * share a stripe.
+	 */
+	private static final int STRIPES_PER_CORE = 4;
+
+	/**
+	 * Trades of the stocks of one stripe, guarded by the lock of the stripe.
+	 */
+	private static final class Stripe {
+
+		final StampedLock lock = new StampedLock();
+
+		final Map<Long, Trade> tradesById = new HashMap<>();
+	}
+
+	private final Stripe[] stripes;
+
+	private final int stripeMask;
+
+	/**
+	 * Trades per stock id, each guarded by the lock of the stripe of the
+	 * stock.
+	 */
+	private final StockIdMap<TradeSeries> tradesByStock = new StockIdMap<>();
+
+	/**
+	 * Stripe holding each trade id, updated under the lock of the stripe.
+	 */
+	private final ConcurrentHashMap<Long, Stripe> stripesByTradeId = new ConcurrentHashMap<>();
+
+	/**
+	 * Sequence of trade ids.
+	 */
+	private final AtomicLong tradeSequence = new AtomicLong();
+
+	/**
+	 * Listeners notified of changes to the Trade data. Copied on write, so
+	 * that notifying them needs no locking.
+	 */
+	private volatile TradeListener[] tradeListeners = new TradeListener[0];
+
+	private OperationMetrics addTradeMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics addTradesMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics getTradeMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics getAllTradesMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics deleteTradeMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics getAllTradesForStockMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics getTradesForStockMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics evictTradesMetrics = OperationMetrics.DISABLED;
+
+	public ShardedTradeDaoImpl() {
+		this(STRIPES_PER_CORE * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param stripeCount
+	 *            number of lock stripes, rounded up to a power of two
+	 */
+	public ShardedTradeDaoImpl(int stripeCount) {
+		if (stripeCount <= 0 || stripeCount > 1 << 16) {
+			throw new RuntimeException("Number of stripes should be between 1 and 65536 : " + stripeCount);
+		}
+		int count = Integer.highestOneBit(stripeCount);
+		if (count < stripeCount) {
+			count <<= 1;
+		}
+		stripes = new Stripe[count];
+		for (int i = 0; i < count; i++) {
+			stripes[i] = new Stripe();
+		}
+		stripeMask = count - 1;
+	}
+
+	/**
+	 * @return number of lock stripes
+	 */
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	/**
+	 * Looks up the metrics of the DAO calls, under the same names as
+	 * {@link TradeDaoImpl} it stands in for. Injected via Spring Auto Wiring,
+	 * calls are not measured without a metrics registry.
+	 * 
+	 * @param metricsRegistry
+	 *            registry of metrics
+	 */
+	@Autowired(required = false)
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		addTradeMetrics = metricsRegistry.getOperationMetrics("TradeDao.addTrade");
+		addTradesMetrics = metricsRegistry.getOperationMetrics("TradeDao.addTrades");
+		getTradeMetrics = metricsRegistry.getOperationMetrics("TradeDao.getTrade");
+		getAllTradesMetrics = metricsRegistry.getOperationMetrics("TradeDao.getAllTrades");
+		deleteTradeMetrics = metricsRegistry.getOperationMetrics("TradeDao.deleteTrade");
+		getAllTradesForStockMetrics = metricsRegistry.getOperationMetrics("TradeDao.getAllTradesForStock");
+		getTradesForStockMetrics = metricsRegistry.getOperationMetrics("TradeDao.getTradesForStock");
+		evictTradesMetrics = metricsRegistry.getOperationMetrics("TradeDao.evictTradesBefore");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#addTrade(com.gbce.stockmarket.beans.
+	 * Trade)
+	 */
+	@Override
+	public boolean addTrade(Trade trade) {
+		long startNanos = System.nanoTime();
+		try {
+			assignTradeId(trade);
+
+			int stockId = trade.getStock().getStockId();
+			TradeSeries series = getSeries(stockId);
+			Stripe stripe = stripes[stockId & stripeMask];
+			Stripe heldStripe;
+			Trade replacedTrade;
+			long stamp = stripe.lock.writeLock();
+			try {
+				heldStripe = stripesByTradeId.put(trade.getTradeId(), stripe);
+				replacedTrade = put(stripe, series, trade);
+			} finally {
+				stripe.lock.unlockWrite(stamp);
+			}
+			if (heldStripe != null && heldStripe != stripe) {
+				replacedTrade = removeMovedTrade(heldStripe, trade.getTradeId());
+			}
+
+			for (TradeListener listener : tradeListeners) {
+				if (replacedTrade != null) {
+					listener.tradeReplaced(replacedTrade, trade);
+				} else {
+					listener.tradeAdded(trade);
+				}
+			}
+
+			return true;
+		} catch (RuntimeException e) {
+			addTradeMetrics.recordError();
+			throw e;
+		} finally {
+			addTradeMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeDao#addTrades(java.util.Collection)
+	 */
+	@Override
+	public int addTrades(Collection<Trade> trades) {
+		long startNanos = System.nanoTime();
+		try {
+			// Group the batch by stock, so each stripe lock is taken once per stock
+			// and listeners can update their aggregates once per stock.
+			Map<Integer, List<Trade>> tradesByStockId = new LinkedHashMap<>();
+			for (Trade trade : trades) {
+				int stockId = trade.getStock().getStockId();
+				List<Trade> stockTrades = tradesByStockId.get(stockId);
+				if (stockTrades == null) {
+					stockTrades = new ArrayList<>();
+					tradesByStockId.put(stockId, stockTrades);
+				}
+				stockTrades.add(trade);
+			}
+
+			List<Trade> addedTrades = new ArrayList<>(trades.size());
+			List<Trade> replacedTrades = null;
+			List<Trade> replacingTrades = null;
+			List<Trade> movedTrades = null;
+			List<Stripe> heldStripes = null;
+
+			for (Map.Entry<Integer, List<Trade>> entry : tradesByStockId.entrySet()) {
+				int stockId = entry.getKey();
+				List<Trade> stockTrades = entry.getValue();
+				TradeSeries series = getSeries(stockId);
+				Stripe stripe = stripes[stockId & stripeMask];
+				long stamp = stripe.lock.writeLock();
+				try {
+					for (Trade trade : stockTrades) {
+						assignTradeId(trade);
+						Stripe heldStripe = stripesByTradeId.put(trade.getTradeId(), stripe);
+						Trade replacedTrade = put(stripe, series, trade);
+						if (heldStripe != null && heldStripe != stripe) {
+							if (movedTrades == null) {
+								movedTrades = new ArrayList<>();
+								heldStripes = new ArrayList<>();
+							}
+							movedTrades.add(trade);
+							heldStripes.add(heldStripe);
+						} else if (replacedTrade != null) {
+							if (replacedTrades == null) {
+								replacedTrades = new ArrayList<>();
+								replacingTrades = new ArrayList<>();
+							}
+							replacedTrades.add(replacedTrade);
+							replacingTrades.add(trade);
+						} else {
+							addedTrades.add(trade);
+						}
+					}
+				} finally {
+					stripe.lock.unlockWrite(stamp);
+				}
+			}
+
+			// Trades whose id was held in another stripe replace the trade stored
+			// there once no stripe lock is held.
+			if (movedTrades != null) {
+				for (int i = 0; i < movedTrades.size(); i++) {
+					Trade trade = movedTrades.get(i);
+					Trade replacedTrade = removeMovedTrade(heldStripes.get(i), trade.getTradeId());
+					if (replacedTrade != null) {
+						if (replacedTrades == null) {
+							replacedTrades = new ArrayList<>();
+							replacingTrades = new ArrayList<>();
+						}
+						replacedTrades.add(replacedTrade);
+						replacingTrades.add(trade);
+					} else {
+						addedTrades.add(trade);
+					}
+				}
+			}
+
+			for (TradeListener listener : tradeListeners) {
+				if (!addedTrades.isEmpty()) {
+					listener.tradesAdded(addedTrades);
+				}
+				if (replacedTrades != null) {
+					for (int i = 0; i < replacedTrades.size(); i++) {
+						listener.tradeReplaced(replacedTrades.get(i), replacingTrades.get(i));
+					}
+				}
+			}
+
+			return trades.size();
+		} catch (RuntimeException e) {
+			addTradesMetrics.recordError();
+			throw e;
+		} finally {
+			addTradesMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeDao#getTrade(long)
+	 */
+	@Override
+	public Trade getTrade(long tradeId) {
+		long startNanos = System.nanoTime();
+		try {
+			Stripe stripe = stripesByTradeId.get(tradeId);
+			if (stripe != null) {
+				Trade trade;
+				long stamp = stripe.lock.readLock();
+				try {
+					trade = stripe.tradesById.get(tradeId);
+				} finally {
+					stripe.lock.unlockRead(stamp);
+				}
+				if (trade != null) {
+					return trade;
+				}
+			}
+
+			throw new RuntimeException("Could not find trade in database with trade id : " + tradeId);
+		} catch (RuntimeException e) {
+			getTradeMetrics.recordError();
+			throw e;
+		} finally {
+			getTradeMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#deleteTrade(com.gbce.stockmarket.beans.
+	 * Trade)
+	 */
+	@Override
+	public void deleteTrade(Trade trade) {
+		long startNanos = System.nanoTime();
+		try {
+			int stockId = trade.getStock().getStockId();
+			TradeSeries series = tradesByStock.get(stockId);
+			if (series == null) {
+				return;
+			}
+
+			boolean removed;
+			Stripe stripe = stripes[stockId & stripeMask];
+			long stamp = stripe.lock.writeLock();
+			try {
+				removed = stripe.tradesById.remove(trade.getTradeId(), trade);
+				if (removed) {
+					series.remove(trade);
+					stripesByTradeId.remove(trade.getTradeId(), stripe);
+				}
+			} finally {
+				stripe.lock.unlockWrite(stamp);
+			}
+
+			if (removed) {
+				for (TradeListener listener : tradeListeners) {
+					listener.tradeDeleted(trade);
+				}
+			}
+		} catch (RuntimeException e) {
+			deleteTradeMetrics.recordError();
+			throw e;
+		} finally {
+			deleteTradeMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeDao#getAllTrades()
+	 */
+	@Override
+	public TreeMap<TradeKey, Trade> getAllTrades() {
+		long startNanos = System.nanoTime();
+		try {
+			TreeMap<TradeKey, Trade> allTrades = new TreeMap<>();
+			SymbolRegistry symbolRegistry = SymbolRegistry.getInstance();
+			for (int stockId = 0; stockId < symbolRegistry.size(); stockId++) {
+				TradeSeries series = tradesByStock.get(stockId);
+				if (series != null) {
+					TradeRangeSpliterator.putAll(new Cursor(series, stripes[stockId & stripeMask].lock, null, null,
+							false), allTrades);
+				}
+			}
+			return allTrades;
+		} catch (RuntimeException e) {
+			getAllTradesMetrics.recordError();
+			throw e;
+		} finally {
+			getAllTradesMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#getAllTradesForStock(java.lang.String)
+	 */
+	@Override
+	public TreeMap<TradeKey, Trade> getAllTradesForStock(String stockSymbol) {
+		long startNanos = System.nanoTime();
+		try {
+			return TradeRangeSpliterator.putAll(getTradeCursor(stockSymbol, null, null, false),
+					new TreeMap<TradeKey, Trade>());
+		} catch (RuntimeException e) {
+			getAllTradesForStockMetrics.recordError();
+			throw e;
+		} finally {
+			getAllTradesForStockMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#getTradesForStock(java.lang.String,
+	 * java.util.Date, java.util.Date)
+	 */
+	@Override
+	public Collection<Trade> getTradesForStock(String stockSymbol, Date fromTime, Date toTime) {
+		long startNanos = System.nanoTime();
+		try {
+			return Collections.unmodifiableList(Arrays.asList(getTrades(SymbolRegistry.getInstance().findId(
+					stockSymbol), toNanos(fromTime, Long.MIN_VALUE), toNanos(toTime, Long.MAX_VALUE))));
+		} catch (RuntimeException e) {
+			getTradesForStockMetrics.recordError();
+			throw e;
+		} finally {
+			getTradesForStockMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#getTradeCursor(java.lang.String,
+	 * java.util.Date, java.util.Date, boolean)
+	 */
+	@Override
+	public Spliterator<Trade> getTradeCursor(String stockSymbol, Date fromTime, Date toTime, boolean descending) {
+		int stockId = SymbolRegistry.getInstance().findId(stockSymbol);
+		TradeSeries series = tradesByStock.get(stockId);
+		if (series == null) {
+			return Spliterators.emptySpliterator();
+		}
+		return new Cursor(series, stripes[stockId & stripeMask].lock, fromTime == null ? null
+				: TradeKey.first(toNanos(fromTime, 0)), toTime == null ? null : TradeKey.first(toNanos(toTime, 0)),
+				descending);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#evictTradesBefore(java.lang.String,
+	 * java.util.Date)
+	 */
+	@Override
+	public int evictTradesBefore(String stockSymbol, Date time) {
+		long startNanos = System.nanoTime();
+		try {
+			int stockId = SymbolRegistry.getInstance().findId(stockSymbol);
+			TradeSeries series = tradesByStock.get(stockId);
+			if (series == null) {
+				return 0;
+			}
+			List<Trade> droppedTrades = new ArrayList<>();
+			int evictedTrades = 0;
+			long timeStampNanos = TimeUnit.MILLISECONDS.toNanos(time.getTime());
+			Stripe stripe = stripes[stockId & stripeMask];
+			long stamp = stripe.lock.writeLock();
+			try {
+				series.dropBefore(timeStampNanos, droppedTrades);
+				for (Trade trade : droppedTrades) {
+					if (stripe.tradesById.remove(trade.getTradeId(), trade)) {
+						stripesByTradeId.remove(trade.getTradeId(), stripe);
+						evictedTrades++;
+					}
+				}
+			} finally {
+				stripe.lock.unlockWrite(stamp);
+			}
+			if (evictedTrades > 0) {
+				for (TradeListener listener : tradeListeners) {
+					listener.tradesEvicted(stockSymbol, timeStampNanos);
+				}
+			}
+			return evictedTrades;
+		} catch (RuntimeException e) {
+			evictTradesMetrics.recordError();
+			throw e;
+		} finally {
+			evictTradesMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeDao#getStockSymbols()
+	 */
+	@Override
+	public Set<String> getStockSymbols() {
+		SymbolRegistry symbolRegistry = SymbolRegistry.getInstance();
+		Set<String> stockSymbols = new LinkedHashSet<>();
+		for (int stockId = 0; stockId < symbolRegistry.size(); stockId++) {
+			if (tradesByStock.get(stockId) != null) {
+				stockSymbols.add(symbolRegistry.getSymbol(stockId));
+			}
+		}
+		return Collections.unmodifiableSet(stockSymbols);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#addTradeListener(com.gbce.stockmarket.
+	 * dao.TradeListener)
+	 */
+	@Override
+	public synchronized void addTradeListener(TradeListener listener) {
+		TradeListener[] listeners = Arrays.copyOf(tradeListeners, tradeListeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+		tradeListeners = listeners;
+	}
+
+	/**
+	 * Calculates Volume Weighted Stock Price of trades of a given stock made
+	 * within a given time frame, reading the trades optimistically.
+	 * 
+	 * @param stockSymbol
+	 *            symbol of stock to look up for trades
+	 * @param fromTimeNanos
+	 *            start of the time frame in nanoseconds since the epoch
+	 *            (inclusive)
+	 * @param toTimeNanos
+	 *            end of the time frame in nanoseconds since the epoch
+	 *            (exclusive)
+	 * @return Volume Weighted Stock Price, 0 if there are no trades
+	 */
+	public double calculateVolumeWeightedPrice(String stockSymbol, long fromTimeNanos, long toTimeNanos) {
+		int stockId = SymbolRegistry.getInstance().findId(stockSymbol);
+		TradeSeries series = tradesByStock.get(stockId);
+		if (series == null) {
+			return 0.0;
+		}
+		StampedLock lock = stripes[stockId & stripeMask].lock;
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			double volumeWeightedPrice = series.volumeWeightedPrice(fromTimeNanos, toTimeNanos);
+			if (lock.validate(stamp)) {
+				return volumeWeightedPrice;
+			}
+		}
+		stamp = lock.readLock();
+		try {
+			return series.volumeWeightedPrice(fromTimeNanos, toTimeNanos);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Copies trades of a stock within a time frame, reading them
+	 * optimistically.
+	 */
+	private Trade[] getTrades(int stockId, long fromTimeNanos, long toTimeNanos) {
+		TradeSeries series = tradesByStock.get(stockId);
+		if (series == null) {
+			return new Trade[0];
+		}
+		StampedLock lock = stripes[stockId & stripeMask].lock;
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			Trade[] trades = series.copyRange(fromTimeNanos, toTimeNanos);
+			if (lock.validate(stamp)) {
+				return trades;
+			}
+		}
+		stamp = lock.readLock();
+		try {
+			return series.copyRange(fromTimeNanos, toTimeNanos);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Stores a trade in its stripe, replacing a trade stored before with the
+	 * same trade id. Called with the write lock of the stripe held.
+	 * 
+	 * @return replaced trade, null if no trade was replaced
+	 */
+	private Trade put(Stripe stripe, TradeSeries series, Trade trade) {
+		Trade replacedTrade = stripe.tradesById.put(trade.getTradeId(), trade);
+		if (replacedTrade != null) {
+			TradeSeries replacedSeries = tradesByStock.get(replacedTrade.getStock().getStockId());
+			replacedSeries.remove(replacedTrade);
+		}
+		series.put(trade);
+		return replacedTrade;
+	}
+
+	/**
+	 * Removes the trade stored in a stripe with the id of a trade since stored
+	 * in another stripe, unless the id was stored in that stripe again in the
+	 * meantime. Called without any stripe lock held.
+	 * 
+	 * @return removed trade, null if no trade was removed
+	 */
+	private Trade removeMovedTrade(Stripe heldStripe, long tradeId) {
+		long stamp = heldStripe.lock.writeLock();
+		try {
+			if (stripesByTradeId.get(tradeId) == heldStripe) {
+				return null;
+			}
+			Trade movedTrade = heldStripe.tradesById.remove(tradeId);
+			if (movedTrade != null) {
+				tradesByStock.get(movedTrade.getStock().getStockId()).remove(movedTrade);
+			}
+			return movedTrade;
+		} finally {
+			heldStripe.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Assigns the next id of the sequence to a trade without an id. For a
+	 * trade which already has an id, moves the sequence past it.
+	 */
+	private void assignTradeId(Trade trade) {
+		long tradeId = trade.getTradeId();
+		if (tradeId == 0) {
+			trade.setTradeId(tradeSequence.incrementAndGet());
+		} else {
+			long lastTradeId;
+			do {
+				lastTradeId = tradeSequence.get();
+			} while (lastTradeId < tradeId && !tradeSequence.compareAndSet(lastTradeId, tradeId));
+		}
+	}
+
+	/**
+	 * Fetches the trades of a stock, creating them on first use.
+	 */
+	private TradeSeries getSeries(int stockId) {
+		TradeSeries series = tradesByStock.get(stockId);
+		if (series == null) {
+			TradeSeries newSeries = new TradeSeries();
+			series = tradesByStock.putIfAbsent(stockId, newSeries);
+			if (series == null) {
+				series = newSeries;
+			}
+		}
+		return series;
+	}
+
+	private static long toNanos(Date time, long defaultNanos) {
+		return time == null ? defaultNanos : TimeUnit.MILLISECONDS.toNanos(time.getTime());
+	}
+
+	/**
+	 * Cursor over the trades of one stock, reading a batch of trades at a
+	 * time optimistically.
+	 */
+	private static final class Cursor extends TradeRangeSpliterator {
+
+		private final TradeSeries series;
+		private final StampedLock lock;
+
+		Cursor(TradeSeries series, StampedLock lock, TradeKey fromKey, TradeKey toKey, boolean descending) {
+			super(fromKey, toKey, descending);
+			this.series = series;
+			this.lock = lock;
+		}
+
+		@Override
+		int read(TradeKey fromKey, TradeKey toKey, boolean descending, Trade[] batch) {
+			long stamp = lock.tryOptimisticRead();
+			if (stamp != 0) {
+				int count = series.read(fromKey, toKey, descending, batch);
+				if (lock.validate(stamp)) {
+					return count;
+				}
+			}
+			stamp = lock.readLock();
+			try {
+				return series.read(fromKey, toKey, descending, batch);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		@Override
+		TradeKey middleKey(TradeKey fromKey, TradeKey toKey) {
+			long stamp = lock.tryOptimisticRead();
+			if (stamp != 0) {
+				TradeKey middleKey = series.middleKey(fromKey, toKey, 2 * BATCH_SIZE);
+				if (lock.validate(stamp)) {
+					return middleKey;
+				}
+			}
+			stamp = lock.readLock();
+			try {
+				return series.middleKey(fromKey, toKey, 2 * BATCH_SIZE);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		@Override
+		TradeRangeSpliterator newSpliterator(TradeKey fromKey, TradeKey toKey, boolean descending) {
+			return new Cursor(series, lock, fromKey, toKey, descending);
+		}
+	}
+
+}
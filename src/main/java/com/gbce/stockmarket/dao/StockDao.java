@@ -35,6 +35,29 @@ public interface StockDao {
 	 */
 	Stock findStock(String stockSymbol);
 
+	/**
+	 * Fetches a Stock from database for a given stock id, as assigned by the
+	 * symbol registry.
+	 * 
+	 * @param stockId
+	 *            id representing a stock
+	 * @return Stock object retrieved from database
+	 * @see com.gbce.stockmarket.util.SymbolRegistry
+	 */
+	Stock findStock(int stockId);
+
+	/**
+	 * Fetches a Stock from database for a given stock id, as assigned by the
+	 * symbol registry, for bulk look ups where a missing stock is an expected
+	 * outcome rather than an error.
+	 * 
+	 * @param stockId
+	 *            id representing a stock
+	 * @return Stock object retrieved from database, null if there is none
+	 * @see com.gbce.stockmarket.util.SymbolRegistry
+	 */
+	Stock getStock(int stockId);
+
 	/**
 	 * Fetches all stocks stored in the database.
 	 * 
@@ -5,19 +5,27 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.metrics.MetricsRegistry;
+import com.gbce.stockmarket.metrics.OperationMetrics;
+import com.gbce.stockmarket.util.StockIdMap;
 
 /**
  * Implementation of Stock DAO Interface. <br>
  * 
  * Provides access to Stock data in the database. Implements methods for CRUD
- * operations.
+ * operations. <br>
+ * Symbols of stocks are registered in the symbol registry when they are
+ * stored, and stocks are also held in an array by stock id, so that they are
+ * looked up by id without hashing the symbol.
  * 
  * @see com.gbce.stockmarket.dao.StockDao
  * 
@@ -34,8 +42,41 @@ public class StockDaoImpl implements StockDao {
 	@Resource(name = "stocksDatabase")
 	private Map<String, Stock> stocksDatabase;
 
+	/**
+	 * Stock data by stock id.
+	 */
+	private final StockIdMap<Stock> stocksById = new StockIdMap<>();
+
+	private OperationMetrics addStockMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics findStockMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics getAllStocksMetrics = OperationMetrics.DISABLED;
+
 	private static final Logger logger = LoggerFactory.getLogger(StockDaoImpl.class);
 
+	/**
+	 * Looks up the metrics of the DAO calls. Injected via Spring Auto Wiring,
+	 * calls are not measured without a metrics registry.
+	 * 
+	 * @param metricsRegistry
+	 *            registry of metrics
+	 */
+	@Autowired(required = false)
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		addStockMetrics = metricsRegistry.getOperationMetrics("StockDao.addStock");
+		findStockMetrics = metricsRegistry.getOperationMetrics("StockDao.findStock");
+		getAllStocksMetrics = metricsRegistry.getOperationMetrics("StockDao.getAllStocks");
+	}
+
+	/**
+	 * Registers the symbols of the stocks the database is initialized with.
+	 */
+	@PostConstruct
+	public void init() {
+		for (Stock stock : stocksDatabase.values()) {
+			stocksById.put(stock.getStockId(), stock);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -45,21 +86,23 @@ public class StockDaoImpl implements StockDao {
 	 */
 	@Override
 	public boolean addStock(Stock stock) {
+		return addStockMetrics.measure(() -> {
+			logger.info("Adding stock to database : " + stock);
 
-		logger.info("Adding stock to database : " + stock);
+			stocksDatabase.put(stock.getSymbol(), stock);
+			stocksById.put(stock.getStockId(), stock);
 
-		stocksDatabase.put(stock.getSymbol(), stock);
+			boolean stockAdded = false;
 
-		boolean stockAdded = false;
-
-		try {
-			logger.info("Look up added stock in database : " + stock);
-			stockAdded = findStock(stock.getSymbol()) != null;
-		} catch (Exception e) {
-			logger.error(e.getMessage());
-		}
+			try {
+				logger.info("Look up added stock in database : " + stock);
+				stockAdded = findStock(stock.getSymbol()) != null;
+			} catch (Exception e) {
+				logger.error(e.getMessage());
+			}
 
-		return stockAdded;
+			return stockAdded;
+		});
 	}
 
 	/*
@@ -69,14 +112,43 @@ public class StockDaoImpl implements StockDao {
 	 */
 	@Override
 	public Stock findStock(String stockSymbol) {
+		return findStockMetrics.measure(() -> {
+			Stock stock = stocksDatabase.get(stockSymbol);
 
-		Stock stock = stocksDatabase.get(stockSymbol);
+			if (stock == null) {
+				throw new RuntimeException("Couldnot find stock with symbol : " + stockSymbol + " in database.");
+			}
 
-		if (stock == null) {
-			throw new RuntimeException("Couldnot find stock with symbol : " + stockSymbol + " in database.");
-		}
+			return stock;
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.StockDao#findStock(int)
+	 */
+	@Override
+	public Stock findStock(int stockId) {
+		return findStockMetrics.measure(() -> {
+			Stock stock = stocksById.get(stockId);
 
-		return stock;
+			if (stock == null) {
+				throw new RuntimeException("Couldnot find stock with id : " + stockId + " in database.");
+			}
+
+			return stock;
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.StockDao#getStock(int)
+	 */
+	@Override
+	public Stock getStock(int stockId) {
+		return stocksById.get(stockId);
 	}
 
 	/*
@@ -86,8 +158,10 @@ public class StockDaoImpl implements StockDao {
 	 */
 	@Override
 	public List<Stock> getAllStocks() {
-		List<Stock> allStocks = new ArrayList<>(stocksDatabase.values());
-		return Collections.unmodifiableList(allStocks);
+		return getAllStocksMetrics.measure(() -> {
+			List<Stock> allStocks = new ArrayList<>(stocksDatabase.values());
+			return Collections.unmodifiableList(allStocks);
+		});
 	}
 
 }
@@ -0,0 +1,264 @@
+package com.gbce.stockmarket.dao;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.gbce.stockmarket.beans.Stock;
+
+/**
+ * Trades of one stock held in primitive columns. <br>
+ * 
+ * Each column is a growable list of fixed size chunks, so the store grows
+ * without copying what is already stored and a scan over a column runs over
+ * contiguous memory. Rows are kept ordered by time stamp and trade id, as in
+ * {@link TradeKey}. Trades mostly arrive in time order and are appended, a
+ * late trade is inserted by shifting the rows after it. <br>
+ * 
+ * Callers hold the read lock while reading and the write lock while
+ * changing the columns.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+class TradeColumns {
+
+	static final int CHUNK_SHIFT = 12;
+	static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Stock stock;
+
+	private long[][] timeStamps = new long[1][];
+	private long[][] tradeIds = new long[1][];
+	private int[][] quantities = new int[1][];
+	private double[][] prices = new double[1][];
+	private byte[][] types = new byte[1][];
+
+	private int size;
+	private int chunkCount;
+
+	TradeColumns(Stock stock) {
+		this.stock = stock;
+	}
+
+	Stock getStock() {
+		return stock;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Finds the row of a trade by its time stamp and trade id.
+	 * 
+	 * @return row of the trade, -1 if not found
+	 */
+	int find(long timeStamp, long tradeId) {
+		if (size == 0 || compare(size - 1, timeStamp, tradeId) < 0) {
+			return -1;
+		}
+		int row = lowerBound(timeStamp, tradeId);
+		return row < size && compare(row, timeStamp, tradeId) == 0 ? row : -1;
+	}
+
+	/**
+	 * Overwrites quantity, price and type of the trade in a given row.
+	 */
+	void set(int row, int quantity, double price, byte type) {
+		int chunk = row >>> CHUNK_SHIFT;
+		int offset = row & CHUNK_MASK;
+		quantities[chunk][offset] = quantity;
+		prices[chunk][offset] = price;
+		types[chunk][offset] = type;
+	}
+
+	/**
+	 * Adds a trade, keeping the rows in order.
+	 */
+	void add(long timeStamp, long tradeId, int quantity, double price, byte type) {
+
+		if (size == chunkCount << CHUNK_SHIFT) {
+			addChunk();
+		}
+
+		int row = size;
+		if (size > 0 && compare(size - 1, timeStamp, tradeId) > 0) {
+			row = lowerBound(timeStamp, tradeId);
+			for (int i = size; i > row; i--) {
+				copy(i - 1, i);
+			}
+		}
+
+		int chunk = row >>> CHUNK_SHIFT;
+		int offset = row & CHUNK_MASK;
+		timeStamps[chunk][offset] = timeStamp;
+		tradeIds[chunk][offset] = tradeId;
+		quantities[chunk][offset] = quantity;
+		prices[chunk][offset] = price;
+		types[chunk][offset] = type;
+		size++;
+	}
+
+	/**
+	 * Removes a trade.
+	 * 
+	 * @return true if the trade was found and removed
+	 */
+	boolean remove(long timeStamp, long tradeId) {
+		int row = find(timeStamp, tradeId);
+		if (row < 0) {
+			return false;
+		}
+		for (int i = row; i < size - 1; i++) {
+			copy(i + 1, i);
+		}
+		size--;
+		return true;
+	}
+
+	/**
+	 * Removes the leading chunks which are full and only hold trades made
+	 * before a given time, by dropping the chunks and moving the references
+	 * to the remaining ones.
+	 * 
+	 * @param tradeIdIndex
+	 *            index of trades by id the removed trades are removed from
+	 * @return number of trades removed
+	 */
+	int removeChunksBefore(long timeStamp, TradeIdIndex tradeIdIndex) {
+		int fullChunks = size >>> CHUNK_SHIFT;
+		int removedChunks = 0;
+		while (removedChunks < fullChunks && timeStamps[removedChunks][CHUNK_MASK] < timeStamp) {
+			removedChunks++;
+		}
+		if (removedChunks == 0) {
+			return 0;
+		}
+		for (int chunk = 0; chunk < removedChunks; chunk++) {
+			for (long tradeId : tradeIds[chunk]) {
+				tradeIdIndex.remove(tradeId);
+			}
+		}
+		int remainingChunks = chunkCount - removedChunks;
+		moveChunks(timeStamps, removedChunks, remainingChunks);
+		moveChunks(tradeIds, removedChunks, remainingChunks);
+		moveChunks(quantities, removedChunks, remainingChunks);
+		moveChunks(prices, removedChunks, remainingChunks);
+		moveChunks(types, removedChunks, remainingChunks);
+		chunkCount = remainingChunks;
+		size -= removedChunks << CHUNK_SHIFT;
+		return removedChunks << CHUNK_SHIFT;
+	}
+
+	/**
+	 * Finds the first row ordered at or after the given time stamp and trade
+	 * id.
+	 */
+	int lowerBound(long timeStamp, long tradeId) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compare(middle, timeStamp, tradeId) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Sums up quantity and price x quantity of the rows in a given range,
+	 * running over the columns chunk by chunk.
+	 * 
+	 * @param sums
+	 *            array receiving total quantity at index 0 and total price x
+	 *            quantity at index 1
+	 */
+	void sum(int fromRow, int toRow, double[] sums) {
+		long totalQuantity = 0;
+		double totalPrice = 0.0;
+		int row = fromRow;
+		while (row < toRow) {
+			int chunk = row >>> CHUNK_SHIFT;
+			int offset = row & CHUNK_MASK;
+			int end = Math.min(CHUNK_SIZE, offset + (toRow - row));
+			int[] chunkQuantities = quantities[chunk];
+			double[] chunkPrices = prices[chunk];
+			for (int i = offset; i < end; i++) {
+				totalQuantity += chunkQuantities[i];
+				totalPrice += chunkPrices[i] * chunkQuantities[i];
+			}
+			row += end - offset;
+		}
+		sums[0] = totalQuantity;
+		sums[1] = totalPrice;
+	}
+
+	long getTimeStamp(int row) {
+		return timeStamps[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+	}
+
+	long getTradeId(int row) {
+		return tradeIds[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+	}
+
+	int getQuantity(int row) {
+		return quantities[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+	}
+
+	double getPrice(int row) {
+		return prices[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+	}
+
+	byte getType(int row) {
+		return types[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+	}
+
+	private int compare(int row, long timeStamp, long tradeId) {
+		int result = Long.compare(getTimeStamp(row), timeStamp);
+		if (result == 0) {
+			result = Long.compare(getTradeId(row), tradeId);
+		}
+		return result;
+	}
+
+	private void copy(int fromRow, int toRow) {
+		int fromChunk = fromRow >>> CHUNK_SHIFT;
+		int fromOffset = fromRow & CHUNK_MASK;
+		int toChunk = toRow >>> CHUNK_SHIFT;
+		int toOffset = toRow & CHUNK_MASK;
+		timeStamps[toChunk][toOffset] = timeStamps[fromChunk][fromOffset];
+		tradeIds[toChunk][toOffset] = tradeIds[fromChunk][fromOffset];
+		quantities[toChunk][toOffset] = quantities[fromChunk][fromOffset];
+		prices[toChunk][toOffset] = prices[fromChunk][fromOffset];
+		types[toChunk][toOffset] = types[fromChunk][fromOffset];
+	}
+
+	private static void moveChunks(Object[] chunks, int from, int count) {
+		System.arraycopy(chunks, from, chunks, 0, count);
+		Arrays.fill(chunks, count, from + count, null);
+	}
+
+	private void addChunk() {
+		if (chunkCount == timeStamps.length) {
+			int length = chunkCount * 2;
+			timeStamps = Arrays.copyOf(timeStamps, length);
+			tradeIds = Arrays.copyOf(tradeIds, length);
+			quantities = Arrays.copyOf(quantities, length);
+			prices = Arrays.copyOf(prices, length);
+			types = Arrays.copyOf(types, length);
+		}
+		timeStamps[chunkCount] = new long[CHUNK_SIZE];
+		tradeIds[chunkCount] = new long[CHUNK_SIZE];
+		quantities[chunkCount] = new int[CHUNK_SIZE];
+		prices[chunkCount] = new double[CHUNK_SIZE];
+		types[chunkCount] = new byte[CHUNK_SIZE];
+		chunkCount++;
+	}
+
+}
@@ -1,7 +1,12 @@
 package com.gbce.stockmarket.dao;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.Set;
+import java.util.Spliterator;
 import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.gbce.stockmarket.beans.Trade;
 
@@ -19,7 +24,8 @@ import com.gbce.stockmarket.beans.Trade;
 public interface TradeDao {
 
 	/**
-	 * Adds a trade to the database.
+	 * Adds a trade to the database. A trade without an id is assigned the
+	 * next id of the database sequence.
 	 * 
 	 * @param trade
 	 *            Trade object to be stored
@@ -28,13 +34,23 @@ public interface TradeDao {
 	boolean addTrade(Trade trade);
 
 	/**
-	 * Fetches a Stock from database for a given time stamp
+	 * Adds a batch of trades to the database. Trades without an id are
+	 * assigned the next ids of the database sequence, in the order given.
 	 * 
-	 * @param timestamp
-	 *            time stamp when the trade was made and stored in database
+	 * @param trades
+	 *            Trade objects to be stored
+	 * @return number of trades stored
+	 */
+	int addTrades(Collection<Trade> trades);
+
+	/**
+	 * Fetches a Trade from database for a given trade id
+	 * 
+	 * @param tradeId
+	 *            id assigned to the trade when it was stored in database
 	 * @return Trade object retrieved from database
 	 */
-	Trade getTrade(Date timestamp);
+	Trade getTrade(long tradeId);
 
 	/**
 	 * Removes the given trade from database.
@@ -47,10 +63,10 @@ public interface TradeDao {
 	/**
 	 * Fetches all trades stored in the database.
 	 * 
-	 * @return tree map of Trade objects with time stamp of trade as retrieved
-	 *         from database
+	 * @return tree map of Trade objects with key of trade as retrieved from
+	 *         database
 	 */
-	TreeMap<Date, Trade> getAllTrades();
+	TreeMap<TradeKey, Trade> getAllTrades();
 
 	/**
 	 * Fetches all trades for a given stock.
@@ -59,6 +75,95 @@ public interface TradeDao {
 	 *            symbol of stock to look up for a trade stored in the database.
 	 * @return
 	 */
-	TreeMap<Date, Trade> getAllTradesForStock(String stockSymbol);
+	TreeMap<TradeKey, Trade> getAllTradesForStock(String stockSymbol);
+
+	/**
+	 * Fetches trades for a given stock made within a given time frame, ordered
+	 * by time stamp. The returned collection is read-only. Where trades are
+	 * held as Trade objects it is a view backed by the database, so no trades
+	 * are copied.
+	 * 
+	 * @param stockSymbol
+	 *            symbol of stock to look up for a trade stored in the database.
+	 * @param fromTime
+	 *            start of the time frame (inclusive), null for no lower bound
+	 * @param toTime
+	 *            end of the time frame (exclusive), null for no upper bound
+	 * @return trades for the given stock within the time frame
+	 */
+	Collection<Trade> getTradesForStock(String stockSymbol, Date fromTime, Date toTime);
+
+	/**
+	 * Opens a cursor over trades for a given stock made within a given time
+	 * frame, ordered by time stamp. The cursor reads the trades lazily from
+	 * the database as it is advanced, without copying them, and sees trades
+	 * stored meanwhile. It splits for parallel streams.
+	 * 
+	 * @param stockSymbol
+	 *            symbol of stock to look up for a trade stored in the database.
+	 * @param fromTime
+	 *            start of the time frame (inclusive), null for no lower bound
+	 * @param toTime
+	 *            end of the time frame (exclusive), null for no upper bound
+	 * @param descending
+	 *            true for the latest trades first
+	 * @return cursor over trades for the given stock within the time frame
+	 */
+	Spliterator<Trade> getTradeCursor(String stockSymbol, Date fromTime, Date toTime, boolean descending);
+
+	/**
+	 * Streams trades for a given stock made within a given time frame, ordered
+	 * by time stamp, over the cursor of
+	 * {@link #getTradeCursor(String, Date, Date, boolean)}. The stream may be
+	 * made parallel.
+	 * 
+	 * @param stockSymbol
+	 *            symbol of stock to look up for a trade stored in the database.
+	 * @param fromTime
+	 *            start of the time frame (inclusive), null for no lower bound
+	 * @param toTime
+	 *            end of the time frame (exclusive), null for no upper bound
+	 * @param descending
+	 *            true for the latest trades first
+	 * @param limit
+	 *            highest number of trades streamed, 0 for no limit
+	 * @return stream of trades for the given stock within the time frame
+	 */
+	default Stream<Trade> streamTradesForStock(String stockSymbol, Date fromTime, Date toTime, boolean descending,
+			long limit) {
+		Stream<Trade> trades = StreamSupport.stream(getTradeCursor(stockSymbol, fromTime, toTime, descending), false);
+		return limit > 0 ? trades.limit(limit) : trades;
+	}
+
+	/**
+	 * Drops trades for a given stock made before a given time, to retire old
+	 * trades in bulk. Trades are dropped in chunks of time, so trades made
+	 * shortly before the given time may be kept until a later call. Listeners
+	 * are notified once through {@link TradeListener#tradesEvicted}, rather
+	 * than of each trade, as the trades are retired rather than deleted.
+	 * 
+	 * @param stockSymbol
+	 *            symbol of stock to drop trades for
+	 * @param time
+	 *            time before which trades are dropped
+	 * @return number of trades dropped
+	 */
+	int evictTradesBefore(String stockSymbol, Date time);
+
+	/**
+	 * Fetches the symbols of all stocks with trades stored in the database.
+	 * 
+	 * @return stock symbols, in upper case
+	 */
+	Set<String> getStockSymbols();
+
+	/**
+	 * Registers a listener to be notified of every trade added to or removed
+	 * from the database.
+	 * 
+	 * @param listener
+	 *            Trade listener to be registered
+	 */
+	void addTradeListener(TradeListener listener);
 
 }
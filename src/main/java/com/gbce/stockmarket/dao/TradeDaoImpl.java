@@ -1,23 +1,49 @@
 package com.gbce.stockmarket.dao;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.metrics.MetricsRegistry;
+import com.gbce.stockmarket.metrics.OperationMetrics;
+import com.gbce.stockmarket.util.StockIdMap;
+import com.gbce.stockmarket.util.SymbolRegistry;
 
 /**
  * Implementation of Trade DAO Interface. <br>
  * 
  * Provides access to Trade data in the database. Implements methods for CRUD
- * operations.
+ * operations. <br>
+ * Trades are identified by a trade id assigned from a sequence when they are
+ * stored. Besides the Trade table, an index of trades ordered by time stamp
+ * and trade id is maintained per stock, held in an array by stock id, so that trades of a stock
+ * within a time frame can be looked up without scanning the whole table. The
+ * index is split into chunks of time, so that old trades can be dropped a
+ * chunk at a time. Once trades of a stock were dropped, trades made before
+ * the chunks dropped are refused. Refused trades are counted, and a summary
+ * is logged at most once a minute, so a late burst does not flood the log.
+ * <br>
+ * Storing a trade does no logging or string formatting, and allocates only
+ * the entries which hold the trade in the table and the index.
  * 
  * @see com.gbce.stockmarket.dao.TradeDao
  * 
@@ -27,12 +53,89 @@ import com.gbce.stockmarket.beans.Trade;
 @Component
 public class TradeDaoImpl implements TradeDao {
 
+	public static final long DEFAULT_CHUNK_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+	/**
+	 * Shortest interval between two summaries of refused trades in the log.
+	 */
+	private static final long REFUSED_TRADES_LOG_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	/**
+	 * Map containing Trade data by trade id (In-memory data store).
+	 */
+	private Map<Long, Trade> trades = new ConcurrentHashMap<>();
+
+	/**
+	 * Sequence of trade ids.
+	 */
+	private final AtomicLong tradeSequence = new AtomicLong();
+
+	/**
+	 * Index of trades per stock id, ordered by trade key.
+	 */
+	private final StockIdMap<TradeTimeline> tradesByStock = new StockIdMap<>();
+
+	/**
+	 * Time range covered by a chunk of the index, in nanoseconds.
+	 */
+	private final long chunkNanos;
+
+	/**
+	 * Listeners notified of changes to the Trade data. Copied on write, so
+	 * that notifying them needs no locking.
+	 */
+	private volatile TradeListener[] tradeListeners = new TradeListener[0];
+
 	/**
-	 * Map containing Trade data (In-memory data store).
+	 * Number of trades refused as made before the trades evicted for their
+	 * stock, and time of the last summary of them in the log.
 	 */
-	private Map<Date, Trade> trades = new ConcurrentHashMap<>();
+	private final AtomicLong refusedTrades = new AtomicLong();
+	private final AtomicLong refusedTradesLogNanos = new AtomicLong(System.nanoTime()
+			- REFUSED_TRADES_LOG_INTERVAL_NANOS);
+
+	private OperationMetrics addTradeMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics addTradesMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics getTradeMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics getAllTradesMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics deleteTradeMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics getAllTradesForStockMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics getTradesForStockMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics evictTradesMetrics = OperationMetrics.DISABLED;
+
+	private static final Logger logger = LoggerFactory.getLogger(TradeDaoImpl.class);
+
+	public TradeDaoImpl() {
+		this(DEFAULT_CHUNK_MILLIS);
+	}
+
+	/**
+	 * @param chunkMillis
+	 *            time range covered by a chunk of the index of trades per
+	 *            stock, the unit in which old trades are dropped
+	 */
+	public TradeDaoImpl(long chunkMillis) {
+		this.chunkNanos = TimeUnit.MILLISECONDS.toNanos(chunkMillis);
+	}
 
-	private static final Logger logger = LoggerFactory.getLogger(StockDaoImpl.class);
+	/**
+	 * Looks up the metrics of the DAO calls. Injected via Spring Auto Wiring,
+	 * calls are not measured without a metrics registry.
+	 * 
+	 * @param metricsRegistry
+	 *            registry of metrics
+	 */
+	@Autowired(required = false)
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		addTradeMetrics = metricsRegistry.getOperationMetrics("TradeDao.addTrade");
+		addTradesMetrics = metricsRegistry.getOperationMetrics("TradeDao.addTrades");
+		getTradeMetrics = metricsRegistry.getOperationMetrics("TradeDao.getTrade");
+		getAllTradesMetrics = metricsRegistry.getOperationMetrics("TradeDao.getAllTrades");
+		deleteTradeMetrics = metricsRegistry.getOperationMetrics("TradeDao.deleteTrade");
+		getAllTradesForStockMetrics = metricsRegistry.getOperationMetrics("TradeDao.getAllTradesForStock");
+		getTradesForStockMetrics = metricsRegistry.getOperationMetrics("TradeDao.getTradesForStock");
+		evictTradesMetrics = metricsRegistry.getOperationMetrics("TradeDao.evictTradesBefore");
+	}
 
 	/*
 	 * (non-Javadoc)
@@ -43,38 +146,133 @@ public class TradeDaoImpl implements TradeDao {
 	 */
 	@Override
 	public boolean addTrade(Trade trade) {
+		long startNanos = System.nanoTime();
+		try {
+			assignTradeId(trade);
 
-		logger.info("Saving trade to database : " + trade);
+			Trade replacedTrade = trades.put(trade.getTradeId(), trade);
+			if (replacedTrade != null) {
+				removeFromIndex(replacedTrade);
+			}
+			if (!getStockIndex(trade.getStock().getStockId()).put(TradeKey.of(trade), trade)) {
+				refuseEvicted(trade, replacedTrade);
+				return false;
+			}
 
-		trades.put(trade.getTimeStamp(), trade);
+			for (TradeListener listener : tradeListeners) {
+				if (replacedTrade != null) {
+					listener.tradeReplaced(replacedTrade, trade);
+				} else {
+					listener.tradeAdded(trade);
+				}
+			}
 
-		boolean stockAdded = false;
+			return true;
+		} catch (RuntimeException e) {
+			addTradeMetrics.recordError();
+			throw e;
+		} finally {
+			addTradeMetrics.record(startNanos);
+		}
+	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeDao#addTrades(java.util.Collection)
+	 */
+	@Override
+	public int addTrades(Collection<Trade> trades) {
+		long startNanos = System.nanoTime();
 		try {
-			logger.info("Look up added trade in database : " + trade);
-			stockAdded = getTrade(trade.getTimeStamp()) != null;
-		} catch (Exception e) {
-			logger.error(e.getMessage());
-		}
+			// Group the batch by stock, so each stock index is looked up once and
+			// listeners can update their aggregates once per stock.
+			Map<Integer, List<Trade>> tradesByStockId = new LinkedHashMap<>();
+			for (Trade trade : trades) {
+				int stockId = trade.getStock().getStockId();
+				List<Trade> stockTrades = tradesByStockId.get(stockId);
+				if (stockTrades == null) {
+					stockTrades = new ArrayList<>();
+					tradesByStockId.put(stockId, stockTrades);
+				}
+				stockTrades.add(trade);
+			}
+
+			List<Trade> addedTrades = new ArrayList<>(trades.size());
+			List<Trade> replacedTrades = null;
+			List<Trade> replacingTrades = null;
+			int refusedTrades = 0;
 
-		return stockAdded;
+			for (List<Trade> stockTrades : tradesByStockId.values()) {
+				TradeTimeline stockIndex = getStockIndex(stockTrades.get(0).getStock().getStockId());
+				for (Trade trade : stockTrades) {
+					assignTradeId(trade);
+					Trade replacedTrade = this.trades.put(trade.getTradeId(), trade);
+					if (replacedTrade != null) {
+						removeFromIndex(replacedTrade);
+					}
+					if (!stockIndex.put(TradeKey.of(trade), trade)) {
+						refuseEvicted(trade, replacedTrade);
+						refusedTrades++;
+					} else if (replacedTrade != null) {
+						if (replacedTrades == null) {
+							replacedTrades = new ArrayList<>();
+							replacingTrades = new ArrayList<>();
+						}
+						replacedTrades.add(replacedTrade);
+						replacingTrades.add(trade);
+					} else {
+						addedTrades.add(trade);
+					}
+				}
+			}
+
+			for (TradeListener listener : tradeListeners) {
+				if (!addedTrades.isEmpty()) {
+					listener.tradesAdded(addedTrades);
+				}
+				if (replacedTrades != null) {
+					for (int i = 0; i < replacedTrades.size(); i++) {
+						listener.tradeReplaced(replacedTrades.get(i), replacingTrades.get(i));
+					}
+				}
+			}
+
+			if (logger.isDebugEnabled()) {
+				logger.debug("Saved batch of " + trades.size() + " trades to database");
+			}
+
+			return trades.size() - refusedTrades;
+		} catch (RuntimeException e) {
+			addTradesMetrics.recordError();
+			throw e;
+		} finally {
+			addTradesMetrics.record(startNanos);
+		}
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see com.gbce.stockmarket.dao.TradeDao#getTrade(java.util.Date)
+	 * @see com.gbce.stockmarket.dao.TradeDao#getTrade(long)
 	 */
 	@Override
-	public Trade getTrade(Date timestamp) {
+	public Trade getTrade(long tradeId) {
+		long startNanos = System.nanoTime();
+		try {
+			Trade trade = trades.get(tradeId);
 
-		Trade trade = trades.get(timestamp);
+			if (trade == null) {
+				throw new RuntimeException("Could not find trade in database with trade id : " + tradeId);
+			}
 
-		if (trade == null) {
-			throw new RuntimeException("Could not find trade in database : " + trade);
+			return trade;
+		} catch (RuntimeException e) {
+			getTradeMetrics.recordError();
+			throw e;
+		} finally {
+			getTradeMetrics.record(startNanos);
 		}
-
-		return trade;
 	}
 
 	/*
@@ -83,10 +281,20 @@ public class TradeDaoImpl implements TradeDao {
 	 * @see com.gbce.stockmarket.dao.TradeDao#getAllTrades()
 	 */
 	@Override
-	public TreeMap<Date, Trade> getAllTrades() {
-		TreeMap<Date, Trade> allTrades = new TreeMap<>();
-		allTrades.putAll(trades);
-		return allTrades;
+	public TreeMap<TradeKey, Trade> getAllTrades() {
+		long startNanos = System.nanoTime();
+		try {
+			TreeMap<TradeKey, Trade> allTrades = new TreeMap<>();
+			for (TradeTimeline stockIndex : tradesByStock.values()) {
+				TradeRangeSpliterator.putAll(stockIndex.cursor(null, null, false), allTrades);
+			}
+			return allTrades;
+		} catch (RuntimeException e) {
+			getAllTradesMetrics.recordError();
+			throw e;
+		} finally {
+			getAllTradesMetrics.record(startNanos);
+		}
 	}
 
 	/*
@@ -98,7 +306,20 @@ public class TradeDaoImpl implements TradeDao {
 	 */
 	@Override
 	public void deleteTrade(Trade trade) {
-		trades.remove(trade.getTimeStamp());
+		long startNanos = System.nanoTime();
+		try {
+			if (trades.remove(trade.getTradeId(), trade)) {
+				removeFromIndex(trade);
+				for (TradeListener listener : tradeListeners) {
+					listener.tradeDeleted(trade);
+				}
+			}
+		} catch (RuntimeException e) {
+			deleteTradeMetrics.recordError();
+			throw e;
+		} finally {
+			deleteTradeMetrics.record(startNanos);
+		}
 	}
 
 	/*
@@ -108,18 +329,213 @@ public class TradeDaoImpl implements TradeDao {
 	 * com.gbce.stockmarket.dao.TradeDao#getAllTradesForStock(java.lang.String)
 	 */
 	@Override
-	public TreeMap<Date, Trade> getAllTradesForStock(String stockSymbol) {
-		TreeMap<Date, Trade> allTradesForStock = new TreeMap<>();
-		Iterator<Entry<Date, Trade>> iterator = trades.entrySet().iterator();
+	public TreeMap<TradeKey, Trade> getAllTradesForStock(String stockSymbol) {
+		long startNanos = System.nanoTime();
+		try {
+			return TradeRangeSpliterator.putAll(getTradeCursor(stockSymbol, null, null, false),
+					new TreeMap<TradeKey, Trade>());
+		} catch (RuntimeException e) {
+			getAllTradesForStockMetrics.recordError();
+			throw e;
+		} finally {
+			getAllTradesForStockMetrics.record(startNanos);
+		}
+	}
 
-		while (iterator.hasNext()) {
-			Entry<Date, Trade> entry = iterator.next();
-			if (entry.getValue().getStock().getSymbol().equalsIgnoreCase(stockSymbol)) {
-				allTradesForStock.put(entry.getKey(), entry.getValue());
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#getTradesForStock(java.lang.String,
+	 * java.util.Date, java.util.Date)
+	 */
+	@Override
+	public Collection<Trade> getTradesForStock(String stockSymbol, Date fromTime, Date toTime) {
+		long startNanos = System.nanoTime();
+		try {
+			TradeTimeline stockIndex = tradesByStock.get(SymbolRegistry.getInstance().findId(stockSymbol));
+			if (stockIndex == null) {
+				return Collections.emptyList();
 			}
+			return stockIndex.values(fromTime == null ? null : toFirstKey(fromTime), toTime == null ? null
+					: toFirstKey(toTime));
+		} catch (RuntimeException e) {
+			getTradesForStockMetrics.recordError();
+			throw e;
+		} finally {
+			getTradesForStockMetrics.record(startNanos);
 		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#getTradeCursor(java.lang.String,
+	 * java.util.Date, java.util.Date, boolean)
+	 */
+	@Override
+	public Spliterator<Trade> getTradeCursor(String stockSymbol, Date fromTime, Date toTime, boolean descending) {
+		TradeTimeline stockIndex = tradesByStock.get(SymbolRegistry.getInstance().findId(stockSymbol));
+		if (stockIndex == null) {
+			return Spliterators.emptySpliterator();
+		}
+		return stockIndex.cursor(fromTime == null ? null : toFirstKey(fromTime), toTime == null ? null
+				: toFirstKey(toTime), descending);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#evictTradesBefore(java.lang.String,
+	 * java.util.Date)
+	 */
+	@Override
+	public int evictTradesBefore(String stockSymbol, Date time) {
+		long startNanos = System.nanoTime();
+		try {
+			TradeTimeline stockIndex = tradesByStock.get(SymbolRegistry.getInstance().findId(stockSymbol));
+			if (stockIndex == null) {
+				return 0;
+			}
+			int evictedTrades = 0;
+			long timeStampNanos = TimeUnit.MILLISECONDS.toNanos(time.getTime());
+			for (Collection<Trade> chunk : stockIndex.dropBefore(timeStampNanos)) {
+				for (Trade trade : chunk) {
+					if (trades.remove(trade.getTradeId(), trade)) {
+						evictedTrades++;
+					}
+				}
+			}
+			if (evictedTrades > 0) {
+				for (TradeListener listener : tradeListeners) {
+					listener.tradesEvicted(stockSymbol, timeStampNanos);
+				}
+			}
+			return evictedTrades;
+		} catch (RuntimeException e) {
+			evictTradesMetrics.recordError();
+			throw e;
+		} finally {
+			evictTradesMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeDao#getStockSymbols()
+	 */
+	@Override
+	public Set<String> getStockSymbols() {
+		SymbolRegistry symbolRegistry = SymbolRegistry.getInstance();
+		Set<String> stockSymbols = new LinkedHashSet<>();
+		for (int stockId = 0; stockId < symbolRegistry.size(); stockId++) {
+			if (tradesByStock.get(stockId) != null) {
+				stockSymbols.add(symbolRegistry.getSymbol(stockId));
+			}
+		}
+		return Collections.unmodifiableSet(stockSymbols);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#addTradeListener(com.gbce.stockmarket.
+	 * dao.TradeListener)
+	 */
+	@Override
+	public synchronized void addTradeListener(TradeListener listener) {
+		TradeListener[] listeners = Arrays.copyOf(tradeListeners, tradeListeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+		tradeListeners = listeners;
+	}
+
+	/**
+	 * @return number of trades refused as made before the trades evicted for
+	 *         their stock
+	 */
+	public long getRefusedTrades() {
+		return refusedTrades.get();
+	}
+
+	/**
+	 * Assigns the next id of the sequence to a trade without an id. For a
+	 * trade which already has an id, moves the sequence past it.
+	 * 
+	 * @param trade
+	 *            Trade object to be stored
+	 */
+	private void assignTradeId(Trade trade) {
+		long tradeId = trade.getTradeId();
+		if (tradeId == 0) {
+			trade.setTradeId(tradeSequence.incrementAndGet());
+		} else {
+			long lastTradeId;
+			do {
+				lastTradeId = tradeSequence.get();
+			} while (lastTradeId < tradeId && !tradeSequence.compareAndSet(lastTradeId, tradeId));
+		}
+	}
+
+	/**
+	 * Takes back a trade made before the eviction watermark of its stock,
+	 * which was not added to the index. A trade it replaced is then removed.
+	 */
+	private void refuseEvicted(Trade trade, Trade replacedTrade) {
+		trades.remove(trade.getTradeId(), trade);
+		long refused = refusedTrades.incrementAndGet();
+		long lastLogNanos = refusedTradesLogNanos.get();
+		long nowNanos = System.nanoTime();
+		if (nowNanos - lastLogNanos >= REFUSED_TRADES_LOG_INTERVAL_NANOS
+				&& refusedTradesLogNanos.compareAndSet(lastLogNanos, nowNanos)) {
+			logger.warn("Trades made before trades evicted for their stock are not stored, refused so far : "
+					+ refused);
+		}
+		if (replacedTrade != null) {
+			for (TradeListener listener : tradeListeners) {
+				listener.tradeDeleted(replacedTrade);
+			}
+		}
+	}
+
+	/**
+	 * Fetches the time ordered index of trades for a given stock, creating it
+	 * on first use.
+	 * 
+	 * @param stockId
+	 *            id of the stock
+	 * @return index of trades for the stock
+	 */
+	private TradeTimeline getStockIndex(int stockId) {
+		TradeTimeline stockIndex = tradesByStock.get(stockId);
+		if (stockIndex == null) {
+			TradeTimeline newIndex = new TradeTimeline(chunkNanos);
+			stockIndex = tradesByStock.putIfAbsent(stockId, newIndex);
+			if (stockIndex == null) {
+				stockIndex = newIndex;
+			}
+		}
+		return stockIndex;
+	}
+
+	/**
+	 * Removes a trade from the index of its stock.
+	 * 
+	 * @param trade
+	 *            Trade object to be removed from the index
+	 */
+	private void removeFromIndex(Trade trade) {
+		TradeTimeline stockIndex = tradesByStock.get(trade.getStock().getStockId());
+		if (stockIndex != null) {
+			stockIndex.remove(TradeKey.of(trade), trade);
+		}
+	}
 
-		return allTradesForStock;
+	private static TradeKey toFirstKey(Date time) {
+		return TradeKey.first(TimeUnit.MILLISECONDS.toNanos(time.getTime()));
 	}
 
 }
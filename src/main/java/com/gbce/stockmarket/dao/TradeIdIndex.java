@@ -0,0 +1,127 @@
+package com.gbce.stockmarket.dao;
+
+/**
+ * Index of trades held in primitive columns by trade id, to the stock id and
+ * time stamp which locate the row of the trade. <br>
+ * 
+ * An open addressing hash table with linear probing over primitive arrays, so
+ * that indexing a trade puts no object on the heap. Trade id 0 marks a free
+ * slot, as it is never the id of a stored trade. Removed entries are filled
+ * by shifting back the entries probed after them, so no tombstones are left.
+ * <br>
+ * 
+ * Not thread safe, callers guard the index with a lock.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+final class TradeIdIndex {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private long[] tradeIds = new long[INITIAL_CAPACITY];
+	private int[] stockIds = new int[INITIAL_CAPACITY];
+	private long[] timeStamps = new long[INITIAL_CAPACITY];
+
+	private int mask = INITIAL_CAPACITY - 1;
+	private int size;
+
+	/**
+	 * Finds the slot of a trade id.
+	 * 
+	 * @return slot of the trade id, -1 if it is not indexed
+	 */
+	int find(long tradeId) {
+		if (tradeId == 0) {
+			return -1;
+		}
+		for (int slot = slotOf(tradeId);; slot = (slot + 1) & mask) {
+			if (tradeIds[slot] == tradeId) {
+				return slot;
+			}
+			if (tradeIds[slot] == 0) {
+				return -1;
+			}
+		}
+	}
+
+	int getStockId(int slot) {
+		return stockIds[slot];
+	}
+
+	long getTimeStamp(int slot) {
+		return timeStamps[slot];
+	}
+
+	/**
+	 * Indexes a trade, replacing the entry of the same trade id.
+	 */
+	void put(long tradeId, int stockId, long timeStamp) {
+		if (tradeId == 0) {
+			throw new RuntimeException("Trade id 0 cannot be indexed");
+		}
+		if (2 * (size + 1) > tradeIds.length) {
+			resize(tradeIds.length * 2);
+		}
+		int slot = slotOf(tradeId);
+		while (tradeIds[slot] != 0 && tradeIds[slot] != tradeId) {
+			slot = (slot + 1) & mask;
+		}
+		if (tradeIds[slot] == 0) {
+			size++;
+		}
+		tradeIds[slot] = tradeId;
+		stockIds[slot] = stockId;
+		timeStamps[slot] = timeStamp;
+	}
+
+	/**
+	 * Removes the entry of a trade id, if any.
+	 */
+	void remove(long tradeId) {
+		int slot = find(tradeId);
+		if (slot < 0) {
+			return;
+		}
+		size--;
+		// shift back the entries which would not be found past the free slot
+		int next = (slot + 1) & mask;
+		while (tradeIds[next] != 0) {
+			int home = slotOf(tradeIds[next]);
+			if (((next - home) & mask) >= ((next - slot) & mask)) {
+				tradeIds[slot] = tradeIds[next];
+				stockIds[slot] = stockIds[next];
+				timeStamps[slot] = timeStamps[next];
+				slot = next;
+			}
+			next = (next + 1) & mask;
+		}
+		tradeIds[slot] = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	private int slotOf(long tradeId) {
+		long hash = tradeId * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	private void resize(int capacity) {
+		long[] oldTradeIds = tradeIds;
+		int[] oldStockIds = stockIds;
+		long[] oldTimeStamps = timeStamps;
+		tradeIds = new long[capacity];
+		stockIds = new int[capacity];
+		timeStamps = new long[capacity];
+		mask = capacity - 1;
+		size = 0;
+		for (int i = 0; i < oldTradeIds.length; i++) {
+			if (oldTradeIds[i] != 0) {
+				put(oldTradeIds[i], oldStockIds[i], oldTimeStamps[i]);
+			}
+		}
+	}
+
+}
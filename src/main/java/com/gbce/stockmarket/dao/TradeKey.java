@@ -0,0 +1,94 @@
+package com.gbce.stockmarket.dao;
+
+import com.gbce.stockmarket.beans.Trade;
+
+/**
+ * Key of a trade in the Trade database table. <br>
+ * 
+ * Trades are ordered by their time stamp in nanoseconds, and trades made at
+ * the same time by their trade id, so that no two trades share a key.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public final class TradeKey implements Comparable<TradeKey> {
+
+	private final long timeStampNanos;
+	private final long tradeId;
+
+	public TradeKey(long timeStampNanos, long tradeId) {
+		this.timeStampNanos = timeStampNanos;
+		this.tradeId = tradeId;
+	}
+
+	/**
+	 * Creates the key of a given trade.
+	 * 
+	 * @param trade
+	 *            Trade object
+	 * @return key of the trade
+	 */
+	public static TradeKey of(Trade trade) {
+		return new TradeKey(trade.getTimeStampNanos(), trade.getTradeId());
+	}
+
+	/**
+	 * Creates a key ordered before the keys of all trades made at or after a
+	 * given time, to be used as bound of a time frame.
+	 * 
+	 * @param timeStampNanos
+	 *            time in nanoseconds since the epoch
+	 * @return key ordered before all trades made at or after the given time
+	 */
+	public static TradeKey first(long timeStampNanos) {
+		return new TradeKey(timeStampNanos, Long.MIN_VALUE);
+	}
+
+	@Override
+	public int compareTo(TradeKey other) {
+		int result = Long.compare(timeStampNanos, other.timeStampNanos);
+		if (result == 0) {
+			result = Long.compare(tradeId, other.tradeId);
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "TradeKey [timeStampNanos=" + timeStampNanos + ", tradeId=" + tradeId + "]";
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (int) (timeStampNanos ^ (timeStampNanos >>> 32));
+		result = prime * result + (int) (tradeId ^ (tradeId >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		TradeKey other = (TradeKey) obj;
+		if (timeStampNanos != other.timeStampNanos)
+			return false;
+		if (tradeId != other.tradeId)
+			return false;
+		return true;
+	}
+
+	public long getTimeStampNanos() {
+		return timeStampNanos;
+	}
+
+	public long getTradeId() {
+		return tradeId;
+	}
+
+}
@@ -0,0 +1,79 @@
+package com.gbce.stockmarket.dao;
+
+import java.util.List;
+
+import com.gbce.stockmarket.beans.Trade;
+
+/**
+ * Listener notified by Trade DAO whenever the Trade database table changes.
+ * <br>
+ * Used by components which keep aggregates over trades up to date
+ * incrementally, instead of reading back the whole table.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public interface TradeListener {
+
+	/**
+	 * Called after a trade was stored in the database.
+	 * 
+	 * @param trade
+	 *            Trade object stored
+	 */
+	void tradeAdded(Trade trade);
+
+	/**
+	 * Called after a batch of trades was stored in the database. Trades of the
+	 * same stock are adjacent in the given list.
+	 * 
+	 * @param trades
+	 *            Trade objects stored, grouped by stock
+	 */
+	void tradesAdded(List<Trade> trades);
+
+	/**
+	 * Called after a trade was removed from the database.
+	 * 
+	 * @param trade
+	 *            Trade object removed
+	 */
+	void tradeDeleted(Trade trade);
+
+	/**
+	 * Called after a trade was stored in the database in place of the trade
+	 * with the same trade id, instead of notifying the removal of the replaced
+	 * trade and the addition of the new one. The new trade is already visible
+	 * in the database, and is not part of any batch notified to
+	 * {@link #tradesAdded(List)}. <br>
+	 * By default the replaced trade is notified as removed and the new trade
+	 * as added.
+	 * 
+	 * @param replacedTrade
+	 *            Trade object removed
+	 * @param trade
+	 *            Trade object stored in its place
+	 */
+	default void tradeReplaced(Trade replacedTrade, Trade trade) {
+		tradeDeleted(replacedTrade);
+		tradeAdded(trade);
+	}
+
+	/**
+	 * Called after trades of a stock made before a given time were retired by
+	 * {@link TradeDao#evictTradesBefore(String, java.util.Date)}, instead of
+	 * notifying the removal of each trade. Trades made shortly before the time
+	 * may be kept in the database until a later eviction, but listeners may
+	 * drop whatever they keep for all trades made before the time. <br>
+	 * By default nothing is done.
+	 * 
+	 * @param stockSymbol
+	 *            symbol of the stock whose trades were retired
+	 * @param timeStampNanos
+	 *            time in nanoseconds since the epoch before which trades were
+	 *            retired
+	 */
+	default void tradesEvicted(String stockSymbol, long timeStampNanos) {
+	}
+
+}
@@ -0,0 +1,168 @@
+package com.gbce.stockmarket.dao;
+
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import com.gbce.stockmarket.beans.Trade;
+
+/**
+ * Cursor over the trades of one stock within a range of trade keys, in
+ * ascending or descending order. <br>
+ * 
+ * The cursor is lazy: it reads the trades a small batch at a time from the
+ * store, and moves its range past the batch, so a scan holds no lock between
+ * batches and sees trades added after it started, like the weakly consistent
+ * iterators of the concurrent collections. Trades are never copied, only
+ * references to them. <br>
+ * 
+ * The range is split in two at a trade in its middle for parallel streams,
+ * as long as the store finds the range large enough.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+abstract class TradeRangeSpliterator implements Spliterator<Trade> {
+
+	static final int BATCH_SIZE = 64;
+
+	/** Start of the remaining range (inclusive), null for no lower bound */
+	private TradeKey fromKey;
+
+	/** End of the remaining range (exclusive), null for no upper bound */
+	private TradeKey toKey;
+
+	private final boolean descending;
+
+	private final Trade[] batch = new Trade[BATCH_SIZE];
+	private int index;
+	private int count;
+
+	/**
+	 * @param fromKey
+	 *            start of the range (inclusive), null for no lower bound
+	 * @param toKey
+	 *            end of the range (exclusive), null for no upper bound
+	 * @param descending
+	 *            true to read the trades from the end of the range
+	 */
+	TradeRangeSpliterator(TradeKey fromKey, TradeKey toKey, boolean descending) {
+		this.fromKey = fromKey;
+		this.toKey = toKey;
+		this.descending = descending;
+	}
+
+	/**
+	 * Reads the first trades of a range, or the last ones in reverse order
+	 * when descending.
+	 * 
+	 * @param batch
+	 *            array receiving the trades
+	 * @return number of trades read, 0 if the range is empty
+	 */
+	abstract int read(TradeKey fromKey, TradeKey toKey, boolean descending, Trade[] batch);
+
+	/**
+	 * @return key of a trade in the middle of a range, null if the range is
+	 *         too small to be split
+	 */
+	abstract TradeKey middleKey(TradeKey fromKey, TradeKey toKey);
+
+	/**
+	 * @return new cursor over a part of the range of this one
+	 */
+	abstract TradeRangeSpliterator newSpliterator(TradeKey fromKey, TradeKey toKey, boolean descending);
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Spliterator#tryAdvance(java.util.function.Consumer)
+	 */
+	@Override
+	public boolean tryAdvance(Consumer<? super Trade> action) {
+		if (index == count) {
+			count = read(fromKey, toKey, descending, batch);
+			index = 0;
+			if (count == 0) {
+				return false;
+			}
+			Trade last = batch[count - 1];
+			if (descending) {
+				toKey = TradeKey.of(last);
+			} else {
+				fromKey = new TradeKey(last.getTimeStampNanos(), last.getTradeId() + 1);
+			}
+		}
+		Trade trade = batch[index];
+		batch[index++] = null;
+		action.accept(trade);
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Spliterator#trySplit()
+	 */
+	@Override
+	public Spliterator<Trade> trySplit() {
+		if (index < count) {
+			// trades read ahead come before both halves of the range
+			return null;
+		}
+		TradeKey middleKey = middleKey(fromKey, toKey);
+		if (middleKey == null) {
+			return null;
+		}
+		TradeRangeSpliterator prefix;
+		if (descending) {
+			prefix = newSpliterator(middleKey, toKey, true);
+			toKey = middleKey;
+		} else {
+			prefix = newSpliterator(fromKey, middleKey, false);
+			fromKey = middleKey;
+		}
+		return prefix;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Spliterator#estimateSize()
+	 */
+	@Override
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Spliterator#characteristics()
+	 */
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL | CONCURRENT;
+	}
+
+	/**
+	 * Reads the trades of a cursor into a tree map by trade key, for the
+	 * methods of Trade DAO returning maps.
+	 * 
+	 * @param cursor
+	 *            cursor over trades
+	 * @param trades
+	 *            map receiving the trades
+	 * @return the map
+	 */
+	static TreeMap<TradeKey, Trade> putAll(Spliterator<Trade> cursor, final TreeMap<TradeKey, Trade> trades) {
+		cursor.forEachRemaining(new Consumer<Trade>() {
+			@Override
+			public void accept(Trade trade) {
+				trades.put(TradeKey.of(trade), trade);
+			}
+		});
+		return trades;
+	}
+
+}
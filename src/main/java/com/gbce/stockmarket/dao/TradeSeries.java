@@ -0,0 +1,257 @@
+package com.gbce.stockmarket.dao;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import com.gbce.stockmarket.beans.Trade;
+
+/**
+ * Trades of one stock held in an array ordered by time stamp and trade id, as
+ * in {@link TradeKey}. <br>
+ * 
+ * Trades mostly arrive in time order and are appended, a late trade is
+ * inserted by shifting the trades after it. Old trades are dropped by moving
+ * the start of the series, and the array is compacted when it grows. <br>
+ * 
+ * The series is guarded by the lock of the stripe holding it: writers hold
+ * the write lock, readers either hold the read lock or read optimistically
+ * without it. Reads copy the array and its bounds to locals and check every
+ * index and element, so a read racing a write cannot fail, only return a
+ * meaningless result which the reader discards when its stamp does not
+ * validate.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+class TradeSeries {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private Trade[] trades = new Trade[INITIAL_CAPACITY];
+	private int start;
+	private int end;
+
+	/**
+	 * Adds a trade, replacing a trade stored before with the same time stamp
+	 * and trade id. Called with the write lock held.
+	 * 
+	 * @return replaced trade, null if no trade was replaced
+	 */
+	Trade put(Trade trade) {
+		long timeStamp = trade.getTimeStampNanos();
+		long tradeId = trade.getTradeId();
+
+		int index = end;
+		if (end > start && compare(trades[end - 1], timeStamp, tradeId) >= 0) {
+			index = lowerBound(trades, start, end, timeStamp, tradeId);
+			if (compare(trades[index], timeStamp, tradeId) == 0) {
+				Trade replacedTrade = trades[index];
+				trades[index] = trade;
+				return replacedTrade;
+			}
+		}
+
+		if (end == trades.length) {
+			index -= start;
+			grow();
+		}
+		System.arraycopy(trades, index, trades, index + 1, end - index);
+		trades[index] = trade;
+		end++;
+		return null;
+	}
+
+	/**
+	 * Removes a trade. Called with the write lock held.
+	 * 
+	 * @return true if the trade was found and removed
+	 */
+	boolean remove(Trade trade) {
+		long timeStamp = trade.getTimeStampNanos();
+		long tradeId = trade.getTradeId();
+		int index = lowerBound(trades, start, end, timeStamp, tradeId);
+		if (index == end || !trade.equals(trades[index])) {
+			return false;
+		}
+		System.arraycopy(trades, index + 1, trades, index, end - index - 1);
+		trades[--end] = null;
+		return true;
+	}
+
+	/**
+	 * Drops the trades made before a given time. Called with the write lock
+	 * held.
+	 * 
+	 * @param timeNanos
+	 *            time in nanoseconds since the epoch
+	 * @param droppedTrades
+	 *            collection receiving the trades dropped
+	 */
+	void dropBefore(long timeNanos, Collection<Trade> droppedTrades) {
+		int newStart = lowerBound(trades, start, end, timeNanos, Long.MIN_VALUE);
+		for (int i = start; i < newStart; i++) {
+			droppedTrades.add(trades[i]);
+			trades[i] = null;
+		}
+		start = newStart;
+	}
+
+	/**
+	 * Calculates Volume Weighted Stock Price of the trades made within a time
+	 * frame. May be called without the lock, see the class comment.
+	 * 
+	 * @param fromNanos
+	 *            start of the time frame in nanoseconds since the epoch
+	 *            (inclusive)
+	 * @param toNanos
+	 *            end of the time frame in nanoseconds since the epoch
+	 *            (exclusive)
+	 * @return Volume Weighted Stock Price, 0 if there are no trades
+	 */
+	double volumeWeightedPrice(long fromNanos, long toNanos) {
+		Trade[] snapshot = trades;
+		int first = start;
+		int last = end;
+		if (first < 0 || first > last || last > snapshot.length) {
+			return 0.0;
+		}
+		long totalQuantity = 0;
+		double totalPrice = 0.0;
+		for (int i = lowerBound(snapshot, first, last, fromNanos, Long.MIN_VALUE); i < last; i++) {
+			Trade trade = snapshot[i];
+			if (trade == null || trade.getTimeStampNanos() >= toNanos) {
+				break;
+			}
+			totalQuantity += trade.getStocksQuantity();
+			totalPrice += trade.getPrice() * trade.getStocksQuantity();
+		}
+		return totalQuantity > 0 ? totalPrice / totalQuantity : 0.0;
+	}
+
+	/**
+	 * Copies the trades made within a time frame, in order. May be called
+	 * without the lock, see the class comment.
+	 * 
+	 * @param fromNanos
+	 *            start of the time frame in nanoseconds since the epoch
+	 *            (inclusive)
+	 * @param toNanos
+	 *            end of the time frame in nanoseconds since the epoch
+	 *            (exclusive)
+	 * @return trades within the time frame
+	 */
+	Trade[] copyRange(long fromNanos, long toNanos) {
+		Trade[] snapshot = trades;
+		int first = start;
+		int last = end;
+		if (first < 0 || first > last || last > snapshot.length) {
+			return new Trade[0];
+		}
+		int from = lowerBound(snapshot, first, last, fromNanos, Long.MIN_VALUE);
+		int to = Math.max(from, lowerBound(snapshot, from, last, toNanos, Long.MIN_VALUE));
+		return Arrays.copyOfRange(snapshot, from, to);
+	}
+
+	/**
+	 * Reads the first trades within a range of trade keys, or the last ones in
+	 * reverse order when descending. May be called without the lock, see the
+	 * class comment.
+	 * 
+	 * @param fromKey
+	 *            start of the range (inclusive), null for no lower bound
+	 * @param toKey
+	 *            end of the range (exclusive), null for no upper bound
+	 * @param descending
+	 *            true to read the last trades
+	 * @param batch
+	 *            array receiving the trades
+	 * @return number of trades read
+	 */
+	int read(TradeKey fromKey, TradeKey toKey, boolean descending, Trade[] batch) {
+		Trade[] snapshot = trades;
+		int first = start;
+		int last = end;
+		if (first < 0 || first > last || last > snapshot.length) {
+			return 0;
+		}
+		int from = lowerBound(snapshot, first, last, fromKey);
+		int to = Math.max(from, toKey == null ? last : lowerBound(snapshot, from, last, toKey));
+		int count = Math.min(batch.length, to - from);
+		for (int i = 0; i < count; i++) {
+			batch[i] = snapshot[descending ? to - 1 - i : from + i];
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the key of the trade in the middle of a range of trade keys. May
+	 * be called without the lock, see the class comment.
+	 * 
+	 * @param fromKey
+	 *            start of the range (inclusive), null for no lower bound
+	 * @param toKey
+	 *            end of the range (exclusive), null for no upper bound
+	 * @param minimumSize
+	 *            number of trades below which the range is not split
+	 * @return key of the trade in the middle, null if the range is smaller
+	 */
+	TradeKey middleKey(TradeKey fromKey, TradeKey toKey, int minimumSize) {
+		Trade[] snapshot = trades;
+		int first = start;
+		int last = end;
+		if (first < 0 || first > last || last > snapshot.length) {
+			return null;
+		}
+		int from = lowerBound(snapshot, first, last, fromKey);
+		int to = toKey == null ? last : lowerBound(snapshot, from, last, toKey);
+		if (to - from < minimumSize) {
+			return null;
+		}
+		Trade trade = snapshot[(from + to) >>> 1];
+		return trade == null ? null : TradeKey.of(trade);
+	}
+
+	/**
+	 * Makes room for more trades, moving the series to the start of a new
+	 * array, so optimistic readers of the old array are not disturbed.
+	 */
+	private void grow() {
+		int size = end - start;
+		Trade[] newTrades = new Trade[Math.max(INITIAL_CAPACITY, size * 2)];
+		System.arraycopy(trades, start, newTrades, 0, size);
+		trades = newTrades;
+		start = 0;
+		end = size;
+	}
+
+	/**
+	 * Finds the first index ordered at or after the given time stamp and
+	 * trade id. Missing trades, only seen by racing readers, are ordered last.
+	 */
+	private static int lowerBound(Trade[] trades, int from, int to, long timeStamp, long tradeId) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compare(trades[middle], timeStamp, tradeId) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private static int lowerBound(Trade[] trades, int from, int to, TradeKey key) {
+		return key == null ? from : lowerBound(trades, from, to, key.getTimeStampNanos(), key.getTradeId());
+	}
+
+	private static int compare(Trade trade, long timeStamp, long tradeId) {
+		if (trade == null) {
+			return 1;
+		}
+		int result = Long.compare(trade.getTimeStampNanos(), timeStamp);
+		return result != 0 ? result : Long.compare(trade.getTradeId(), tradeId);
+	}
+
+}
@@ -0,0 +1,273 @@
+package com.gbce.stockmarket.dao;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.gbce.stockmarket.beans.Trade;
+
+/**
+ * Trades of one stock ordered by trade key, split into chunks covering fixed
+ * ranges of time. <br>
+ * 
+ * Each chunk is a concurrent sorted map of the trades made within its time
+ * range, and chunks are held in a concurrent sorted map by the start of the
+ * range. Trades older than a given time are dropped a whole chunk at a time,
+ * by unlinking the chunk, without visiting its trades or locking out readers
+ * and writers of the other chunks. <br>
+ * 
+ * The start of the oldest chunk kept after dropping chunks is the eviction
+ * watermark of the timeline. Trades made before it are refused, so that a
+ * trade added while its chunk is dropped, or made long ago, does not bring an
+ * evicted range of time back.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+class TradeTimeline {
+
+	private final long chunkNanos;
+
+	private final ConcurrentSkipListMap<Long, ConcurrentSkipListMap<TradeKey, Trade>> chunks =
+			new ConcurrentSkipListMap<>();
+
+	/** Time in nanoseconds before which trades were evicted */
+	private volatile long watermarkNanos = Long.MIN_VALUE;
+
+	/**
+	 * @param chunkNanos
+	 *            time range covered by a chunk, in nanoseconds
+	 */
+	TradeTimeline(long chunkNanos) {
+		this.chunkNanos = chunkNanos;
+	}
+
+	/**
+	 * Adds a trade to the chunk covering its time stamp. Should the chunk be
+	 * dropped meanwhile, the trade is added again to a new chunk, unless the
+	 * chunk was dropped as it is before the eviction watermark.
+	 * 
+	 * @return true if the trade was added, false if it was made before the
+	 *         eviction watermark
+	 */
+	boolean put(TradeKey key, Trade trade) {
+		Long chunkStart = toChunkStart(key.getTimeStampNanos());
+		while (true) {
+			// the watermark is raised before chunks are dropped, so a trade
+			// whose chunk was dropped sees the watermark here
+			if (chunkStart < watermarkNanos) {
+				return false;
+			}
+			ConcurrentSkipListMap<TradeKey, Trade> chunk = chunks.get(chunkStart);
+			if (chunk == null) {
+				ConcurrentSkipListMap<TradeKey, Trade> newChunk = new ConcurrentSkipListMap<>();
+				chunk = chunks.putIfAbsent(chunkStart, newChunk);
+				if (chunk == null) {
+					chunk = newChunk;
+				}
+			}
+			chunk.put(key, trade);
+			if (chunks.get(chunkStart) == chunk) {
+				return true;
+			}
+			chunk.remove(key, trade);
+		}
+	}
+
+	/**
+	 * Removes a trade.
+	 */
+	void remove(TradeKey key, Trade trade) {
+		ConcurrentSkipListMap<TradeKey, Trade> chunk = chunks.get(toChunkStart(key.getTimeStampNanos()));
+		if (chunk != null) {
+			chunk.remove(key, trade);
+		}
+	}
+
+	/**
+	 * Read-only view of the trades within a time frame, in order.
+	 * 
+	 * @param fromKey
+	 *            start of the time frame (inclusive), null for no lower bound
+	 * @param toKey
+	 *            end of the time frame (exclusive), null for no upper bound
+	 * @return trades within the time frame
+	 */
+	Collection<Trade> values(final TradeKey fromKey, final TradeKey toKey) {
+
+		final Collection<ConcurrentSkipListMap<TradeKey, Trade>> chunkRange = chunkRange(fromKey, toKey).values();
+
+		return Collections.unmodifiableCollection(new AbstractCollection<Trade>() {
+
+			@Override
+			public Iterator<Trade> iterator() {
+				final Iterator<ConcurrentSkipListMap<TradeKey, Trade>> chunkIterator = chunkRange.iterator();
+				return new Iterator<Trade>() {
+
+					private Iterator<Trade> tradeIterator = Collections.emptyIterator();
+
+					@Override
+					public boolean hasNext() {
+						while (!tradeIterator.hasNext()) {
+							if (!chunkIterator.hasNext()) {
+								return false;
+							}
+							tradeIterator = range(chunkIterator.next(), fromKey, toKey).values().iterator();
+						}
+						return true;
+					}
+
+					@Override
+					public Trade next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						return tradeIterator.next();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				int size = 0;
+				for (ConcurrentSkipListMap<TradeKey, Trade> chunk : chunkRange) {
+					size += range(chunk, fromKey, toKey).size();
+				}
+				return size;
+			}
+		});
+	}
+
+	/**
+	 * Cursor over the trades within a time frame, reading them lazily chunk by
+	 * chunk. The cursor splits at chunk boundaries.
+	 * 
+	 * @param fromKey
+	 *            start of the time frame (inclusive), null for no lower bound
+	 * @param toKey
+	 *            end of the time frame (exclusive), null for no upper bound
+	 * @param descending
+	 *            true to read the latest trades first
+	 * @return cursor over the trades within the time frame
+	 */
+	Spliterator<Trade> cursor(TradeKey fromKey, TradeKey toKey, boolean descending) {
+		return new Cursor(fromKey, toKey, descending);
+	}
+
+	/**
+	 * Drops the chunks whose time range ends at or before a given time, and
+	 * raises the eviction watermark to the start of the chunk covering it.
+	 * 
+	 * @param timeNanos
+	 *            time in nanoseconds since the epoch
+	 * @return chunks dropped
+	 */
+	synchronized List<Collection<Trade>> dropBefore(long timeNanos) {
+		List<Collection<Trade>> droppedChunks = new ArrayList<>();
+		// chunks starting at or before the time less a chunk end at or before
+		// it, that is chunks starting before the chunk covering the time
+		long lastChunkStart = timeNanos - chunkNanos;
+		watermarkNanos = Math.max(watermarkNanos, toChunkStart(timeNanos));
+		Map.Entry<Long, ConcurrentSkipListMap<TradeKey, Trade>> entry;
+		while ((entry = chunks.firstEntry()) != null && entry.getKey() <= lastChunkStart) {
+			if (chunks.remove(entry.getKey(), entry.getValue())) {
+				droppedChunks.add(entry.getValue().values());
+			}
+		}
+		return droppedChunks;
+	}
+
+	boolean isEmpty() {
+		return chunks.isEmpty();
+	}
+
+	/**
+	 * Chunks which may hold trades within a time frame.
+	 */
+	private ConcurrentNavigableMap<Long, ConcurrentSkipListMap<TradeKey, Trade>> chunkRange(TradeKey fromKey,
+			TradeKey toKey) {
+		ConcurrentNavigableMap<Long, ConcurrentSkipListMap<TradeKey, Trade>> rangeChunks = chunks;
+		if (fromKey != null) {
+			// the chunk covering the start may hold trades before the start
+			rangeChunks = rangeChunks.tailMap(toChunkStart(fromKey.getTimeStampNanos()), true);
+		}
+		if (toKey != null) {
+			rangeChunks = rangeChunks.headMap(toChunkStart(toKey.getTimeStampNanos()), true);
+		}
+		return rangeChunks;
+	}
+
+	private long toChunkStart(long timeNanos) {
+		return Math.floorDiv(timeNanos, chunkNanos) * chunkNanos;
+	}
+
+	private static NavigableMap<TradeKey, Trade> range(ConcurrentSkipListMap<TradeKey, Trade> chunk,
+			TradeKey fromKey, TradeKey toKey) {
+		if (fromKey != null && toKey != null) {
+			return chunk.subMap(fromKey, true, toKey, false);
+		} else if (fromKey != null) {
+			return chunk.tailMap(fromKey, true);
+		} else if (toKey != null) {
+			return chunk.headMap(toKey, false);
+		}
+		return chunk;
+	}
+
+	private final class Cursor extends TradeRangeSpliterator {
+
+		Cursor(TradeKey fromKey, TradeKey toKey, boolean descending) {
+			super(fromKey, toKey, descending);
+		}
+
+		@Override
+		int read(TradeKey fromKey, TradeKey toKey, boolean descending, Trade[] batch) {
+			NavigableMap<Long, ConcurrentSkipListMap<TradeKey, Trade>> rangeChunks = chunkRange(fromKey, toKey);
+			if (descending) {
+				rangeChunks = rangeChunks.descendingMap();
+			}
+			int count = 0;
+			for (ConcurrentSkipListMap<TradeKey, Trade> chunk : rangeChunks.values()) {
+				NavigableMap<TradeKey, Trade> trades = range(chunk, fromKey, toKey);
+				for (Trade trade : (descending ? trades.descendingMap() : trades).values()) {
+					batch[count++] = trade;
+					if (count == batch.length) {
+						return count;
+					}
+				}
+			}
+			return count;
+		}
+
+		@Override
+		TradeKey middleKey(TradeKey fromKey, TradeKey toKey) {
+			ConcurrentNavigableMap<Long, ConcurrentSkipListMap<TradeKey, Trade>> rangeChunks = chunkRange(fromKey,
+					toKey);
+			Map.Entry<Long, ConcurrentSkipListMap<TradeKey, Trade>> first = rangeChunks.firstEntry();
+			Map.Entry<Long, ConcurrentSkipListMap<TradeKey, Trade>> last = rangeChunks.lastEntry();
+			if (last != null && toKey != null && toKey.compareTo(TradeKey.first(last.getKey())) <= 0) {
+				// a range split at the start of a chunk holds none of its trades
+				last = rangeChunks.lowerEntry(last.getKey());
+			}
+			if (first == null || last == null || first.getKey() >= last.getKey()) {
+				return null;
+			}
+			Long middle = rangeChunks.ceilingKey(first.getKey() + 1 + (last.getKey() - first.getKey()) / 2);
+			return middle == null ? null : TradeKey.first(middle);
+		}
+
+		@Override
+		TradeRangeSpliterator newSpliterator(TradeKey fromKey, TradeKey toKey, boolean descending) {
+			return new Cursor(fromKey, toKey, descending);
+		}
+	}
+
+}
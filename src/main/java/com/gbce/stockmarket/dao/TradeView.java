@@ -0,0 +1,65 @@
+package com.gbce.stockmarket.dao;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.TradeType;
+
+/**
+ * Flyweight, read-only view of a trade held in primitive columns. <br>
+ * 
+ * The same view is moved from row to row while trades are visited, so no
+ * object is created per trade. A view is only valid within the visit it was
+ * passed to, use {@link #toTrade()} to keep a trade beyond that.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public final class TradeView {
+
+	private static final TradeType[] TRADE_TYPES = TradeType.values();
+
+	private TradeColumns columns;
+	private int row;
+
+	void moveTo(TradeColumns columns, int row) {
+		this.columns = columns;
+		this.row = row;
+	}
+
+	public long getTradeId() {
+		return columns.getTradeId(row);
+	}
+
+	public Stock getStock() {
+		return columns.getStock();
+	}
+
+	public long getTimeStampNanos() {
+		return columns.getTimeStamp(row);
+	}
+
+	public TradeType getType() {
+		byte type = columns.getType(row);
+		return type < 0 ? null : TRADE_TYPES[type];
+	}
+
+	public int getStocksQuantity() {
+		return columns.getQuantity(row);
+	}
+
+	public double getPrice() {
+		return columns.getPrice(row);
+	}
+
+	/**
+	 * Creates a Trade object with the data of the trade currently viewed.
+	 * 
+	 * @return new Trade object
+	 */
+	public Trade toTrade() {
+		Trade trade = new Trade(getStock(), getTimeStampNanos(), getType(), getStocksQuantity(), getPrice());
+		trade.setTradeId(getTradeId());
+		return trade;
+	}
+
+}
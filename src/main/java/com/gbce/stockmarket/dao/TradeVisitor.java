@@ -0,0 +1,20 @@
+package com.gbce.stockmarket.dao;
+
+/**
+ * Callback visiting trades held in primitive columns, one flyweight view at a
+ * time.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public interface TradeVisitor {
+
+	/**
+	 * Called for each trade visited, in order of time stamp.
+	 * 
+	 * @param trade
+	 *            view of the trade, only valid during this call
+	 */
+	void visit(TradeView trade);
+
+}
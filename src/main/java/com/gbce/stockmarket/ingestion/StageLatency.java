@@ -0,0 +1,63 @@
+package com.gbce.stockmarket.ingestion;
+
+/**
+ * Latency statistics of one stage of the trade ingestion pipeline. <br>
+ * 
+ * Written by the single consumer thread of the pipeline only, and read by any
+ * thread.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class StageLatency {
+
+	private volatile long count;
+	private volatile long totalNanos;
+	private volatile long maxNanos;
+
+	/**
+	 * Records latency of a number of events passing the stage. Only to be
+	 * called by the consumer thread.
+	 * 
+	 * @param events
+	 *            number of events
+	 * @param nanos
+	 *            total latency of the events in nanoseconds
+	 * @param eventMaxNanos
+	 *            highest latency of a single event in nanoseconds
+	 */
+	void record(long events, long nanos, long eventMaxNanos) {
+		count += events;
+		totalNanos += nanos;
+		if (eventMaxNanos > maxNanos) {
+			maxNanos = eventMaxNanos;
+		}
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	/**
+	 * @return average latency in nanoseconds, 0 if no event passed the stage
+	 */
+	public double getAverageNanos() {
+		long events = count;
+		return events > 0 ? (double) totalNanos / events : 0.0;
+	}
+
+	@Override
+	public String toString() {
+		return "StageLatency [count=" + count + ", averageNanos=" + getAverageNanos() + ", maxNanos=" + maxNanos
+				+ "]";
+	}
+
+}
@@ -0,0 +1,27 @@
+package com.gbce.stockmarket.ingestion;
+
+import com.gbce.stockmarket.beans.Trade;
+
+/**
+ * Callback notified of trades published to the trade ingestion pipeline which
+ * could not be stored by Trade DAO. <br>
+ * 
+ * Called on the consumer thread of the pipeline, so implementations should
+ * return quickly.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public interface TradeFailureHandler {
+
+	/**
+	 * Called when a published trade could not be stored.
+	 * 
+	 * @param trade
+	 *            Trade object which could not be stored
+	 * @param exception
+	 *            exception thrown by Trade DAO
+	 */
+	void tradeFailed(Trade trade, Exception exception);
+
+}
@@ -0,0 +1,299 @@
+package com.gbce.stockmarket.ingestion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.metrics.MetricsRegistry;
+import com.gbce.stockmarket.metrics.OperationMetrics;
+
+/**
+ * Asynchronous trade ingestion pipeline in front of Trade DAO. <br>
+ * 
+ * Producers publish trades into a preallocated, lock-free ring buffer and
+ * return straight away. A single consumer thread reads published trades in
+ * batches and stores them through {@link TradeDao#addTrades}, which also
+ * updates the analytics aggregates listening to the DAO. Being the only
+ * writer, the consumer never contends with other writers, and the latency
+ * seen by producers does not depend on the cost of storing trades. <br>
+ * 
+ * Latency is measured for two stages: queueing, from publishing a trade until
+ * the consumer picks it up, and storing, the time taken by Trade DAO to store
+ * a batch. With a metrics registry, both stages are also published as the
+ * operations TradeIngestionPipeline.queue and TradeIngestionPipeline.store.
+ * <br>
+ * 
+ * Trades should be validated before they are published, as producers are not
+ * told whether their trades were stored. If a batch cannot be stored, its
+ * trades are stored one by one, and those which still fail are counted and
+ * passed to an optional {@link TradeFailureHandler}.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class TradeIngestionPipeline {
+
+	public static final int DEFAULT_CAPACITY = 64 * 1024;
+	public static final int DEFAULT_MAX_BATCH_SIZE = 1024;
+
+	private static final Logger logger = LoggerFactory.getLogger(TradeIngestionPipeline.class);
+
+	private final TradeDao tradeDao;
+	private final TradeRingBuffer ringBuffer;
+	private final WaitStrategy waitStrategy;
+	private final int maxBatchSize;
+
+	private final StageLatency queueLatency = new StageLatency();
+	private final StageLatency storeLatency = new StageLatency();
+	private final AtomicLong failedTrades = new AtomicLong();
+
+	private OperationMetrics queueMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics storeMetrics = OperationMetrics.DISABLED;
+
+	private volatile TradeFailureHandler failureHandler;
+
+	private Thread consumer;
+
+	public TradeIngestionPipeline(TradeDao tradeDao) {
+		this(tradeDao, DEFAULT_CAPACITY, WaitStrategy.PARK, DEFAULT_MAX_BATCH_SIZE);
+	}
+
+	/**
+	 * @param tradeDao
+	 *            Trade DAO storing the trades
+	 * @param capacity
+	 *            number of trades the ring buffer can hold, rounded up to a
+	 *            power of 2
+	 * @param waitStrategy
+	 *            strategy for producers waiting for free slots and for the
+	 *            consumer waiting for trades
+	 * @param maxBatchSize
+	 *            highest number of trades stored in one batch
+	 */
+	public TradeIngestionPipeline(TradeDao tradeDao, int capacity, WaitStrategy waitStrategy, int maxBatchSize) {
+		this.tradeDao = tradeDao;
+		this.ringBuffer = new TradeRingBuffer(capacity);
+		this.waitStrategy = waitStrategy;
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Looks up the metrics of the stages, to be set before the pipeline is
+	 * started. Injected via Spring Auto Wiring, stages are only measured
+	 * through {@link #getQueueLatency()} and {@link #getStoreLatency()}
+	 * without a metrics registry.
+	 * 
+	 * @param metricsRegistry
+	 *            registry of metrics
+	 */
+	@Autowired(required = false)
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		queueMetrics = metricsRegistry.getOperationMetrics("TradeIngestionPipeline.queue");
+		storeMetrics = metricsRegistry.getOperationMetrics("TradeIngestionPipeline.store");
+	}
+
+	/**
+	 * Starts the consumer thread.
+	 */
+	public synchronized void start() {
+		if (consumer != null) {
+			throw new IllegalStateException("Trade ingestion pipeline is already started");
+		}
+		consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				consume();
+			}
+		}, "trade-ingestion");
+		consumer.setDaemon(true);
+		consumer.start();
+		logger.info("Started trade ingestion pipeline with capacity " + ringBuffer.getCapacity() + " and "
+				+ waitStrategy + " wait strategy");
+	}
+
+	/**
+	 * Publishes a trade to be stored, waiting for a free slot if the pipeline
+	 * is full.
+	 * 
+	 * @param trade
+	 *            Trade object to be stored
+	 * @return sequence number of the trade in the pipeline
+	 * @throws IllegalStateException
+	 *             if the pipeline is closed
+	 */
+	public long publish(Trade trade) {
+		long sequence = ringBuffer.claim(waitStrategy);
+		ringBuffer.publish(sequence, trade, System.nanoTime());
+		return sequence;
+	}
+
+	/**
+	 * Publishes a trade to be stored if the pipeline is not full.
+	 * 
+	 * @param trade
+	 *            Trade object to be stored
+	 * @return true if the trade was published, false if the pipeline is full
+	 * @throws IllegalStateException
+	 *             if the pipeline is closed
+	 */
+	public boolean tryPublish(Trade trade) {
+		long sequence = ringBuffer.tryClaim();
+		if (sequence < 0) {
+			return false;
+		}
+		ringBuffer.publish(sequence, trade, System.nanoTime());
+		return true;
+	}
+
+	/**
+	 * Waits until all trades published so far have been stored. Only to be
+	 * called once the pipeline is started.
+	 */
+	public void flush() {
+		long sequence = ringBuffer.getClaimed();
+		while (ringBuffer.getConsumed() < sequence) {
+			waitStrategy.idle();
+		}
+	}
+
+	/**
+	 * Stops accepting trades, and waits until the consumer thread has stored
+	 * all trades published before.
+	 */
+	public void close() {
+		ringBuffer.close();
+		Thread consumerThread;
+		synchronized (this) {
+			consumerThread = consumer;
+		}
+		if (consumerThread != null) {
+			try {
+				consumerThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		logger.info("Closed trade ingestion pipeline, queue latency : " + queueLatency + ", store latency : "
+				+ storeLatency + ", failed trades : " + failedTrades.get());
+	}
+
+	/**
+	 * Consumer loop, reads published trades and stores them in batches until
+	 * the pipeline is closed and drained.
+	 */
+	private void consume() {
+
+		List<Trade> batch = new ArrayList<>(maxBatchSize);
+		long[] publishNanos = new long[maxBatchSize];
+		long next = ringBuffer.getConsumed() + 1;
+
+		while (true) {
+			boolean closed = ringBuffer.isClosed();
+			int count = ringBuffer.read(next, maxBatchSize, batch, publishNanos);
+
+			if (count == 0) {
+				if (closed && next > ringBuffer.getClaimed()) {
+					return;
+				}
+				waitStrategy.idle();
+				continue;
+			}
+
+			long readNanos = System.nanoTime();
+			long totalQueueNanos = 0;
+			long maxQueueNanos = 0;
+			for (int i = 0; i < count; i++) {
+				long latency = readNanos - publishNanos[i];
+				totalQueueNanos += latency;
+				maxQueueNanos = Math.max(maxQueueNanos, latency);
+				queueMetrics.recordNanos(latency);
+			}
+			queueLatency.record(count, totalQueueNanos, maxQueueNanos);
+
+			try {
+				tradeDao.addTrades(batch);
+			} catch (Exception e) {
+				storeMetrics.recordError();
+				logger.error("Could not store batch of " + count + " trades, storing them one by one : "
+						+ e.getMessage());
+				for (Trade trade : batch) {
+					storeTrade(trade);
+				}
+			}
+
+			long storeNanos = System.nanoTime() - readNanos;
+			storeLatency.record(1, storeNanos, storeNanos);
+			storeMetrics.recordNanos(storeNanos);
+
+			next += count;
+			ringBuffer.consumed(next - 1);
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Stores a trade of a batch which could not be stored as a whole, counting
+	 * it as failed if it cannot be stored either.
+	 */
+	private void storeTrade(Trade trade) {
+		try {
+			tradeDao.addTrade(trade);
+		} catch (Exception e) {
+			failedTrades.incrementAndGet();
+			logger.error("Could not store trade " + trade + " : " + e.getMessage());
+			TradeFailureHandler handler = failureHandler;
+			if (handler != null) {
+				try {
+					handler.tradeFailed(trade, e);
+				} catch (Exception handlerException) {
+					logger.error("Trade failure handler failed : " + handlerException.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return latency from publishing a trade until the consumer picks it up
+	 */
+	public StageLatency getQueueLatency() {
+		return queueLatency;
+	}
+
+	/**
+	 * @return latency of storing trades through Trade DAO, per batch
+	 */
+	public StageLatency getStoreLatency() {
+		return storeLatency;
+	}
+
+	/**
+	 * @return number of published trades which could not be stored
+	 */
+	public long getFailedTrades() {
+		return failedTrades.get();
+	}
+
+	/**
+	 * @param failureHandler
+	 *            callback notified of published trades which could not be
+	 *            stored, null for none
+	 */
+	public void setFailureHandler(TradeFailureHandler failureHandler) {
+		this.failureHandler = failureHandler;
+	}
+
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	public int getCapacity() {
+		return ringBuffer.getCapacity();
+	}
+
+}
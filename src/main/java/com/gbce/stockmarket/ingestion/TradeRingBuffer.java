@@ -0,0 +1,169 @@
+package com.gbce.stockmarket.ingestion;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.gbce.stockmarket.beans.Trade;
+
+/**
+ * Preallocated, lock-free ring buffer of trades with many producers and a
+ * single consumer. <br>
+ * 
+ * Producers claim a sequence number with a compare-and-set on the claim
+ * sequence, which only succeeds when the slot is free, fill the slot and
+ * publish it by writing its sequence number. The consumer reads published
+ * slots in sequence order and frees them by moving the consumed sequence on.
+ * Closing the buffer sets a flag in the claim sequence, so that no sequence
+ * can be claimed after the last one the consumer will read.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+class TradeRingBuffer {
+
+	private static final long CLOSED = 1L << 62;
+
+	private final Trade[] trades;
+	private final long[] publishNanos;
+	private final AtomicLongArray published;
+	private final int mask;
+
+	/**
+	 * Number of claimed sequences, that is the next sequence to be claimed,
+	 * with the CLOSED flag once the buffer is closed
+	 */
+	private final AtomicLong claimed = new AtomicLong();
+
+	/** Last consumed sequence, written by the consumer only */
+	private final AtomicLong consumed = new AtomicLong(-1);
+
+	/**
+	 * @param capacity
+	 *            number of slots, rounded up to a power of 2
+	 */
+	TradeRingBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		trades = new Trade[size];
+		publishNanos = new long[size];
+		published = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			published.set(i, -1);
+		}
+		mask = size - 1;
+	}
+
+	int getCapacity() {
+		return trades.length;
+	}
+
+	/**
+	 * Claims the next slot, waiting for it to be freed by the consumer if the
+	 * buffer is full.
+	 * 
+	 * @return claimed sequence
+	 * @throws IllegalStateException
+	 *             if the buffer is closed
+	 */
+	long claim(WaitStrategy waitStrategy) {
+		while (true) {
+			long sequence = tryClaim();
+			if (sequence >= 0) {
+				return sequence;
+			}
+			waitStrategy.idle();
+		}
+	}
+
+	/**
+	 * Claims the next slot if it is free.
+	 * 
+	 * @return claimed sequence, -1 if the buffer is full
+	 * @throws IllegalStateException
+	 *             if the buffer is closed
+	 */
+	long tryClaim() {
+		while (true) {
+			long next = claimed.get();
+			if ((next & CLOSED) != 0) {
+				throw new IllegalStateException("Trade ring buffer is closed");
+			}
+			if (next - trades.length > consumed.get()) {
+				return -1;
+			}
+			if (claimed.compareAndSet(next, next + 1)) {
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * Fills a claimed slot and publishes it to the consumer.
+	 */
+	void publish(long sequence, Trade trade, long nanos) {
+		int index = (int) sequence & mask;
+		trades[index] = trade;
+		publishNanos[index] = nanos;
+		published.lazySet(index, sequence);
+	}
+
+	/**
+	 * Reads published trades from the given sequence on, in sequence order,
+	 * until an unpublished slot is found or the given number of trades is
+	 * read. Only to be called by the consumer.
+	 * 
+	 * @return number of trades read
+	 */
+	int read(long from, int maxTrades, List<Trade> tradesRead, long[] publishNanosRead) {
+		int count = 0;
+		long sequence = from;
+		while (count < maxTrades) {
+			int index = (int) sequence & mask;
+			if (published.get(index) != sequence) {
+				break;
+			}
+			tradesRead.add(trades[index]);
+			publishNanosRead[count] = publishNanos[index];
+			trades[index] = null;
+			count++;
+			sequence++;
+		}
+		return count;
+	}
+
+	/**
+	 * Frees all slots up to the given sequence. Only to be called by the
+	 * consumer.
+	 */
+	void consumed(long sequence) {
+		consumed.lazySet(sequence);
+	}
+
+	long getConsumed() {
+		return consumed.get();
+	}
+
+	/**
+	 * @return last claimed sequence
+	 */
+	long getClaimed() {
+		return (claimed.get() & ~CLOSED) - 1;
+	}
+
+	boolean isClosed() {
+		return (claimed.get() & CLOSED) != 0;
+	}
+
+	/**
+	 * Closes the buffer for producers.
+	 */
+	void close() {
+		while (true) {
+			long current = claimed.get();
+			if ((current & CLOSED) != 0 || claimed.compareAndSet(current, current | CLOSED)) {
+				return;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.gbce.stockmarket.ingestion;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Strategies for threads waiting on the trade ring buffer, either a consumer
+ * waiting for trades to be published or a producer waiting for free slots.
+ * <br>
+ * 
+ * BUSY_SPIN gives the lowest latency at the cost of a fully used core per
+ * waiting thread, YIELD gives up the core to other runnable threads, and PARK
+ * sleeps for a short while and uses no CPU when idle.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public enum WaitStrategy {
+
+	BUSY_SPIN {
+		@Override
+		public void idle() {
+			// keep spinning
+		}
+	},
+
+	YIELD {
+		@Override
+		public void idle() {
+			Thread.yield();
+		}
+	},
+
+	PARK {
+		@Override
+		public void idle() {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	};
+
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	/**
+	 * Called each time a waiting thread finds the condition it waits for not
+	 * met yet.
+	 */
+	public abstract void idle();
+
+}
@@ -0,0 +1,23 @@
+package com.gbce.stockmarket.journal;
+
+/**
+ * Policies for forcing journal writes to disk. <br>
+ * 
+ * EVERY_WRITE forces each write before it is acknowledged, so no trade is
+ * lost on a crash at the cost of a disk flush per write. PERIODIC forces
+ * writes in the background at a fixed interval, so at most the trades of one
+ * interval are lost. OS_MANAGED leaves flushing to the operating system, and
+ * only forces writes when a segment is full or the journal is closed.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public enum FsyncPolicy {
+
+	EVERY_WRITE,
+
+	PERIODIC,
+
+	OS_MANAGED
+
+}
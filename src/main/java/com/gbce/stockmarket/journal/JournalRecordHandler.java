@@ -0,0 +1,52 @@
+package com.gbce.stockmarket.journal;
+
+import com.gbce.stockmarket.constants.TradeType;
+
+/**
+ * Handler of the records read back from the trade journal on recovery, called
+ * in the order the records were written.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public interface JournalRecordHandler {
+
+	/**
+	 * Called for a trade added to the database.
+	 * 
+	 * @param tradeId
+	 *            id of the trade
+	 * @param stockSymbol
+	 *            symbol of the stock traded
+	 * @param timeStampNanos
+	 *            time stamp of the trade in nanoseconds since the epoch
+	 * @param type
+	 *            type of the trade
+	 * @param quantity
+	 *            quantity of stocks traded
+	 * @param price
+	 *            price of the trade
+	 */
+	void tradeAdded(long tradeId, String stockSymbol, long timeStampNanos, TradeType type, int quantity,
+			double price);
+
+	/**
+	 * Called for a trade deleted from the database.
+	 * 
+	 * @param tradeId
+	 *            id of the trade
+	 */
+	void tradeDeleted(long tradeId);
+
+	/**
+	 * Called for trades of a stock retired from the database.
+	 * 
+	 * @param stockSymbol
+	 *            symbol of the stock
+	 * @param timeStampNanos
+	 *            time in nanoseconds since the epoch before which trades were
+	 *            retired
+	 */
+	void tradesEvicted(String stockSymbol, long timeStampNanos);
+
+}
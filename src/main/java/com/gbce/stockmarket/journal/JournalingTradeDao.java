@@ -0,0 +1,536 @@
+package com.gbce.stockmarket.journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.TradeType;
+import com.gbce.stockmarket.dao.StockDao;
+import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.dao.TradeKey;
+import com.gbce.stockmarket.dao.TradeListener;
+import com.gbce.stockmarket.metrics.MetricsRegistry;
+import com.gbce.stockmarket.metrics.OperationMetrics;
+
+/**
+ * Durable Trade DAO, decorating an in-memory Trade DAO with a trade journal.
+ * <br>
+ * 
+ * Every trade added to or deleted from the database, and every eviction of
+ * old trades, is appended to the journal before it is applied to the
+ * in-memory Trade DAO, which serves the reads. Trades without an id are given
+ * one from a sequence first, so that the journal holds their id. A trade, or
+ * a batch of trades, which cannot be journaled is rejected before anything is
+ * written or applied. Changes are serialized, so that they are journaled in
+ * the order they are applied. When it is created, the trades in the journal
+ * are replayed into the in-memory Trade DAO in batches, rebuilding its
+ * indexes, and stocks of the trades are looked up through Stock DAO. <br>
+ * 
+ * With a snapshot store, snapshots of the Stock and Trade data can be taken
+ * on demand or periodically. On startup the latest snapshot is then loaded,
+ * and only the part of the journal written after it is replayed. Listeners of
+ * the in-memory Trade DAO, such as the analytics aggregates, are rebuilt from
+ * the trades of the snapshot as they are loaded in batches.
+ * 
+ * @see com.gbce.stockmarket.dao.TradeDao
+ * @see com.gbce.stockmarket.journal.TradeJournal
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class JournalingTradeDao implements TradeDao, Closeable {
+
+	private static final int RECOVERY_BATCH_SIZE = 4096;
+
+	private static final Logger logger = LoggerFactory.getLogger(JournalingTradeDao.class);
+
+	private final TradeDao tradeDao;
+	private final TradeJournal journal;
+	private final TradeSnapshotStore snapshotStore;
+	private final StockDao stockDao;
+
+	/**
+	 * Held by every change to the trades while it is journaled and applied,
+	 * and while a snapshot copies the trades, so that changes are applied in
+	 * journal order and a snapshot matches the journal position.
+	 */
+	private final Lock writeLock = new ReentrantLock();
+
+	/**
+	 * Sequence of trade ids, carrying on from the trades recovered.
+	 */
+	private final AtomicLong tradeSequence = new AtomicLong();
+
+	private long startupNanos;
+	private int snapshotTrades;
+	private long journalRecords;
+
+	private ScheduledExecutorService snapshotExecutor;
+
+	private OperationMetrics addTradeMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics addTradesMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics deleteTradeMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics evictTradesMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics snapshotMetrics = OperationMetrics.DISABLED;
+
+	/**
+	 * @param tradeDao
+	 *            in-memory Trade DAO serving reads, expected to be empty
+	 * @param journal
+	 *            trade journal, not recovered yet
+	 * @param stockDao
+	 *            Stock DAO to look up stocks of the recovered trades
+	 */
+	public JournalingTradeDao(TradeDao tradeDao, TradeJournal journal, StockDao stockDao) {
+		this(tradeDao, journal, null, stockDao);
+	}
+
+	/**
+	 * @param tradeDao
+	 *            in-memory Trade DAO serving reads, expected to be empty
+	 * @param journal
+	 *            trade journal, not recovered yet
+	 * @param snapshotStore
+	 *            store of snapshots, null to replay the whole journal on
+	 *            startup
+	 * @param stockDao
+	 *            Stock DAO to look up stocks of the recovered trades, and to
+	 *            restore stocks from a snapshot into
+	 */
+	public JournalingTradeDao(TradeDao tradeDao, TradeJournal journal, TradeSnapshotStore snapshotStore,
+			StockDao stockDao) {
+		this.tradeDao = tradeDao;
+		this.journal = journal;
+		this.snapshotStore = snapshotStore;
+		this.stockDao = stockDao;
+
+		long startNanos = System.nanoTime();
+		long journalPosition = loadSnapshot();
+		recover(journalPosition);
+		startupNanos = System.nanoTime() - startNanos;
+
+		logger.info("Started trade database in " + getStartupMillis() + " ms, loaded " + snapshotTrades
+				+ " trades from snapshot and replayed " + journalRecords + " journal records");
+	}
+
+	/**
+	 * Looks up the metrics of the changes, which include journaling them, and
+	 * of snapshots, and publishes the startup time as the single operation of
+	 * JournalingTradeDao.startup. Reads are measured by the in-memory Trade
+	 * DAO. Injected via Spring Auto Wiring, changes are not measured without a
+	 * metrics registry.
+	 * 
+	 * @param metricsRegistry
+	 *            registry of metrics
+	 */
+	@Autowired(required = false)
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		addTradeMetrics = metricsRegistry.getOperationMetrics("JournalingTradeDao.addTrade");
+		addTradesMetrics = metricsRegistry.getOperationMetrics("JournalingTradeDao.addTrades");
+		deleteTradeMetrics = metricsRegistry.getOperationMetrics("JournalingTradeDao.deleteTrade");
+		evictTradesMetrics = metricsRegistry.getOperationMetrics("JournalingTradeDao.evictTradesBefore");
+		snapshotMetrics = metricsRegistry.getOperationMetrics("JournalingTradeDao.snapshot");
+		metricsRegistry.getOperationMetrics("JournalingTradeDao.startup").recordNanos(startupNanos);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#addTrade(com.gbce.stockmarket.beans.
+	 * Trade)
+	 */
+	@Override
+	public boolean addTrade(Trade trade) {
+		long startNanos = System.nanoTime();
+		try {
+			writeLock.lock();
+			try {
+				assignTradeId(trade);
+				journal.tradeAdded(trade);
+				return tradeDao.addTrade(trade);
+			} finally {
+				writeLock.unlock();
+			}
+		} catch (RuntimeException e) {
+			addTradeMetrics.recordError();
+			throw e;
+		} finally {
+			addTradeMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeDao#addTrades(java.util.Collection)
+	 */
+	@Override
+	public int addTrades(Collection<Trade> trades) {
+		long startNanos = System.nanoTime();
+		try {
+			writeLock.lock();
+			try {
+				for (Trade trade : trades) {
+					assignTradeId(trade);
+				}
+				journal.tradesAdded(trades);
+				return tradeDao.addTrades(trades);
+			} finally {
+				writeLock.unlock();
+			}
+		} catch (RuntimeException e) {
+			addTradesMetrics.recordError();
+			throw e;
+		} finally {
+			addTradesMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeDao#getTrade(long)
+	 */
+	@Override
+	public Trade getTrade(long tradeId) {
+		return tradeDao.getTrade(tradeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#deleteTrade(com.gbce.stockmarket.beans.
+	 * Trade)
+	 */
+	@Override
+	public void deleteTrade(Trade trade) {
+		deleteTradeMetrics.measure(() -> {
+			writeLock.lock();
+			try {
+				journal.tradeDeleted(trade);
+				tradeDao.deleteTrade(trade);
+			} finally {
+				writeLock.unlock();
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeDao#getAllTrades()
+	 */
+	@Override
+	public TreeMap<TradeKey, Trade> getAllTrades() {
+		return tradeDao.getAllTrades();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#getAllTradesForStock(java.lang.String)
+	 */
+	@Override
+	public TreeMap<TradeKey, Trade> getAllTradesForStock(String stockSymbol) {
+		return tradeDao.getAllTradesForStock(stockSymbol);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#getTradesForStock(java.lang.String,
+	 * java.util.Date, java.util.Date)
+	 */
+	@Override
+	public Collection<Trade> getTradesForStock(String stockSymbol, Date fromTime, Date toTime) {
+		return tradeDao.getTradesForStock(stockSymbol, fromTime, toTime);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#getTradeCursor(java.lang.String,
+	 * java.util.Date, java.util.Date, boolean)
+	 */
+	@Override
+	public Spliterator<Trade> getTradeCursor(String stockSymbol, Date fromTime, Date toTime, boolean descending) {
+		return tradeDao.getTradeCursor(stockSymbol, fromTime, toTime, descending);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#evictTradesBefore(java.lang.String,
+	 * java.util.Date)
+	 */
+	@Override
+	public int evictTradesBefore(String stockSymbol, Date time) {
+		return evictTradesMetrics.measure(() -> {
+			writeLock.lock();
+			try {
+				journal.tradesEvicted(stockSymbol, TimeUnit.MILLISECONDS.toNanos(time.getTime()));
+				return tradeDao.evictTradesBefore(stockSymbol, time);
+			} finally {
+				writeLock.unlock();
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeDao#getStockSymbols()
+	 */
+	@Override
+	public Set<String> getStockSymbols() {
+		return tradeDao.getStockSymbols();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeDao#addTradeListener(com.gbce.stockmarket.
+	 * dao.TradeListener)
+	 */
+	@Override
+	public void addTradeListener(TradeListener listener) {
+		tradeDao.addTradeListener(listener);
+	}
+
+	/**
+	 * Takes a snapshot of the Stock and Trade data. Changes to the trades
+	 * wait while the trades are copied, but not while the snapshot is
+	 * written.
+	 * 
+	 * @return snapshot file written
+	 */
+	public File snapshot() {
+		return snapshotMetrics.measure(() -> {
+			if (snapshotStore == null) {
+				throw new IllegalStateException("No snapshot store to take a snapshot");
+			}
+
+			long journalPosition;
+			TreeMap<TradeKey, Trade> trades;
+			writeLock.lock();
+			try {
+				journalPosition = journal.getPosition();
+				trades = tradeDao.getAllTrades();
+			} finally {
+				writeLock.unlock();
+			}
+
+			// the journal must reach the snapshot position on disk, so that it can
+			// be replayed from there
+			journal.force();
+
+			return snapshotStore.write(journalPosition, stockDao.getAllStocks(), trades.values());
+		});
+	}
+
+	/**
+	 * Starts taking snapshots periodically in the background.
+	 * 
+	 * @param intervalMillis
+	 *            interval between snapshots
+	 */
+	public synchronized void startSnapshots(long intervalMillis) {
+		if (snapshotExecutor != null) {
+			throw new IllegalStateException("Snapshots are already started");
+		}
+		snapshotExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "trade-snapshot");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		snapshotExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					snapshot();
+				} catch (Exception e) {
+					logger.error("Could not take snapshot : " + e.getMessage());
+				}
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops taking snapshots and closes the trade journal, forcing all trades
+	 * to disk.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (snapshotExecutor != null) {
+				snapshotExecutor.shutdown();
+			}
+		}
+		journal.close();
+	}
+
+	/**
+	 * @return time taken to load the latest snapshot and replay the journal
+	 *         on startup
+	 */
+	public long getStartupMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(startupNanos);
+	}
+
+	/**
+	 * @return number of trades loaded from the latest snapshot on startup
+	 */
+	public int getSnapshotTrades() {
+		return snapshotTrades;
+	}
+
+	/**
+	 * @return number of journal records replayed on startup
+	 */
+	public long getJournalRecords() {
+		return journalRecords;
+	}
+
+	/**
+	 * Assigns the next id of the sequence to a trade without an id. For a
+	 * trade which already has an id, moves the sequence past it.
+	 */
+	private void assignTradeId(Trade trade) {
+		if (trade.getTradeId() == 0) {
+			trade.setTradeId(tradeSequence.incrementAndGet());
+		} else if (trade.getTradeId() > tradeSequence.get()) {
+			tradeSequence.set(trade.getTradeId());
+		}
+	}
+
+	/**
+	 * Loads the latest snapshot into Stock DAO and the in-memory Trade DAO.
+	 * 
+	 * @return journal position of the snapshot, 0 if there is none
+	 */
+	private long loadSnapshot() {
+
+		TradeSnapshot snapshot = snapshotStore == null ? null : snapshotStore.loadLatest();
+		if (snapshot == null) {
+			return 0;
+		}
+
+		for (Stock stock : snapshot.getStocks()) {
+			stockDao.addStock(stock);
+		}
+		for (List<Trade> stockTrades : snapshot.getTradesByStock()) {
+			for (Trade trade : stockTrades) {
+				assignTradeId(trade);
+			}
+			for (int from = 0; from < stockTrades.size(); from += RECOVERY_BATCH_SIZE) {
+				tradeDao.addTrades(stockTrades.subList(from, Math.min(from + RECOVERY_BATCH_SIZE,
+						stockTrades.size())));
+			}
+		}
+		snapshotTrades = snapshot.getTradeCount();
+
+		return snapshot.getJournalPosition();
+	}
+
+	/**
+	 * Replays the trade journal from a given position into the in-memory
+	 * Trade DAO.
+	 */
+	private void recover(long journalPosition) {
+
+		final List<Trade> batch = new ArrayList<>(RECOVERY_BATCH_SIZE);
+		final Map<String, Stock> stocks = new HashMap<>();
+
+		journalRecords = journal.recover(new JournalRecordHandler() {
+
+			@Override
+			public void tradeAdded(long tradeId, String stockSymbol, long timeStampNanos, TradeType type,
+					int quantity, double price) {
+				Trade trade = new Trade(findStock(stockSymbol), timeStampNanos, type, quantity, price);
+				trade.setTradeId(tradeId);
+				assignTradeId(trade);
+				batch.add(trade);
+				if (batch.size() == RECOVERY_BATCH_SIZE) {
+					flush();
+				}
+			}
+
+			@Override
+			public void tradeDeleted(long tradeId) {
+				flush();
+				Trade trade;
+				try {
+					trade = tradeDao.getTrade(tradeId);
+				} catch (RuntimeException e) {
+					logger.warn("Deleted trade not found while recovering trade journal : " + tradeId);
+					return;
+				}
+				tradeDao.deleteTrade(trade);
+			}
+
+			@Override
+			public void tradesEvicted(String stockSymbol, long timeStampNanos) {
+				flush();
+				tradeDao.evictTradesBefore(stockSymbol, new Date(TimeUnit.NANOSECONDS.toMillis(timeStampNanos)));
+			}
+
+			private Stock findStock(String stockSymbol) {
+				Stock stock = stocks.get(stockSymbol);
+				if (stock == null) {
+					try {
+						stock = stockDao.findStock(stockSymbol);
+					} catch (RuntimeException e) {
+						logger.warn("Recovering trades of unknown stock : " + stockSymbol);
+						stock = new Stock();
+						stock.setSymbol(stockSymbol);
+					}
+					stocks.put(stockSymbol, stock);
+				}
+				return stock;
+			}
+
+			private void flush() {
+				if (!batch.isEmpty()) {
+					tradeDao.addTrades(batch);
+					batch.clear();
+				}
+			}
+		}, journalPosition);
+
+		if (!batch.isEmpty()) {
+			tradeDao.addTrades(batch);
+		}
+	}
+
+}
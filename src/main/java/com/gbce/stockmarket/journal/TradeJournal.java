@@ -0,0 +1,615 @@
+package com.gbce.stockmarket.journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.codec.MarketDataDecoder;
+import com.gbce.stockmarket.codec.MarketDataEncoder;
+import com.gbce.stockmarket.codec.WireFormat;
+import com.gbce.stockmarket.constants.TradeType;
+
+/**
+ * Append-only journal of trades, written to memory-mapped segment files. <br>
+ * 
+ * Each segment is a file of a fixed size, mapped into memory when it is
+ * opened, so appending a record is a copy into the page cache and does not
+ * need a system call. Once a segment is full the journal moves on to the next
+ * one. Segment files are named after their index, so that they are read back
+ * in the order they were written. <br>
+ * 
+ * Every segment starts with a magic number and the version of the journal
+ * format. Every record is a TRADE, TRADE_DELETED or TRADES_EVICTED message of
+ * the market data wire format, see {@link com.gbce.stockmarket.codec.WireFormat}, framed by
+ * its length and followed by a CRC32 checksum of its contents. The length is
+ * written last, and a record of length 0 marks the end of a segment, as
+ * segment files are filled with zeros when they are created. <br>
+ * 
+ * On recovery the headers of all segments are checked first, and the journal
+ * refuses to open if any segment is of another format, leaving its files
+ * untouched. The records are then read back sequentially until the first
+ * record which is incomplete or fails its checksum, which is the torn tail of
+ * a write interrupted by a crash. The torn tail is zeroed out and any later
+ * segments are removed, so that new records are appended straight after the
+ * last complete one.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class TradeJournal implements Closeable {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	public static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 100;
+
+	private static final String SEGMENT_PREFIX = "trades-";
+	private static final String SEGMENT_SUFFIX = ".journal";
+
+	/** "GBJN" */
+	private static final int MAGIC = 0x47424A4E;
+
+	/** Version of the journal format */
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int SEGMENT_HEADER_SIZE = 8;
+
+	private static final int LENGTH_SIZE = 4;
+	private static final int CHECKSUM_SIZE = 4;
+
+	private static final int MAX_RECORD_SIZE = WireFormat.TRADE_BLOCK_SIZE + WireFormat.MAX_SYMBOL_LENGTH;
+
+	private static final Logger logger = LoggerFactory.getLogger(TradeJournal.class);
+
+	private final File directory;
+	private final int segmentSize;
+	private final FsyncPolicy fsyncPolicy;
+	private final long fsyncIntervalMillis;
+
+	private final CRC32 checksum = new CRC32();
+	private final MarketDataDecoder decoder = new MarketDataDecoder();
+
+	private int segmentIndex;
+	private MappedByteBuffer segment;
+
+	/**
+	 * Set once records are written to the current segment, cleared when it is
+	 * forced to disk.
+	 */
+	private volatile boolean dirty;
+
+	private boolean recovered;
+	private boolean closed;
+
+	private ScheduledExecutorService fsyncExecutor;
+
+	public TradeJournal(File directory) {
+		this(directory, DEFAULT_SEGMENT_SIZE, FsyncPolicy.PERIODIC, DEFAULT_FSYNC_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * @param directory
+	 *            directory holding the segment files
+	 * @param segmentSize
+	 *            size of a segment file in bytes
+	 * @param fsyncPolicy
+	 *            policy for forcing writes to disk
+	 * @param fsyncIntervalMillis
+	 *            interval between forcing writes to disk with the PERIODIC
+	 *            policy
+	 */
+	public TradeJournal(File directory, int segmentSize, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis) {
+		if (segmentSize < SEGMENT_HEADER_SIZE + LENGTH_SIZE + MAX_RECORD_SIZE + CHECKSUM_SIZE + LENGTH_SIZE) {
+			throw new IllegalArgumentException("Journal segment size is too small : " + segmentSize);
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.fsyncPolicy = fsyncPolicy;
+		this.fsyncIntervalMillis = fsyncIntervalMillis;
+	}
+
+	/**
+	 * Reads back all complete records of the journal, truncates a torn tail
+	 * and opens the journal for appending. Must be called once before any
+	 * record is appended.
+	 * 
+	 * @param handler
+	 *            handler called for every record read back
+	 * @return number of records read back
+	 */
+	public long recover(JournalRecordHandler handler) {
+		return recover(handler, 0);
+	}
+
+	/**
+	 * Reads back the complete records of the journal written from a given
+	 * position, truncates a torn tail and opens the journal for appending.
+	 * Must be called once before any record is appended.
+	 * 
+	 * @param handler
+	 *            handler called for every record read back
+	 * @param fromPosition
+	 *            journal position to read back from, as returned by
+	 *            {@link #getPosition()}
+	 * @return number of records read back
+	 */
+	public synchronized long recover(JournalRecordHandler handler, long fromPosition) {
+
+		if (recovered) {
+			throw new IllegalStateException("Trade journal is already recovered");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new RuntimeException("Could not create journal directory : " + directory);
+		}
+
+		long startNanos = System.nanoTime();
+		long records = 0;
+		int fromSegment = (int) (fromPosition >>> 32);
+		int fromOffset = (int) fromPosition;
+		int[] segmentIndexes = listSegments();
+
+		// nothing is truncated or removed unless every segment can be read
+		for (int index : segmentIndexes) {
+			checkFormat(index);
+		}
+
+		for (int i = 0; i < segmentIndexes.length; i++) {
+			// segments before the position are not read back at all
+			if (segmentIndexes[i] < fromSegment) {
+				continue;
+			}
+			MappedByteBuffer buffer = mapSegment(segmentIndexes[i]);
+			records += readSegment(buffer, handler, segmentIndexes[i] == fromSegment ? fromOffset : 0);
+			int position = buffer.position();
+
+			boolean tornTail = !isZero(buffer, position);
+			if (tornTail) {
+				logger.warn("Truncating torn tail of journal segment " + segmentIndexes[i] + " at position "
+						+ position);
+				zero(buffer, position);
+				buffer.force();
+			}
+
+			if (tornTail || i == segmentIndexes.length - 1) {
+				for (int j = i + 1; j < segmentIndexes.length; j++) {
+					File file = segmentFile(segmentIndexes[j]);
+					logger.warn("Removing journal segment after torn tail : " + file);
+					if (!file.delete()) {
+						throw new RuntimeException("Could not remove journal segment : " + file);
+					}
+				}
+				segmentIndex = segmentIndexes[i];
+				segment = buffer;
+				break;
+			}
+		}
+
+		if (segment == null) {
+			segmentIndex = fromSegment;
+			segment = mapSegment(segmentIndex);
+		}
+		if (segmentIndex == fromSegment && segment.position() < fromOffset) {
+			throw new RuntimeException("Trade journal segment " + segmentIndex + " ends at offset "
+					+ segment.position() + " before the position to recover from : " + fromOffset);
+		}
+
+		if (fsyncPolicy == FsyncPolicy.PERIODIC) {
+			startFsync();
+		}
+		recovered = true;
+
+		logger.info("Recovered " + records + " trade journal records in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms from " + directory);
+
+		return records;
+	}
+
+	/**
+	 * Appends a record of a trade added to the database.
+	 * 
+	 * @param trade
+	 *            Trade object added to the database
+	 * @throws RuntimeException
+	 *             if the trade cannot be journaled, before anything is
+	 *             appended
+	 */
+	public synchronized void tradeAdded(Trade trade) {
+		MarketDataEncoder.checkTrade(trade);
+		appendAdded(trade);
+		written();
+	}
+
+	/**
+	 * Appends records of a batch of trades added to the database, forcing
+	 * them to disk once for the whole batch. The whole batch is checked before
+	 * any record is appended, so that a trade which cannot be journaled leaves
+	 * no part of the batch in the journal.
+	 * 
+	 * @param trades
+	 *            Trade objects added to the database
+	 */
+	public synchronized void tradesAdded(Collection<Trade> trades) {
+		for (Trade trade : trades) {
+			MarketDataEncoder.checkTrade(trade);
+		}
+		for (Trade trade : trades) {
+			appendAdded(trade);
+		}
+		written();
+	}
+
+	/**
+	 * Appends a record of a trade deleted from the database.
+	 * 
+	 * @param trade
+	 *            Trade object deleted from the database
+	 */
+	public synchronized void tradeDeleted(Trade trade) {
+		ByteBuffer buffer = claim(WireFormat.TRADE_DELETED_SIZE);
+		int start = buffer.position();
+		MarketDataEncoder.encodeTradeDeleted(buffer, trade.getTradeId());
+		seal(buffer, start);
+		written();
+	}
+
+	/**
+	 * Appends a record of the trades of a stock retired from the database.
+	 * 
+	 * @param stockSymbol
+	 *            symbol of the stock
+	 * @param timeStampNanos
+	 *            time in nanoseconds since the epoch before which trades were
+	 *            retired
+	 */
+	public synchronized void tradesEvicted(String stockSymbol, long timeStampNanos) {
+		ByteBuffer buffer = claim(WireFormat.TRADES_EVICTED_BLOCK_SIZE + stockSymbol.length());
+		int start = buffer.position();
+		try {
+			MarketDataEncoder.encodeTradesEvicted(buffer, stockSymbol, timeStampNanos);
+		} catch (RuntimeException e) {
+			// give the claimed room back, the record length is still 0
+			buffer.position(start - LENGTH_SIZE);
+			throw e;
+		}
+		seal(buffer, start);
+		written();
+	}
+
+	/**
+	 * Position after the last record appended, made of the index of the
+	 * current segment in the high 32 bits and the offset within the segment
+	 * in the low 32 bits, so that positions are ordered like the records.
+	 * 
+	 * @return current position of the journal
+	 */
+	public synchronized long getPosition() {
+		if (!recovered || closed) {
+			throw new IllegalStateException("Trade journal is not open");
+		}
+		return (long) segmentIndex << 32 | segment.position();
+	}
+
+	/**
+	 * Forces all records appended so far to disk.
+	 */
+	public void force() {
+		MappedByteBuffer buffer;
+		synchronized (this) {
+			buffer = segment;
+		}
+		if (buffer != null && dirty) {
+			dirty = false;
+			buffer.force();
+		}
+	}
+
+	/**
+	 * Forces all records to disk and closes the journal.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (fsyncExecutor != null) {
+			fsyncExecutor.shutdown();
+		}
+		if (segment != null) {
+			segment.force();
+			segment = null;
+		}
+	}
+
+	private void appendAdded(Trade trade) {
+		ByteBuffer buffer = claim(WireFormat.TRADE_BLOCK_SIZE + trade.getStock().getSymbol().length());
+		int start = buffer.position();
+		try {
+			MarketDataEncoder.encodeTrade(buffer, trade);
+		} catch (RuntimeException e) {
+			// give the claimed room back, the record length is still 0
+			buffer.position(start - LENGTH_SIZE);
+			throw e;
+		}
+		seal(buffer, start);
+	}
+
+	/**
+	 * Makes room for a record of a given size in the current segment, moving
+	 * on to the next segment if it is full. The record length is written when
+	 * the record is sealed.
+	 * 
+	 * @return current segment positioned at the start of the record contents
+	 */
+	private ByteBuffer claim(int length) {
+		if (!recovered || closed) {
+			throw new IllegalStateException("Trade journal is not open");
+		}
+		// keep room for the end of segment marker
+		if (segment.remaining() < LENGTH_SIZE + length + CHECKSUM_SIZE + LENGTH_SIZE) {
+			segment.force();
+			segmentIndex++;
+			segment = mapSegment(segmentIndex);
+		}
+		segment.position(segment.position() + LENGTH_SIZE);
+		return segment;
+	}
+
+	/**
+	 * Appends the checksum of the record contents written from a given
+	 * position, and then writes the record length in front of them, so that
+	 * a record is only seen once it is complete.
+	 */
+	private void seal(ByteBuffer buffer, int start) {
+		int length = buffer.position() - start;
+		ByteBuffer contents = buffer.duplicate();
+		contents.limit(buffer.position()).position(start);
+		checksum.reset();
+		checksum.update(contents);
+		buffer.putInt((int) checksum.getValue());
+		buffer.putInt(start - LENGTH_SIZE, length);
+	}
+
+	private void written() {
+		if (fsyncPolicy == FsyncPolicy.EVERY_WRITE) {
+			segment.force();
+		} else {
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Checks a segment starts with the header of the journal format. A segment
+	 * still filled with zeros, created just before a crash, is given its
+	 * header.
+	 * 
+	 * @throws RuntimeException
+	 *             if the segment is of another format
+	 */
+	private void checkFormat(int index) {
+		long length = segmentFile(index).length();
+		if (length > 0 && length < SEGMENT_HEADER_SIZE) {
+			throw new RuntimeException("Trade journal segment " + segmentFile(index) + " is too short to have a "
+					+ "header. Refusing to open the journal, move it away.");
+		}
+		MappedByteBuffer buffer = mapSegment(index);
+		int magic = buffer.getInt(0);
+		int version = buffer.getInt(4);
+		if (magic == MAGIC && version == FORMAT_VERSION) {
+			return;
+		}
+		if (magic == 0 && version == 0 && isZero(buffer, 0)) {
+			writeHeader(buffer);
+			buffer.force();
+			return;
+		}
+		throw new RuntimeException("Trade journal segment " + segmentFile(index) + " is not in journal format "
+				+ FORMAT_VERSION + (magic == MAGIC ? ", but in version " + version : ", it has no header")
+				+ ". Refusing to open the journal, move it away.");
+	}
+
+	private static void writeHeader(ByteBuffer buffer) {
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, FORMAT_VERSION);
+	}
+
+	/**
+	 * Reads back the complete records of a segment, leaving the segment
+	 * positioned after the last complete record. Records before a given
+	 * offset are checked, but not handed to the handler.
+	 * 
+	 * @return number of records read back from the offset
+	 */
+	private int readSegment(MappedByteBuffer buffer, JournalRecordHandler handler, int fromOffset) {
+
+		int records = 0;
+		int position = SEGMENT_HEADER_SIZE;
+		int capacity = buffer.capacity();
+
+		while (position + LENGTH_SIZE <= capacity) {
+			int length = buffer.getInt(position);
+			int start = position + LENGTH_SIZE;
+			if (length < WireFormat.HEADER_SIZE || length > capacity - start - CHECKSUM_SIZE) {
+				break;
+			}
+
+			ByteBuffer contents = buffer.duplicate();
+			contents.limit(start + length).position(start);
+			checksum.reset();
+			checksum.update(contents);
+			if ((int) checksum.getValue() != buffer.getInt(start + length)) {
+				break;
+			}
+
+			boolean handled = position >= fromOffset;
+			if (!readRecord(buffer, start, length, handled ? handler : null)) {
+				break;
+			}
+			if (handled) {
+				records++;
+			}
+			position = start + length + CHECKSUM_SIZE;
+		}
+
+		buffer.position(position);
+		return records;
+	}
+
+	/**
+	 * Checks a record, and hands it to the handler unless the handler is null.
+	 * 
+	 * @return true if the record is valid
+	 */
+	private boolean readRecord(ByteBuffer buffer, int start, int length, JournalRecordHandler handler) {
+
+		byte messageType;
+		String stockSymbol = null;
+		TradeType tradeType = null;
+		try {
+			if (MarketDataDecoder.messageLength(buffer, start) != length || !decoder.wrap(buffer, start)) {
+				return false;
+			}
+			messageType = decoder.getMessageType();
+			if (messageType == WireFormat.TRADE) {
+				tradeType = decoder.getTradeType();
+				stockSymbol = decoder.getStockSymbol();
+			} else if (messageType == WireFormat.TRADES_EVICTED) {
+				stockSymbol = decoder.getStockSymbol();
+			} else if (messageType != WireFormat.TRADE_DELETED) {
+				return false;
+			}
+		} catch (RuntimeException e) {
+			return false;
+		}
+
+		// handler failures are not mistaken for invalid records
+		if (handler != null) {
+			if (messageType == WireFormat.TRADE) {
+				handler.tradeAdded(decoder.getTradeId(), stockSymbol, decoder.getTimeStampNanos(), tradeType,
+						decoder.getQuantity(), decoder.getPrice());
+			} else if (messageType == WireFormat.TRADES_EVICTED) {
+				handler.tradesEvicted(stockSymbol, decoder.getTimeStampNanos());
+			} else {
+				handler.tradeDeleted(decoder.getTradeId());
+			}
+		}
+		return true;
+	}
+
+	private void startFsync() {
+		fsyncExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "trade-journal-fsync");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		fsyncExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					force();
+				} catch (Exception e) {
+					logger.error("Could not force trade journal to disk : " + e.getMessage());
+				}
+			}
+		}, fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Maps a segment file into memory, creating it filled with zeros after its
+	 * header if it does not exist, positioned after the header.
+	 */
+	private MappedByteBuffer mapSegment(int index) {
+		File file = segmentFile(index);
+		try (RandomAccessFile segmentFile = new RandomAccessFile(file, "rw")) {
+			boolean created = segmentFile.length() == 0;
+			if (created) {
+				segmentFile.setLength(segmentSize);
+			}
+			// the mapping stays valid once the file is closed
+			MappedByteBuffer buffer = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+					segmentFile.length());
+			buffer.order(WireFormat.BYTE_ORDER);
+			if (created) {
+				writeHeader(buffer);
+			}
+			buffer.position(SEGMENT_HEADER_SIZE);
+			return buffer;
+		} catch (IOException e) {
+			throw new RuntimeException("Could not map journal segment : " + file, e);
+		}
+	}
+
+	private File segmentFile(int index) {
+		return new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+	}
+
+	/**
+	 * @return indexes of the segment files in the journal directory, in
+	 *         ascending order
+	 */
+	private int[] listSegments() {
+		String[] names = directory.list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		if (names == null) {
+			throw new RuntimeException("Could not list journal directory : " + directory);
+		}
+		int[] indexes = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			indexes[i] = Integer.parseInt(names[i].substring(SEGMENT_PREFIX.length(),
+					names[i].length() - SEGMENT_SUFFIX.length()));
+		}
+		Arrays.sort(indexes);
+		return indexes;
+	}
+
+	private static boolean isZero(ByteBuffer buffer, int from) {
+		int i = from;
+		for (; i + 8 <= buffer.capacity(); i += 8) {
+			if (buffer.getLong(i) != 0) {
+				return false;
+			}
+		}
+		for (; i < buffer.capacity(); i++) {
+			if (buffer.get(i) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void zero(ByteBuffer buffer, int from) {
+		for (int i = from; i < buffer.capacity(); i++) {
+			buffer.put(i, (byte) 0);
+		}
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public FsyncPolicy getFsyncPolicy() {
+		return fsyncPolicy;
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.gbce.stockmarket.journal;
+
+import java.util.List;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+
+/**
+ * Snapshot of the Stock and Trade data, taken at a given position of the
+ * trade journal.
+ *
+ * @author Ranjan Lal
+ *
+ */
+class TradeSnapshot {
+
+	private final long journalPosition;
+	private final List<Stock> stocks;
+	private final List<List<Trade>> tradesByStock;
+	private final int tradeCount;
+
+	/**
+	 * @param journalPosition
+	 *            position of the trade journal after the last trade in the
+	 *            snapshot
+	 * @param stocks
+	 *            stocks in the snapshot
+	 * @param tradesByStock
+	 *            trades in the snapshot, grouped by stock and ordered by time
+	 *            stamp
+	 * @param tradeCount
+	 *            number of trades in the snapshot
+	 */
+	TradeSnapshot(long journalPosition, List<Stock> stocks, List<List<Trade>> tradesByStock, int tradeCount) {
+		this.journalPosition = journalPosition;
+		this.stocks = stocks;
+		this.tradesByStock = tradesByStock;
+		this.tradeCount = tradeCount;
+	}
+
+	long getJournalPosition() {
+		return journalPosition;
+	}
+
+	List<Stock> getStocks() {
+		return stocks;
+	}
+
+	List<List<Trade>> getTradesByStock() {
+		return tradesByStock;
+	}
+
+	int getTradeCount() {
+		return tradeCount;
+	}
+
+}
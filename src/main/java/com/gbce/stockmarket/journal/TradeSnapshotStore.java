@@ -0,0 +1,325 @@
+package com.gbce.stockmarket.journal;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+
+/**
+ * Store of compact binary snapshots of the Stock and Trade data. <br>
+ *
+ * A snapshot holds the stocks, followed by the trades grouped by stock, and
+ * ends with a CRC32 checksum of its contents. It is named after the position
+ * of the trade journal it was taken at, so that on startup the latest
+ * snapshot is loaded and only the journal written after it is replayed. A
+ * snapshot is written to a temporary file first and renamed once it is
+ * complete, and the directory is synced after the rename, so that the
+ * renamed snapshot survives a crash. The two latest snapshots are kept, so
+ * that the previous one is loaded if the latest one turns out to be damaged.
+ *
+ * @author Ranjan Lal
+ *
+ */
+public class TradeSnapshotStore {
+
+	private static final int MAGIC = 0x47424345;
+	private static final int VERSION = 1;
+
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final String SNAPSHOT_SUFFIX = ".snapshot";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static final int RETAINED_SNAPSHOTS = 2;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int CHECKSUM_SIZE = 8;
+
+	private static final StockType[] STOCK_TYPES = StockType.values();
+	private static final TradeType[] TRADE_TYPES = TradeType.values();
+
+	private static final Logger logger = LoggerFactory.getLogger(TradeSnapshotStore.class);
+
+	private final File directory;
+
+	/**
+	 * @param directory
+	 *            directory holding the snapshot files
+	 */
+	public TradeSnapshotStore(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Writes a snapshot, and removes snapshots older than the ones retained.
+	 *
+	 * @param journalPosition
+	 *            position of the trade journal after the last trade in the
+	 *            snapshot
+	 * @param stocks
+	 *            stocks to be stored
+	 * @param trades
+	 *            trades to be stored, ordered by time stamp
+	 * @return snapshot file written
+	 */
+	File write(long journalPosition, Collection<Stock> stocks, Collection<Trade> trades) {
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new RuntimeException("Could not create snapshot directory : " + directory);
+		}
+
+		Map<String, List<Trade>> tradesBySymbol = new LinkedHashMap<>();
+		for (Trade trade : trades) {
+			String symbol = trade.getStock().getSymbol();
+			List<Trade> stockTrades = tradesBySymbol.get(symbol);
+			if (stockTrades == null) {
+				stockTrades = new ArrayList<>();
+				tradesBySymbol.put(symbol, stockTrades);
+			}
+			stockTrades.add(trade);
+		}
+
+		File file = snapshotFile(journalPosition);
+		File tempFile = new File(directory, file.getName() + TEMP_SUFFIX);
+		CRC32 checksum = new CRC32();
+
+		try (FileOutputStream fileStream = new FileOutputStream(tempFile)) {
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(
+					fileStream, checksum), BUFFER_SIZE));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(journalPosition);
+
+			out.writeInt(stocks.size());
+			for (Stock stock : stocks) {
+				writeSymbol(out, stock.getSymbol());
+				out.writeByte(stock.getType() == null ? -1 : stock.getType().ordinal());
+				out.writeDouble(stock.getLastDividend());
+				out.writeDouble(stock.getFixedDividend());
+				out.writeDouble(stock.getParValue());
+			}
+
+			out.writeInt(tradesBySymbol.size());
+			for (Map.Entry<String, List<Trade>> entry : tradesBySymbol.entrySet()) {
+				writeSymbol(out, entry.getKey());
+				out.writeInt(entry.getValue().size());
+				for (Trade trade : entry.getValue()) {
+					out.writeLong(trade.getTradeId());
+					out.writeLong(trade.getTimeStampNanos());
+					out.writeByte(trade.getType().ordinal());
+					out.writeInt(trade.getStocksQuantity());
+					out.writeDouble(trade.getPrice());
+				}
+			}
+			out.flush();
+
+			ByteBuffer checksumBytes = ByteBuffer.allocate(CHECKSUM_SIZE);
+			checksumBytes.putLong(0, checksum.getValue());
+			fileStream.write(checksumBytes.array());
+			fileStream.getFD().sync();
+
+		} catch (IOException e) {
+			tempFile.delete();
+			throw new RuntimeException("Could not write snapshot : " + file, e);
+		}
+
+		try {
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			tempFile.delete();
+			throw new RuntimeException("Could not write snapshot : " + file, e);
+		}
+		syncDirectory();
+
+		long[] positions = listSnapshots();
+		for (int i = 0; i < positions.length - RETAINED_SNAPSHOTS; i++) {
+			if (!snapshotFile(positions[i]).delete()) {
+				logger.warn("Could not remove old snapshot : " + snapshotFile(positions[i]));
+			}
+		}
+
+		logger.info("Wrote snapshot of " + stocks.size() + " stocks and " + trades.size() + " trades to " + file);
+
+		return file;
+	}
+
+	/**
+	 * Loads the latest snapshot which is complete.
+	 *
+	 * @return latest snapshot, null if there is none
+	 */
+	TradeSnapshot loadLatest() {
+
+		if (!directory.isDirectory()) {
+			return null;
+		}
+
+		long[] positions = listSnapshots();
+		for (int i = positions.length - 1; i >= 0; i--) {
+			File file = snapshotFile(positions[i]);
+			try {
+				TradeSnapshot snapshot = load(file);
+				if (snapshot != null) {
+					return snapshot;
+				}
+				logger.warn("Skipping damaged snapshot : " + file);
+			} catch (RuntimeException e) {
+				logger.warn("Skipping damaged snapshot : " + file + " : " + e);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Loads a snapshot, reading it through a memory mapping of the file.
+	 *
+	 * @return snapshot, null if the file fails its checksum
+	 */
+	private TradeSnapshot load(File file) {
+
+		MappedByteBuffer buffer;
+		try (RandomAccessFile snapshotFile = new RandomAccessFile(file, "r")) {
+			buffer = snapshotFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, snapshotFile.length());
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read snapshot : " + file, e);
+		}
+
+		int end = buffer.capacity() - CHECKSUM_SIZE;
+		if (end < 0) {
+			return null;
+		}
+		ByteBuffer contents = buffer.duplicate();
+		contents.limit(end);
+		CRC32 checksum = new CRC32();
+		checksum.update(contents);
+		if (checksum.getValue() != buffer.getLong(end)) {
+			return null;
+		}
+
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			return null;
+		}
+		long journalPosition = buffer.getLong();
+
+		int stockCount = buffer.getInt();
+		List<Stock> stocks = new ArrayList<>(stockCount);
+		Map<String, Stock> stocksBySymbol = new HashMap<>();
+		for (int i = 0; i < stockCount; i++) {
+			String symbol = readSymbol(buffer);
+			int type = buffer.get();
+			Stock stock = new Stock(symbol, type < 0 ? null : STOCK_TYPES[type], buffer.getDouble(),
+					buffer.getDouble(), buffer.getDouble());
+			stocks.add(stock);
+			stocksBySymbol.put(symbol, stock);
+		}
+
+		int groupCount = buffer.getInt();
+		List<List<Trade>> tradesByStock = new ArrayList<>(groupCount);
+		int tradeCount = 0;
+		for (int i = 0; i < groupCount; i++) {
+			String symbol = readSymbol(buffer);
+			Stock stock = stocksBySymbol.get(symbol);
+			if (stock == null) {
+				stock = new Stock();
+				stock.setSymbol(symbol);
+			}
+			int count = buffer.getInt();
+			List<Trade> trades = new ArrayList<>(count);
+			for (int j = 0; j < count; j++) {
+				long tradeId = buffer.getLong();
+				long timeStampNanos = buffer.getLong();
+				TradeType type = TRADE_TYPES[buffer.get()];
+				Trade trade = new Trade(stock, timeStampNanos, type, buffer.getInt(), buffer.getDouble());
+				trade.setTradeId(tradeId);
+				trades.add(trade);
+			}
+			tradesByStock.add(trades);
+			tradeCount += count;
+		}
+
+		return new TradeSnapshot(journalPosition, stocks, tradesByStock, tradeCount);
+	}
+
+	private static void writeSymbol(DataOutputStream out, String symbol) throws IOException {
+		byte[] bytes = symbol.getBytes(StandardCharsets.UTF_8);
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readSymbol(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Forces the directory entries to disk, so that a rename into the
+	 * directory is durable. Skipped on platforms which cannot open a
+	 * directory, such as Windows.
+	 */
+	private void syncDirectory() {
+		try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			logger.debug("Could not sync snapshot directory : " + directory + " : " + e.getMessage());
+		}
+	}
+
+	private File snapshotFile(long journalPosition) {
+		return new File(directory, String.format("%s%016x%s", SNAPSHOT_PREFIX, journalPosition, SNAPSHOT_SUFFIX));
+	}
+
+	/**
+	 * @return journal positions of the snapshots in the directory, in
+	 *         ascending order
+	 */
+	private long[] listSnapshots() {
+		String[] names = directory.list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+			}
+		});
+		if (names == null) {
+			throw new RuntimeException("Could not list snapshot directory : " + directory);
+		}
+		long[] positions = new long[names.length];
+		for (int i = 0; i < names.length; i++) {
+			positions[i] = Long.parseLong(names[i].substring(SNAPSHOT_PREFIX.length(), names[i].length()
+					- SNAPSHOT_SUFFIX.length()), 16);
+		}
+		Arrays.sort(positions);
+		return positions;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+}
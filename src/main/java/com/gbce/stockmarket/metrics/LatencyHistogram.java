@@ -0,0 +1,154 @@
+package com.gbce.stockmarket.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets, in the style
+ * of HdrHistogram. <br>
+ * 
+ * Latencies below 64 ns have a bucket each. Above that, every power of 2 is
+ * split into 32 buckets of equal width, so a latency is known to within about
+ * 3% of its value, over the whole range of long values, with less than 2,000
+ * buckets. <br>
+ * 
+ * Recording is lock-free and allocates nothing: it finds the bucket with a
+ * few bit operations and increments its counter atomically, so any number of
+ * threads can record at once. Reading the histogram while it is written gives
+ * a consistent enough view for monitoring, but not an atomic one.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	static final int BUCKET_COUNT = bucketIndex(Long.MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Records a latency.
+	 * 
+	 * @param nanos
+	 *            latency in nanoseconds, negative values are recorded as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucketIndex(value));
+		totalNanos.addAndGet(value);
+		long max;
+		while (value > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, value)) {
+			// retry until the highest value is stored
+		}
+	}
+
+	/**
+	 * Copies the bucket counters into a given array.
+	 * 
+	 * @param bucketCounts
+	 *            array of at least {@link #BUCKET_COUNT} counters
+	 * @return total count
+	 */
+	long copyCounts(long[] bucketCounts) {
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			bucketCounts[i] = counts.get(i);
+			count += bucketCounts[i];
+		}
+		return count;
+	}
+
+	/**
+	 * @return number of latencies recorded
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.get();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	/**
+	 * @return average latency in nanoseconds, 0 if none was recorded
+	 */
+	public double getMeanNanos() {
+		long count = getCount();
+		return count > 0 ? (double) totalNanos.get() / count : 0.0;
+	}
+
+	/**
+	 * Fetches the latency at a given percentile of the latencies recorded.
+	 * 
+	 * @param percentile
+	 *            percentile between 0 and 100
+	 * @return highest latency in the bucket holding the percentile, not above
+	 *         the highest latency recorded, 0 if none was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] bucketCounts = new long[BUCKET_COUNT];
+		long count = copyCounts(bucketCounts);
+		return Math.min(valueAtPercentile(bucketCounts, count, percentile), maxNanos.get());
+	}
+
+	/**
+	 * Fetches the latency at a given percentile of the given bucket counters.
+	 * 
+	 * @return highest latency in the bucket holding the percentile, 0 if the
+	 *         counters are empty
+	 */
+	static long valueAtPercentile(long[] bucketCounts, long count, double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += bucketCounts[i];
+			if (seen >= rank) {
+				return highestValue(i);
+			}
+		}
+		return highestValue(BUCKET_COUNT - 1);
+	}
+
+	/**
+	 * Finds the bucket of a latency. Latencies up to twice the number of sub
+	 * buckets map to their own bucket, larger ones to the sub bucket of their
+	 * power of 2 given by the bits below the highest one.
+	 */
+	static int bucketIndex(long value) {
+		if (value < 2 * SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+	}
+
+	/**
+	 * @return highest latency falling in a given bucket
+	 */
+	static long highestValue(int index) {
+		if (index < 2 * SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = (index >>> SUB_BUCKET_BITS) - 1;
+		long subBucket = index - (shift << SUB_BUCKET_BITS);
+		long highest = ((subBucket + 1) << shift) - 1;
+		return highest < 0 ? Long.MAX_VALUE : highest;
+	}
+
+}
@@ -0,0 +1,21 @@
+package com.gbce.stockmarket.metrics;
+
+import java.util.List;
+
+/**
+ * Listener receiving periodic snapshots of the metrics of all operations.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public interface MetricsListener {
+
+	/**
+	 * Called with the metrics of the last interval.
+	 * 
+	 * @param snapshots
+	 *            snapshots of all operations, ordered by name
+	 */
+	void metricsSnapshot(List<MetricsSnapshot> snapshots);
+
+}
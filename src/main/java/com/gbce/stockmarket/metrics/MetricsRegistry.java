@@ -0,0 +1,160 @@
+package com.gbce.stockmarket.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Registry of the metrics of all operations. <br>
+ * 
+ * Components look up the metrics of their operations by name once, when they
+ * are set up, and record on them directly. Each operation is published as a
+ * JMX MBean named com.gbce.stockmarket:type=Metrics,name=&lt;operation&gt;,
+ * with figures since the application started. Snapshots with the figures of
+ * the interval since the previous snapshot are taken on demand or
+ * periodically.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Component
+public class MetricsRegistry {
+
+	private static final String OBJECT_NAME_PREFIX = "com.gbce.stockmarket:type=Metrics,name=";
+
+	private static final Logger logger = LoggerFactory.getLogger(MetricsRegistry.class);
+
+	private final ConcurrentSkipListMap<String, OperationMetrics> operations = new ConcurrentSkipListMap<>();
+
+	private long lastSnapshotNanos = System.nanoTime();
+
+	private ScheduledExecutorService reporter;
+
+	/**
+	 * Fetches the metrics of an operation, creating and publishing them on
+	 * first use.
+	 * 
+	 * @param name
+	 *            name of the operation, such as StockService.recordTrade
+	 * @return metrics of the operation
+	 */
+	public OperationMetrics getOperationMetrics(String name) {
+		OperationMetrics metrics = operations.get(name);
+		if (metrics == null) {
+			OperationMetrics newMetrics = new OperationMetrics(name);
+			metrics = operations.putIfAbsent(name, newMetrics);
+			if (metrics == null) {
+				metrics = newMetrics;
+				register(metrics);
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Takes snapshots of all operations, with the figures of the interval since
+	 * the previous snapshot.
+	 * 
+	 * @return snapshots of all operations, ordered by name
+	 */
+	public synchronized List<MetricsSnapshot> snapshot() {
+		long now = System.nanoTime();
+		long intervalNanos = now - lastSnapshotNanos;
+		lastSnapshotNanos = now;
+		List<MetricsSnapshot> snapshots = new ArrayList<>(operations.size());
+		for (OperationMetrics metrics : operations.values()) {
+			snapshots.add(metrics.snapshot(intervalNanos));
+		}
+		return snapshots;
+	}
+
+	/**
+	 * Starts passing snapshots to a listener periodically, in the background.
+	 * 
+	 * @param intervalMillis
+	 *            interval between snapshots
+	 * @param listener
+	 *            listener receiving the snapshots
+	 */
+	public synchronized void startReporting(long intervalMillis, final MetricsListener listener) {
+		if (reporter != null) {
+			throw new IllegalStateException("Metrics reporting is already started");
+		}
+		reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "metrics-reporter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		reporter.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					listener.metricsSnapshot(snapshot());
+				} catch (Exception e) {
+					logger.error("Could not report metrics : " + e.getMessage());
+				}
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops reporting and removes the MBeans of all operations.
+	 */
+	@PreDestroy
+	public synchronized void close() {
+		if (reporter != null) {
+			reporter.shutdown();
+			reporter = null;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (OperationMetrics metrics : operations.values()) {
+			try {
+				ObjectName objectName = toObjectName(metrics.getName());
+				if (server.isRegistered(objectName)) {
+					server.unregisterMBean(objectName);
+				}
+			} catch (JMException e) {
+				logger.warn("Could not unregister metrics MBean : " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Publishes the metrics of an operation as an MBean, replacing the MBean
+	 * of an earlier registry of the same JVM.
+	 */
+	private void register(OperationMetrics metrics) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = toObjectName(metrics.getName());
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(metrics, objectName);
+		} catch (JMException e) {
+			logger.warn("Could not register metrics MBean : " + e.getMessage());
+		}
+	}
+
+	private static ObjectName toObjectName(String name) throws JMException {
+		return new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name));
+	}
+
+}
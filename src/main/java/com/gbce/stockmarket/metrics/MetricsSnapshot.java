@@ -0,0 +1,79 @@
+package com.gbce.stockmarket.metrics;
+
+/**
+ * Metrics of one operation over the interval between two snapshots.
+ * Latencies are in nanoseconds.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class MetricsSnapshot {
+
+	private final String name;
+	private final long count;
+	private final long errorCount;
+	private final double ratePerSecond;
+	private final double meanNanos;
+	private final long p50Nanos;
+	private final long p99Nanos;
+	private final long p999Nanos;
+	private final long maxNanos;
+
+	public MetricsSnapshot(String name, long count, long errorCount, double ratePerSecond, double meanNanos,
+			long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+		super();
+		this.name = name;
+		this.count = count;
+		this.errorCount = errorCount;
+		this.ratePerSecond = ratePerSecond;
+		this.meanNanos = meanNanos;
+		this.p50Nanos = p50Nanos;
+		this.p99Nanos = p99Nanos;
+		this.p999Nanos = p999Nanos;
+		this.maxNanos = maxNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "MetricsSnapshot [name=" + name + ", count=" + count + ", errorCount=" + errorCount
+				+ ", ratePerSecond=" + ratePerSecond + ", meanNanos=" + meanNanos + ", p50Nanos=" + p50Nanos
+				+ ", p99Nanos=" + p99Nanos + ", p999Nanos=" + p999Nanos + ", maxNanos=" + maxNanos + "]";
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	public double getRatePerSecond() {
+		return ratePerSecond;
+	}
+
+	public double getMeanNanos() {
+		return meanNanos;
+	}
+
+	public long getP50Nanos() {
+		return p50Nanos;
+	}
+
+	public long getP99Nanos() {
+		return p99Nanos;
+	}
+
+	public long getP999Nanos() {
+		return p999Nanos;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+}
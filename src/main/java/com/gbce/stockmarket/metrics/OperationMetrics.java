@@ -0,0 +1,266 @@
+package com.gbce.stockmarket.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Latency histogram and counters of one operation, such as a Stock Service
+ * method or a DAO call. <br>
+ * 
+ * Recording allocates nothing and takes no lock, so metrics can be left on in
+ * production. Operations on the hot path take the start time with
+ * {@link System#nanoTime()}, call {@link #recordError()} if they throw and
+ * {@link #record(long)} once done, so that measuring them allocates nothing
+ * either:
+ * 
+ * <pre>
+ * long startNanos = System.nanoTime();
+ * try {
+ * 	return tradeDao.addTrade(trade);
+ * } catch (RuntimeException e) {
+ * 	metrics.recordError();
+ * 	throw e;
+ * } finally {
+ * 	metrics.record(startNanos);
+ * }
+ * </pre>
+ * 
+ * Calls off the hot path may be run through {@link #measure(Supplier)}
+ * instead, which does the same for a lambda, at the cost of allocating it and
+ * boxing its result. Stages of a pipeline pass the time they measured to
+ * {@link #recordNanos(long)}. <br>
+ * 
+ * {@link #DISABLED} records nothing, for components running without a
+ * metrics registry.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+	public static final OperationMetrics DISABLED = new OperationMetrics("disabled", false);
+
+	private static final double NANOS_PER_MICRO = 1000.0;
+
+	private final String name;
+	private final boolean enabled;
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+	private final AtomicLong errorCount = new AtomicLong();
+
+	/**
+	 * Bucket counters and totals at the previous snapshot, only used by the
+	 * thread taking snapshots.
+	 */
+	private final long[] snapshotCounts = new long[LatencyHistogram.BUCKET_COUNT];
+	private final long[] previousCounts = new long[LatencyHistogram.BUCKET_COUNT];
+	private long previousCount;
+	private long previousErrorCount;
+	private long previousTotalNanos;
+
+	OperationMetrics(String name) {
+		this(name, true);
+	}
+
+	private OperationMetrics(String name, boolean enabled) {
+		this.name = name;
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Runs an operation and records it, counting it as failed if it throws.
+	 * 
+	 * @param operation
+	 *            operation to be run
+	 * @return result of the operation
+	 */
+	public <T> T measure(Supplier<T> operation) {
+		long startNanos = System.nanoTime();
+		try {
+			return operation.get();
+		} catch (RuntimeException e) {
+			recordError();
+			throw e;
+		} finally {
+			record(startNanos);
+		}
+	}
+
+	/**
+	 * Runs an operation without result and records it, counting it as failed
+	 * if it throws.
+	 * 
+	 * @param operation
+	 *            operation to be run
+	 */
+	public void measure(Runnable operation) {
+		long startNanos = System.nanoTime();
+		try {
+			operation.run();
+		} catch (RuntimeException e) {
+			recordError();
+			throw e;
+		} finally {
+			record(startNanos);
+		}
+	}
+
+	/**
+	 * Records an operation which started at a given time and ends now.
+	 * 
+	 * @param startNanos
+	 *            start time of the operation from {@link System#nanoTime()}
+	 */
+	public void record(long startNanos) {
+		if (enabled) {
+			histogram.record(System.nanoTime() - startNanos);
+		}
+	}
+
+	/**
+	 * Records an operation which took a given time, measured by the caller.
+	 * 
+	 * @param nanos
+	 *            time taken by the operation in nanoseconds
+	 */
+	public void recordNanos(long nanos) {
+		if (enabled) {
+			histogram.record(nanos);
+		}
+	}
+
+	/**
+	 * Counts an operation which failed. The operation is recorded through
+	 * {@link #record(long)} as well.
+	 */
+	public void recordError() {
+		if (enabled) {
+			errorCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Takes a snapshot of the operations recorded since the previous snapshot.
+	 * Only to be called by one thread at a time.
+	 * 
+	 * @param intervalNanos
+	 *            time since the previous snapshot, for the rate of operations
+	 * @return snapshot of the metrics
+	 */
+	synchronized MetricsSnapshot snapshot(long intervalNanos) {
+
+		long totalNanos = histogram.getTotalNanos();
+		long totalCount = histogram.copyCounts(snapshotCounts);
+		long totalErrorCount = errorCount.get();
+
+		long highestNanos = 0;
+		for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+			long current = snapshotCounts[i];
+			snapshotCounts[i] -= previousCounts[i];
+			previousCounts[i] = current;
+			if (snapshotCounts[i] > 0) {
+				highestNanos = LatencyHistogram.highestValue(i);
+			}
+		}
+		highestNanos = Math.min(highestNanos, histogram.getMaxNanos());
+
+		long count = totalCount - previousCount;
+		long errors = totalErrorCount - previousErrorCount;
+		long nanos = totalNanos - previousTotalNanos;
+		previousCount = totalCount;
+		previousErrorCount = totalErrorCount;
+		previousTotalNanos = totalNanos;
+
+		double ratePerSecond = intervalNanos > 0 ? count * 1e9 / intervalNanos : 0.0;
+		return new MetricsSnapshot(name, count, errors, ratePerSecond, count > 0 ? (double) nanos / count : 0.0,
+				Math.min(LatencyHistogram.valueAtPercentile(snapshotCounts, count, 50), highestNanos),
+				Math.min(LatencyHistogram.valueAtPercentile(snapshotCounts, count, 99), highestNanos),
+				Math.min(LatencyHistogram.valueAtPercentile(snapshotCounts, count, 99.9), highestNanos),
+				highestNanos);
+	}
+
+	LatencyHistogram getHistogram() {
+		return histogram;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.metrics.OperationMetricsMBean#getName()
+	 */
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.metrics.OperationMetricsMBean#getCount()
+	 */
+	@Override
+	public long getCount() {
+		return histogram.getCount();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.metrics.OperationMetricsMBean#getErrorCount()
+	 */
+	@Override
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.metrics.OperationMetricsMBean#getMeanMicros()
+	 */
+	@Override
+	public double getMeanMicros() {
+		return histogram.getMeanNanos() / NANOS_PER_MICRO;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.metrics.OperationMetricsMBean#getP50Micros()
+	 */
+	@Override
+	public double getP50Micros() {
+		return histogram.getValueAtPercentile(50) / NANOS_PER_MICRO;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.metrics.OperationMetricsMBean#getP99Micros()
+	 */
+	@Override
+	public double getP99Micros() {
+		return histogram.getValueAtPercentile(99) / NANOS_PER_MICRO;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.metrics.OperationMetricsMBean#getP999Micros()
+	 */
+	@Override
+	public double getP999Micros() {
+		return histogram.getValueAtPercentile(99.9) / NANOS_PER_MICRO;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.metrics.OperationMetricsMBean#getMaxMicros()
+	 */
+	@Override
+	public double getMaxMicros() {
+		return histogram.getMaxNanos() / NANOS_PER_MICRO;
+	}
+
+}
@@ -0,0 +1,28 @@
+package com.gbce.stockmarket.metrics;
+
+/**
+ * JMX management interface of the metrics of one operation, with figures
+ * since the application started.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public interface OperationMetricsMBean {
+
+	String getName();
+
+	long getCount();
+
+	long getErrorCount();
+
+	double getMeanMicros();
+
+	double getP50Micros();
+
+	double getP99Micros();
+
+	double getP999Micros();
+
+	double getMaxMicros();
+
+}
@@ -0,0 +1,24 @@
+package com.gbce.stockmarket.replay;
+
+/**
+ * Layout of the compact binary file of recorded trades. <br>
+ * 
+ * The file starts with a header of a magic number and a version, followed by
+ * one TRADE message of the market data wire format per trade, see
+ * {@link com.gbce.stockmarket.codec.WireFormat}. The trade ids of the
+ * messages are left 0, trades are given new ids as they are replayed.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+final class BinaryTradeFile {
+
+	/** "GBTR" */
+	static final int MAGIC = 0x52544247;
+	static final int VERSION = 2;
+	static final int HEADER_SIZE = 8;
+
+	private BinaryTradeFile() {
+	}
+
+}
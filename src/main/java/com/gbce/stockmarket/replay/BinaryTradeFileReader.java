@@ -0,0 +1,76 @@
+package com.gbce.stockmarket.replay;
+
+import com.gbce.stockmarket.codec.MarketDataDecoder;
+import com.gbce.stockmarket.codec.WireFormat;
+
+/**
+ * Streaming reader of a compact binary file of recorded trades, as written by
+ * {@link com.gbce.stockmarket.replay.BinaryTradeFileWriter}.
+ * 
+ * @see com.gbce.stockmarket.replay.BinaryTradeFile
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class BinaryTradeFileReader extends TradeFileReader {
+
+	private final MarketDataDecoder decoder = new MarketDataDecoder();
+
+	public BinaryTradeFileReader(String fileName) {
+		this(fileName, DEFAULT_BUFFER_SIZE);
+	}
+
+	public BinaryTradeFileReader(String fileName, int bufferSize) {
+		super(fileName, bufferSize);
+		buffer.order(WireFormat.BYTE_ORDER);
+		if (!fill(BinaryTradeFile.HEADER_SIZE) || buffer.getInt() != BinaryTradeFile.MAGIC) {
+			close();
+			throw new RuntimeException("Not a binary trade file : " + fileName);
+		}
+		int version = buffer.getInt();
+		if (version != BinaryTradeFile.VERSION) {
+			close();
+			throw new RuntimeException("Unsupported binary trade file version " + version + " : " + fileName);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.replay.TradeFileReader#next()
+	 */
+	@Override
+	public boolean next() {
+		if (!fill(WireFormat.HEADER_SIZE)) {
+			return false;
+		}
+		int length = MarketDataDecoder.messageLength(buffer, buffer.position());
+		if (length < WireFormat.HEADER_SIZE || !fill(length) || !wrapTrade()) {
+			throw new RuntimeException("Truncated or corrupt binary trade file : " + getFileName());
+		}
+		stockSymbol = decoder.getStockSymbol();
+		timeStampNanos = decoder.getTimeStampNanos();
+		quantity = decoder.getQuantity();
+		price = decoder.getPrice();
+		buffer.position(decoder.getEnd());
+		return true;
+	}
+
+	/**
+	 * Wraps the decoder over the message at the position of the buffer.
+	 * 
+	 * @return false unless it is a valid trade message
+	 */
+	private boolean wrapTrade() {
+		try {
+			if (!decoder.wrap(buffer, buffer.position()) || decoder.getMessageType() != WireFormat.TRADE) {
+				return false;
+			}
+			type = decoder.getTradeType();
+			return true;
+		} catch (RuntimeException e) {
+			return false;
+		}
+	}
+
+}
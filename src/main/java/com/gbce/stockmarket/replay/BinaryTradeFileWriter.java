@@ -0,0 +1,114 @@
+package com.gbce.stockmarket.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.codec.MarketDataEncoder;
+import com.gbce.stockmarket.codec.WireFormat;
+import com.gbce.stockmarket.constants.TradeType;
+
+/**
+ * Writer of a compact binary file of recorded trades, to be replayed with
+ * {@link com.gbce.stockmarket.replay.BinaryTradeFileReader}. Records are
+ * written through a direct buffer, flushed to the file when full.
+ * 
+ * @see com.gbce.stockmarket.replay.BinaryTradeFile
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class BinaryTradeFileWriter implements Closeable {
+
+	private final String fileName;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+
+	public BinaryTradeFileWriter(String fileName) {
+		this(fileName, TradeFileReader.DEFAULT_BUFFER_SIZE);
+	}
+
+	public BinaryTradeFileWriter(String fileName, int bufferSize) {
+		this.fileName = fileName;
+		try {
+			channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not open trade file : " + fileName, e);
+		}
+		buffer = ByteBuffer.allocateDirect(bufferSize).order(WireFormat.BYTE_ORDER);
+		buffer.putInt(BinaryTradeFile.MAGIC);
+		buffer.putInt(BinaryTradeFile.VERSION);
+	}
+
+	/**
+	 * Writes a trade.
+	 * 
+	 * @param trade
+	 *            Trade object to be written
+	 */
+	public void write(Trade trade) {
+		write(trade.getStock().getSymbol(), trade.getTimeStampNanos(), trade.getType(), trade.getStocksQuantity(),
+				trade.getPrice());
+	}
+
+	/**
+	 * Writes a trade.
+	 * 
+	 * @param stockSymbol
+	 *            symbol of the stock traded, ASCII
+	 * @param timeStampNanos
+	 *            time stamp of the trade in nanoseconds since the epoch
+	 * @param type
+	 *            type of the trade
+	 * @param quantity
+	 *            quantity of stocks traded
+	 * @param price
+	 *            price of the trade
+	 */
+	public void write(String stockSymbol, long timeStampNanos, TradeType type, int quantity, double price) {
+		if (buffer.remaining() < WireFormat.TRADE_BLOCK_SIZE + stockSymbol.length()) {
+			flush();
+		}
+		MarketDataEncoder.encodeTrade(buffer, 0, stockSymbol, timeStampNanos, type, quantity, price);
+	}
+
+	/**
+	 * Writes the buffered records to the file.
+	 */
+	public void flush() {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write trade file : " + fileName, e);
+		} finally {
+			buffer.clear();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+		try {
+			flush();
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				throw new RuntimeException("Could not close trade file : " + fileName, e);
+			}
+		}
+	}
+
+}
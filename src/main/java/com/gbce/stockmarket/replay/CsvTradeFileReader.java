@@ -0,0 +1,256 @@
+package com.gbce.stockmarket.replay;
+
+import java.nio.charset.StandardCharsets;
+
+import com.gbce.stockmarket.constants.TradeType;
+
+/**
+ * Streaming reader of a CSV file of recorded trades, one trade per line with
+ * the columns: <br>
+ * 
+ * symbol,timeStampNanos,type,quantity,price <br>
+ * 
+ * where timeStampNanos is in nanoseconds since the epoch and type is BUY or
+ * SELL, for example TEA,1457000000000000000,BUY,20,280.5 . A header line and
+ * blank lines are skipped. Fields are parsed straight from the bytes of the
+ * buffer. Symbols are cached by their bytes, so that a line of a symbol read
+ * before creates no String.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class CsvTradeFileReader extends TradeFileReader {
+
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18 };
+
+	/** Number of symbols cached, a power of two */
+	private static final int SYMBOL_CACHE_SIZE = 256;
+
+	private final byte[][] cachedSymbolBytes = new byte[SYMBOL_CACHE_SIZE][];
+	private final String[] cachedSymbols = new String[SYMBOL_CACHE_SIZE];
+
+	private final int[] fieldEnds = new int[5];
+	private long lineNumber;
+
+	public CsvTradeFileReader(String fileName) {
+		this(fileName, DEFAULT_BUFFER_SIZE);
+	}
+
+	public CsvTradeFileReader(String fileName, int bufferSize) {
+		super(fileName, bufferSize);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.replay.TradeFileReader#next()
+	 */
+	@Override
+	public boolean next() {
+		while (true) {
+			int end = indexOfLineEnd();
+			if (end < 0) {
+				if (buffer.remaining() == buffer.capacity()) {
+					throw new RuntimeException("Line " + (lineNumber + 1) + " of trade file is longer than "
+							+ buffer.capacity() + " bytes : " + getFileName());
+				}
+				if (fill(buffer.remaining() + 1)) {
+					continue;
+				}
+				if (!buffer.hasRemaining()) {
+					return false;
+				}
+				// Last line without a line break
+				end = buffer.limit();
+			}
+
+			int start = buffer.position();
+			buffer.position(end < buffer.limit() ? end + 1 : end);
+			lineNumber++;
+
+			if (end > start && buffer.get(end - 1) == '\r') {
+				end--;
+			}
+			if (end > start && parseLine(start, end)) {
+				return true;
+			}
+		}
+	}
+
+	private int indexOfLineEnd() {
+		for (int i = buffer.position(); i < buffer.limit(); i++) {
+			if (buffer.get(i) == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Parses a line into the fields of the trade.
+	 * 
+	 * @return false if the line is the header
+	 */
+	private boolean parseLine(int start, int end) {
+
+		int field = 0;
+		for (int i = start; i < end && field < fieldEnds.length; i++) {
+			if (buffer.get(i) == ',') {
+				fieldEnds[field++] = i;
+			}
+		}
+		if (field == fieldEnds.length) {
+			throw invalidLine("too many fields");
+		}
+		fieldEnds[field++] = end;
+		if (field != fieldEnds.length) {
+			throw invalidLine("expected " + fieldEnds.length + " fields");
+		}
+
+		int timeStampStart = fieldEnds[0] + 1;
+		if (lineNumber == 1 && timeStampStart < fieldEnds[1] && !isDigit(buffer.get(timeStampStart))) {
+			return false;
+		}
+
+		stockSymbol = parseSymbol(start, fieldEnds[0]);
+		timeStampNanos = parseLong(timeStampStart, fieldEnds[1]);
+		type = parseType(fieldEnds[1] + 1, fieldEnds[2]);
+		long quantity = parseLong(fieldEnds[2] + 1, fieldEnds[3]);
+		if (quantity < Integer.MIN_VALUE || quantity > Integer.MAX_VALUE) {
+			throw invalidLine("quantity out of range");
+		}
+		this.quantity = (int) quantity;
+		price = parseDouble(fieldEnds[3] + 1, fieldEnds[4]);
+		return true;
+	}
+
+	/**
+	 * Looks up the symbol of the given bytes in the cache, slotted by the hash
+	 * of the bytes, creating a String only if another symbol held the slot.
+	 */
+	private String parseSymbol(int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + buffer.get(i);
+		}
+		int slot = (hash ^ (hash >>> 16)) & (SYMBOL_CACHE_SIZE - 1);
+
+		byte[] symbol = cachedSymbolBytes[slot];
+		if (symbol != null && symbol.length == end - start) {
+			int i = 0;
+			while (i < symbol.length && symbol[i] == buffer.get(start + i)) {
+				i++;
+			}
+			if (i == symbol.length) {
+				return cachedSymbols[slot];
+			}
+		}
+
+		symbol = new byte[end - start];
+		for (int i = 0; i < symbol.length; i++) {
+			symbol[i] = buffer.get(start + i);
+		}
+		cachedSymbolBytes[slot] = symbol;
+		cachedSymbols[slot] = new String(symbol, StandardCharsets.US_ASCII);
+		return cachedSymbols[slot];
+	}
+
+	private long parseLong(int start, int end) {
+		if (start == end) {
+			throw invalidLine("empty number");
+		}
+		boolean negative = buffer.get(start) == '-';
+		if (negative && start + 1 == end) {
+			throw invalidLine("invalid number");
+		}
+		long value = 0;
+		for (int i = negative ? start + 1 : start; i < end; i++) {
+			byte digit = buffer.get(i);
+			if (!isDigit(digit)) {
+				throw invalidLine("invalid number");
+			}
+			if (value > (Long.MAX_VALUE - (digit - '0')) / 10) {
+				throw invalidLine("number out of range");
+			}
+			value = value * 10 + (digit - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses a decimal price as a whole number of digits and a power of ten,
+	 * which gives the same value as Double.parseDouble for up to 15
+	 * significant digits. Longer prices fall back to Double.parseDouble.
+	 */
+	private double parseDouble(int start, int end) {
+		long digits = 0;
+		int digitCount = 0;
+		int decimals = -1;
+		for (int i = start; i < end; i++) {
+			byte digit = buffer.get(i);
+			if (digit == '.' && decimals < 0) {
+				decimals = 0;
+			} else if (isDigit(digit) && digitCount < 15) {
+				digits = digits * 10 + (digit - '0');
+				digitCount++;
+				if (decimals >= 0) {
+					decimals++;
+				}
+			} else {
+				return parseDoubleSlowly(start, end);
+			}
+		}
+		if (digitCount == 0) {
+			throw invalidLine("invalid price");
+		}
+		return decimals > 0 ? digits / POWERS_OF_TEN[decimals] : digits;
+	}
+
+	private double parseDoubleSlowly(int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+		try {
+			return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+		} catch (NumberFormatException e) {
+			throw invalidLine("invalid price");
+		}
+	}
+
+	private TradeType parseType(int start, int end) {
+		if (matches(start, end, "buy")) {
+			return TradeType.BUY;
+		}
+		if (matches(start, end, "sell")) {
+			return TradeType.SELL;
+		}
+		throw invalidLine("trade type should be BUY or SELL");
+	}
+
+	/**
+	 * Compares a field to a given lower case word, ignoring case.
+	 */
+	private boolean matches(int start, int end, String word) {
+		if (end - start != word.length()) {
+			return false;
+		}
+		for (int i = 0; i < word.length(); i++) {
+			if ((buffer.get(start + i) | 0x20) != word.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isDigit(byte value) {
+		return value >= '0' && value <= '9';
+	}
+
+	private RuntimeException invalidLine(String reason) {
+		return new RuntimeException("Invalid line " + lineNumber + " of trade file, " + reason + " : "
+				+ getFileName());
+	}
+
+}
@@ -0,0 +1,88 @@
+package com.gbce.stockmarket.replay;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.gbce.stockmarket.beans.VolumeWeightedPrices;
+
+/**
+ * Outcome of replaying a file of recorded trades: the number of trades and
+ * replay speed, and the time series of the All Share Index and of the Volume
+ * Weighted Stock Price of all stocks, sampled at regular intervals of market
+ * time.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class ReplayReport {
+
+	private final long tradeCount;
+	private final long elapsedNanos;
+	private final long[] sampleTimesNanos;
+	private final double[] allShareIndexes;
+	private final List<VolumeWeightedPrices> volumeWeightedPrices;
+
+	public ReplayReport(long tradeCount, long elapsedNanos, long[] sampleTimesNanos, double[] allShareIndexes,
+			List<VolumeWeightedPrices> volumeWeightedPrices) {
+		super();
+		this.tradeCount = tradeCount;
+		this.elapsedNanos = elapsedNanos;
+		this.sampleTimesNanos = sampleTimesNanos;
+		this.allShareIndexes = allShareIndexes;
+		this.volumeWeightedPrices = volumeWeightedPrices;
+	}
+
+	@Override
+	public String toString() {
+		return "ReplayReport [tradeCount=" + tradeCount + ", elapsedNanos=" + elapsedNanos + ", tradesPerSecond="
+				+ getTradesPerSecond() + ", sampleCount=" + getSampleCount() + "]";
+	}
+
+	public long getTradeCount() {
+		return tradeCount;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return number of trades replayed per second of wall clock time
+	 */
+	public double getTradesPerSecond() {
+		return elapsedNanos > 0 ? tradeCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0.0;
+	}
+
+	public int getSampleCount() {
+		return sampleTimesNanos.length;
+	}
+
+	/**
+	 * @param sample
+	 *            index of the sample
+	 * @return market time of the sample in nanoseconds since the epoch
+	 */
+	public long getSampleTimeNanos(int sample) {
+		return sampleTimesNanos[sample];
+	}
+
+	/**
+	 * @param sample
+	 *            index of the sample
+	 * @return All Share Index at the time of the sample
+	 */
+	public double getAllShareIndex(int sample) {
+		return allShareIndexes[sample];
+	}
+
+	/**
+	 * @param sample
+	 *            index of the sample
+	 * @return Volume Weighted Stock Prices of all stocks at the time of the
+	 *         sample
+	 */
+	public VolumeWeightedPrices getVolumeWeightedPrices(int sample) {
+		return volumeWeightedPrices.get(sample);
+	}
+
+}
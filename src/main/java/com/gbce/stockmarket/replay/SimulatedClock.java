@@ -0,0 +1,67 @@
+package com.gbce.stockmarket.replay;
+
+import java.util.concurrent.TimeUnit;
+
+import com.gbce.stockmarket.util.MarketClock;
+
+/**
+ * Market clock set by the trade replayer to the time stamps of the trades
+ * replayed, so that components moving time windows on see the time of the
+ * trades rather than the wall clock. <br>
+ * 
+ * The clock never goes backwards, trades replayed out of time order leave it
+ * at the latest time stamp.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class SimulatedClock implements MarketClock {
+
+	private volatile long timeNanos;
+
+	public SimulatedClock() {
+		super();
+	}
+
+	/**
+	 * @param timeNanos
+	 *            initial time in nanoseconds since the epoch
+	 */
+	public SimulatedClock(long timeNanos) {
+		this.timeNanos = timeNanos;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.util.MarketClock#currentTimeMillis()
+	 */
+	@Override
+	public long currentTimeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(timeNanos);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.util.MarketClock#currentTimeNanos()
+	 */
+	@Override
+	public long currentTimeNanos() {
+		return timeNanos;
+	}
+
+	/**
+	 * Moves the clock on to a given time, unless it is already past it. Only
+	 * to be called by one thread at a time.
+	 * 
+	 * @param timeNanos
+	 *            time in nanoseconds since the epoch
+	 */
+	public void advanceTo(long timeNanos) {
+		if (timeNanos > this.timeNanos) {
+			this.timeNanos = timeNanos;
+		}
+	}
+
+}
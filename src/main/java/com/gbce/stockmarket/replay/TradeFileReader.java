@@ -0,0 +1,124 @@
+package com.gbce.stockmarket.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import com.gbce.stockmarket.constants.TradeType;
+
+/**
+ * Streaming reader of a file of recorded trades. <br>
+ * 
+ * The file is read through a fixed size direct buffer, refilled from the file
+ * channel as records are read, so files of any size are read without being
+ * loaded into memory. The reader is a cursor: each call to {@link #next()}
+ * reads one trade, whose fields are then read from the reader, without a
+ * Trade object being created per record.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public abstract class TradeFileReader implements Closeable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+	private final String fileName;
+	private final FileChannel channel;
+
+	protected final ByteBuffer buffer;
+
+	private boolean endOfFile;
+
+	protected String stockSymbol;
+	protected long timeStampNanos;
+	protected TradeType type;
+	protected int quantity;
+	protected double price;
+
+	protected TradeFileReader(String fileName, int bufferSize) {
+		this.fileName = fileName;
+		try {
+			channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not open trade file : " + fileName, e);
+		}
+		buffer = ByteBuffer.allocateDirect(bufferSize);
+		buffer.flip();
+	}
+
+	/**
+	 * Reads the next trade of the file.
+	 * 
+	 * @return true if a trade was read, false at the end of the file
+	 */
+	public abstract boolean next();
+
+	/**
+	 * Makes sure a given number of bytes can be read from the buffer, reading
+	 * more of the file if needed.
+	 * 
+	 * @param bytes
+	 *            number of bytes, at most the size of the buffer
+	 * @return false if the file ends before
+	 */
+	protected boolean fill(int bytes) {
+		while (buffer.remaining() < bytes) {
+			if (endOfFile) {
+				return false;
+			}
+			buffer.compact();
+			try {
+				if (channel.read(buffer) < 0) {
+					endOfFile = true;
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Could not read trade file : " + fileName, e);
+			} finally {
+				buffer.flip();
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not close trade file : " + fileName, e);
+		}
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public String getStockSymbol() {
+		return stockSymbol;
+	}
+
+	public long getTimeStampNanos() {
+		return timeStampNanos;
+	}
+
+	public TradeType getType() {
+		return type;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+}
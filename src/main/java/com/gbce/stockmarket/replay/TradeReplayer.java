@@ -0,0 +1,251 @@
+package com.gbce.stockmarket.replay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.beans.VolumeWeightedPrices;
+import com.gbce.stockmarket.service.StockService;
+
+/**
+ * Replays a file of recorded trades through Stock Service, such as to
+ * backtest analytics over a past trading session. <br>
+ * 
+ * Trades are streamed from the file and recorded in batches, or one by one
+ * with a batch size of 1, either as fast as possible or at a given multiple
+ * of the speed they were made at. The Stock Service components must run on
+ * the simulated clock given to the replayer, which is moved on to the time
+ * stamp of each trade, so that time windows follow the trades rather than the
+ * wall clock. <br>
+ * 
+ * At regular intervals of market time, the All Share Index and the Volume
+ * Weighted Stock Price of all stocks over given past time frames are sampled
+ * into the report of the replay.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class TradeReplayer {
+
+	private static final Logger logger = LoggerFactory.getLogger(TradeReplayer.class);
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	public static final long DEFAULT_SAMPLE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+	/**
+	 * Replay as fast as possible
+	 */
+	public static final double AS_FAST_AS_POSSIBLE = 0.0;
+
+	private final StockService stockService;
+	private final SimulatedClock clock;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private double speed = AS_FAST_AS_POSSIBLE;
+	private long sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SAMPLE_INTERVAL_MILLIS);
+	private int[] timesInMinutes = { 5 };
+
+	private final Map<String, Stock> stocks = new HashMap<>();
+
+	/*
+	 * Samples of the replay in progress
+	 */
+	private long[] sampleTimesNanos;
+	private double[] allShareIndexes;
+	private List<VolumeWeightedPrices> volumeWeightedPrices;
+	private int sampleCount;
+
+	/**
+	 * @param stockService
+	 *            Stock Service to record the trades with
+	 * @param clock
+	 *            simulated clock the Stock Service components run on
+	 */
+	public TradeReplayer(StockService stockService, SimulatedClock clock) {
+		this.stockService = stockService;
+		this.clock = clock;
+	}
+
+	/**
+	 * Replays all trades of a file.
+	 * 
+	 * @param reader
+	 *            reader of the file, positioned before the first trade to
+	 *            replay
+	 * @return report of the replay
+	 */
+	public synchronized ReplayReport replay(TradeFileReader reader) {
+
+		logger.info("Replaying trades of file : " + reader.getFileName());
+
+		sampleTimesNanos = new long[64];
+		allShareIndexes = new double[64];
+		volumeWeightedPrices = new ArrayList<>();
+		sampleCount = 0;
+
+		List<Trade> batch = new ArrayList<>(batchSize);
+		long tradeCount = 0;
+		long firstTradeNanos = 0;
+		long nextSampleNanos = 0;
+		long startNanos = System.nanoTime();
+
+		while (reader.next()) {
+
+			long timeStampNanos = reader.getTimeStampNanos();
+
+			if (tradeCount == 0) {
+				firstTradeNanos = timeStampNanos;
+				nextSampleNanos = Math.floorDiv(timeStampNanos, sampleIntervalNanos) * sampleIntervalNanos
+						+ sampleIntervalNanos;
+			}
+
+			if (timeStampNanos >= nextSampleNanos) {
+				recordTrades(batch);
+				while (timeStampNanos >= nextSampleNanos) {
+					clock.advanceTo(nextSampleNanos);
+					sample(nextSampleNanos);
+					nextSampleNanos += sampleIntervalNanos;
+				}
+			}
+
+			if (speed > AS_FAST_AS_POSSIBLE) {
+				long dueNanos = startNanos + (long) ((timeStampNanos - firstTradeNanos) / speed);
+				if (dueNanos > System.nanoTime()) {
+					recordTrades(batch);
+					long waitNanos;
+					while ((waitNanos = dueNanos - System.nanoTime()) > 0) {
+						LockSupport.parkNanos(waitNanos);
+					}
+				}
+			}
+
+			batch.add(new Trade(getStock(reader.getStockSymbol()), timeStampNanos, reader.getType(), reader
+					.getQuantity(), reader.getPrice()));
+			tradeCount++;
+			if (batch.size() >= batchSize) {
+				recordTrades(batch);
+			}
+		}
+
+		recordTrades(batch);
+		if (tradeCount > 0) {
+			sample(clock.currentTimeNanos());
+		}
+
+		long elapsedNanos = System.nanoTime() - startNanos;
+
+		ReplayReport report = new ReplayReport(tradeCount, elapsedNanos, Arrays.copyOf(sampleTimesNanos,
+				sampleCount), Arrays.copyOf(allShareIndexes, sampleCount), volumeWeightedPrices);
+
+		logger.info("Replayed trades of file : " + reader.getFileName() + " " + report);
+
+		return report;
+	}
+
+	private void recordTrades(List<Trade> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			clock.advanceTo(batch.get(i).getTimeStampNanos());
+		}
+		if (batch.size() == 1) {
+			stockService.recordTrade(batch.get(0));
+		} else {
+			stockService.recordTrades(batch);
+		}
+		batch.clear();
+	}
+
+	private void sample(long timeNanos) {
+		if (sampleCount == sampleTimesNanos.length) {
+			sampleTimesNanos = Arrays.copyOf(sampleTimesNanos, sampleCount * 2);
+			allShareIndexes = Arrays.copyOf(allShareIndexes, sampleCount * 2);
+		}
+		sampleTimesNanos[sampleCount] = timeNanos;
+		allShareIndexes[sampleCount] = stockService.calculateAllShareIndex();
+		volumeWeightedPrices.add(stockService.calculateVolumeStockPrices(timesInMinutes));
+		sampleCount++;
+	}
+
+	private Stock getStock(String stockSymbol) {
+		Stock stock = stocks.get(stockSymbol);
+		if (stock == null) {
+			stock = stockService.findStock(stockSymbol);
+			stocks.put(stockSymbol, stock);
+		}
+		return stock;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets number of trades recorded together, 1 to record trades one by one.
+	 * 
+	 * @param batchSize
+	 *            number of trades
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new RuntimeException("Batch size should be at least 1. Cannot process " + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Sets speed of the replay, as a multiple of the speed the trades were
+	 * made at, such as 60 to replay an hour of trades in a minute.
+	 * 
+	 * @param speed
+	 *            multiple of the speed of the trades,
+	 *            {@link #AS_FAST_AS_POSSIBLE} not to wait between trades
+	 */
+	public void setSpeed(double speed) {
+		this.speed = speed;
+	}
+
+	public long getSampleIntervalMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(sampleIntervalNanos);
+	}
+
+	/**
+	 * Sets interval of market time between two samples of the All Share Index
+	 * and Volume Weighted Stock Prices.
+	 * 
+	 * @param sampleIntervalMillis
+	 *            interval in millis
+	 */
+	public void setSampleIntervalMillis(long sampleIntervalMillis) {
+		if (sampleIntervalMillis <= 0) {
+			throw new RuntimeException("Sample interval should be more than 0. Cannot process "
+					+ sampleIntervalMillis);
+		}
+		this.sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(sampleIntervalMillis);
+	}
+
+	/**
+	 * Sets past time frames to sample Volume Weighted Stock Prices over.
+	 * 
+	 * @param timesInMinutes
+	 *            past time frames in minutes
+	 */
+	public void setTimesInMinutes(int... timesInMinutes) {
+		this.timesInMinutes = timesInMinutes.clone();
+	}
+
+}
@@ -0,0 +1,69 @@
+package com.gbce.stockmarket.retention;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Policy for how long trades are kept in the database, set globally and
+ * optionally overridden per stock symbol. A retention of
+ * {@link #KEEP_FOREVER} keeps trades forever.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class RetentionPolicy {
+
+	public static final long KEEP_FOREVER = 0;
+
+	private volatile long defaultRetentionMillis;
+
+	/**
+	 * Retention per stock symbol (upper case) overriding the default one.
+	 */
+	private final ConcurrentMap<String, Long> retentionBySymbol = new ConcurrentHashMap<>();
+
+	/**
+	 * @param defaultRetentionMillis
+	 *            time trades of every stock are kept for, unless overridden
+	 *            for the stock
+	 */
+	public RetentionPolicy(long defaultRetentionMillis) {
+		this.defaultRetentionMillis = defaultRetentionMillis;
+	}
+
+	/**
+	 * Fetches the time trades of a given stock are kept for.
+	 * 
+	 * @param stockSymbol
+	 *            symbol of the stock
+	 * @return retention in milliseconds, {@link #KEEP_FOREVER} to keep trades
+	 *         forever
+	 */
+	public long getRetentionMillis(String stockSymbol) {
+		Long retentionMillis = retentionBySymbol.get(stockSymbol.toUpperCase(Locale.ROOT));
+		return retentionMillis == null ? defaultRetentionMillis : retentionMillis;
+	}
+
+	/**
+	 * Overrides the time trades of a given stock are kept for.
+	 * 
+	 * @param stockSymbol
+	 *            symbol of the stock
+	 * @param retentionMillis
+	 *            retention in milliseconds, {@link #KEEP_FOREVER} to keep
+	 *            trades forever
+	 */
+	public void setRetentionMillis(String stockSymbol, long retentionMillis) {
+		retentionBySymbol.put(stockSymbol.toUpperCase(Locale.ROOT), retentionMillis);
+	}
+
+	public long getDefaultRetentionMillis() {
+		return defaultRetentionMillis;
+	}
+
+	public void setDefaultRetentionMillis(long defaultRetentionMillis) {
+		this.defaultRetentionMillis = defaultRetentionMillis;
+	}
+
+}
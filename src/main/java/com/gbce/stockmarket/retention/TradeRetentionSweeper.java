@@ -0,0 +1,138 @@
+package com.gbce.stockmarket.retention;
+
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gbce.stockmarket.dao.TradeDao;
+
+/**
+ * Background sweeper enforcing a retention policy on the Trade data. <br>
+ * 
+ * At a fixed interval, trades of every stock older than the retention of the
+ * stock are dropped through {@link TradeDao#evictTradesBefore}, which drops
+ * whole chunks of time at once. Trade DAO does this without locking out
+ * writers or readers, so the sweeper does not hold up recording trades or
+ * calculating prices. Listeners of Trade DAO are told of each eviction: the
+ * Volume Weighted Stock Price index and the candle aggregator drop their
+ * state before the eviction time, while the Volume Weighted Stock Price of
+ * all trades and the All Share Index still count the evicted trades. <br>
+ * 
+ * Run in the application by {@link config.TradeRetentionSpringConfig}.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class TradeRetentionSweeper {
+
+	public static final long DEFAULT_SWEEP_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+	private static final Logger logger = LoggerFactory.getLogger(TradeRetentionSweeper.class);
+
+	private final TradeDao tradeDao;
+	private final RetentionPolicy retentionPolicy;
+	private final long sweepIntervalMillis;
+
+	private final AtomicLong evictedTrades = new AtomicLong();
+
+	private ScheduledExecutorService executor;
+
+	public TradeRetentionSweeper(TradeDao tradeDao, RetentionPolicy retentionPolicy) {
+		this(tradeDao, retentionPolicy, DEFAULT_SWEEP_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * @param tradeDao
+	 *            Trade DAO to drop old trades from
+	 * @param retentionPolicy
+	 *            policy for how long trades are kept
+	 * @param sweepIntervalMillis
+	 *            interval between sweeps
+	 */
+	public TradeRetentionSweeper(TradeDao tradeDao, RetentionPolicy retentionPolicy, long sweepIntervalMillis) {
+		this.tradeDao = tradeDao;
+		this.retentionPolicy = retentionPolicy;
+		this.sweepIntervalMillis = sweepIntervalMillis;
+	}
+
+	/**
+	 * Starts sweeping in the background.
+	 */
+	public synchronized void start() {
+		if (executor != null) {
+			throw new IllegalStateException("Trade retention sweeper is already started");
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "trade-retention");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					sweep(System.currentTimeMillis());
+				} catch (Exception e) {
+					logger.error("Could not sweep old trades : " + e.getMessage());
+				}
+			}
+		}, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops sweeping.
+	 */
+	public synchronized void stop() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	/**
+	 * @return true if the sweeper is sweeping in the background
+	 */
+	public synchronized boolean isRunning() {
+		return executor != null;
+	}
+
+	/**
+	 * Drops trades older than their retention at a given time.
+	 * 
+	 * @param currentTimeMillis
+	 *            current time in milliseconds since the epoch
+	 * @return number of trades dropped
+	 */
+	public int sweep(long currentTimeMillis) {
+		int sweptTrades = 0;
+		for (String stockSymbol : tradeDao.getStockSymbols()) {
+			long retentionMillis = retentionPolicy.getRetentionMillis(stockSymbol);
+			if (retentionMillis > RetentionPolicy.KEEP_FOREVER) {
+				sweptTrades += tradeDao.evictTradesBefore(stockSymbol, new Date(currentTimeMillis
+						- retentionMillis));
+			}
+		}
+		if (sweptTrades > 0) {
+			evictedTrades.addAndGet(sweptTrades);
+			logger.debug("Dropped " + sweptTrades + " trades past their retention");
+		}
+		return sweptTrades;
+	}
+
+	/**
+	 * @return number of trades dropped since the sweeper was created
+	 */
+	public long getEvictedTrades() {
+		return evictedTrades.get();
+	}
+
+}
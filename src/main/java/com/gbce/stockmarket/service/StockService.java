@@ -1,7 +1,15 @@
 package com.gbce.stockmarket.service;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import com.gbce.stockmarket.beans.Candle;
 import com.gbce.stockmarket.beans.Stock;
 import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.beans.VolumeWeightedPrices;
+import com.gbce.stockmarket.subscription.MarketDataListener;
+import com.gbce.stockmarket.subscription.MarketDataSubscription;
 
 /**
  * Interface for Stock Service. Provides operations for GBCE Super Simple Stock
@@ -9,13 +17,19 @@ import com.gbce.stockmarket.beans.Trade;
  * <br>
  * 
  * 1. Search for a Stock with given stock symbol <br>
- * 2. Record a Trade done with a stock <br>
+ * 2. Record a Trade done with a stock, or a batch of trades <br>
  * 3. Calculate Dividend Yield for a given stock at a given price <br>
  * 4. Calculate P/E Ratio for a given stock at a given price <br>
  * 5. Calculate Volume Weighted Stock Price based on trades in past given time
- * frame (e.g. past 5 minutes) for a given stock <br>
+ * frame (e.g. past 5 minutes) for a given stock, or within any time frame,
+ * or for all stocks over several past time frames at once <br>
  * 6. Calculate the GBCE All Share Index using the geometric mean of the Volume
  * Weighted Stock Price for all stocks <br>
+ * 7. Fetch the latest candle bars of a given stock for a given interval <br>
+ * 8. Subscribe to trades, Volume Weighted Stock Price and All Share Index
+ * changes pushed as they happen <br>
+ * 9. Calculate Dividend Yields and P/E Ratios for grids of prices of many
+ * stocks at once <br>
  * <br>
  * 
  * For GBCE Super Simple Stock Market requirements all data is stored and
@@ -36,15 +50,29 @@ public interface StockService {
 	Stock findStock(String stockSymbol);
 
 	/**
-	 * Records a trade in the trading system of GBCE Stock Market
+	 * Records a trade in the trading system of GBCE Stock Market. When an
+	 * asynchronous ingestion pipeline is configured, the trade is handed over
+	 * to the pipeline and recorded shortly after.
 	 * 
 	 * @param trade
 	 *            Trade object representing a Trade made on a stock in GBCE
 	 *            Stock Market
-	 * @return
+	 * @return true if the trade was recorded, or accepted by the ingestion
+	 *         pipeline
 	 */
 	boolean recordTrade(Trade trade);
 
+	/**
+	 * Records a batch of trades in the trading system of GBCE Stock Market.
+	 * The whole batch is validated before any trade is recorded.
+	 * 
+	 * @param trades
+	 *            Trade objects representing Trades made on stocks in GBCE
+	 *            Stock Market
+	 * @return number of trades recorded
+	 */
+	int recordTrades(Collection<Trade> trades);
+
 	/**
 	 * Calculates Dividend Yield for a given stock at a given price
 	 * 
@@ -67,6 +95,56 @@ public interface StockService {
 	 */
 	double calculatePERatio(String stockSymbol, double price);
 
+	/**
+	 * Calculates Dividend Yields for a grid of prices grouped by stock, each
+	 * stock being looked up once for all its prices. Invalid prices and
+	 * unknown stocks are reported in the statuses, with NaN as their Dividend
+	 * Yield, instead of throwing an exception.
+	 * 
+	 * @param stockSymbols
+	 *            symbols representing stocks in GBCE Stock Market
+	 * @param priceOffsets
+	 *            index of the first price of each stock in the prices,
+	 *            followed by the number of prices; the prices of stock i are
+	 *            from priceOffsets[i] to priceOffsets[i + 1] (exclusive)
+	 * @param prices
+	 *            prices of the stocks, grouped by stock
+	 * @param dividendYields
+	 *            array receiving the Dividend Yield at the index of each price
+	 * @param statuses
+	 *            array receiving the status of each price, one of the STATUS
+	 *            constants of
+	 *            {@link com.gbce.stockmarket.analytics.StockRatioCalculator}
+	 * @return number of prices without a Dividend Yield
+	 */
+	int calculateDividendYields(String[] stockSymbols, int[] priceOffsets, double[] prices, double[] dividendYields,
+			byte[] statuses);
+
+	/**
+	 * Calculates P/E Ratios for a grid of prices grouped by stock, each stock
+	 * being looked up once for all its prices. Invalid prices, unknown stocks
+	 * and stocks with a Last Dividend of 0 are reported in the statuses, with
+	 * NaN as their P/E Ratio, instead of throwing an exception.
+	 * 
+	 * @param stockSymbols
+	 *            symbols representing stocks in GBCE Stock Market
+	 * @param priceOffsets
+	 *            index of the first price of each stock in the prices,
+	 *            followed by the number of prices; the prices of stock i are
+	 *            from priceOffsets[i] to priceOffsets[i + 1] (exclusive)
+	 * @param prices
+	 *            prices of the stocks, grouped by stock
+	 * @param peRatios
+	 *            array receiving the P/E Ratio at the index of each price
+	 * @param statuses
+	 *            array receiving the status of each price, one of the STATUS
+	 *            constants of
+	 *            {@link com.gbce.stockmarket.analytics.StockRatioCalculator}
+	 * @return number of prices without a P/E Ratio
+	 */
+	int calculatePERatios(String[] stockSymbols, int[] priceOffsets, double[] prices, double[] peRatios,
+			byte[] statuses);
+
 	/**
 	 * Calculates Volume Weighted Stock Price based on trades in past given time
 	 * frame (e.g. past 5 minutes) for a given stock
@@ -80,6 +158,34 @@ public interface StockService {
 	 */
 	double calculateVolumeStockPrice(String stockSymbol, int timeInMinutes);
 
+	/**
+	 * Calculates Volume Weighted Stock Price based on trades within a given
+	 * time frame for a given stock, such as a trading day in the past
+	 * 
+	 * @param stockSymbol
+	 *            symbol representing a stock in GBCE Stock Market
+	 * @param fromTime
+	 *            start of the time frame (inclusive), null for no lower bound
+	 * @param toTime
+	 *            end of the time frame (exclusive), null for no upper bound
+	 * @return Volume Weighted Stock Price calculated value, 0 if there are no
+	 *         trades within the time frame
+	 */
+	double calculateVolumeStockPrice(String stockSymbol, Date fromTime, Date toTime);
+
+	/**
+	 * Calculates Volume Weighted Stock Price for all stocks based on trades in
+	 * several past time frames (e.g. past 1, 5, 15 and 60 minutes) in a single
+	 * query
+	 * 
+	 * @param timesInMinutes
+	 *            past amounts of time in minutes to look up trades for
+	 *            calculation
+	 * @return Volume Weighted Stock Prices calculated values, by stock and
+	 *         time frame
+	 */
+	VolumeWeightedPrices calculateVolumeStockPrices(int... timesInMinutes);
+
 	/**
 	 * Calculates the GBCE All Share Index using the geometric mean of the
 	 * Volume Weighted Stock Price for all stocks
@@ -88,4 +194,31 @@ public interface StockService {
 	 */
 	double calculateAllShareIndex();
 
+	/**
+	 * Fetches the latest candle bars with open, high, low and close prices,
+	 * volume and Volume Weighted Stock Price of a given stock
+	 * 
+	 * @param stockSymbol
+	 *            symbol representing a stock in GBCE Stock Market
+	 * @param intervalMillis
+	 *            interval of the bars in millis, such as 1 second, 1 minute, 5
+	 *            minutes or 1 hour
+	 * @param barCount
+	 *            highest number of bars to fetch
+	 * @return latest bars, oldest first
+	 */
+	List<Candle> getCandles(String stockSymbol, long intervalMillis, int barCount);
+
+	/**
+	 * Subscribes a listener to be pushed recorded trades, and changes of the
+	 * Volume Weighted Stock Price of each stock and of the All Share Index,
+	 * instead of polling for them. Prices are conflated for slow listeners.
+	 * 
+	 * @param listener
+	 *            listener to be pushed market data changes
+	 * @return subscription, to be cancelled when changes are not needed any
+	 *         more
+	 */
+	MarketDataSubscription subscribe(MarketDataListener listener);
+
 }
@@ -1,19 +1,36 @@
 package com.gbce.stockmarket.service;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
-import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.gbce.stockmarket.analytics.CandleAggregator;
+import com.gbce.stockmarket.analytics.StockRatioCalculator;
+import com.gbce.stockmarket.analytics.VolumeWeightedPriceEngine;
+import com.gbce.stockmarket.analytics.VolumeWeightedPriceIndex;
+import com.gbce.stockmarket.beans.Candle;
 import com.gbce.stockmarket.beans.Stock;
 import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.beans.VolumeWeightedPrices;
 import com.gbce.stockmarket.constants.StockType;
 import com.gbce.stockmarket.dao.StockDao;
 import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.ingestion.TradeIngestionPipeline;
+import com.gbce.stockmarket.metrics.MetricsRegistry;
+import com.gbce.stockmarket.metrics.OperationMetrics;
+import com.gbce.stockmarket.subscription.MarketDataListener;
+import com.gbce.stockmarket.subscription.MarketDataPublisher;
+import com.gbce.stockmarket.subscription.MarketDataSubscription;
+import com.gbce.stockmarket.util.MarketClock;
+import com.gbce.stockmarket.util.SymbolRegistry;
 
 /**
  * Implementation of Stock Service. <br>
@@ -39,8 +56,86 @@ public class StockServiceImpl implements StockService {
 	@Autowired
 	private TradeDao tradeDao;
 
+	/**
+	 * Volume Weighted Stock Price engine injected via Spring Auto Wiring
+	 */
+	@Autowired
+	private VolumeWeightedPriceEngine volumeWeightedPriceEngine;
+
+	/**
+	 * Volume Weighted Stock Price index over any time frame injected via
+	 * Spring Auto Wiring
+	 */
+	@Autowired
+	private VolumeWeightedPriceIndex volumeWeightedPriceIndex;
+
+	/**
+	 * Candle bar aggregator injected via Spring Auto Wiring
+	 */
+	@Autowired
+	private CandleAggregator candleAggregator;
+
+	/**
+	 * Market Data publisher injected via Spring Auto Wiring
+	 */
+	@Autowired
+	private MarketDataPublisher marketDataPublisher;
+
+	/**
+	 * Optional asynchronous trade ingestion pipeline injected via Spring Auto
+	 * Wiring. When configured, such as by {@link config.TradeIngestionSpringConfig},
+	 * trades are recorded through the pipeline instead of on the caller's
+	 * thread.
+	 */
+	@Autowired(required = false)
+	private TradeIngestionPipeline tradeIngestionPipeline;
+
+	/**
+	 * Optional market clock injected via Spring Auto Wiring, the wall clock
+	 * unless configured, such as to replay past trades.
+	 */
+	@Autowired(required = false)
+	private MarketClock marketClock = MarketClock.SYSTEM;
+
+	private OperationMetrics findStockMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics recordTradeMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics recordTradesMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics dividendYieldMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics peRatioMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics dividendYieldsMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics peRatiosMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics volumeStockPriceMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics timeFrameVolumeStockPriceMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics volumeStockPricesMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics allShareIndexMetrics = OperationMetrics.DISABLED;
+	private OperationMetrics candlesMetrics = OperationMetrics.DISABLED;
+
 	private static final Logger logger = LoggerFactory.getLogger(StockServiceImpl.class);
 
+	/**
+	 * Looks up the metrics of the service operations. Injected via Spring
+	 * Auto Wiring, operations are not measured without a metrics registry.
+	 * 
+	 * @param metricsRegistry
+	 *            registry of metrics
+	 */
+	@Autowired(required = false)
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		findStockMetrics = metricsRegistry.getOperationMetrics("StockService.findStock");
+		recordTradeMetrics = metricsRegistry.getOperationMetrics("StockService.recordTrade");
+		recordTradesMetrics = metricsRegistry.getOperationMetrics("StockService.recordTrades");
+		dividendYieldMetrics = metricsRegistry.getOperationMetrics("StockService.calculateDividendYield");
+		peRatioMetrics = metricsRegistry.getOperationMetrics("StockService.calculatePERatio");
+		dividendYieldsMetrics = metricsRegistry.getOperationMetrics("StockService.calculateDividendYields");
+		peRatiosMetrics = metricsRegistry.getOperationMetrics("StockService.calculatePERatios");
+		volumeStockPriceMetrics = metricsRegistry.getOperationMetrics("StockService.calculateVolumeStockPrice");
+		timeFrameVolumeStockPriceMetrics = metricsRegistry
+				.getOperationMetrics("StockService.calculateVolumeStockPriceForTimeFrame");
+		volumeStockPricesMetrics = metricsRegistry.getOperationMetrics("StockService.calculateVolumeStockPrices");
+		allShareIndexMetrics = metricsRegistry.getOperationMetrics("StockService.calculateAllShareIndex");
+		candlesMetrics = metricsRegistry.getOperationMetrics("StockService.getCandles");
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -52,40 +147,98 @@ public class StockServiceImpl implements StockService {
 
 		logger.info("Looking up Stock with symbol : " + stockSymbol);
 
-		Stock stock = null;
+		return measure(findStockMetrics, () -> {
+			Stock stock = stockDao.findStock(stockSymbol);
+			logger.info("Found Stock : " + stock);
+			return stock;
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.service.StockService#recordTrade(com.gbce.
+	 * stockmarket.beans.Trade)
+	 */
+	@Override
+	public boolean recordTrade(Trade trade) {
+
+		// No logging on success, this is the hot path of the application. An
+		// audit trail can be kept by a TradeAuditSink listening to Trade DAO,
+		// see config.TradeAuditSpringConfig.
+
+		long startNanos = System.nanoTime();
 
 		try {
-			stock = stockDao.findStock(stockSymbol);
-			logger.info("Found Stock : " + stock);
-		} catch (Exception e) {
+			validateTrade(trade);
+			if (tradeIngestionPipeline != null) {
+				tradeIngestionPipeline.publish(trade);
+				return true;
+			}
+			return tradeDao.addTrade(trade);
+		} catch (RuntimeException e) {
+			recordTradeMetrics.recordError();
 			logger.error(e.getMessage());
 			throw e;
+		} finally {
+			recordTradeMetrics.record(startNanos);
 		}
-
-		return stock;
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see com.gbce.stockmarket.service.StockService#recordTrade(com.gbce.
-	 * stockmarket.beans.Trade)
+	 * @see
+	 * com.gbce.stockmarket.service.StockService#recordTrades(java.util.
+	 * Collection)
 	 */
 	@Override
-	public boolean recordTrade(Trade trade) {
+	public int recordTrades(Collection<Trade> trades) {
 
-		logger.info("Adding trade to database : " + trade);
+		logger.info("Adding batch of " + trades.size() + " trades to database");
 
-		boolean tradeAdded = false;
+		long startNanos = System.nanoTime();
 
 		try {
-			tradeAdded = tradeDao.addTrade(trade);
-		} catch (Exception e) {
+			for (Trade trade : trades) {
+				validateTrade(trade);
+			}
+			if (tradeIngestionPipeline != null) {
+				for (Trade trade : trades) {
+					tradeIngestionPipeline.publish(trade);
+				}
+				return trades.size();
+			}
+			return tradeDao.addTrades(trades);
+		} catch (RuntimeException e) {
+			recordTradesMetrics.recordError();
 			logger.error(e.getMessage());
 			throw e;
+		} finally {
+			recordTradesMetrics.record(startNanos);
+		}
+	}
+
+	/**
+	 * Validates a trade before it is recorded.
+	 * 
+	 * @param trade
+	 *            Trade object to be validated
+	 */
+	private void validateTrade(Trade trade) {
+
+		if (trade == null || trade.getStock() == null || trade.getStock().getSymbol() == null) {
+			throw new RuntimeException("Trade should be made on a stock. Cannot process trade : " + trade);
+		}
+
+		if (trade.getTimeStamp() == null || trade.getType() == null) {
+			throw new RuntimeException("Trade should have a time stamp and a type. Cannot process trade : " + trade);
 		}
 
-		return tradeAdded;
+		if (trade.getStocksQuantity() <= 0 || trade.getPrice() <= 0) {
+			throw new RuntimeException(
+					"Quantity and price should be positive numbers. Cannot process trade : " + trade);
+		}
 	}
 
 	/*
@@ -100,14 +253,14 @@ public class StockServiceImpl implements StockService {
 
 		logger.info("Calculating divident yield for stock with symbol : " + stockSymbol + ", and price = " + price);
 
-		double dividendYield = 0.0;
-
-		try {
+		return measure(dividendYieldMetrics, () -> {
 
 			if (price <= 0) {
 				throw new RuntimeException("Price should be a positive number. Cannot process with price = " + price);
 			}
 
+			double dividendYield = 0.0;
+
 			Stock stock = stockDao.findStock(stockSymbol);
 
 			if (stock.getType() == StockType.COMMON) {
@@ -117,12 +270,9 @@ public class StockServiceImpl implements StockService {
 			}
 
 			logger.info("Dividend Yield = " + dividendYield);
-		} catch (Exception e) {
-			logger.error(e.getMessage());
-			throw e;
-		}
 
-		return dividendYield;
+			return dividendYield;
+		});
 	}
 
 	/*
@@ -137,9 +287,7 @@ public class StockServiceImpl implements StockService {
 
 		logger.info("Calculating P/E ratio for stock with symbol : " + stockSymbol + ", and price = " + price);
 
-		double peRatio = 0.0;
-
-		try {
+		return measure(peRatioMetrics, () -> {
 
 			if (price <= 0) {
 				throw new RuntimeException("Price should be a positive number. Cannot process with price = " + price);
@@ -151,15 +299,121 @@ public class StockServiceImpl implements StockService {
 				throw new RuntimeException("Dividend = 0, Cannot calculate P/E ratio for stock : " + stock);
 			}
 
-			peRatio = price / stock.getLastDividend();
+			double peRatio = price / stock.getLastDividend();
 
 			logger.info("P/E Ratio = " + peRatio);
-		} catch (Exception e) {
+
+			return peRatio;
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.service.StockService#calculateDividendYields(java.
+	 * lang.String[], int[], double[], double[], byte[])
+	 */
+	@Override
+	public int calculateDividendYields(String[] stockSymbols, int[] priceOffsets, double[] prices,
+			double[] dividendYields, byte[] statuses) {
+
+		long startNanos = System.nanoTime();
+
+		try {
+
+			checkPriceGrid(stockSymbols, priceOffsets, prices, dividendYields, statuses);
+
+			int invalidCount = 0;
+			for (int i = 0; i < stockSymbols.length; i++) {
+				invalidCount += StockRatioCalculator.calculateDividendYields(findStockOrNull(stockSymbols[i]),
+						prices, priceOffsets[i], priceOffsets[i + 1], dividendYields, statuses);
+			}
+
+			logger.info("Calculated dividend yields of " + stockSymbols.length + " stocks at "
+					+ priceOffsets[stockSymbols.length] + " prices, invalid prices = " + invalidCount);
+
+			return invalidCount;
+		} catch (RuntimeException e) {
+			dividendYieldsMetrics.recordError();
+			logger.error(e.getMessage());
+			throw e;
+		} finally {
+			dividendYieldsMetrics.record(startNanos);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.service.StockService#calculatePERatios(java.lang.
+	 * String[], int[], double[], double[], byte[])
+	 */
+	@Override
+	public int calculatePERatios(String[] stockSymbols, int[] priceOffsets, double[] prices, double[] peRatios,
+			byte[] statuses) {
+
+		long startNanos = System.nanoTime();
+
+		try {
+
+			checkPriceGrid(stockSymbols, priceOffsets, prices, peRatios, statuses);
+
+			int invalidCount = 0;
+			for (int i = 0; i < stockSymbols.length; i++) {
+				invalidCount += StockRatioCalculator.calculatePERatios(findStockOrNull(stockSymbols[i]), prices,
+						priceOffsets[i], priceOffsets[i + 1], peRatios, statuses);
+			}
+
+			logger.info("Calculated P/E ratios of " + stockSymbols.length + " stocks at "
+					+ priceOffsets[stockSymbols.length] + " prices, invalid prices = " + invalidCount);
+
+			return invalidCount;
+		} catch (RuntimeException e) {
+			peRatiosMetrics.recordError();
 			logger.error(e.getMessage());
 			throw e;
+		} finally {
+			peRatiosMetrics.record(startNanos);
 		}
+	}
 
-		return peRatio;
+	/**
+	 * Checks the arrays of a grid of prices grouped by stock fit together.
+	 */
+	private static void checkPriceGrid(String[] stockSymbols, int[] priceOffsets, double[] prices,
+			double[] ratios, byte[] statuses) {
+		if (priceOffsets.length != stockSymbols.length + 1 || priceOffsets[0] != 0) {
+			throw new RuntimeException("Price offsets should start at 0 and hold one more offset than the "
+					+ stockSymbols.length + " stock symbols. Cannot process with " + priceOffsets.length
+					+ " price offsets.");
+		}
+		for (int i = 0; i < stockSymbols.length; i++) {
+			if (priceOffsets[i + 1] < priceOffsets[i]) {
+				throw new RuntimeException("Price offsets should not decrease. Cannot process with price offset "
+						+ priceOffsets[i + 1] + " after " + priceOffsets[i]);
+			}
+		}
+		int priceCount = priceOffsets[stockSymbols.length];
+		if (prices.length < priceCount || ratios.length < priceCount || statuses.length < priceCount) {
+			throw new RuntimeException("Prices, results and statuses should hold " + priceCount
+					+ " items. Cannot process with " + prices.length + ", " + ratios.length + " and "
+					+ statuses.length + " items.");
+		}
+	}
+
+	/**
+	 * Looks up a stock of a grid of prices. Unknown stocks are reported in the
+	 * statuses of their prices, so they are neither logged nor counted as
+	 * errors.
+	 * 
+	 * @return the stock with the given symbol, null if it is not found in
+	 *         database
+	 */
+	private Stock findStockOrNull(String stockSymbol) {
+		int stockId = SymbolRegistry.getInstance().findId(stockSymbol);
+		return stockId < 0 ? null : stockDao.getStock(stockId);
 	}
 
 	/*
@@ -180,25 +434,72 @@ public class StockServiceImpl implements StockService {
 		}
 		logger.info(logMessage);
 
-		double volumeWeigthedStockPrice = 0;
+		double volumeWeigthedStockPrice;
 
-		SortedMap<Date, Trade> trades = tradeDao.getAllTradesForStock(stockSymbol);
+		long startNanos = System.nanoTime();
 
-		if (timeInMinutes > 0) {
-			Date startTime = new Date(new Date().getTime() - (timeInMinutes * 60 * 1000));
-			trades = trades.tailMap(startTime);
+		try {
+			if (timeInMinutes <= 0) {
+				volumeWeigthedStockPrice = volumeWeightedPriceEngine.getVolumeWeightedPrice(stockSymbol);
+			} else {
+				long currentTime = marketClock.currentTimeMillis();
+				long startTime = currentTime - (timeInMinutes * 60 * 1000L);
+				volumeWeigthedStockPrice = volumeWeightedPriceEngine.getVolumeWeightedPrice(stockSymbol,
+						startTime, currentTime);
+				if (Double.isNaN(volumeWeigthedStockPrice)) {
+					// Time frame is longer than the engine window, sum up trades.
+					volumeWeigthedStockPrice = calculateVolumeStockPrice(
+							tradeDao.getTradesForStock(stockSymbol, new Date(startTime), null));
+				}
+			}
+		} catch (RuntimeException e) {
+			volumeStockPriceMetrics.recordError();
+			logger.error(e.getMessage());
+			throw e;
+		} finally {
+			volumeStockPriceMetrics.record(startNanos);
 		}
 
-		double totalPrice = 0.0;
-		int totalQuantity = 0;
+		logger.info("Volume Weighted Stock Price for stock with symbol : " + stockSymbol + " = "
+				+ volumeWeigthedStockPrice);
 
-		for (Trade trade : trades.values()) {
-			totalQuantity += trade.getStocksQuantity();
-			totalPrice += trade.getPrice() * trade.getStocksQuantity();
-		}
+		return volumeWeigthedStockPrice;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.service.StockService#calculateVolumeStockPrice(java.
+	 * lang.String, java.util.Date, java.util.Date)
+	 */
+	@Override
+	public double calculateVolumeStockPrice(String stockSymbol, Date fromTime, Date toTime) {
+
+		logger.info("Calculating Volume Weighted Stock Price for stock with symbol : " + stockSymbol
+				+ " for trades from " + fromTime + " to " + toTime);
+
+		double volumeWeigthedStockPrice;
+
+		long startNanos = System.nanoTime();
+
+		try {
+			if (fromTime != null && toTime != null && fromTime.after(toTime)) {
+				throw new RuntimeException("Time frame should not end before it starts. Cannot process from "
+						+ fromTime + " to " + toTime);
+			}
 
-		if (totalQuantity > 0) {
-			volumeWeigthedStockPrice = totalPrice / totalQuantity;
+			long fromTimeNanos = fromTime == null ? Long.MIN_VALUE : TimeUnit.MILLISECONDS.toNanos(fromTime
+					.getTime());
+			long toTimeNanos = toTime == null ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(toTime.getTime());
+			volumeWeigthedStockPrice = volumeWeightedPriceIndex.getVolumeWeightedPrice(stockSymbol, fromTimeNanos,
+					toTimeNanos);
+		} catch (RuntimeException e) {
+			timeFrameVolumeStockPriceMetrics.recordError();
+			logger.error(e.getMessage());
+			throw e;
+		} finally {
+			timeFrameVolumeStockPriceMetrics.record(startNanos);
 		}
 
 		logger.info("Volume Weighted Stock Price for stock with symbol : " + stockSymbol + " = "
@@ -207,6 +508,63 @@ public class StockServiceImpl implements StockService {
 		return volumeWeigthedStockPrice;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.service.StockService#calculateVolumeStockPrices(int
+	 * [])
+	 */
+	@Override
+	public VolumeWeightedPrices calculateVolumeStockPrices(int... timesInMinutes) {
+
+		logger.info("Calculating Volume Weighted Stock Price for all stocks for trades in past "
+				+ Arrays.toString(timesInMinutes) + " minutes.");
+
+		long startNanos = System.nanoTime();
+
+		try {
+			if (timesInMinutes.length == 0) {
+				throw new RuntimeException("At least one time frame should be given. Cannot process request.");
+			}
+			for (int timeInMinutes : timesInMinutes) {
+				if (timeInMinutes <= 0) {
+					throw new RuntimeException("Time frame should be more than 0 minutes. Cannot process "
+							+ timeInMinutes + " minutes.");
+				}
+			}
+
+			return volumeWeightedPriceIndex.getVolumeWeightedPrices(timesInMinutes, marketClock.currentTimeNanos());
+		} catch (RuntimeException e) {
+			volumeStockPricesMetrics.recordError();
+			logger.error(e.getMessage());
+			throw e;
+		} finally {
+			volumeStockPricesMetrics.record(startNanos);
+		}
+	}
+
+	/**
+	 * Calculates Volume Weighted Stock Price of given trades.
+	 * 
+	 * @param trades
+	 *            trades to be used for calculation
+	 * @return Volume Weighted Stock Price calculated value, 0 if there are no
+	 *         trades
+	 */
+	private double calculateVolumeStockPrice(Collection<Trade> trades) {
+
+		double totalPrice = 0.0;
+		long totalQuantity = 0;
+
+		for (Trade trade : trades) {
+			totalQuantity += trade.getStocksQuantity();
+			totalPrice += trade.getPrice() * trade.getStocksQuantity();
+		}
+
+		return totalQuantity > 0 ? totalPrice / totalQuantity : 0.0;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -217,23 +575,19 @@ public class StockServiceImpl implements StockService {
 
 		logger.info("Calculating All Share Index");
 
-		double allShareIndex = 0.0;
-		double shareIndexProduct = 1.0;
+		double allShareIndex;
 
-		List<Stock> allStocks = stockDao.getAllStocks();
+		long startNanos = System.nanoTime();
 
-		int volumeStockPriceCount = 0;
-		for (Stock stock : allStocks) {
-			double volumeStockPrice = calculateVolumeStockPrice(stock.getSymbol(), 0);
-			if (volumeStockPrice > 0) {
-				shareIndexProduct *= volumeStockPrice;
-				volumeStockPriceCount++;
-			}
-		}
-
-		if (allStocks.size() > 0) {
-			allShareIndex = Math.pow(shareIndexProduct, 1.0 / volumeStockPriceCount);
+		try {
+			allShareIndex = volumeWeightedPriceEngine.getAllShareIndex();
 			allShareIndex = Math.round(allShareIndex * 100) / 100;
+		} catch (RuntimeException e) {
+			allShareIndexMetrics.recordError();
+			logger.error(e.getMessage());
+			throw e;
+		} finally {
+			allShareIndexMetrics.record(startNanos);
 		}
 
 		logger.info("All Share Index = " + allShareIndex);
@@ -241,4 +595,48 @@ public class StockServiceImpl implements StockService {
 		return allShareIndex;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.service.StockService#getCandles(java.lang.
+	 * String, long, int)
+	 */
+	@Override
+	public List<Candle> getCandles(String stockSymbol, long intervalMillis, int barCount) {
+
+		logger.info("Fetching " + barCount + " candles of " + intervalMillis + " millis for stock with symbol : "
+				+ stockSymbol);
+
+		return measure(candlesMetrics, () -> candleAggregator.getCandles(stockSymbol, intervalMillis, barCount));
+	}
+
+	/**
+	 * Runs an operation of the service through its metrics, logging the
+	 * message of the error it fails with. Only for calls off the hot path, as
+	 * the operation is allocated per call: hot paths time themselves inline.
+	 */
+	private <T> T measure(OperationMetrics metrics, Supplier<T> operation) {
+		try {
+			return metrics.measure(operation);
+		} catch (RuntimeException e) {
+			logger.error(e.getMessage());
+			throw e;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.service.StockService#subscribe(com.gbce.stockmarket.
+	 * subscription.MarketDataListener)
+	 */
+	@Override
+	public MarketDataSubscription subscribe(MarketDataListener listener) {
+
+		logger.info("Subscribing Market Data listener : " + listener);
+
+		return marketDataPublisher.subscribe(listener);
+	}
+
 }
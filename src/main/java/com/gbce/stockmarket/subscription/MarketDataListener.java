@@ -0,0 +1,47 @@
+package com.gbce.stockmarket.subscription;
+
+import com.gbce.stockmarket.beans.Trade;
+
+/**
+ * Listener pushed market data changes by the Market Data publisher, instead of
+ * polling Stock Service. <br>
+ * 
+ * Calls are made on a delivery thread of the publisher, one call at a time per
+ * subscription. Volume Weighted Stock Prices and the All Share Index are
+ * conflated: a slow listener is only called with the latest value, skipping
+ * the values it had no time to receive. Trades are buffered up to a limit,
+ * and dropped past it.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public interface MarketDataListener {
+
+	/**
+	 * Called for each trade recorded.
+	 * 
+	 * @param trade
+	 *            Trade object recorded
+	 */
+	void tradeRecorded(Trade trade);
+
+	/**
+	 * Called when the Volume Weighted Stock Price of a stock changed.
+	 * 
+	 * @param stockSymbol
+	 *            symbol representing a stock in GBCE Stock Market
+	 * @param volumeWeightedPrice
+	 *            latest Volume Weighted Stock Price of the stock, 0 if there
+	 *            are no trades
+	 */
+	void volumeWeightedPriceChanged(String stockSymbol, double volumeWeightedPrice);
+
+	/**
+	 * Called when the GBCE All Share Index changed.
+	 * 
+	 * @param allShareIndex
+	 *            latest All Share Index
+	 */
+	void allShareIndexChanged(double allShareIndex);
+
+}
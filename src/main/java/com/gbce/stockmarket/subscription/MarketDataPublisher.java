@@ -0,0 +1,262 @@
+package com.gbce.stockmarket.subscription;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.gbce.stockmarket.analytics.VolumeWeightedPriceEngine;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.dao.TradeListener;
+
+/**
+ * Publisher pushing trades, Volume Weighted Stock Price changes and All Share
+ * Index changes to subscribed Market Data listeners. <br>
+ * 
+ * Listens to the Trade DAO after the Volume Weighted Stock Price engine, and
+ * marks the changes pending on every subscription. Pending changes are
+ * delivered on a small pool of delivery threads, so a slow listener neither
+ * holds up recording trades nor the other listeners. Prices are conflated and
+ * trades buffered per subscription, see
+ * {@link com.gbce.stockmarket.subscription.MarketDataSubscription}. <br>
+ * 
+ * Without any subscription, recording a trade only costs a check of the
+ * subscription list.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Component
+public class MarketDataPublisher implements TradeListener {
+
+	/**
+	 * Default number of trades buffered per subscription
+	 */
+	public static final int DEFAULT_TRADE_BUFFER_SIZE = 1024;
+
+	/**
+	 * Default number of threads delivering changes to listeners
+	 */
+	public static final int DEFAULT_DELIVERY_THREADS = 2;
+
+	/**
+	 * Trade DAO object injected via Spring Auto Wiring
+	 */
+	@Autowired
+	private TradeDao tradeDao;
+
+	/**
+	 * Volume Weighted Stock Price engine injected via Spring Auto Wiring
+	 */
+	@Autowired
+	private VolumeWeightedPriceEngine volumeWeightedPriceEngine;
+
+	private final List<MarketDataSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	private int tradeBufferSize = DEFAULT_TRADE_BUFFER_SIZE;
+	private int deliveryThreads = DEFAULT_DELIVERY_THREADS;
+
+	private volatile ExecutorService deliveryExecutor;
+
+	public MarketDataPublisher() {
+		super();
+	}
+
+	/**
+	 * Creates a publisher listening to a given Trade DAO, for use outside of
+	 * Spring. The given engine must already listen to the Trade DAO.
+	 * 
+	 * @param tradeDao
+	 *            Trade DAO to be listened to
+	 * @param volumeWeightedPriceEngine
+	 *            engine to read Volume Weighted Stock Prices and All Share
+	 *            Index from
+	 */
+	public MarketDataPublisher(TradeDao tradeDao, VolumeWeightedPriceEngine volumeWeightedPriceEngine) {
+		this.tradeDao = tradeDao;
+		this.volumeWeightedPriceEngine = volumeWeightedPriceEngine;
+		init();
+	}
+
+	/**
+	 * Registers the publisher with Trade DAO to be notified of trades.
+	 */
+	@PostConstruct
+	public void init() {
+		tradeDao.addTradeListener(this);
+	}
+
+	/**
+	 * Subscribes a listener to market data changes from now on.
+	 * 
+	 * @param listener
+	 *            listener to be pushed changes
+	 * @return subscription, to be cancelled when changes are not needed any
+	 *         more
+	 */
+	public MarketDataSubscription subscribe(MarketDataListener listener) {
+		if (listener == null) {
+			throw new RuntimeException("Market Data listener should not be null. Cannot subscribe.");
+		}
+		synchronized (this) {
+			if (deliveryExecutor == null) {
+				startDelivery();
+			}
+		}
+		MarketDataSubscription subscription = new MarketDataSubscription(this, listener, tradeBufferSize);
+		subscriptions.add(subscription);
+		return subscription;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeListener#tradeAdded(com.gbce.stockmarket.
+	 * beans.Trade)
+	 */
+	@Override
+	public void tradeAdded(Trade trade) {
+		int stockId = trade.getStock().getStockId();
+		for (MarketDataSubscription subscription : subscriptions) {
+			synchronized (subscription) {
+				subscription.tradeRecorded(trade);
+				subscription.stockChanged(stockId);
+			}
+			subscription.schedule();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.gbce.stockmarket.dao.TradeListener#tradesAdded(java.util.List)
+	 */
+	@Override
+	public void tradesAdded(List<Trade> trades) {
+		for (MarketDataSubscription subscription : subscriptions) {
+			synchronized (subscription) {
+				for (int i = 0; i < trades.size(); i++) {
+					Trade trade = trades.get(i);
+					subscription.tradeRecorded(trade);
+					subscription.stockChanged(trade.getStock().getStockId());
+				}
+			}
+			subscription.schedule();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.gbce.stockmarket.dao.TradeListener#tradeDeleted(com.gbce.stockmarket.
+	 * beans.Trade)
+	 */
+	@Override
+	public void tradeDeleted(Trade trade) {
+		int stockId = trade.getStock().getStockId();
+		for (MarketDataSubscription subscription : subscriptions) {
+			synchronized (subscription) {
+				subscription.stockChanged(stockId);
+			}
+			subscription.schedule();
+		}
+	}
+
+	/**
+	 * Cancels all subscriptions and stops the delivery threads.
+	 */
+	@PreDestroy
+	public void close() {
+		for (MarketDataSubscription subscription : subscriptions) {
+			subscription.cancel();
+		}
+		synchronized (this) {
+			if (deliveryExecutor != null) {
+				deliveryExecutor.shutdown();
+				deliveryExecutor = null;
+			}
+		}
+	}
+
+	public int getSubscriptionCount() {
+		return subscriptions.size();
+	}
+
+	public int getTradeBufferSize() {
+		return tradeBufferSize;
+	}
+
+	/**
+	 * Sets number of trades buffered per subscription. Only applies to
+	 * subscriptions made afterwards.
+	 * 
+	 * @param tradeBufferSize
+	 *            number of trades
+	 */
+	public void setTradeBufferSize(int tradeBufferSize) {
+		this.tradeBufferSize = tradeBufferSize;
+	}
+
+	public int getDeliveryThreads() {
+		return deliveryThreads;
+	}
+
+	/**
+	 * Sets number of threads delivering changes to listeners. Only to be set
+	 * before the first subscription.
+	 * 
+	 * @param deliveryThreads
+	 *            number of threads
+	 */
+	public void setDeliveryThreads(int deliveryThreads) {
+		this.deliveryThreads = deliveryThreads;
+	}
+
+	void unsubscribe(MarketDataSubscription subscription) {
+		subscriptions.remove(subscription);
+	}
+
+	void execute(Runnable delivery) {
+		ExecutorService executor = deliveryExecutor;
+		if (executor != null) {
+			try {
+				executor.execute(delivery);
+			} catch (RejectedExecutionException e) {
+				// Publisher closed while changes were pending.
+			}
+		}
+	}
+
+	double getVolumeWeightedPrice(String stockSymbol) {
+		return volumeWeightedPriceEngine.getVolumeWeightedPrice(stockSymbol);
+	}
+
+	double getAllShareIndex() {
+		return volumeWeightedPriceEngine.getAllShareIndex();
+	}
+
+	private void startDelivery() {
+		final AtomicInteger threadCount = new AtomicInteger();
+		deliveryExecutor = Executors.newFixedThreadPool(deliveryThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "market-data-delivery-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+}
@@ -0,0 +1,216 @@
+package com.gbce.stockmarket.subscription;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.util.SymbolRegistry;
+
+/**
+ * Subscription of a Market Data listener to the Market Data publisher. <br>
+ * 
+ * Changes are marked pending on the thread recording trades, and delivered to
+ * the listener on a delivery thread. A changed stock is only marked, and its
+ * Volume Weighted Stock Price read when it is delivered, so however many
+ * trades are made while the listener is busy, it receives the latest price
+ * once. Prices equal to the last one delivered are not delivered again.
+ * Trades are buffered up to a given number per subscription, further trades
+ * are dropped and counted.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public class MarketDataSubscription {
+
+	private static final Logger logger = LoggerFactory.getLogger(MarketDataSubscription.class);
+
+	private final MarketDataPublisher publisher;
+	private final MarketDataListener listener;
+	private final int tradeBufferSize;
+
+	/*
+	 * Pending changes, guarded by the subscription.
+	 */
+	private final ArrayDeque<Trade> pendingTrades = new ArrayDeque<>();
+	private boolean[] stockPending = new boolean[16];
+	private int[] pendingStockIds = new int[16];
+	private int pendingStockCount;
+	private boolean allShareIndexPending;
+
+	/*
+	 * Changes being delivered, only used by the delivering thread.
+	 */
+	private final List<Trade> deliveredTrades = new ArrayList<>();
+	private int[] deliveredStockIds = new int[16];
+	private double[] deliveredPrices = newPrices(new double[0], 16);
+	private double deliveredAllShareIndex = Double.NaN;
+
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final AtomicLong droppedTrades = new AtomicLong();
+	private volatile boolean cancelled;
+
+	private final Runnable delivery = new Runnable() {
+		@Override
+		public void run() {
+			do {
+				deliver();
+				scheduled.set(false);
+			} while (hasPending() && scheduled.compareAndSet(false, true));
+		}
+	};
+
+	MarketDataSubscription(MarketDataPublisher publisher, MarketDataListener listener, int tradeBufferSize) {
+		this.publisher = publisher;
+		this.listener = listener;
+		this.tradeBufferSize = tradeBufferSize;
+	}
+
+	/**
+	 * Stops delivering changes to the listener. Changes already being
+	 * delivered may still reach the listener.
+	 */
+	public void cancel() {
+		cancelled = true;
+		publisher.unsubscribe(this);
+		synchronized (this) {
+			pendingTrades.clear();
+			pendingStockCount = 0;
+			Arrays.fill(stockPending, false);
+			allShareIndexPending = false;
+		}
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @return number of trades not delivered because the trade buffer of the
+	 *         subscription was full
+	 */
+	public long getDroppedTrades() {
+		return droppedTrades.get();
+	}
+
+	/**
+	 * Marks a trade pending. Only to be called while holding the lock of the
+	 * subscription.
+	 */
+	void tradeRecorded(Trade trade) {
+		if (pendingTrades.size() < tradeBufferSize) {
+			pendingTrades.add(trade);
+		} else {
+			droppedTrades.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Marks the Volume Weighted Stock Price of a stock and the All Share Index
+	 * pending. Only to be called while holding the lock of the subscription.
+	 */
+	void stockChanged(int stockId) {
+		if (stockId >= stockPending.length) {
+			int length = Math.max(stockPending.length * 2, stockId + 1);
+			stockPending = Arrays.copyOf(stockPending, length);
+			pendingStockIds = Arrays.copyOf(pendingStockIds, length);
+		}
+		if (!stockPending[stockId]) {
+			stockPending[stockId] = true;
+			pendingStockIds[pendingStockCount++] = stockId;
+		}
+		allShareIndexPending = true;
+	}
+
+	/**
+	 * Hands pending changes over to a delivery thread, unless one is already
+	 * delivering them.
+	 */
+	void schedule() {
+		if (!cancelled && scheduled.compareAndSet(false, true)) {
+			publisher.execute(delivery);
+		}
+	}
+
+	private synchronized boolean hasPending() {
+		return !cancelled && (!pendingTrades.isEmpty() || pendingStockCount > 0 || allShareIndexPending);
+	}
+
+	private void deliver() {
+
+		int stockCount;
+		boolean allShareIndexChanged;
+		synchronized (this) {
+			deliveredTrades.addAll(pendingTrades);
+			pendingTrades.clear();
+
+			stockCount = pendingStockCount;
+			if (deliveredStockIds.length < stockCount) {
+				deliveredStockIds = new int[pendingStockIds.length];
+			}
+			for (int i = 0; i < stockCount; i++) {
+				deliveredStockIds[i] = pendingStockIds[i];
+				stockPending[pendingStockIds[i]] = false;
+			}
+			pendingStockCount = 0;
+
+			allShareIndexChanged = allShareIndexPending;
+			allShareIndexPending = false;
+		}
+
+		for (int i = 0; i < deliveredTrades.size(); i++) {
+			try {
+				listener.tradeRecorded(deliveredTrades.get(i));
+			} catch (Exception e) {
+				logger.error("Market Data listener failed on trade : " + e.getMessage());
+			}
+		}
+		deliveredTrades.clear();
+
+		for (int i = 0; i < stockCount; i++) {
+			int stockId = deliveredStockIds[i];
+			if (stockId >= deliveredPrices.length) {
+				deliveredPrices = newPrices(deliveredPrices, Math.max(deliveredPrices.length * 2, stockId + 1));
+			}
+			String stockSymbol = SymbolRegistry.getInstance().getSymbol(stockId);
+			double price = publisher.getVolumeWeightedPrice(stockSymbol);
+			if (price != deliveredPrices[stockId]) {
+				deliveredPrices[stockId] = price;
+				try {
+					listener.volumeWeightedPriceChanged(stockSymbol, price);
+				} catch (Exception e) {
+					logger.error("Market Data listener failed on Volume Weighted Stock Price : " + e.getMessage());
+				}
+			}
+		}
+
+		if (allShareIndexChanged) {
+			double allShareIndex = publisher.getAllShareIndex();
+			if (allShareIndex != deliveredAllShareIndex) {
+				deliveredAllShareIndex = allShareIndex;
+				try {
+					listener.allShareIndexChanged(allShareIndex);
+				} catch (Exception e) {
+					logger.error("Market Data listener failed on All Share Index : " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates an array of last delivered prices, NaN for prices never
+	 * delivered.
+	 */
+	private static double[] newPrices(double[] prices, int length) {
+		double[] newPrices = Arrays.copyOf(prices, length);
+		Arrays.fill(newPrices, prices.length, length, Double.NaN);
+		return newPrices;
+	}
+
+}
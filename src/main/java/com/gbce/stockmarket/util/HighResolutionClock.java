@@ -0,0 +1,31 @@
+package com.gbce.stockmarket.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall clock with nanosecond resolution. <br>
+ * 
+ * The JDK wall clock only ticks in milliseconds, so the current time is
+ * derived from the monotonic nano timer, anchored to the wall clock once when
+ * this class is loaded. Time stamps taken one after the other never go
+ * backwards.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public final class HighResolutionClock {
+
+	private static final long EPOCH_NANOS_OFFSET = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis())
+			- System.nanoTime();
+
+	private HighResolutionClock() {
+	}
+
+	/**
+	 * @return current time in nanoseconds since the epoch
+	 */
+	public static long currentTimeNanos() {
+		return EPOCH_NANOS_OFFSET + System.nanoTime();
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.gbce.stockmarket.util;
+
+/**
+ * Clock giving the current time of the market. <br>
+ * 
+ * Components reading the current time, to move time windows on or to look up
+ * trades in past time frames, read it from a market clock. By default this is
+ * the wall clock, a simulated clock is used instead to replay trades recorded
+ * in the past.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public interface MarketClock {
+
+	/**
+	 * Wall clock, with the nanosecond resolution of
+	 * {@link com.gbce.stockmarket.util.HighResolutionClock}
+	 */
+	MarketClock SYSTEM = new MarketClock() {
+
+		@Override
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+
+		@Override
+		public long currentTimeNanos() {
+			return HighResolutionClock.currentTimeNanos();
+		}
+
+	};
+
+	/**
+	 * @return current time in milliseconds since the epoch
+	 */
+	long currentTimeMillis();
+
+	/**
+	 * @return current time in nanoseconds since the epoch
+	 */
+	long currentTimeNanos();
+
+}
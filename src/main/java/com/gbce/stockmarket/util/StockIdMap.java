@@ -0,0 +1,104 @@
+package com.gbce.stockmarket.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Concurrent map from stock id to value, held in an array indexed by id. <br>
+ * 
+ * Reads are a bounds check and an array load, with no hashing and no
+ * locking. Values are only added, once per stock, under a lock which also
+ * grows the array as stocks are registered.
+ * 
+ * @see com.gbce.stockmarket.util.SymbolRegistry
+ * 
+ * @author Ranjan Lal
+ *
+ * @param <V>
+ *            type of the values
+ */
+public class StockIdMap<V> {
+
+	private volatile AtomicReferenceArray<V> values = new AtomicReferenceArray<>(64);
+
+	/**
+	 * @param stockId
+	 *            id of a stock
+	 * @return value of the stock, null if there is none
+	 */
+	public V get(int stockId) {
+		AtomicReferenceArray<V> currentValues = values;
+		return stockId >= 0 && stockId < currentValues.length() ? currentValues.get(stockId) : null;
+	}
+
+	/**
+	 * Sets the value of a stock.
+	 * 
+	 * @param stockId
+	 *            id of a stock
+	 * @param value
+	 *            value of the stock
+	 * @return previous value of the stock, null if there was none
+	 */
+	public synchronized V put(int stockId, V value) {
+		return ensureCapacity(stockId).getAndSet(stockId, value);
+	}
+
+	/**
+	 * Sets the value of a stock unless it already has one.
+	 * 
+	 * @param stockId
+	 *            id of a stock
+	 * @param value
+	 *            value of the stock
+	 * @return previous value of the stock, null if the given value was set
+	 */
+	public synchronized V putIfAbsent(int stockId, V value) {
+		AtomicReferenceArray<V> currentValues = ensureCapacity(stockId);
+		V previousValue = currentValues.get(stockId);
+		if (previousValue == null) {
+			currentValues.set(stockId, value);
+		}
+		return previousValue;
+	}
+
+	/**
+	 * @return values of all stocks, in order of stock id
+	 */
+	public List<V> values() {
+		AtomicReferenceArray<V> currentValues = values;
+		List<V> allValues = new ArrayList<>();
+		for (int i = 0; i < currentValues.length(); i++) {
+			V value = currentValues.get(i);
+			if (value != null) {
+				allValues.add(value);
+			}
+		}
+		return allValues;
+	}
+
+	/**
+	 * Grows the array to hold a given stock id. Only to be called under the
+	 * lock of the map.
+	 * 
+	 * @return current array of values
+	 */
+	private AtomicReferenceArray<V> ensureCapacity(int stockId) {
+		if (stockId < 0) {
+			throw new RuntimeException("Stock id should not be negative : " + stockId);
+		}
+		AtomicReferenceArray<V> currentValues = values;
+		if (stockId >= currentValues.length()) {
+			AtomicReferenceArray<V> newValues = new AtomicReferenceArray<>(Math.max(stockId + 1,
+					currentValues.length() * 2));
+			for (int i = 0; i < currentValues.length(); i++) {
+				newValues.set(i, currentValues.get(i));
+			}
+			values = newValues;
+			currentValues = newValues;
+		}
+		return currentValues;
+	}
+
+}
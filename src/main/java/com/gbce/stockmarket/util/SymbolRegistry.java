@@ -0,0 +1,116 @@
+package com.gbce.stockmarket.util;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of stock symbols, assigning each stock a dense int id. <br>
+ * 
+ * Symbols are matched ignoring case: a symbol is folded to upper case once,
+ * when it is first registered, and every spelling registered is mapped to the
+ * id of the upper case symbol. Ids are handed out from 0 upwards and never
+ * reused, so that data per stock can be held in arrays indexed by id. <br>
+ * 
+ * There is a single registry per JVM, much like interned strings, so that
+ * ids agree between the DAOs and the analytics components, whether they are
+ * set up by Spring or not. A stock caches its id, see
+ * {@link com.gbce.stockmarket.beans.Stock#getStockId()}, so that trades are
+ * matched to their stock without hashing the symbol.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+public final class SymbolRegistry {
+
+	/**
+	 * Id of a symbol which is not registered.
+	 */
+	public static final int UNKNOWN = -1;
+
+	private static final SymbolRegistry INSTANCE = new SymbolRegistry();
+
+	/**
+	 * Ids by symbol, for every spelling registered
+	 */
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+	/**
+	 * Upper case symbols by id, written under the registry lock only
+	 */
+	private volatile String[] symbols = new String[64];
+
+	private volatile int size;
+
+	private SymbolRegistry() {
+	}
+
+	public static SymbolRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Registers a symbol, assigning it the next id unless the symbol is
+	 * already registered in any case.
+	 * 
+	 * @param symbol
+	 *            stock symbol
+	 * @return id of the symbol
+	 */
+	public int register(String symbol) {
+		Integer id = ids.get(symbol);
+		if (id != null) {
+			return id;
+		}
+		synchronized (this) {
+			String canonicalSymbol = symbol.toUpperCase(Locale.ROOT);
+			id = ids.get(canonicalSymbol);
+			if (id == null) {
+				id = size;
+				if (id == symbols.length) {
+					symbols = Arrays.copyOf(symbols, id * 2);
+				}
+				symbols[id] = canonicalSymbol;
+				ids.put(canonicalSymbol, id);
+				size = id + 1;
+			}
+			ids.put(symbol, id);
+			return id;
+		}
+	}
+
+	/**
+	 * Looks up the id of a symbol, ignoring case.
+	 * 
+	 * @param symbol
+	 *            stock symbol
+	 * @return id of the symbol, {@link #UNKNOWN} if it is not registered
+	 */
+	public int findId(String symbol) {
+		Integer id = ids.get(symbol);
+		if (id == null) {
+			id = ids.get(symbol.toUpperCase(Locale.ROOT));
+		}
+		return id == null ? UNKNOWN : id;
+	}
+
+	/**
+	 * @param id
+	 *            id of a symbol
+	 * @return upper case symbol with the given id
+	 */
+	public String getSymbol(int id) {
+		if (id < 0 || id >= size) {
+			throw new RuntimeException("Could not find stock symbol with id : " + id);
+		}
+		return symbols[id];
+	}
+
+	/**
+	 * @return number of symbols registered, one more than the highest id
+	 */
+	public int size() {
+		return size;
+	}
+
+}
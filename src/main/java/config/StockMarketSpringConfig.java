@@ -17,7 +17,7 @@ import com.gbce.stockmarket.constants.StockType;
  *
  */
 @Configuration
-@ComponentScan
+@ComponentScan(basePackages = "com.gbce.stockmarket")
 public class StockMarketSpringConfig {
 
 	/**
@@ -0,0 +1,50 @@
+package config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import com.gbce.stockmarket.audit.TradeAuditSink;
+import com.gbce.stockmarket.dao.TradeDao;
+
+/**
+ * Opt-in Spring Java context configuration keeping an audit trail of the
+ * changes to the Trade data. Registered along with
+ * {@link StockMarketSpringConfig}, as it is not picked up by component
+ * scanning. <br>
+ * 
+ * The audit sink listens to Trade DAO, is started with the context, and is
+ * closed with it once all records published before have been written. Records
+ * are appended to the file named by the property gbce.audit.file, trades.audit
+ * by default.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Configuration
+public class TradeAuditSpringConfig {
+
+	public static final String DEFAULT_AUDIT_FILE = "trades.audit";
+
+	@Autowired
+	private Environment environment;
+
+	/**
+	 * Creates Spring Bean for the audit sink listening to Trade DAO.
+	 * 
+	 * @param tradeDao
+	 *            Trade DAO whose changes are audited
+	 * @return trade audit sink
+	 */
+	@Bean(initMethod = "start", destroyMethod = "close")
+	public TradeAuditSink tradeAuditSink(TradeDao tradeDao) {
+
+		TradeAuditSink auditSink = new TradeAuditSink(environment.getProperty("gbce.audit.file",
+				DEFAULT_AUDIT_FILE));
+		tradeDao.addTradeListener(auditSink);
+
+		return auditSink;
+	}
+
+}
@@ -0,0 +1,53 @@
+package config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.ingestion.TradeIngestionPipeline;
+import com.gbce.stockmarket.ingestion.WaitStrategy;
+
+/**
+ * Opt-in Spring Java context configuration recording trades through the
+ * asynchronous trade ingestion pipeline. Registered along with
+ * {@link StockMarketSpringConfig}, as it is not picked up by component
+ * scanning. <br>
+ * 
+ * The pipeline is started with the context, and closed with it once all
+ * trades published before have been stored. It is sized by the properties
+ * gbce.ingestion.capacity, gbce.ingestion.waitStrategy and
+ * gbce.ingestion.maxBatchSize, which default to the pipeline defaults.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Configuration
+public class TradeIngestionSpringConfig {
+
+	@Autowired
+	private Environment environment;
+
+	/**
+	 * Creates Spring Bean for the trade ingestion pipeline in front of Trade
+	 * DAO.
+	 * 
+	 * @param tradeDao
+	 *            Trade DAO storing the trades
+	 * @return trade ingestion pipeline
+	 */
+	@Bean(initMethod = "start", destroyMethod = "close")
+	public TradeIngestionPipeline tradeIngestionPipeline(TradeDao tradeDao) {
+
+		int capacity = environment.getProperty("gbce.ingestion.capacity", Integer.class,
+				TradeIngestionPipeline.DEFAULT_CAPACITY);
+		WaitStrategy waitStrategy = WaitStrategy
+				.valueOf(environment.getProperty("gbce.ingestion.waitStrategy", WaitStrategy.PARK.name()));
+		int maxBatchSize = environment.getProperty("gbce.ingestion.maxBatchSize", Integer.class,
+				TradeIngestionPipeline.DEFAULT_MAX_BATCH_SIZE);
+
+		return new TradeIngestionPipeline(tradeDao, capacity, waitStrategy, maxBatchSize);
+	}
+
+}
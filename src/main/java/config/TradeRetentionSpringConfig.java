@@ -0,0 +1,83 @@
+package config;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.retention.RetentionPolicy;
+import com.gbce.stockmarket.retention.TradeRetentionSweeper;
+
+/**
+ * Opt-in Spring Java context configuration enforcing a retention policy on
+ * the Trade data. Registered along with {@link StockMarketSpringConfig}, as it
+ * is not picked up by component scanning. <br>
+ * 
+ * The retention sweeper is started with the context and stopped when the
+ * context is closed. Trades are kept for the time set by the property
+ * gbce.retention.millis, an hour by default, and swept every
+ * gbce.retention.sweepIntervalMillis. The retention of a stock can be changed
+ * on the retention policy bean.
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Configuration
+public class TradeRetentionSpringConfig {
+
+	public static final long DEFAULT_RETENTION_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	@Autowired
+	private Environment environment;
+
+	private TradeRetentionSweeper retentionSweeper;
+
+	/**
+	 * Creates Spring Bean for the retention policy of the Trade data.
+	 * 
+	 * @return retention policy
+	 */
+	@Bean
+	public RetentionPolicy retentionPolicy() {
+		return new RetentionPolicy(environment.getProperty("gbce.retention.millis", Long.class,
+				DEFAULT_RETENTION_MILLIS));
+	}
+
+	/**
+	 * Creates Spring Bean for the retention sweeper dropping old trades from
+	 * Trade DAO, and starts it.
+	 * 
+	 * @param tradeDao
+	 *            Trade DAO to drop old trades from
+	 * @param retentionPolicy
+	 *            policy for how long trades are kept
+	 * @return started retention sweeper
+	 */
+	@Bean
+	public TradeRetentionSweeper tradeRetentionSweeper(TradeDao tradeDao, RetentionPolicy retentionPolicy) {
+
+		long sweepIntervalMillis = environment.getProperty("gbce.retention.sweepIntervalMillis", Long.class,
+				TradeRetentionSweeper.DEFAULT_SWEEP_INTERVAL_MILLIS);
+
+		retentionSweeper = new TradeRetentionSweeper(tradeDao, retentionPolicy, sweepIntervalMillis);
+		retentionSweeper.start();
+
+		return retentionSweeper;
+	}
+
+	/**
+	 * Stops the retention sweeper when the context is closed.
+	 */
+	@PreDestroy
+	public void stopRetentionSweeper() {
+		if (retentionSweeper != null) {
+			retentionSweeper.stop();
+		}
+	}
+
+}
@@ -0,0 +1,234 @@
+package com.gbce.stockmarket.analytics;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.gbce.stockmarket.beans.Candle;
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+import com.gbce.stockmarket.dao.ColumnarTradeDaoImpl;
+import com.gbce.stockmarket.dao.ShardedTradeDaoImpl;
+import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.dao.TradeDaoImpl;
+
+/**
+ * TestNG Unit Test class for candle bar aggregator
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Test
+public class CandleAggregatorTest {
+
+	private static final Stock STOCK = new Stock("ALE", StockType.COMMON, 23, 0, 60);
+
+	private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+	/**
+	 * Test to check the bars match binning all trades by interval, for trades
+	 * arriving out of time order, in batches and being deleted.
+	 * 
+	 */
+	@Test
+	public void testCandlesMatchAllTrades() {
+
+		TradeDao tradeDao = new TradeDaoImpl();
+		CandleAggregator aggregator = new CandleAggregator(tradeDao);
+		Random random = new Random(7);
+		List<Trade> trades = new ArrayList<>();
+
+		long now = System.currentTimeMillis();
+
+		List<Trade> batch = new ArrayList<>();
+		for (int i = 0; i < 3000; i++) {
+			Trade trade = new Trade(STOCK, new Date(now - random.nextInt(30 * 60 * 1000)), TradeType.BUY,
+					1 + random.nextInt(100), 1 + random.nextInt(500));
+			trades.add(trade);
+			if (i % 3 == 0) {
+				batch.add(trade);
+				tradeDao.addTrades(batch);
+				batch.clear();
+			} else {
+				tradeDao.addTrade(trade);
+			}
+		}
+
+		for (int i = 0; i < 300; i++) {
+			tradeDao.deleteTrade(trades.remove(random.nextInt(trades.size())));
+		}
+
+		for (long intervalMillis : new long[] { MINUTE, 5 * MINUTE }) {
+			List<Candle> expected = binTrades(trades, intervalMillis);
+			List<Candle> candles = aggregator.getCandles("ale", intervalMillis, 1000);
+
+			assertEquals(candles.size(), expected.size());
+			for (int i = 0; i < candles.size(); i++) {
+				Candle candle = candles.get(i);
+				Candle expectedCandle = expected.get(i);
+				assertEquals(candle.getSymbol(), "ALE");
+				assertEquals(candle.getStartTime(), expectedCandle.getStartTime());
+				assertEquals(candle.getHigh(), expectedCandle.getHigh());
+				assertEquals(candle.getLow(), expectedCandle.getLow());
+				assertEquals(candle.getVolume(), expectedCandle.getVolume());
+				assertEquals(candle.getVolumeWeightedPrice(), expectedCandle.getVolumeWeightedPrice(), 1e-9);
+			}
+		}
+
+		List<Candle> expected = binTrades(trades, MINUTE);
+		List<Candle> lastCandles = aggregator.getCandles("ALE", MINUTE, 5);
+		assertEquals(lastCandles.size(), 5);
+		for (int i = 0; i < 5; i++) {
+			assertEquals(lastCandles.get(i).getStartTime(), expected.get(expected.size() - 5 + i).getStartTime());
+		}
+	}
+
+	/**
+	 * Test to check only the configured number of latest bars is kept, and the
+	 * open and close prices follow the time stamps of the trades.
+	 * 
+	 */
+	@Test
+	public void testCapacityAndOpenClose() {
+
+		TradeDao tradeDao = new TradeDaoImpl();
+		CandleAggregator aggregator = new CandleAggregator(tradeDao);
+		aggregator.setIntervalsMillis(1000);
+		aggregator.setCapacity(10);
+
+		for (int second = 0; second < 100; second++) {
+			long start = second * 1000L;
+			tradeDao.addTrade(new Trade(STOCK, new Date(start + 500), TradeType.BUY, 10, 200 + second));
+			tradeDao.addTrade(new Trade(STOCK, new Date(start + 900), TradeType.SELL, 10, 300 + second));
+			tradeDao.addTrade(new Trade(STOCK, new Date(start + 100), TradeType.BUY, 10, 100 + second));
+		}
+
+		List<Candle> candles = aggregator.getCandles("ALE", 1000, 1000);
+		assertEquals(candles.size(), 10);
+		for (int i = 0; i < 10; i++) {
+			Candle candle = candles.get(i);
+			int second = 90 + i;
+			assertEquals(candle.getStartTime().getTime(), second * 1000L);
+			assertEquals(candle.getOpen(), 100.0 + second);
+			assertEquals(candle.getClose(), 300.0 + second);
+			assertEquals(candle.getLow(), 100.0 + second);
+			assertEquals(candle.getHigh(), 300.0 + second);
+			assertEquals(candle.getVolume(), 30);
+			assertEquals(candle.getVolumeWeightedPrice(), 200.0 + second, 1e-9);
+		}
+
+		assertEquals(aggregator.getCandles("TEA", 1000, 10).size(), 0);
+	}
+
+	/**
+	 * Test to check trades stored again under the same trade id replace the
+	 * trades in the bars, on their own and within batches, with every Trade
+	 * DAO firing replacements.
+	 * 
+	 */
+	@Test
+	public void testReplaceTrades() {
+
+		for (TradeDao tradeDao : new TradeDao[] { new TradeDaoImpl(), new ShardedTradeDaoImpl() }) {
+			CandleAggregator aggregator = new CandleAggregator(tradeDao);
+
+			Trade trade = new Trade(STOCK, new Date(10000), TradeType.BUY, 10, 100);
+			tradeDao.addTrade(trade);
+			tradeDao.addTrade(trade);
+			List<Candle> candles = aggregator.getCandles("ALE", MINUTE, 10);
+			assertEquals(candles.size(), 1);
+			assertEquals(candles.get(0).getVolume(), 10);
+
+			Trade movedTrade = new Trade(STOCK, new Date(10 * MINUTE), TradeType.BUY, 5, 100);
+			movedTrade.setTradeId(trade.getTradeId());
+			tradeDao.addTrade(movedTrade);
+			candles = aggregator.getCandles("ALE", MINUTE, 10);
+			assertEquals(candles.size(), 1);
+			assertEquals(candles.get(0).getStartTime().getTime(), 10 * MINUTE);
+			assertEquals(candles.get(0).getVolume(), 5);
+
+			Trade replacingTrade = new Trade(STOCK, new Date(30000), TradeType.SELL, 3, 200);
+			replacingTrade.setTradeId(trade.getTradeId());
+			tradeDao.addTrades(Arrays.asList(new Trade(STOCK, new Date(20000), TradeType.BUY, 7, 100),
+					replacingTrade));
+			candles = aggregator.getCandles("ALE", MINUTE, 10);
+			assertEquals(candles.size(), 1);
+			assertEquals(candles.get(0).getStartTime().getTime(), 0);
+			assertEquals(candles.get(0).getVolume(), 10);
+			assertEquals(candles.get(0).getClose(), 200.0);
+		}
+	}
+
+	/**
+	 * Test to check the bars ending before trades retired from Trade DAO are
+	 * dropped, with every Trade DAO.
+	 * 
+	 */
+	@Test
+	public void testEvictTrades() {
+
+		long hour = TimeUnit.HOURS.toMillis(1);
+		for (TradeDao tradeDao : new TradeDao[] { new TradeDaoImpl(), new ShardedTradeDaoImpl(),
+				new ColumnarTradeDaoImpl() }) {
+			CandleAggregator aggregator = new CandleAggregator(tradeDao);
+			for (long time = 0; time < 24 * hour; time += TimeUnit.SECONDS.toMillis(10)) {
+				tradeDao.addTrade(new Trade(STOCK, new Date(time), TradeType.BUY, 10, 100));
+			}
+			assertEquals(aggregator.getCandles("ALE", 5 * MINUTE, 1000).size(), 24 * 12);
+
+			tradeDao.evictTradesBefore("ALE", new Date(12 * hour));
+
+			List<Candle> candles = aggregator.getCandles("ALE", 5 * MINUTE, 1000);
+			assertEquals(candles.size(), 12 * 12);
+			assertEquals(candles.get(0).getStartTime().getTime(), 12 * hour);
+			assertEquals(aggregator.getCandles("ALE", hour, 1000).size(), 12);
+		}
+	}
+
+	/**
+	 * Test to check bars are only fetched for configured intervals.
+	 * 
+	 */
+	@Test(expectedExceptions = { RuntimeException.class })
+	public void testIntervalNotAggregated() {
+		new CandleAggregator(new TradeDaoImpl()).getCandles("ALE", 2 * MINUTE, 10);
+	}
+
+	private static List<Candle> binTrades(List<Trade> trades, long intervalMillis) {
+		TreeMap<Long, List<Trade>> tradesByStart = new TreeMap<>();
+		for (Trade trade : trades) {
+			long start = Math.floorDiv(trade.getTimeStamp().getTime(), intervalMillis) * intervalMillis;
+			if (!tradesByStart.containsKey(start)) {
+				tradesByStart.put(start, new ArrayList<Trade>());
+			}
+			tradesByStart.get(start).add(trade);
+		}
+		List<Candle> candles = new ArrayList<>();
+		for (Long start : tradesByStart.keySet()) {
+			double high = Double.NEGATIVE_INFINITY;
+			double low = Double.POSITIVE_INFINITY;
+			long volume = 0;
+			double totalPrice = 0;
+			for (Trade trade : tradesByStart.get(start)) {
+				high = Math.max(high, trade.getPrice());
+				low = Math.min(low, trade.getPrice());
+				volume += trade.getStocksQuantity();
+				totalPrice += trade.getPrice() * trade.getStocksQuantity();
+			}
+			candles.add(new Candle("ALE", new Date(start), intervalMillis, 0, high, low, 0, volume, totalPrice
+					/ volume));
+		}
+		return candles;
+	}
+
+}
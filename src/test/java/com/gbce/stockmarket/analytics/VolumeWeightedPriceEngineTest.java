@@ -0,0 +1,231 @@
+package com.gbce.stockmarket.analytics;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.Test;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+
+/**
+ * TestNG Unit Test class for Volume Weighted Stock Price engine
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Test
+public class VolumeWeightedPriceEngineTest {
+
+	private static final Stock STOCK = new Stock("POP", StockType.COMMON, 8, 0, 100);
+
+	/**
+	 * Test to check the engine gives the same Volume Weighted Stock Price as
+	 * summing up all trades, for trades arriving out of time order and trades
+	 * being deleted.
+	 * 
+	 */
+	@Test
+	public void testVolumeWeightedPriceMatchesAllTrades() {
+
+		VolumeWeightedPriceEngine engine = new VolumeWeightedPriceEngine();
+		Random random = new Random(42);
+		List<Trade> trades = new ArrayList<>();
+
+		long now = System.currentTimeMillis();
+
+		for (int i = 0; i < 2000; i++) {
+			long timeStamp = now - random.nextInt(10 * 60 * 1000);
+			Trade trade = new Trade(STOCK, new Date(timeStamp), TradeType.BUY, 1 + random.nextInt(100),
+					1 + random.nextInt(500));
+			trades.add(trade);
+			engine.tradeAdded(trade);
+		}
+
+		for (int i = 0; i < 200; i++) {
+			engine.tradeDeleted(trades.remove(random.nextInt(trades.size())));
+		}
+
+		for (int minutes = 1; minutes <= 5; minutes++) {
+			long startTime = now - minutes * 60 * 1000L;
+			assertEquals(engine.getVolumeWeightedPrice("pop", startTime, now),
+					volumeWeightedPrice(trades, startTime), 1e-9);
+		}
+
+		assertEquals(engine.getVolumeWeightedPrice("POP"), volumeWeightedPrice(trades, Long.MIN_VALUE), 1e-9);
+	}
+
+	/**
+	 * Test to check time frames longer than the engine window are reported as
+	 * not available.
+	 * 
+	 */
+	@Test
+	public void testTimeFrameLongerThanWindow() {
+
+		VolumeWeightedPriceEngine engine = new VolumeWeightedPriceEngine();
+		long now = System.currentTimeMillis();
+
+		engine.tradeAdded(new Trade(STOCK, new Date(now), TradeType.SELL, 10, 100));
+
+		assertEquals(engine.getVolumeWeightedPrice("POP", now - 60 * 1000L, now), 100.0);
+		assertTrue(Double.isNaN(engine.getVolumeWeightedPrice("POP", now - 10 * 60 * 1000L, now)));
+		assertEquals(engine.getVolumeWeightedPrice("TEA", now - 60 * 1000L, now), 0.0);
+	}
+
+	/**
+	 * Test to check the All Share Index is kept as the geometric mean of the
+	 * Volume Weighted Stock Price of all traded stocks.
+	 * 
+	 */
+	@Test
+	public void testAllShareIndex() {
+
+		VolumeWeightedPriceEngine engine = new VolumeWeightedPriceEngine();
+		Date now = new Date();
+
+		assertEquals(engine.getAllShareIndex(), 0.0);
+
+		Stock tea = new Stock("TEA", StockType.COMMON, 0, 0, 100);
+		Trade teaTrade = new Trade(tea, now, TradeType.BUY, 10, 200);
+		engine.tradeAdded(teaTrade);
+		engine.tradeAdded(new Trade(STOCK, now, TradeType.BUY, 10, 50));
+
+		assertEquals(engine.getAllShareIndex(), 100.0, 1e-9);
+
+		engine.tradeAdded(new Trade(STOCK, now, TradeType.SELL, 30, 150));
+
+		assertEquals(engine.getAllShareIndex(), Math.sqrt(200.0 * 125.0), 1e-9);
+
+		engine.tradeDeleted(teaTrade);
+
+		assertEquals(engine.getAllShareIndex(), 125.0, 1e-9);
+	}
+
+	/**
+	 * Test to check the All Share Index of a large stock universe, whose
+	 * prices multiplied together would overflow, is the same calculated in
+	 * parallel, sequentially and kept up to date on every trade.
+	 * 
+	 */
+	@Test
+	public void testAllShareIndexForLargeUniverse() {
+
+		int stockCount = 50000;
+		double[] prices = new double[stockCount];
+		for (int i = 0; i < stockCount; i++) {
+			prices[i] = i % 2 == 0 ? 1e6 : 400;
+		}
+
+		assertEquals(AllShareIndexCalculator.calculate(prices, stockCount), 20000.0, 1e-6);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertEquals(AllShareIndexCalculator.calculate(prices, stockCount, pool), 20000.0, 1e-6);
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(AllShareIndexCalculator.calculate(new double[] { 0, -1 }, 2), 0.0);
+
+		VolumeWeightedPriceEngine engine = new VolumeWeightedPriceEngine();
+		Date now = new Date();
+		Random random = new Random(5);
+		for (int i = 0; i < 5000; i++) {
+			Stock stock = new Stock("U" + i, StockType.COMMON, 0, 0, 100);
+			engine.tradeAdded(new Trade(stock, now, TradeType.BUY, 10, 1 + random.nextInt(100000)));
+		}
+
+		assertEquals(engine.recalculateAllShareIndex(), engine.getAllShareIndex(), 1e-9 * engine
+				.getAllShareIndex());
+	}
+
+	/**
+	 * Test to check the All Share Index matches the Volume Weighted Stock
+	 * Price when the first trades of a stock are recorded by two threads at
+	 * once, whichever of their changes reaches the index first.
+	 * 
+	 */
+	@Test
+	public void testAllShareIndexOfConcurrentFirstTrades() throws Exception {
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Date now = new Date();
+			for (int round = 0; round < 10000; round++) {
+				final VolumeWeightedPriceEngine engine = new VolumeWeightedPriceEngine();
+				final CyclicBarrier barrier = new CyclicBarrier(2);
+				List<Future<?>> futures = new ArrayList<>();
+				for (final Trade trade : new Trade[] { new Trade(STOCK, now, TradeType.BUY, 10, 10),
+						new Trade(STOCK, now, TradeType.SELL, 30, 12) }) {
+					futures.add(executor.submit(new Callable<Void>() {
+						@Override
+						public Void call() throws Exception {
+							barrier.await();
+							engine.tradeAdded(trade);
+							return null;
+						}
+					}));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+
+				double volumeWeightedPrice = engine.getVolumeWeightedPrice("POP");
+				assertEquals(volumeWeightedPrice, 11.5, 1e-9);
+				assertEquals(engine.getAllShareIndex(), AllShareIndexCalculator.calculate(
+						new double[] { volumeWeightedPrice }, 1), 1e-9);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Test to check the All Share Index is not reset when the number of
+	 * contributing stocks passes through 0 because a change of price reached
+	 * it before the first price of the stock.
+	 * 
+	 */
+	@Test
+	public void testAllShareIndexOfChangesOutOfOrder() {
+
+		AllShareIndexAccumulator allShareIndex = new AllShareIndexAccumulator();
+
+		allShareIndex.priceChanged(10, 12);
+		assertEquals(allShareIndex.getAllShareIndex(), 0.0);
+
+		allShareIndex.priceChanged(0, 10);
+		assertEquals(allShareIndex.getAllShareIndex(), 12.0, 1e-9);
+
+		allShareIndex.priceChanged(12, 0);
+		assertEquals(allShareIndex.getAllShareIndex(), 0.0);
+
+		allShareIndex.priceChanged(0, 20);
+		assertEquals(allShareIndex.getAllShareIndex(), 20.0, 1e-9);
+	}
+
+	private static double volumeWeightedPrice(List<Trade> trades, long startTime) {
+		double totalPrice = 0.0;
+		long totalQuantity = 0;
+		for (Trade trade : trades) {
+			if (trade.getTimeStamp().getTime() >= startTime) {
+				totalQuantity += trade.getStocksQuantity();
+				totalPrice += trade.getPrice() * trade.getStocksQuantity();
+			}
+		}
+		return totalQuantity > 0 ? totalPrice / totalQuantity : 0.0;
+	}
+
+}
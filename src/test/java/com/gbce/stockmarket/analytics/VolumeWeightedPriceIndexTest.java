@@ -0,0 +1,165 @@
+package com.gbce.stockmarket.analytics;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.beans.VolumeWeightedPrices;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+import com.gbce.stockmarket.dao.ColumnarTradeDaoImpl;
+import com.gbce.stockmarket.dao.ShardedTradeDaoImpl;
+import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.dao.TradeDaoImpl;
+
+/**
+ * TestNG Unit Test class for Volume Weighted Stock Price index
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Test
+public class VolumeWeightedPriceIndexTest {
+
+	private static final Stock STOCK = new Stock("JOE", StockType.COMMON, 13, 0, 250);
+
+	/**
+	 * Test to check the index gives the same Volume Weighted Stock Price as
+	 * summing up the trades within random time frames, for trades arriving
+	 * out of time order, in batches and being deleted.
+	 * 
+	 */
+	@Test
+	public void testVolumeWeightedPriceMatchesTrades() {
+
+		TradeDao tradeDao = new TradeDaoImpl();
+		VolumeWeightedPriceIndex index = new VolumeWeightedPriceIndex(tradeDao);
+		Random random = new Random(11);
+		List<Trade> trades = new ArrayList<>();
+
+		List<Trade> batch = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			// mostly in time order, with some late trades and equal time stamps
+			long timeStamp = i % 10 == 0 ? random.nextInt(i + 1) * 1000L : i * 1000L;
+			Trade trade = new Trade(STOCK, timeStamp, TradeType.BUY, 1 + random.nextInt(100),
+					1 + random.nextInt(500));
+			trades.add(trade);
+			batch.add(trade);
+			if (batch.size() == 7) {
+				tradeDao.addTrades(batch);
+				batch.clear();
+			} else if (i % 2 == 0) {
+				tradeDao.addTrade(batch.remove(batch.size() - 1));
+			}
+		}
+		tradeDao.addTrades(batch);
+
+		for (int i = 0; i < 500; i++) {
+			tradeDao.deleteTrade(trades.remove(random.nextInt(trades.size())));
+		}
+
+		for (int i = 0; i < 200; i++) {
+			long fromTime = random.nextInt(5000) * 1000L - random.nextInt(2) * 500;
+			long toTime = fromTime + random.nextInt(2000) * 1000L;
+			assertEquals(index.getVolumeWeightedPrice("JOE", fromTime, toTime), volumeWeightedPrice(trades,
+					fromTime, toTime), 1e-6);
+		}
+
+		assertEquals(index.getVolumeWeightedPrice("joe", Long.MIN_VALUE, Long.MAX_VALUE), volumeWeightedPrice(
+				trades, Long.MIN_VALUE, Long.MAX_VALUE), 1e-6);
+		assertEquals(index.getVolumeWeightedPrice("JOE", 3000L, 3000L), 0.0);
+		assertEquals(index.getVolumeWeightedPrice("ZZZ", Long.MIN_VALUE, Long.MAX_VALUE), 0.0);
+	}
+
+	/**
+	 * Test to check trades retired from Trade DAO are dropped from the index,
+	 * with every Trade DAO.
+	 * 
+	 */
+	@Test
+	public void testEvictTrades() {
+
+		long hour = TimeUnit.HOURS.toMillis(1);
+		for (TradeDao tradeDao : new TradeDao[] { new TradeDaoImpl(), new ShardedTradeDaoImpl(),
+				new ColumnarTradeDaoImpl() }) {
+			VolumeWeightedPriceIndex index = new VolumeWeightedPriceIndex(tradeDao);
+			Random random = new Random(13);
+			List<Trade> trades = new ArrayList<>();
+			for (long time = 0; time < 24 * hour; time += TimeUnit.SECONDS.toMillis(10)) {
+				Trade trade = new Trade(STOCK, new Date(time), TradeType.BUY, 1 + random.nextInt(100),
+						1 + random.nextInt(500));
+				trades.add(trade);
+				tradeDao.addTrade(trade);
+			}
+
+			assertTrue(tradeDao.evictTradesBefore("JOE", new Date(12 * hour)) > 0);
+
+			long cutoff = TimeUnit.MILLISECONDS.toNanos(12 * hour);
+			assertEquals(index.getVolumeWeightedPrice("JOE", Long.MIN_VALUE, cutoff), 0.0);
+			assertEquals(index.getVolumeWeightedPrice("JOE", Long.MIN_VALUE, Long.MAX_VALUE), volumeWeightedPrice(
+					trades, cutoff, Long.MAX_VALUE), 1e-6);
+		}
+	}
+
+	/**
+	 * Test to check Volume Weighted Stock Prices of several time frames in a
+	 * single query match querying each time frame on its own.
+	 * 
+	 */
+	@Test
+	public void testVolumeWeightedPricesForTimeFrames() {
+
+		TradeDao tradeDao = new TradeDaoImpl();
+		VolumeWeightedPriceIndex index = new VolumeWeightedPriceIndex(tradeDao);
+		Random random = new Random(13);
+		long minute = TimeUnit.MINUTES.toNanos(1);
+		long now = 120 * minute;
+
+		for (int i = 0; i < 2000; i++) {
+			tradeDao.addTrade(new Trade(STOCK, (long) (random.nextDouble() * now), TradeType.SELL,
+					1 + random.nextInt(100), 1 + random.nextInt(500)));
+		}
+		tradeDao.addTrade(new Trade(STOCK, now, TradeType.BUY, 10, 100));
+		tradeDao.addTrade(new Trade(STOCK, now + 1, TradeType.BUY, 10, 900));
+
+		int[] timesInMinutes = { 1, 5, 15, 60 };
+		VolumeWeightedPrices volumeWeightedPrices = index.getVolumeWeightedPrices(timesInMinutes, now);
+
+		assertEquals(volumeWeightedPrices.getTimeFrameCount(), timesInMinutes.length);
+		for (int i = 0; i < timesInMinutes.length; i++) {
+			assertEquals(volumeWeightedPrices.getPrice("JOE", timesInMinutes[i]), index.getVolumeWeightedPrice(
+					"JOE", now - timesInMinutes[i] * minute, now + 1), 1e-9);
+		}
+		assertEquals(volumeWeightedPrices.getPrice("joe", 5), volumeWeightedPrices.getPrice("JOE", 5));
+		assertEquals(volumeWeightedPrices.getStockSymbol(STOCK.getStockId()), "JOE");
+		try {
+			volumeWeightedPrices.getPrice("&*PP$", 5);
+			fail("Price of an unknown stock was found");
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage().contains("&*PP$"), e.getMessage());
+		}
+	}
+
+	private static double volumeWeightedPrice(List<Trade> trades, long fromTime, long toTime) {
+		long quantity = 0;
+		double totalPrice = 0;
+		for (Trade trade : trades) {
+			if (trade.getTimeStampNanos() >= fromTime && trade.getTimeStampNanos() < toTime) {
+				quantity += trade.getStocksQuantity();
+				totalPrice += trade.getPrice() * trade.getStocksQuantity();
+			}
+		}
+		return quantity > 0 ? totalPrice / quantity : 0.0;
+	}
+
+}
@@ -0,0 +1,234 @@
+package com.gbce.stockmarket.audit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import com.gbce.stockmarket.analytics.CandleAggregator;
+import com.gbce.stockmarket.analytics.VolumeWeightedPriceEngine;
+import com.gbce.stockmarket.analytics.VolumeWeightedPriceIndex;
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+import com.gbce.stockmarket.dao.StockDaoImpl;
+import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.dao.TradeDaoImpl;
+import com.gbce.stockmarket.ingestion.WaitStrategy;
+import com.gbce.stockmarket.metrics.MetricsRegistry;
+import com.gbce.stockmarket.service.StockService;
+import com.gbce.stockmarket.service.StockServiceImpl;
+import com.gbce.stockmarket.subscription.MarketDataPublisher;
+import com.gbce.stockmarket.util.HighResolutionClock;
+
+import config.TradeAuditSpringConfig;
+
+/**
+ * TestNG Unit Test class for Trade audit sink and the allocations made by
+ * recording trades
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Test
+public class TradeAuditSinkTest {
+
+	private static final int TRADES = 20000;
+
+	private static final Stock[] STOCKS = { new Stock("TEA", StockType.COMMON, 0, 0, 100),
+			new Stock("POP", StockType.COMMON, 8, 0, 100), new Stock("GIN", StockType.PREFERRED, 8, 0.02, 100) };
+
+	/**
+	 * Test to check trades stored and removed are written as binary audit
+	 * records, in order.
+	 * 
+	 */
+	@Test
+	public void testAuditRecords() {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TradeAuditSink auditSink = new TradeAuditSink(Channels.newChannel(out), 16, 64, WaitStrategy.PARK);
+		auditSink.start();
+
+		TradeDao tradeDao = new TradeDaoImpl();
+		tradeDao.addTradeListener(auditSink);
+
+		Trade[] trades = newTrades(100);
+		for (Trade trade : trades) {
+			tradeDao.addTrade(trade);
+			// a small ring buffer and batch, so records wrap round and span batches
+			auditSink.flush();
+		}
+		tradeDao.deleteTrade(trades[7]);
+		auditSink.close();
+
+		assertEquals(auditSink.getWrittenRecords(), 101);
+		assertEquals(auditSink.getDroppedRecords(), 0);
+
+		ByteBuffer records = ByteBuffer.wrap(out.toByteArray());
+		for (int i = 0; i <= trades.length; i++) {
+			Trade trade = trades[i < trades.length ? i : 7];
+			assertEquals(records.get(), i < trades.length ? TradeAuditSink.TRADE_ADDED : TradeAuditSink.TRADE_DELETED);
+			assertEquals(records.getLong(), trade.getTradeId());
+			assertEquals(records.getLong(), trade.getTimeStampNanos());
+			assertEquals(records.get(), trade.getType().ordinal());
+			assertEquals(records.getInt(), trade.getStocksQuantity());
+			assertEquals(records.getDouble(), trade.getPrice());
+			byte[] symbol = new byte[records.get()];
+			records.get(symbol);
+			assertEquals(new String(symbol), trade.getStock().getSymbol());
+		}
+		assertEquals(records.remaining(), 0);
+	}
+
+	/**
+	 * Test to check the opt-in Spring configuration audits the trades of
+	 * Trade DAO to the configured file, and writes them out when the context
+	 * is closed.
+	 * 
+	 */
+	@Test
+	public void testSpringConfig() throws IOException {
+
+		File auditFile = File.createTempFile("trades", ".audit");
+		System.setProperty("gbce.audit.file", auditFile.getPath());
+		try {
+			AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(TradeDaoImpl.class,
+					TradeAuditSpringConfig.class);
+			TradeDao tradeDao = context.getBean(TradeDao.class);
+			for (Trade trade : newTrades(10)) {
+				tradeDao.addTrade(trade);
+			}
+			TradeAuditSink auditSink = context.getBean(TradeAuditSink.class);
+			context.close();
+
+			assertEquals(auditSink.getWrittenRecords(), 10);
+			assertEquals(auditFile.length(), 10 * (1 + 8 + 8 + 1 + 4 + 8 + 1 + 3));
+		} finally {
+			System.clearProperty("gbce.audit.file");
+			auditFile.delete();
+		}
+	}
+
+	/**
+	 * Test to check recording a trade allocates nothing in the audit sink, and
+	 * through Stock Service, with metrics on, allocates nothing beyond the
+	 * entries Trade DAO and its listeners hold the trade in, with no logging,
+	 * string formatting or lambdas. The entries are measured by adding the
+	 * same number of trades straight to a Trade DAO with the same listeners.
+	 * 
+	 */
+	@Test
+	public void testRecordTradeAllocations() {
+
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+			throw new SkipException("Thread allocation counters are not supported");
+		}
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		if (!threadBean.isThreadAllocatedMemorySupported() || !threadBean.isThreadAllocatedMemoryEnabled()) {
+			throw new SkipException("Thread allocation counters are not enabled");
+		}
+
+		AnnotationConfigApplicationContext serviceContext = new AnnotationConfigApplicationContext();
+		serviceContext.getBeanFactory().registerSingleton("stocksDatabase", new ConcurrentHashMap<String, Stock>());
+		serviceContext.register(MetricsRegistry.class, StockDaoImpl.class, TradeDaoImpl.class,
+				VolumeWeightedPriceEngine.class, VolumeWeightedPriceIndex.class, CandleAggregator.class,
+				MarketDataPublisher.class, StockServiceImpl.class);
+		serviceContext.refresh();
+		AnnotationConfigApplicationContext daoContext = new AnnotationConfigApplicationContext(TradeDaoImpl.class,
+				VolumeWeightedPriceEngine.class, VolumeWeightedPriceIndex.class, CandleAggregator.class,
+				MarketDataPublisher.class);
+		TradeAuditSink auditSink = new TradeAuditSink(Channels.newChannel(new ByteArrayOutputStream()),
+				4 * TRADES, TradeAuditSink.DEFAULT_BATCH_BYTES, WaitStrategy.PARK);
+		TradeAuditSink daoAuditSink = new TradeAuditSink(Channels.newChannel(new ByteArrayOutputStream()),
+				4 * TRADES, TradeAuditSink.DEFAULT_BATCH_BYTES, WaitStrategy.PARK);
+		try {
+			StockService stockService = serviceContext.getBean(StockService.class);
+			TradeDao tradeDao = daoContext.getBean(TradeDao.class);
+			auditSink.start();
+			daoAuditSink.start();
+			serviceContext.getBean(TradeDao.class).addTradeListener(auditSink);
+			tradeDao.addTradeListener(daoAuditSink);
+
+			// warm up, so that the code is compiled and the structures are
+			// sized
+			Trade[] trades = newTrades(TRADES);
+			for (int round = 0; round < 5; round++) {
+				for (Trade trade : trades) {
+					auditSink.tradeAdded(trade);
+				}
+				auditSink.flush();
+			}
+			for (int round = 0; round < 3; round++) {
+				for (Trade trade : newTrades(TRADES)) {
+					stockService.recordTrade(trade);
+				}
+				for (Trade trade : newTrades(TRADES)) {
+					tradeDao.addTrade(trade);
+				}
+				auditSink.flush();
+				daoAuditSink.flush();
+			}
+
+			long threadId = Thread.currentThread().getId();
+			long overhead = -threadBean.getThreadAllocatedBytes(threadId)
+					+ threadBean.getThreadAllocatedBytes(threadId);
+
+			long before = threadBean.getThreadAllocatedBytes(threadId);
+			for (Trade trade : trades) {
+				auditSink.tradeAdded(trade);
+			}
+			long auditBytes = threadBean.getThreadAllocatedBytes(threadId) - before - overhead;
+			auditSink.flush();
+
+			trades = newTrades(TRADES);
+			before = threadBean.getThreadAllocatedBytes(threadId);
+			for (Trade trade : trades) {
+				stockService.recordTrade(trade);
+			}
+			long recordBytes = threadBean.getThreadAllocatedBytes(threadId) - before - overhead;
+
+			trades = newTrades(TRADES);
+			before = threadBean.getThreadAllocatedBytes(threadId);
+			for (Trade trade : trades) {
+				tradeDao.addTrade(trade);
+			}
+			long storeBytes = threadBean.getThreadAllocatedBytes(threadId) - before - overhead;
+
+			assertEquals(auditBytes, 0);
+			assertTrue((recordBytes - storeBytes) / TRADES < 16, "Bytes allocated per trade : "
+					+ recordBytes / TRADES + ", of which held by Trade DAO and its listeners : "
+					+ storeBytes / TRADES);
+			assertEquals(serviceContext.getBean(MetricsRegistry.class).getOperationMetrics(
+					"StockService.recordTrade").getCount(), 4 * TRADES);
+		} finally {
+			auditSink.close();
+			daoAuditSink.close();
+			serviceContext.close();
+			daoContext.close();
+		}
+		assertEquals(auditSink.getDroppedRecords(), 0);
+	}
+
+	private static Trade[] newTrades(int count) {
+		Trade[] trades = new Trade[count];
+		for (int i = 0; i < count; i++) {
+			trades[i] = new Trade(STOCKS[i % STOCKS.length], HighResolutionClock.currentTimeNanos(),
+					i % 2 == 0 ? TradeType.BUY : TradeType.SELL, 1 + i % 10, 90 + i % 20);
+		}
+		return trades;
+	}
+
+}
@@ -0,0 +1,144 @@
+package com.gbce.stockmarket.codec;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Date;
+
+import org.testng.annotations.Test;
+
+import com.gbce.stockmarket.beans.Candle;
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+
+/**
+ * TestNG Unit Test class for market data wire codec
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Test
+public class MarketDataCodecTest {
+
+	private final MarketDataDecoder decoder = new MarketDataDecoder();
+
+	private ByteBuffer newBuffer() {
+		return ByteBuffer.allocate(4096).order(WireFormat.BYTE_ORDER);
+	}
+
+	@Test
+	public void testTradeRoundTrip() {
+
+		Trade trade = new Trade(new Stock("GIN", StockType.PREFERRED, 8, 0.02, 100), 1456819200123456789L,
+				TradeType.SELL, 250, 123.45);
+		trade.setTradeId(42);
+
+		ByteBuffer buffer = newBuffer();
+		assertEquals(MarketDataEncoder.encodeTrade(buffer, trade), 37);
+		assertEquals(buffer.position(), 37);
+
+		assertTrue(decoder.wrap(buffer, 0));
+		assertEquals(decoder.getMessageType(), WireFormat.TRADE);
+		assertEquals(decoder.getLength(), 37);
+		assertEquals(decoder.getEnd(), 37);
+		assertEquals(decoder.getTradeId(), 42);
+		assertEquals(decoder.getStockSymbol(), "GIN");
+		assertEquals(decoder.getTimeStampNanos(), 1456819200123456789L);
+		assertEquals(decoder.getTradeType(), TradeType.SELL);
+		assertEquals(decoder.getQuantity(), 250);
+		assertEquals(decoder.getPrice(), 123.45);
+	}
+
+	@Test
+	public void testAnalyticsRoundTrip() {
+
+		ByteBuffer buffer = newBuffer();
+		MarketDataEncoder.encodeTradeDeleted(buffer, 7);
+		MarketDataEncoder.encodeVolumeWeightedPrice(buffer, "TEA", 1000L, 15, 101.5);
+		MarketDataEncoder.encodeAllShareIndex(buffer, 2000L, 88.75);
+		MarketDataEncoder.encodeCandle(buffer, new Candle("POP", new Date(1456819200000L), 60000L, 10, 12, 9, 11,
+				500, 10.5));
+
+		assertTrue(decoder.wrap(buffer, 0));
+		assertEquals(decoder.getMessageType(), WireFormat.TRADE_DELETED);
+		assertEquals(decoder.getTradeId(), 7);
+
+		assertTrue(decoder.wrap(buffer, decoder.getEnd()));
+		assertEquals(decoder.getMessageType(), WireFormat.VOLUME_WEIGHTED_PRICE);
+		assertEquals(decoder.getStockSymbol(), "TEA");
+		assertEquals(decoder.getTimeStampNanos(), 1000L);
+		assertEquals(decoder.getTimeInMinutes(), 15);
+		assertEquals(decoder.getPrice(), 101.5);
+
+		assertTrue(decoder.wrap(buffer, decoder.getEnd()));
+		assertEquals(decoder.getMessageType(), WireFormat.ALL_SHARE_INDEX);
+		assertEquals(decoder.getTimeStampNanos(), 2000L);
+		assertEquals(decoder.getAllShareIndex(), 88.75);
+
+		assertTrue(decoder.wrap(buffer, decoder.getEnd()));
+		assertEquals(decoder.getMessageType(), WireFormat.CANDLE);
+		assertEquals(decoder.getStockSymbol(), "POP");
+		assertEquals(decoder.getStartTimeMillis(), 1456819200000L);
+		assertEquals(decoder.getIntervalMillis(), 60000L);
+		assertEquals(decoder.getOpen(), 10.0);
+		assertEquals(decoder.getHigh(), 12.0);
+		assertEquals(decoder.getLow(), 9.0);
+		assertEquals(decoder.getClose(), 11.0);
+		assertEquals(decoder.getVolume(), 500);
+		assertEquals(decoder.getCandleVolumeWeightedPrice(), 10.5);
+		assertEquals(decoder.getEnd(), buffer.position());
+	}
+
+	@Test
+	public void testIncompleteMessage() {
+
+		ByteBuffer buffer = newBuffer();
+		int length = MarketDataEncoder.encodeTrade(buffer, 1, "ALE", 0, TradeType.BUY, 1, 1.0);
+
+		buffer.limit(2);
+		assertEquals(MarketDataDecoder.messageLength(buffer, 0), -1);
+		assertFalse(decoder.wrap(buffer, 0));
+
+		buffer.limit(length - 1);
+		assertEquals(MarketDataDecoder.messageLength(buffer, 0), length);
+		assertFalse(decoder.wrap(buffer, 0));
+
+		buffer.limit(length);
+		assertTrue(decoder.wrap(buffer, 0));
+	}
+
+	@Test(expectedExceptions = RuntimeException.class)
+	public void testCorruptMessage() {
+
+		ByteBuffer buffer = newBuffer();
+		MarketDataEncoder.encodeAllShareIndex(buffer, 0, 1.0);
+		buffer.putShort(0, (short) (WireFormat.ALL_SHARE_INDEX_SIZE + 1));
+		buffer.limit(buffer.capacity());
+		decoder.wrap(buffer, 0);
+	}
+
+	@Test(expectedExceptions = RuntimeException.class)
+	public void testWrongByteOrder() {
+		MarketDataEncoder.encodeTradeDeleted(ByteBuffer.allocate(64).order(ByteOrder.BIG_ENDIAN), 1);
+	}
+
+	@Test
+	public void testSymbolCache() {
+
+		ByteBuffer buffer = newBuffer();
+		MarketDataEncoder.encodeTrade(buffer, 1, "JOE", 0, TradeType.BUY, 1, 1.0);
+		MarketDataEncoder.encodeTrade(buffer, 2, "JOE", 0, TradeType.BUY, 1, 1.0);
+
+		assertTrue(decoder.wrap(buffer, 0));
+		String first = decoder.getStockSymbol();
+		assertTrue(decoder.wrap(buffer, decoder.getEnd()));
+		assertSame(decoder.getStockSymbol(), first);
+	}
+
+}
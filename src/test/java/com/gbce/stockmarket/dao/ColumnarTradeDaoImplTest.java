@@ -0,0 +1,239 @@
+package com.gbce.stockmarket.dao;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+
+/**
+ * TestNG Unit Test class for columnar Trade DAO
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Test
+public class ColumnarTradeDaoImplTest {
+
+	private static final Stock ALE = new Stock("ALE", StockType.COMMON, 23, 0, 60);
+
+	private static final Stock GIN = new Stock("GIN", StockType.PREFERRED, 8, 0.02, 100);
+
+	private static final long MILLI = 1000000L;
+
+	/**
+	 * Test to check trades added out of time order, across several column
+	 * chunks, are read back in time order and summed up over a time frame.
+	 * 
+	 */
+	@Test
+	public void testTradesInTimeOrder() {
+
+		ColumnarTradeDaoImpl tradeDao = new ColumnarTradeDaoImpl();
+		Random random = new Random(7);
+		List<Trade> trades = new ArrayList<>();
+
+		for (int i = 0; i < 3 * TradeColumns.CHUNK_SIZE; i++) {
+			long timeStampNanos = 1000 * MILLI + random.nextInt(100000) * MILLI;
+			trades.add(new Trade(ALE, timeStampNanos, i % 2 == 0 ? TradeType.BUY : TradeType.SELL,
+					1 + random.nextInt(50), 10 + random.nextInt(90)));
+		}
+		tradeDao.addTrades(trades.subList(0, TradeColumns.CHUNK_SIZE));
+		for (Trade trade : trades.subList(TradeColumns.CHUNK_SIZE, trades.size())) {
+			tradeDao.addTrade(trade);
+		}
+
+		final List<Long> timeStamps = new ArrayList<>();
+		tradeDao.forEachTrade("ale", Long.MIN_VALUE, Long.MAX_VALUE, new TradeVisitor() {
+			@Override
+			public void visit(TradeView trade) {
+				timeStamps.add(trade.getTimeStampNanos());
+			}
+		});
+
+		assertEquals(timeStamps.size(), trades.size());
+		for (int i = 1; i < timeStamps.size(); i++) {
+			assertTrue(timeStamps.get(i - 1) <= timeStamps.get(i));
+		}
+
+		long from = 30000 * MILLI;
+		long to = 60000 * MILLI;
+		double totalPrice = 0.0;
+		long totalQuantity = 0;
+		int count = 0;
+		for (Trade trade : trades) {
+			if (trade.getTimeStampNanos() >= from && trade.getTimeStampNanos() < to) {
+				totalPrice += trade.getPrice() * trade.getStocksQuantity();
+				totalQuantity += trade.getStocksQuantity();
+				count++;
+			}
+		}
+
+		assertEquals(tradeDao.calculateVolumeWeightedPrice("ALE", from, to), totalPrice / totalQuantity, 1e-9);
+		assertEquals(tradeDao.getTradesForStock("ALE", new Date(30000), new Date(60000)).size(), count);
+	}
+
+	/**
+	 * Test to check a trade is read back by id and deleted.
+	 * 
+	 */
+	@Test
+	public void testGetAndDeleteTrade() {
+
+		ColumnarTradeDaoImpl tradeDao = new ColumnarTradeDaoImpl();
+
+		Trade trade1 = new Trade(ALE, 5 * MILLI, TradeType.BUY, 10, 100);
+		Trade trade2 = new Trade(ALE, 5 * MILLI, TradeType.SELL, 20, 200);
+
+		assertTrue(tradeDao.addTrade(trade1));
+		assertTrue(tradeDao.addTrade(trade2));
+
+		Trade trade = tradeDao.getTrade(trade2.getTradeId());
+
+		assertEquals(trade, trade2);
+		assertEquals(trade.getType(), TradeType.SELL);
+		assertEquals(trade.getStocksQuantity(), 20);
+		assertEquals(trade.getPrice(), 200.0);
+		assertEquals(trade.getStock().getSymbol(), "ALE");
+
+		tradeDao.deleteTrade(trade);
+
+		Collection<Trade> trades = tradeDao.getTradesForStock("ALE", null, null);
+
+		assertEquals(trades.size(), 1);
+		assertEquals(trades.iterator().next(), trade1);
+	}
+
+	/**
+	 * Test to check old trades are dropped a whole chunk at a time.
+	 * 
+	 */
+	@Test
+	public void testEvictTrades() {
+
+		ColumnarTradeDaoImpl tradeDao = new ColumnarTradeDaoImpl();
+		List<Trade> trades = new ArrayList<>();
+		for (int i = 0; i < 2 * TradeColumns.CHUNK_SIZE + 10; i++) {
+			trades.add(new Trade(ALE, i * MILLI, TradeType.BUY, 1, 10));
+		}
+		tradeDao.addTrades(trades);
+
+		assertEquals(tradeDao.evictTradesBefore("ALE", new Date(2 * TradeColumns.CHUNK_SIZE + 5)),
+				2 * TradeColumns.CHUNK_SIZE);
+		assertEquals(tradeDao.getTradesForStock("ALE", null, null).size(), 10);
+		assertEquals(tradeDao.getTradesForStock("ALE", null, null).iterator().next(),
+				trades.get(2 * TradeColumns.CHUNK_SIZE));
+	}
+
+	/**
+	 * Test to check a trade added again with the same id, at another time
+	 * stamp and for another stock, replaces the trade stored before instead of
+	 * being stored twice.
+	 * 
+	 */
+	@Test
+	public void testReplaceTrade() {
+
+		ColumnarTradeDaoImpl tradeDao = new ColumnarTradeDaoImpl();
+		final List<Trade> replacedTrades = new ArrayList<>();
+		tradeDao.addTradeListener(new TradeListener() {
+			@Override
+			public void tradeAdded(Trade trade) {
+			}
+
+			@Override
+			public void tradesAdded(List<Trade> trades) {
+			}
+
+			@Override
+			public void tradeDeleted(Trade trade) {
+			}
+
+			@Override
+			public void tradeReplaced(Trade replacedTrade, Trade trade) {
+				replacedTrades.add(replacedTrade);
+			}
+		});
+
+		Trade trade1 = new Trade(ALE, 5 * MILLI, TradeType.BUY, 10, 100);
+		tradeDao.addTrade(trade1);
+
+		Trade trade2 = new Trade(ALE, 7 * MILLI, TradeType.SELL, 20, 200);
+		trade2.setTradeId(trade1.getTradeId());
+		tradeDao.addTrade(trade2);
+
+		Trade trade3 = new Trade(GIN, 9 * MILLI, TradeType.BUY, 30, 300);
+		trade3.setTradeId(trade1.getTradeId());
+		tradeDao.addTrades(Collections.singletonList(trade3));
+
+		assertEquals(replacedTrades.size(), 2);
+		assertEquals(replacedTrades.get(0).getTimeStampNanos(), 5 * MILLI);
+		assertEquals(replacedTrades.get(1).getTimeStampNanos(), 7 * MILLI);
+		assertEquals(tradeDao.getTradesForStock("ALE", null, null).size(), 0);
+		assertEquals(tradeDao.getTradesForStock("GIN", null, null).size(), 1);
+
+		Trade trade = tradeDao.getTrade(trade1.getTradeId());
+
+		assertEquals(trade.getStock().getSymbol(), "GIN");
+		assertEquals(trade.getTimeStampNanos(), 9 * MILLI);
+		assertEquals(trade.getStocksQuantity(), 30);
+	}
+
+	/**
+	 * Test to check a trade without type is stored and read back without type.
+	 * 
+	 */
+	@Test
+	public void testTradeWithoutType() {
+
+		ColumnarTradeDaoImpl tradeDao = new ColumnarTradeDaoImpl();
+		Trade trade = new Trade(ALE, 5 * MILLI, null, 10, 100);
+
+		assertTrue(tradeDao.addTrade(trade));
+		assertNull(tradeDao.getTrade(trade.getTradeId()).getType());
+	}
+
+	/**
+	 * Test if an exception is thrown when looking up an evicted trade by id.
+	 * 
+	 */
+	@Test(expectedExceptions = { RuntimeException.class })
+	public void testEvictedTradeNotFound() {
+
+		ColumnarTradeDaoImpl tradeDao = new ColumnarTradeDaoImpl();
+		List<Trade> trades = new ArrayList<>();
+		for (int i = 0; i < TradeColumns.CHUNK_SIZE + 1; i++) {
+			trades.add(new Trade(ALE, i * MILLI, TradeType.BUY, 1, 10));
+		}
+		tradeDao.addTrades(trades);
+
+		assertEquals(tradeDao.evictTradesBefore("ALE", new Date(TradeColumns.CHUNK_SIZE)), TradeColumns.CHUNK_SIZE);
+		assertEquals(tradeDao.getTrade(trades.get(TradeColumns.CHUNK_SIZE).getTradeId()),
+				trades.get(TradeColumns.CHUNK_SIZE));
+
+		tradeDao.getTrade(trades.get(0).getTradeId());
+	}
+
+	/**
+	 * Test if an exception is thrown in case trade for a given trade id is not
+	 * available in database.
+	 * 
+	 */
+	@Test(expectedExceptions = { RuntimeException.class })
+	public void testTradeNotFoundInDatabase() {
+		new ColumnarTradeDaoImpl().getTrade(1);
+	}
+
+}
@@ -0,0 +1,302 @@
+package com.gbce.stockmarket.dao;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.annotations.Test;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+import com.gbce.stockmarket.metrics.MetricsRegistry;
+
+/**
+ * TestNG Unit Test class for sharded Trade DAO
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Test
+public class ShardedTradeDaoImplTest {
+
+	private static final Stock ALE = new Stock("ALE", StockType.COMMON, 23, 0, 60);
+
+	private static final Stock[] STOCKS = { ALE, new Stock("GIN", StockType.PREFERRED, 8, 0.02, 100),
+			new Stock("JOE", StockType.COMMON, 13, 0, 250), new Stock("POP", StockType.COMMON, 8, 0, 100) };
+
+	private static final long MILLI = 1000000L;
+
+	/**
+	 * Test to check trades added out of time order are read back in time
+	 * order and summed up over a time frame.
+	 * 
+	 */
+	@Test
+	public void testTradesInTimeOrder() {
+
+		ShardedTradeDaoImpl tradeDao = new ShardedTradeDaoImpl(2);
+		Random random = new Random(11);
+		List<Trade> trades = new ArrayList<>();
+
+		for (int i = 0; i < 5000; i++) {
+			long timeStampNanos = 1000 * MILLI + random.nextInt(100000) * MILLI;
+			trades.add(new Trade(ALE, timeStampNanos, i % 2 == 0 ? TradeType.BUY : TradeType.SELL,
+					1 + random.nextInt(50), 10 + random.nextInt(90)));
+		}
+		tradeDao.addTrades(trades.subList(0, 1000));
+		for (Trade trade : trades.subList(1000, trades.size())) {
+			tradeDao.addTrade(trade);
+		}
+
+		long previousTimeStamp = Long.MIN_VALUE;
+		for (Trade trade : tradeDao.getTradesForStock("ale", null, null)) {
+			assertTrue(previousTimeStamp <= trade.getTimeStampNanos());
+			previousTimeStamp = trade.getTimeStampNanos();
+		}
+		assertEquals(tradeDao.getAllTradesForStock("ALE").size(), trades.size());
+
+		long from = 30000 * MILLI;
+		long to = 60000 * MILLI;
+		double totalPrice = 0.0;
+		long totalQuantity = 0;
+		int count = 0;
+		for (Trade trade : trades) {
+			if (trade.getTimeStampNanos() >= from && trade.getTimeStampNanos() < to) {
+				totalPrice += trade.getPrice() * trade.getStocksQuantity();
+				totalQuantity += trade.getStocksQuantity();
+				count++;
+			}
+		}
+
+		assertEquals(tradeDao.calculateVolumeWeightedPrice("ALE", from, to), totalPrice / totalQuantity, 1e-9);
+		assertEquals(tradeDao.getTradesForStock("ALE", new Date(30000), new Date(60000)).size(), count);
+	}
+
+	/**
+	 * Test to check trades are read back by id, replaced, deleted and
+	 * evicted.
+	 * 
+	 */
+	@Test
+	public void testGetDeleteAndEvictTrades() {
+
+		ShardedTradeDaoImpl tradeDao = new ShardedTradeDaoImpl(5);
+		assertEquals(tradeDao.getStripeCount(), 8);
+
+		List<Trade> trades = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			trades.add(new Trade(STOCKS[i % STOCKS.length], i * MILLI, TradeType.BUY, 1, 10));
+		}
+		tradeDao.addTrades(trades);
+
+		Trade trade = trades.get(41);
+		assertSame(tradeDao.getTrade(trade.getTradeId()), trade);
+
+		Trade replacingTrade = new Trade(trade.getStock(), trade.getTimeStampNanos(), TradeType.SELL, 2, 20);
+		replacingTrade.setTradeId(trade.getTradeId());
+		tradeDao.addTrade(replacingTrade);
+		assertSame(tradeDao.getTrade(trade.getTradeId()), replacingTrade);
+		assertEquals(tradeDao.getAllTrades().size(), 100);
+
+		tradeDao.deleteTrade(replacingTrade);
+		assertFalse(tradeDao.getAllTradesForStock(trade.getStock().getSymbol()).containsValue(replacingTrade));
+		assertEquals(tradeDao.getAllTrades().size(), 99);
+
+		assertEquals(tradeDao.evictTradesBefore("ALE", new Date(50)), 13);
+		Collection<Trade> aleTrades = tradeDao.getTradesForStock("ALE", null, null);
+		assertEquals(aleTrades.size(), 12);
+		assertSame(aleTrades.iterator().next(), trades.get(52));
+		assertEquals(tradeDao.getStockSymbols().size(), STOCKS.length);
+	}
+
+	/**
+	 * Test to check a trade stored with the id of a trade of a stock of
+	 * another stripe replaces it, one at a time and in a batch.
+	 * 
+	 */
+	@Test
+	public void testReplaceTradeAcrossStripes() {
+
+		ShardedTradeDaoImpl tradeDao = new ShardedTradeDaoImpl(STOCKS.length);
+		Stock stock1 = STOCKS[0];
+		Stock stock2 = STOCKS[1];
+		for (Stock stock : STOCKS) {
+			if ((stock.getStockId() & (tradeDao.getStripeCount() - 1)) != (stock1.getStockId() & (tradeDao
+					.getStripeCount() - 1))) {
+				stock2 = stock;
+			}
+		}
+
+		final List<Trade> replacedTrades = new ArrayList<>();
+		tradeDao.addTradeListener(new TradeListener() {
+			@Override
+			public void tradeAdded(Trade trade) {
+			}
+
+			@Override
+			public void tradesAdded(List<Trade> trades) {
+			}
+
+			@Override
+			public void tradeDeleted(Trade trade) {
+			}
+
+			@Override
+			public void tradeReplaced(Trade replacedTrade, Trade trade) {
+				replacedTrades.add(replacedTrade);
+			}
+		});
+
+		Trade trade1 = new Trade(stock1, MILLI, TradeType.BUY, 1, 10);
+		tradeDao.addTrade(trade1);
+
+		Trade trade2 = new Trade(stock2, 2 * MILLI, TradeType.SELL, 2, 20);
+		trade2.setTradeId(trade1.getTradeId());
+		tradeDao.addTrade(trade2);
+
+		assertSame(tradeDao.getTrade(trade1.getTradeId()), trade2);
+		assertEquals(tradeDao.getTradesForStock(stock1.getSymbol(), null, null).size(), 0);
+
+		Trade trade3 = new Trade(stock1, 3 * MILLI, TradeType.BUY, 3, 30);
+		trade3.setTradeId(trade1.getTradeId());
+		tradeDao.addTrades(Collections.singletonList(trade3));
+
+		assertSame(tradeDao.getTrade(trade1.getTradeId()), trade3);
+		assertEquals(tradeDao.getTradesForStock(stock2.getSymbol(), null, null).size(), 0);
+		assertEquals(tradeDao.getAllTrades().size(), 1);
+		assertEquals(replacedTrades.size(), 2);
+		assertSame(replacedTrades.get(0), trade1);
+		assertSame(replacedTrades.get(1), trade2);
+	}
+
+	/**
+	 * Test to check readers racing writers of the same stripe always read
+	 * trades consistent with a point in time.
+	 * 
+	 */
+	@Test
+	public void testReadersRacingWriters() throws Exception {
+
+		final ShardedTradeDaoImpl tradeDao = new ShardedTradeDaoImpl(2);
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		ExecutorService executor = Executors.newFixedThreadPool(2 * STOCKS.length);
+		List<Future<?>> futures = new ArrayList<>();
+
+		for (final Stock stock : STOCKS) {
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					// out of order trades of price = quantity, evicted as they go
+					for (int i = 0; i < 20000; i++) {
+						long timeStampNanos = (i - i % 3 * 2) * MILLI;
+						tradeDao.addTrade(new Trade(stock, timeStampNanos, TradeType.BUY, 1 + i % 7, 1 + i % 7));
+						if (i % 1000 == 999) {
+							tradeDao.evictTradesBefore(stock.getSymbol(), new Date(i - 500));
+						}
+					}
+				}
+			}));
+		}
+		for (final Stock stock : STOCKS) {
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					while (writing.get()) {
+						double price = tradeDao.calculateVolumeWeightedPrice(stock.getSymbol(), Long.MIN_VALUE,
+								Long.MAX_VALUE);
+						assertTrue(price == 0.0 || price >= 1.0 && price <= 7.0, "Price " + price);
+						long previousTimeStamp = Long.MIN_VALUE;
+						for (Trade trade : tradeDao.getTradesForStock(stock.getSymbol(), null, null)) {
+							assertSame(trade.getStock(), stock);
+							assertTrue(previousTimeStamp <= trade.getTimeStampNanos());
+							previousTimeStamp = trade.getTimeStampNanos();
+						}
+					}
+				}
+			}));
+		}
+
+		for (Future<?> future : futures.subList(0, STOCKS.length)) {
+			future.get(60, TimeUnit.SECONDS);
+		}
+		writing.set(false);
+		for (Future<?> future : futures) {
+			future.get(60, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+
+		assertEquals(tradeDao.getAllTrades().size(), tradeDao.getTradesForStock("ALE", null, null).size()
+				* STOCKS.length);
+	}
+
+	/**
+	 * Test to check the calls of the sharded Trade DAO are published through
+	 * the metrics registry under the names of Trade DAO, failed calls as
+	 * errors.
+	 * 
+	 */
+	@Test
+	public void testMetrics() {
+
+		ShardedTradeDaoImpl tradeDao = new ShardedTradeDaoImpl(2);
+		MetricsRegistry metricsRegistry = new MetricsRegistry();
+		try {
+			tradeDao.setMetricsRegistry(metricsRegistry);
+
+			Trade trade = new Trade(ALE, 1000 * MILLI, TradeType.BUY, 10, 100);
+			tradeDao.addTrade(trade);
+			tradeDao.addTrades(Arrays.asList(new Trade(ALE, 2000 * MILLI, TradeType.SELL, 20, 110)));
+			tradeDao.getTrade(trade.getTradeId());
+			try {
+				tradeDao.getTrade(-1);
+			} catch (RuntimeException e) {
+				// counted as an error
+			}
+			tradeDao.getAllTrades();
+			tradeDao.getAllTradesForStock("ALE");
+			tradeDao.getTradesForStock("ALE", null, null);
+			tradeDao.deleteTrade(trade);
+			tradeDao.evictTradesBefore("ALE", new Date(3000));
+
+			assertEquals(metricsRegistry.getOperationMetrics("TradeDao.addTrade").getCount(), 1);
+			assertEquals(metricsRegistry.getOperationMetrics("TradeDao.addTrades").getCount(), 1);
+			assertEquals(metricsRegistry.getOperationMetrics("TradeDao.getTrade").getCount(), 2);
+			assertEquals(metricsRegistry.getOperationMetrics("TradeDao.getTrade").getErrorCount(), 1);
+			assertEquals(metricsRegistry.getOperationMetrics("TradeDao.getAllTrades").getCount(), 1);
+			assertEquals(metricsRegistry.getOperationMetrics("TradeDao.getAllTradesForStock").getCount(), 1);
+			assertEquals(metricsRegistry.getOperationMetrics("TradeDao.getTradesForStock").getCount(), 1);
+			assertEquals(metricsRegistry.getOperationMetrics("TradeDao.deleteTrade").getCount(), 1);
+			assertEquals(metricsRegistry.getOperationMetrics("TradeDao.evictTradesBefore").getCount(), 1);
+			assertEquals(tradeDao.getAllTrades().size(), 0);
+		} finally {
+			metricsRegistry.close();
+		}
+	}
+
+	/**
+	 * Test if an exception is thrown in case trade for a given trade id is not
+	 * available in database.
+	 * 
+	 */
+	@Test(expectedExceptions = { RuntimeException.class })
+	public void testTradeNotFoundInDatabase() {
+		new ShardedTradeDaoImpl().getTrade(1);
+	}
+
+}
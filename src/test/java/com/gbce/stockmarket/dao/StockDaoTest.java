@@ -13,6 +13,7 @@ import org.testng.annotations.Test;
 
 import com.gbce.stockmarket.beans.Stock;
 import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.util.SymbolRegistry;
 
 import config.StockMarketTestSpringConfig;
 
@@ -71,6 +72,25 @@ public class StockDaoTest extends AbstractTestNGSpringContextTests {
 
 	}
 
+	/**
+	 * Test to check if a stock can be fetched by the id of its symbol, which
+	 * is the same for the symbol in any case.
+	 * 
+	 */
+	@Test(dependsOnMethods = "testAddStock")
+	public void testFindStockById() {
+
+		Stock stock = stockDao.findStock("GIR");
+		int stockId = SymbolRegistry.getInstance().findId("gir");
+
+		assertEquals(stock.getStockId(), stockId);
+		assertEquals(new Stock("Gir", StockType.COMMON, 0, 0, 0).getStockId(), stockId);
+		assertEquals(SymbolRegistry.getInstance().getSymbol(stockId), "GIR");
+		assertEquals(stockDao.findStock(stockId), stock);
+		assertEquals(stockDao.findStock(stockDao.findStock("TEA").getStockId()).getSymbol(), "TEA");
+		assertEquals(SymbolRegistry.getInstance().findId("NOT-A-STOCK"), SymbolRegistry.UNKNOWN);
+	}
+
 	/**
 	 * Test to check if all stocks stored in database can be fetched through
 	 * Stock DAO.
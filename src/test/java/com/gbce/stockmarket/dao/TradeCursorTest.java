@@ -0,0 +1,141 @@
+package com.gbce.stockmarket.dao;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+
+/**
+ * TestNG Unit Test class for trade cursors of the Trade DAO implementations
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Test
+public class TradeCursorTest {
+
+	private static final Stock TEA = new Stock("TEA", StockType.COMMON, 0, 0, 100);
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private static final int TRADE_COUNT = 5000;
+
+	private final List<Trade> trades = new ArrayList<>();
+
+	@BeforeClass
+	public void setUp() {
+		Random random = new Random(5);
+		for (int i = 0; i < TRADE_COUNT; i++) {
+			Trade trade = new Trade(TEA, random.nextInt(1000) * SECOND, TradeType.BUY, 1 + random.nextInt(9),
+					1 + random.nextInt(99));
+			trade.setTradeId(i + 1);
+			trades.add(trade);
+		}
+	}
+
+	/**
+	 * @return each implementation of Trade DAO, holding the trades of the
+	 *         test, the default one split into 100 chunks
+	 */
+	private List<TradeDao> newTradeDaos() {
+		List<TradeDao> tradeDaos = new ArrayList<>();
+		tradeDaos.add(new TradeDaoImpl(10000));
+		tradeDaos.add(new ColumnarTradeDaoImpl());
+		tradeDaos.add(new ShardedTradeDaoImpl(4));
+		for (TradeDao tradeDao : tradeDaos) {
+			tradeDao.addTrades(trades);
+		}
+		return tradeDaos;
+	}
+
+	/**
+	 * Test to check cursors read the trades of a time frame in order, both
+	 * ways, and stop at the limit.
+	 * 
+	 */
+	@Test
+	public void testCursorOrder() {
+
+		Date fromTime = new Date(200000);
+		Date toTime = new Date(700000);
+		List<Trade> expected = new ArrayList<>();
+		for (Trade trade : trades) {
+			if (trade.getTimeStampNanos() >= 200 * SECOND && trade.getTimeStampNanos() < 700 * SECOND) {
+				expected.add(trade);
+			}
+		}
+		Collections.sort(expected, new Comparator<Trade>() {
+			@Override
+			public int compare(Trade trade1, Trade trade2) {
+				return TradeKey.of(trade1).compareTo(TradeKey.of(trade2));
+			}
+		});
+		List<Trade> reversed = new ArrayList<>(expected);
+		Collections.reverse(reversed);
+
+		for (TradeDao tradeDao : newTradeDaos()) {
+			List<Trade> ascending = tradeDao.streamTradesForStock("TEA", fromTime, toTime, false, 0).collect(
+					Collectors.<Trade> toList());
+			List<Trade> descending = tradeDao.streamTradesForStock("TEA", fromTime, toTime, true, 0).collect(
+					Collectors.<Trade> toList());
+			List<Trade> latest = tradeDao.streamTradesForStock("TEA", fromTime, toTime, true, 100).collect(
+					Collectors.<Trade> toList());
+
+			assertEquals(ascending, expected, tradeDao.getClass().getSimpleName());
+			assertEquals(descending, reversed, tradeDao.getClass().getSimpleName());
+			assertEquals(latest, reversed.subList(0, 100), tradeDao.getClass().getSimpleName());
+			assertEquals(tradeDao.getAllTradesForStock("TEA").size(), TRADE_COUNT);
+		}
+	}
+
+	/**
+	 * Test to check cursors split for parallel streams, which see every trade
+	 * once and keep the order of the trades.
+	 * 
+	 */
+	@Test
+	public void testParallelStream() {
+
+		long totalQuantity = 0;
+		for (Trade trade : trades) {
+			totalQuantity += trade.getStocksQuantity();
+		}
+
+		for (TradeDao tradeDao : newTradeDaos()) {
+			Spliterator<Trade> cursor = tradeDao.getTradeCursor("TEA", null, null, false);
+			assertNotNull(cursor.trySplit(), tradeDao.getClass().getSimpleName());
+
+			long parallelQuantity = 0;
+			for (Trade trade : tradeDao.streamTradesForStock("TEA", null, null, false, 0).parallel().collect(
+					Collectors.<Trade> toList())) {
+				parallelQuantity += trade.getStocksQuantity();
+			}
+			assertEquals(parallelQuantity, totalQuantity, tradeDao.getClass().getSimpleName());
+
+			List<Trade> descending = tradeDao.streamTradesForStock("TEA", null, null, true, 0).parallel().collect(
+					Collectors.<Trade> toList());
+			assertEquals(descending.size(), TRADE_COUNT);
+			for (int i = 1; i < descending.size(); i++) {
+				assertTrue(TradeKey.of(descending.get(i - 1)).compareTo(TradeKey.of(descending.get(i))) > 0);
+			}
+		}
+	}
+
+}
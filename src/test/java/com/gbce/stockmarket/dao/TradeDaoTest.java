@@ -1,12 +1,21 @@
 package com.gbce.stockmarket.dao;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import org.junit.AfterClass;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -42,6 +51,9 @@ public class TradeDaoTest extends AbstractTestNGSpringContextTests {
 	private static final Date DATE_1 = (new GregorianCalendar(2013, 1, 28, 13, 24, 56)).getTime();
 	private static final Date DATE_2 = (new GregorianCalendar(2016, 10, 16, 18, 17, 46)).getTime();
 
+	private long tradeId1;
+	private long tradeId2;
+
 	/**
 	 * Cleans up Trade database table before tests begin.
 	 * 
@@ -78,6 +90,7 @@ public class TradeDaoTest extends AbstractTestNGSpringContextTests {
 		boolean tradeBooked = tradeDao.addTrade(trade);
 
 		assertTrue(tradeBooked);
+		tradeId1 = trade.getTradeId();
 
 		// Add 2nd trade
 		stock = new Stock("GIN", StockType.PREFERRED, 8, 0.02, 100);
@@ -86,6 +99,9 @@ public class TradeDaoTest extends AbstractTestNGSpringContextTests {
 		tradeBooked = tradeDao.addTrade(trade);
 
 		assertTrue(tradeBooked);
+		tradeId2 = trade.getTradeId();
+
+		assertTrue(tradeId2 > tradeId1);
 	}
 
 	/**
@@ -95,7 +111,7 @@ public class TradeDaoTest extends AbstractTestNGSpringContextTests {
 	@Test(dependsOnMethods = "testAddTrade")
 	public void testGetTrade() {
 
-		Trade trade = tradeDao.getTrade(DATE_1);
+		Trade trade = tradeDao.getTrade(tradeId1);
 
 		assertNotNull(trade);
 
@@ -114,17 +130,19 @@ public class TradeDaoTest extends AbstractTestNGSpringContextTests {
 	@Test(dependsOnMethods = "testAddTrade")
 	public void testGetAllTrades() {
 
-		Map<Date, Trade> allTrades = tradeDao.getAllTrades();
+		Map<TradeKey, Trade> allTrades = tradeDao.getAllTrades();
 
 		assertEquals(allTrades.values().size(), 2);
 
-		Trade trade1 = allTrades.get(DATE_1);
+		Iterator<Trade> trades = allTrades.values().iterator();
+
+		Trade trade1 = trades.next();
 
-		assertNotNull(trade1);
+		assertEquals(trade1.getTradeId(), tradeId1);
 
-		Trade trade2 = allTrades.get(DATE_2);
+		Trade trade2 = trades.next();
 
-		assertNotNull(trade2);
+		assertEquals(trade2.getTradeId(), tradeId2);
 
 	}
 
@@ -135,23 +153,42 @@ public class TradeDaoTest extends AbstractTestNGSpringContextTests {
 	 */
 	@Test(dependsOnMethods = "testAddTrade")
 	public void testGetAllTradesForStock() {
-		Map<Date, Trade> allTrades = tradeDao.getAllTradesForStock("TEA");
+		Map<TradeKey, Trade> allTrades = tradeDao.getAllTradesForStock("TEA");
 		assertEquals(allTrades.size(), 1);
 	}
 
+	/**
+	 * Test to check if trades done on a given stock within a time frame can be
+	 * fetched through Trade DAO.
+	 * 
+	 */
+	@Test(dependsOnMethods = "testAddTrade")
+	public void testGetTradesForStock() {
+
+		Collection<Trade> trades = tradeDao.getTradesForStock("gin", DATE_1, null);
+		assertEquals(trades.size(), 1);
+		assertEquals(trades.iterator().next().getTimeStamp(), DATE_2);
+
+		trades = tradeDao.getTradesForStock("GIN", DATE_1, DATE_2);
+		assertTrue(trades.isEmpty());
+
+		trades = tradeDao.getTradesForStock("POP", null, null);
+		assertTrue(trades.isEmpty());
+	}
+
 	/**
 	 * Test to check if a given trade can be deleted from database through Trade
 	 * DAO.
 	 * 
 	 */
-	@Test(dependsOnMethods = { "testGetAllTrades", "testGetAllTradesForStock" })
+	@Test(dependsOnMethods = { "testGetAllTrades", "testGetAllTradesForStock", "testGetTradesForStock" })
 	public void testDeleteTrade() {
 
-		Map<Date, Trade> allTrades = tradeDao.getAllTrades();
+		Map<TradeKey, Trade> allTrades = tradeDao.getAllTrades();
 
 		assertEquals(allTrades.size(), 2);
 
-		Trade trade1 = allTrades.get(DATE_1);
+		Trade trade1 = tradeDao.getTrade(tradeId1);
 
 		tradeDao.deleteTrade(trade1);
 
@@ -162,14 +199,129 @@ public class TradeDaoTest extends AbstractTestNGSpringContextTests {
 	}
 
 	/**
-	 * Test if an exception is thrown in case trade for a given time stamp is
-	 * not available in database.
+	 * Test to check trades made on a stock at the same time are all stored in
+	 * the database, ordered by their time stamp in nanoseconds.
+	 * 
+	 */
+	@Test(dependsOnMethods = "testDeleteTrade")
+	public void testAddTradesAtSameTime() {
+
+		Stock stock = new Stock("POP", StockType.COMMON, 8, 0, 100);
+
+		Trade trade1 = new Trade(stock, DATE_2, TradeType.BUY, 10, 100);
+		Trade trade2 = new Trade(stock, DATE_2, TradeType.SELL, 20, 101);
+		Trade trade3 = new Trade(stock, DATE_2.getTime() * 1000000 - 1, TradeType.SELL, 30, 102);
+
+		assertTrue(tradeDao.addTrade(trade1));
+		assertTrue(tradeDao.addTrade(trade2));
+		assertTrue(tradeDao.addTrade(trade3));
+
+		Iterator<Trade> trades = tradeDao.getAllTradesForStock("POP").values().iterator();
+
+		assertEquals(trades.next(), trade3);
+		assertEquals(trades.next(), trade1);
+		assertEquals(trades.next(), trade2);
+
+		assertEquals(tradeDao.getTradesForStock("POP", DATE_2, null).size(), 2);
+	}
+
+	/**
+	 * Test to check trades of a stock are streamed latest first, up to a
+	 * limit, through Trade DAO.
+	 * 
+	 */
+	@Test(dependsOnMethods = "testAddTradesAtSameTime")
+	public void testStreamTradesForStock() {
+
+		List<Trade> trades = tradeDao.streamTradesForStock("POP", null, null, true, 2).collect(
+				Collectors.<Trade> toList());
+
+		assertEquals(trades.size(), 2);
+		assertEquals(trades.get(0).getPrice(), 101.0);
+		assertEquals(trades.get(1).getPrice(), 100.0);
+
+		assertEquals(tradeDao.streamTradesForStock("POP", null, DATE_2, false, 0).count(), 1);
+		assertEquals(tradeDao.streamTradesForStock("ALE", null, null, false, 0).count(), 0);
+	}
+
+	/**
+	 * Test to check trades made before the trades evicted for their stock are
+	 * refused, on their own, within batches and in place of a stored trade.
+	 * 
+	 */
+	@Test
+	public void testRefuseTradesBeforeEviction() {
+
+		TradeDaoImpl tradeDao = new TradeDaoImpl(1000);
+		Stock stock = new Stock("GIN", StockType.PREFERRED, 8, 0.02, 100);
+
+		Trade keptTrade = new Trade(stock, new Date(5500), TradeType.BUY, 10, 100);
+		assertTrue(tradeDao.addTrade(new Trade(stock, new Date(1500), TradeType.BUY, 10, 100)));
+		assertTrue(tradeDao.addTrade(keptTrade));
+		assertEquals(tradeDao.evictTradesBefore("GIN", new Date(3500)), 1);
+
+		// the chunk covering the eviction time is kept, trades before it are
+		// refused
+		assertFalse(tradeDao.addTrade(new Trade(stock, new Date(2500), TradeType.SELL, 20, 100)));
+		assertTrue(tradeDao.addTrade(new Trade(stock, new Date(3000), TradeType.SELL, 20, 100)));
+		assertEquals(tradeDao.addTrades(Arrays.asList(new Trade(stock, new Date(1000), TradeType.BUY, 5, 100),
+				new Trade(stock, new Date(6000), TradeType.BUY, 5, 100))), 1);
+
+		Trade movedTrade = new Trade(stock, new Date(500), TradeType.BUY, 10, 100);
+		movedTrade.setTradeId(keptTrade.getTradeId());
+		assertFalse(tradeDao.addTrade(movedTrade));
+
+		assertEquals(tradeDao.getAllTradesForStock("GIN").size(), 2);
+		assertEquals(tradeDao.getAllTrades().size(), 2);
+		assertEquals(tradeDao.getTradesForStock("GIN", null, new Date(3000)).size(), 0);
+		assertEquals(tradeDao.getRefusedTrades(), 3);
+	}
+
+	/**
+	 * Test to check trades added while older trades are evicted are either
+	 * stored in both the table and the index, or refused, and never bring an
+	 * evicted chunk back.
+	 * 
+	 */
+	@Test
+	public void testAddTradesWhileEvicting() throws InterruptedException {
+
+		final TradeDao tradeDao = new TradeDaoImpl(10);
+		final Stock stock = new Stock("JOE", StockType.COMMON, 13, 0, 250);
+		final AtomicBoolean evicting = new AtomicBoolean(true);
+		final CountDownLatch done = new CountDownLatch(4);
+
+		for (int t = 0; t < 4; t++) {
+			final int offset = t;
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (long time = offset; evicting.get(); time += 4) {
+						tradeDao.addTrade(new Trade(stock, new Date(time % 5000), TradeType.BUY, 1, 100));
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+		for (long time = 0; time <= 5000; time += 10) {
+			tradeDao.evictTradesBefore("JOE", new Date(time));
+			Thread.sleep(0, 100000);
+		}
+		evicting.set(false);
+		done.await(10, TimeUnit.SECONDS);
+
+		assertEquals(tradeDao.getTradesForStock("JOE", null, new Date(5000)).size(), 0);
+		assertEquals(tradeDao.getAllTrades().size(), tradeDao.getAllTradesForStock("JOE").size());
+	}
+
+	/**
+	 * Test if an exception is thrown in case trade for a given trade id is not
+	 * available in database.
 	 * 
 	 */
 	@Test(expectedExceptions = { RuntimeException.class })
 	public void testTradeNotFoundInDatabase() {
-		Date now = new Date();
-		tradeDao.getTrade(now);
+		tradeDao.getTrade(-1);
 	}
 
 }
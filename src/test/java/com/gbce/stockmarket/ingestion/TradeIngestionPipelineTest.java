@@ -0,0 +1,208 @@
+package com.gbce.stockmarket.ingestion;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.dao.TradeDaoImpl;
+import com.gbce.stockmarket.metrics.MetricsRegistry;
+import com.gbce.stockmarket.util.HighResolutionClock;
+
+import config.TradeIngestionSpringConfig;
+
+/**
+ * TestNG Unit Test class for Trade ingestion pipeline
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Test
+public class TradeIngestionPipelineTest {
+
+	private static final int PRODUCERS = 4;
+	private static final int TRADES_PER_PRODUCER = 5000;
+
+	private static final Stock[] STOCKS = { new Stock("TEA", StockType.COMMON, 0, 0, 100),
+			new Stock("POP", StockType.COMMON, 8, 0, 100), new Stock("GIN", StockType.PREFERRED, 8, 0.02, 100) };
+
+	@DataProvider
+	public Object[][] waitStrategies() {
+		return new Object[][] { { WaitStrategy.BUSY_SPIN }, { WaitStrategy.YIELD }, { WaitStrategy.PARK } };
+	}
+
+	/**
+	 * Test to check all trades published by concurrent producers are stored
+	 * once the pipeline is closed, with every wait strategy.
+	 * 
+	 */
+	@Test(dataProvider = "waitStrategies")
+	public void testPublishFromManyProducers(WaitStrategy waitStrategy) throws InterruptedException {
+
+		TradeDao tradeDao = new TradeDaoImpl();
+		final TradeIngestionPipeline pipeline = new TradeIngestionPipeline(tradeDao, 256, waitStrategy, 64);
+		MetricsRegistry metricsRegistry = new MetricsRegistry();
+		pipeline.setMetricsRegistry(metricsRegistry);
+		pipeline.start();
+
+		final CountDownLatch done = new CountDownLatch(PRODUCERS);
+		for (int p = 0; p < PRODUCERS; p++) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < TRADES_PER_PRODUCER; i++) {
+						pipeline.publish(new Trade(STOCKS[i % STOCKS.length], HighResolutionClock.currentTimeNanos(),
+								TradeType.BUY, 1 + i % 10, 100));
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+		done.await();
+		pipeline.close();
+
+		Set<Long> tradeIds = new HashSet<>();
+		for (Trade trade : tradeDao.getAllTrades().values()) {
+			tradeIds.add(trade.getTradeId());
+		}
+
+		assertEquals(tradeIds.size(), PRODUCERS * TRADES_PER_PRODUCER);
+		assertEquals(pipeline.getQueueLatency().getCount(), PRODUCERS * TRADES_PER_PRODUCER);
+		assertTrue(pipeline.getStoreLatency().getCount() > 0);
+		assertEquals(metricsRegistry.getOperationMetrics("TradeIngestionPipeline.queue").getCount(),
+				PRODUCERS * TRADES_PER_PRODUCER);
+		assertEquals(metricsRegistry.getOperationMetrics("TradeIngestionPipeline.store").getCount(),
+				pipeline.getStoreLatency().getCount());
+		metricsRegistry.close();
+	}
+
+	/**
+	 * Test to check trades are not accepted when the pipeline is full or
+	 * closed.
+	 * 
+	 */
+	@Test
+	public void testFullAndClosedPipeline() {
+
+		TradeDao tradeDao = new TradeDaoImpl();
+		TradeIngestionPipeline pipeline = new TradeIngestionPipeline(tradeDao, 2, WaitStrategy.YIELD, 16);
+
+		Trade trade = new Trade(STOCKS[0], HighResolutionClock.currentTimeNanos(), TradeType.SELL, 10, 100);
+
+		assertTrue(pipeline.tryPublish(trade));
+		assertTrue(pipeline.tryPublish(trade));
+		assertFalse(pipeline.tryPublish(trade));
+
+		pipeline.start();
+		pipeline.flush();
+
+		assertTrue(pipeline.tryPublish(trade));
+
+		pipeline.close();
+
+		try {
+			pipeline.tryPublish(trade);
+			fail("Closed pipeline should not accept trades");
+		} catch (IllegalStateException e) {
+			assertEquals(tradeDao.getAllTradesForStock("TEA").size(), 1);
+		}
+	}
+
+	/**
+	 * Test to check the trades of a batch which cannot be stored are stored
+	 * one by one, and those which still fail are counted and passed to the
+	 * failure handler.
+	 * 
+	 */
+	@Test
+	public void testFailedTrades() {
+
+		TradeDao tradeDao = new TradeDaoImpl() {
+			@Override
+			public boolean addTrade(Trade trade) {
+				if (trade.getStocksQuantity() == 13) {
+					throw new RuntimeException("Unlucky trade");
+				}
+				return super.addTrade(trade);
+			}
+
+			@Override
+			public int addTrades(Collection<Trade> trades) {
+				for (Trade trade : trades) {
+					if (trade.getStocksQuantity() == 13) {
+						throw new RuntimeException("Unlucky batch");
+					}
+				}
+				return super.addTrades(trades);
+			}
+		};
+		TradeIngestionPipeline pipeline = new TradeIngestionPipeline(tradeDao, 16, WaitStrategy.YIELD, 16);
+
+		final List<Trade> failedTrades = new ArrayList<>();
+		pipeline.setFailureHandler(new TradeFailureHandler() {
+			@Override
+			public void tradeFailed(Trade trade, Exception exception) {
+				failedTrades.add(trade);
+			}
+		});
+
+		Trade unluckyTrade = new Trade(STOCKS[0], HighResolutionClock.currentTimeNanos(), TradeType.BUY, 13, 100);
+		pipeline.publish(new Trade(STOCKS[0], HighResolutionClock.currentTimeNanos(), TradeType.BUY, 10, 100));
+		pipeline.publish(unluckyTrade);
+		pipeline.publish(new Trade(STOCKS[0], HighResolutionClock.currentTimeNanos(), TradeType.SELL, 20, 100));
+
+		pipeline.start();
+		pipeline.close();
+
+		assertEquals(tradeDao.getAllTradesForStock("TEA").size(), 2);
+		assertEquals(pipeline.getFailedTrades(), 1);
+		assertEquals(failedTrades.size(), 1);
+		assertTrue(failedTrades.get(0) == unluckyTrade);
+	}
+
+	/**
+	 * Test to check the opt-in Spring configuration starts the pipeline with
+	 * the context, and stores published trades when the context is closed.
+	 * 
+	 */
+	@Test
+	public void testSpringConfig() {
+
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(TradeDaoImpl.class,
+				TradeIngestionSpringConfig.class);
+		TradeDao tradeDao = context.getBean(TradeDao.class);
+		TradeIngestionPipeline pipeline = context.getBean(TradeIngestionPipeline.class);
+
+		pipeline.publish(new Trade(STOCKS[0], HighResolutionClock.currentTimeNanos(), TradeType.BUY, 10, 100));
+		pipeline.flush();
+		assertEquals(tradeDao.getAllTradesForStock("TEA").size(), 1);
+
+		pipeline.publish(new Trade(STOCKS[0], HighResolutionClock.currentTimeNanos(), TradeType.SELL, 20, 100));
+		context.close();
+		assertEquals(tradeDao.getAllTradesForStock("TEA").size(), 2);
+
+		try {
+			pipeline.publish(new Trade(STOCKS[0], HighResolutionClock.currentTimeNanos(), TradeType.BUY, 5, 100));
+			fail("Pipeline should be closed with the context");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+}
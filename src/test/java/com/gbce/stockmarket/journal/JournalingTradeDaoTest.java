@@ -0,0 +1,347 @@
+package com.gbce.stockmarket.journal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+import com.gbce.stockmarket.dao.StockDao;
+import com.gbce.stockmarket.dao.TradeDaoImpl;
+import com.gbce.stockmarket.dao.TradeKey;
+import com.gbce.stockmarket.metrics.MetricsRegistry;
+import com.gbce.stockmarket.metrics.OperationMetrics;
+
+import config.StockMarketTestSpringConfig;
+
+/**
+ * TestNG Unit Test class for journaling Trade DAO
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Test
+@ContextConfiguration(classes = { StockMarketTestSpringConfig.class })
+public class JournalingTradeDaoTest extends AbstractTestNGSpringContextTests {
+
+	private static final int SEGMENT_SIZE = 4096;
+
+	/**
+	 * Stock DAO object. Injected via Spring Auto Wiring.
+	 */
+	@Autowired
+	private StockDao stockDao;
+
+	private File directory;
+
+	@BeforeMethod
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("trade-journal").toFile();
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@DataProvider
+	public Object[][] fsyncPolicies() {
+		return new Object[][] { { FsyncPolicy.EVERY_WRITE }, { FsyncPolicy.PERIODIC }, { FsyncPolicy.OS_MANAGED } };
+	}
+
+	/**
+	 * Test to check trades added and deleted, spread over several journal
+	 * segments, are recovered after the journal is reopened, with every fsync
+	 * policy.
+	 * 
+	 */
+	@Test(dataProvider = "fsyncPolicies")
+	public void testRecoverTrades(FsyncPolicy fsyncPolicy) {
+
+		JournalingTradeDao tradeDao = open(fsyncPolicy);
+
+		Stock tea = stockDao.findStock("TEA");
+		Stock gin = stockDao.findStock("GIN");
+		List<Trade> trades = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			trades.add(new Trade(i % 2 == 0 ? tea : gin, 1000L * i, TradeType.BUY, 10 + i, 100 + i));
+		}
+
+		tradeDao.addTrades(trades.subList(0, 100));
+		for (Trade trade : trades.subList(100, 200)) {
+			tradeDao.addTrade(trade);
+		}
+		tradeDao.deleteTrade(trades.get(10));
+		tradeDao.deleteTrade(trades.get(150));
+		tradeDao.close();
+
+		assertTrue(directory.list().length > 1);
+
+		JournalingTradeDao recoveredTradeDao = open(fsyncPolicy);
+
+		assertEquals(recoveredTradeDao.getAllTrades().size(), 198);
+		assertEquals(recoveredTradeDao.getAllTradesForStock("TEA").size(), 98);
+
+		Trade trade = recoveredTradeDao.getTrade(trades.get(11).getTradeId());
+		assertEquals(trade, trades.get(11));
+		assertEquals(trade.getStock(), gin);
+		assertEquals(trade.getType(), TradeType.BUY);
+		assertEquals(trade.getStocksQuantity(), 21);
+		assertEquals(trade.getPrice(), 111.0);
+
+		for (TradeKey key : recoveredTradeDao.getAllTrades().keySet()) {
+			assertFalse(key.getTradeId() == trades.get(10).getTradeId());
+			assertFalse(key.getTradeId() == trades.get(150).getTradeId());
+		}
+
+		// new trades carry on the sequence of trade ids
+		Trade newTrade = new Trade(tea, 1000000L, TradeType.SELL, 5, 50);
+		recoveredTradeDao.addTrade(newTrade);
+		assertEquals(newTrade.getTradeId(), trades.get(199).getTradeId() + 1);
+		recoveredTradeDao.close();
+	}
+
+	/**
+	 * Test to check a torn record at the tail of the journal is truncated on
+	 * recovery, and new trades are appended after the last complete record.
+	 * 
+	 */
+	@Test
+	public void testTruncateTornTail() throws IOException {
+
+		JournalingTradeDao tradeDao = open(FsyncPolicy.OS_MANAGED);
+
+		Stock pop = stockDao.findStock("POP");
+		for (int i = 0; i < 3; i++) {
+			tradeDao.addTrade(new Trade(pop, 1000L * i, TradeType.SELL, 10, 100));
+		}
+		tradeDao.close();
+
+		// corrupt the last byte of the price of the third trade
+		File segment = directory.listFiles()[0];
+		try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+			int recordSize = 4 + 31 + 3 + 4;
+			long position = 8 + 2 * recordSize + 4 + 29;
+			file.seek(position);
+			int value = file.read();
+			file.seek(position);
+			file.write(value ^ 0xFF);
+		}
+
+		tradeDao = open(FsyncPolicy.OS_MANAGED);
+		assertEquals(tradeDao.getAllTrades().size(), 2);
+
+		tradeDao.addTrade(new Trade(pop, 5000L, TradeType.BUY, 20, 200));
+		tradeDao.close();
+
+		tradeDao = open(FsyncPolicy.OS_MANAGED);
+		assertEquals(tradeDao.getAllTradesForStock("POP").size(), 3);
+		assertEquals(tradeDao.getAllTrades().lastEntry().getValue().getStocksQuantity(), 20);
+		tradeDao.close();
+	}
+
+	/**
+	 * Test to check startup loads the latest snapshot and replays only the
+	 * journal written after it, and falls back to the previous snapshot if
+	 * the latest one is damaged.
+	 * 
+	 */
+	@Test
+	public void testRecoverFromSnapshot() throws IOException {
+
+		JournalingTradeDao tradeDao = openWithSnapshots();
+
+		Stock ale = stockDao.findStock("ALE");
+		List<Trade> trades = new ArrayList<>();
+		for (int i = 0; i < 150; i++) {
+			trades.add(new Trade(ale, 1000L * i, TradeType.SELL, 1 + i, 50));
+		}
+
+		tradeDao.addTrades(trades.subList(0, 50));
+		tradeDao.snapshot();
+		tradeDao.addTrades(trades.subList(50, 100));
+		File latestSnapshot = tradeDao.snapshot();
+		tradeDao.addTrades(trades.subList(100, 150));
+		tradeDao.deleteTrade(trades.get(0));
+		tradeDao.close();
+
+		tradeDao = openWithSnapshots();
+
+		assertEquals(tradeDao.getSnapshotTrades(), 100);
+		assertEquals(tradeDao.getJournalRecords(), 51);
+		assertEquals(tradeDao.getAllTradesForStock("ALE").size(), 149);
+		assertEquals(tradeDao.getAllTrades().lastEntry().getValue().getStocksQuantity(), 150);
+		tradeDao.close();
+
+		try (RandomAccessFile file = new RandomAccessFile(latestSnapshot, "rw")) {
+			file.seek(file.length() / 2);
+			file.write(0xFF);
+		}
+
+		tradeDao = openWithSnapshots();
+
+		assertEquals(tradeDao.getSnapshotTrades(), 50);
+		assertEquals(tradeDao.getJournalRecords(), 101);
+		assertEquals(tradeDao.getAllTradesForStock("ALE").size(), 149);
+		tradeDao.close();
+	}
+
+	/**
+	 * Test to check trades which cannot be journaled are rejected before they
+	 * are stored, leaving nothing of their batch in the database or in the
+	 * journal.
+	 * 
+	 */
+	@Test
+	public void testRejectTradesBeforeStoring() {
+
+		JournalingTradeDao tradeDao = open(FsyncPolicy.OS_MANAGED);
+
+		Stock joe = stockDao.findStock("JOE");
+		tradeDao.addTrade(new Trade(joe, 1000L, TradeType.BUY, 10, 100));
+
+		List<Trade> batch = new ArrayList<>();
+		batch.add(new Trade(joe, 2000L, TradeType.BUY, 10, 100));
+		batch.add(new Trade(joe, 3000L, null, 10, 100));
+		try {
+			tradeDao.addTrades(batch);
+			fail("Trade without type was stored");
+		} catch (RuntimeException e) {
+			assertEquals(tradeDao.getAllTradesForStock("JOE").size(), 1);
+		}
+
+		Stock nonAsciiStock = new Stock("JO\u00c9", StockType.COMMON, 0, 0, 100);
+		try {
+			tradeDao.addTrade(new Trade(nonAsciiStock, 4000L, TradeType.SELL, 10, 100));
+			fail("Trade with a symbol which cannot be encoded was stored");
+		} catch (RuntimeException e) {
+			assertEquals(tradeDao.getAllTrades().size(), 1);
+		}
+		tradeDao.close();
+
+		tradeDao = open(FsyncPolicy.OS_MANAGED);
+		assertEquals(tradeDao.getJournalRecords(), 1);
+		assertEquals(tradeDao.getAllTrades().size(), 1);
+		tradeDao.close();
+	}
+
+	/**
+	 * Test to check trades evicted from the journaling Trade DAO stay evicted
+	 * after the journal is reopened, and trades older than the eviction are
+	 * still refused.
+	 * 
+	 */
+	@Test
+	public void testRecoverEvictedTrades() {
+
+		JournalingTradeDao tradeDao = open(FsyncPolicy.OS_MANAGED);
+
+		Stock tea = stockDao.findStock("TEA");
+		Stock gin = stockDao.findStock("GIN");
+		for (int i = 0; i < 200; i++) {
+			tradeDao.addTrade(
+					new Trade(i % 2 == 0 ? tea : gin, new Date(60000L * i), TradeType.BUY, 10 + i, 100 + i));
+		}
+		assertEquals(tradeDao.evictTradesBefore("TEA", new Date(60000L * 100)), 50);
+		tradeDao.close();
+
+		JournalingTradeDao recoveredTradeDao = open(FsyncPolicy.OS_MANAGED);
+
+		assertEquals(recoveredTradeDao.getAllTrades().size(), 150);
+		assertEquals(recoveredTradeDao.getAllTradesForStock("TEA").size(), 50);
+		assertEquals(recoveredTradeDao.getAllTradesForStock("GIN").size(), 100);
+		assertEquals(recoveredTradeDao.getAllTradesForStock("TEA").firstEntry().getValue().getTimeStamp().getTime(),
+				60000L * 100);
+
+		assertFalse(recoveredTradeDao.addTrade(new Trade(tea, new Date(60000L * 10), TradeType.SELL, 5, 50)));
+		assertEquals(recoveredTradeDao.getAllTradesForStock("TEA").size(), 50);
+		recoveredTradeDao.close();
+	}
+
+	/**
+	 * Test to check the startup time and the changes of the journaling Trade
+	 * DAO are published through the metrics registry.
+	 * 
+	 */
+	@Test
+	public void testMetrics() {
+
+		JournalingTradeDao tradeDao = open(FsyncPolicy.OS_MANAGED);
+		MetricsRegistry metricsRegistry = new MetricsRegistry();
+		tradeDao.setMetricsRegistry(metricsRegistry);
+
+		Stock tea = stockDao.findStock("TEA");
+		tradeDao.addTrade(new Trade(tea, new Date(60000L), TradeType.BUY, 10, 100));
+		tradeDao.addTrades(Arrays.asList(new Trade(tea, new Date(120000L), TradeType.SELL, 20, 110)));
+		tradeDao.close();
+
+		OperationMetrics startup = metricsRegistry.getOperationMetrics("JournalingTradeDao.startup");
+		assertEquals(startup.getCount(), 1);
+		assertTrue(startup.getMaxMicros() > 0);
+		assertEquals(metricsRegistry.getOperationMetrics("JournalingTradeDao.addTrade").getCount(), 1);
+		assertEquals(metricsRegistry.getOperationMetrics("JournalingTradeDao.addTrades").getCount(), 1);
+		metricsRegistry.close();
+	}
+
+	/**
+	 * Test to check a journal of another format, without segment headers, is
+	 * refused and left untouched instead of being truncated as a torn tail.
+	 * 
+	 */
+	@Test
+	public void testRefuseJournalOfOtherFormat() throws IOException {
+
+		// a big endian record length, in a segment without header
+		byte[] contents = new byte[SEGMENT_SIZE];
+		ByteBuffer.wrap(contents).putInt(37).putLong(1L).putLong(2L);
+		File segment = new File(directory, "trades-00000000.journal");
+		File laterSegment = new File(directory, "trades-00000001.journal");
+		Files.write(segment.toPath(), contents);
+		Files.write(laterSegment.toPath(), contents);
+
+		try {
+			open(FsyncPolicy.OS_MANAGED);
+			fail("Journal of another format was opened");
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage().contains("Refusing to open"), e.getMessage());
+		}
+
+		assertTrue(Arrays.equals(Files.readAllBytes(segment.toPath()), contents));
+		assertTrue(Arrays.equals(Files.readAllBytes(laterSegment.toPath()), contents));
+	}
+
+	private JournalingTradeDao open(FsyncPolicy fsyncPolicy) {
+		TradeJournal journal = new TradeJournal(directory, SEGMENT_SIZE, fsyncPolicy, 10);
+		return new JournalingTradeDao(new TradeDaoImpl(), journal, stockDao);
+	}
+
+	private JournalingTradeDao openWithSnapshots() {
+		TradeJournal journal = new TradeJournal(directory, SEGMENT_SIZE, FsyncPolicy.OS_MANAGED, 10);
+		return new JournalingTradeDao(new TradeDaoImpl(), journal, new TradeSnapshotStore(directory), stockDao);
+	}
+
+}
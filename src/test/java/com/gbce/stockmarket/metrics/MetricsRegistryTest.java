@@ -0,0 +1,142 @@
+package com.gbce.stockmarket.metrics;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testng.annotations.Test;
+
+import com.gbce.stockmarket.service.StockService;
+
+import config.StockMarketTestSpringConfig;
+
+/**
+ * TestNG Unit Test class for operation metrics
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Test
+@ContextConfiguration(classes = { StockMarketTestSpringConfig.class })
+public class MetricsRegistryTest extends AbstractTestNGSpringContextTests {
+
+	/**
+	 * Metrics registry object. Injected via Spring Auto Wiring.
+	 */
+	@Autowired
+	private MetricsRegistry metricsRegistry;
+
+	/**
+	 * Stock service object. Injected via Spring Auto Wiring.
+	 */
+	@Autowired
+	private StockService stockService;
+
+	/**
+	 * Test to check percentiles of the histogram are within the bucket
+	 * precision of the latencies recorded.
+	 * 
+	 */
+	@Test
+	public void testHistogramPercentiles() {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long nanos = 1; nanos <= 100000; nanos++) {
+			histogram.record(nanos);
+		}
+
+		assertEquals(histogram.getCount(), 100000);
+		assertEquals(histogram.getMaxNanos(), 100000);
+		assertEquals(histogram.getMeanNanos(), 50000.5, 1e-9);
+		assertEquals(histogram.getValueAtPercentile(50), 50000, 50000 / 32);
+		assertEquals(histogram.getValueAtPercentile(99), 99000, 99000 / 32);
+		assertEquals(histogram.getValueAtPercentile(99.9), 99900, 99900 / 32);
+		assertEquals(histogram.getValueAtPercentile(100), 100000);
+
+		for (long value : new long[] { 0, 1, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE }) {
+			int index = LatencyHistogram.bucketIndex(value);
+			assertTrue(value <= LatencyHistogram.highestValue(index));
+			assertTrue(index == 0 || value > LatencyHistogram.highestValue(index - 1));
+		}
+	}
+
+	/**
+	 * Test to check operations run through the metrics are recorded, and
+	 * counted as failed when they throw.
+	 * 
+	 */
+	@Test
+	public void testMeasure() {
+
+		OperationMetrics metrics = new OperationMetrics("test");
+
+		assertEquals(metrics.measure(() -> "result"), "result");
+		try {
+			metrics.measure(() -> {
+				throw new RuntimeException("failed");
+			});
+			fail("Failure of the operation was not passed on");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "failed");
+		}
+
+		assertEquals(metrics.getCount(), 2);
+		assertEquals(metrics.getErrorCount(), 1);
+	}
+
+	/**
+	 * Test to check Stock Service operations are measured, published as
+	 * MBeans and reported in snapshots of the interval since the previous
+	 * snapshot.
+	 * 
+	 */
+	@Test
+	public void testServiceMetrics() throws Exception {
+
+		metricsRegistry.snapshot();
+
+		for (int i = 0; i < 10; i++) {
+			stockService.calculateDividendYield("POP", 100);
+		}
+		try {
+			stockService.calculatePERatio("TEA", 100);
+		} catch (RuntimeException e) {
+			// P/E ratio of a stock without dividend cannot be calculated
+		}
+
+		MetricsSnapshot dividendYield = null;
+		MetricsSnapshot peRatio = null;
+		List<MetricsSnapshot> snapshots = metricsRegistry.snapshot();
+		for (MetricsSnapshot snapshot : snapshots) {
+			if (snapshot.getName().equals("StockService.calculateDividendYield")) {
+				dividendYield = snapshot;
+			} else if (snapshot.getName().equals("StockService.calculatePERatio")) {
+				peRatio = snapshot;
+			}
+		}
+
+		assertEquals(dividendYield.getCount(), 10);
+		assertEquals(dividendYield.getErrorCount(), 0);
+		assertTrue(dividendYield.getP50Nanos() <= dividendYield.getP99Nanos());
+		assertTrue(dividendYield.getP999Nanos() <= dividendYield.getMaxNanos());
+		assertTrue(dividendYield.getRatePerSecond() > 0);
+		assertEquals(peRatio.getCount(), 1);
+		assertEquals(peRatio.getErrorCount(), 1);
+
+		ObjectName objectName = new ObjectName("com.gbce.stockmarket:type=Metrics,name="
+				+ ObjectName.quote("StockDao.findStock"));
+		long findStockCount = (Long) ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "Count");
+		assertTrue(findStockCount >= 11);
+
+		assertEquals(metricsRegistry.snapshot().get(0).getCount(), 0);
+	}
+
+}
@@ -0,0 +1,230 @@
+package com.gbce.stockmarket.replay;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.beans.VolumeWeightedPrices;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+import com.gbce.stockmarket.service.StockService;
+
+import config.ReplayTestSpringConfig;
+
+/**
+ * TestNG Unit Test class for trade replayer
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Test
+public class TradeReplayerTest {
+
+	private static final String[] SYMBOLS = { "TEA", "POP", "ALE" };
+
+	/** A trading day in the past, 2016-03-01 08:00 UTC */
+	private static final long START_NANOS = TimeUnit.MILLISECONDS.toNanos(1456819200000L);
+
+	private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+	private File directory;
+	private List<Trade> trades;
+
+	@BeforeClass
+	public void setUp() throws IOException {
+
+		directory = Files.createTempDirectory("trade-replay").toFile();
+
+		Random random = new Random(3);
+		trades = new ArrayList<>();
+		long timeStampNanos = START_NANOS;
+		for (int i = 0; i < 20000; i++) {
+			timeStampNanos += random.nextInt(6000) * 1000000L;
+			String symbol = SYMBOLS[random.nextInt(SYMBOLS.length)];
+			trades.add(new Trade(new Stock(symbol, StockType.COMMON, 0, 0, 100), timeStampNanos, random
+					.nextBoolean() ? TradeType.BUY : TradeType.SELL, 1 + random.nextInt(100), (1 + random
+					.nextInt(50000)) / 100.0));
+		}
+
+		try (PrintWriter writer = new PrintWriter(new File(directory, "trades.csv"), "US-ASCII")) {
+			writer.println("symbol,timeStampNanos,type,quantity,price");
+			for (Trade trade : trades) {
+				writer.println(trade.getStock().getSymbol() + "," + trade.getTimeStampNanos() + ","
+						+ trade.getType() + "," + trade.getStocksQuantity() + "," + trade.getPrice());
+			}
+		}
+
+		try (BinaryTradeFileWriter writer = new BinaryTradeFileWriter(new File(directory, "trades.bin").getPath(),
+				4096)) {
+			for (Trade trade : trades) {
+				writer.write(trade);
+			}
+		}
+	}
+
+	@AfterClass
+	public void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	/**
+	 * Test to check the CSV and binary files stream back the trades written,
+	 * through buffers much smaller than the files.
+	 * 
+	 */
+	@Test
+	public void testReadTradeFiles() {
+		for (TradeFileReader reader : new TradeFileReader[] {
+				new CsvTradeFileReader(new File(directory, "trades.csv").getPath(), 1024),
+				new BinaryTradeFileReader(new File(directory, "trades.bin").getPath(), 1024) }) {
+			try {
+				for (Trade trade : trades) {
+					assertTrue(reader.next());
+					assertEquals(reader.getStockSymbol(), trade.getStock().getSymbol());
+					assertEquals(reader.getTimeStampNanos(), trade.getTimeStampNanos());
+					assertEquals(reader.getType(), trade.getType());
+					assertEquals(reader.getQuantity(), trade.getStocksQuantity());
+					assertEquals(reader.getPrice(), trade.getPrice());
+				}
+				assertTrue(!reader.next());
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Test to check lines with a lone minus sign or a quantity out of range
+	 * are rejected rather than read as a wrong trade.
+	 * 
+	 */
+	@Test
+	public void testInvalidCsvLines() throws IOException {
+		String[] lines = { "TEA,-,BUY,20,280.5", "TEA,1457000000000000000,BUY,-,280.5",
+				"TEA,1457000000000000000,BUY,4294967316,280.5", "TEA,99999999999999999999,BUY,20,280.5" };
+		File file = new File(directory, "invalid.csv");
+		for (String line : lines) {
+			try (PrintWriter writer = new PrintWriter(file, "US-ASCII")) {
+				writer.println("symbol,timeStampNanos,type,quantity,price");
+				writer.println(line);
+			}
+			try (CsvTradeFileReader reader = new CsvTradeFileReader(file.getPath())) {
+				reader.next();
+				fail("Line should be rejected : " + line);
+			} catch (RuntimeException e) {
+				assertTrue(e.getMessage().startsWith("Invalid line 2"), e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Test to check replaying a past trading session on a simulated clock
+	 * reports the Volume Weighted Stock Prices of the trades as of each
+	 * sample, the same for both file formats.
+	 * 
+	 */
+	@Test
+	public void testReplayTradeFiles() {
+
+		ReplayReport csvReport = replay(new CsvTradeFileReader(new File(directory, "trades.csv").getPath()), 1);
+		ReplayReport binaryReport = replay(new BinaryTradeFileReader(new File(directory, "trades.bin").getPath()),
+				500);
+
+		for (ReplayReport report : new ReplayReport[] { csvReport, binaryReport }) {
+			assertEquals(report.getTradeCount(), trades.size());
+			assertEquals(report.getSampleCount(), binaryReport.getSampleCount());
+
+			long lastTradeNanos = trades.get(trades.size() - 1).getTimeStampNanos();
+			assertEquals(report.getSampleTimeNanos(report.getSampleCount() - 1), lastTradeNanos);
+			assertTrue(report.getSampleCount() > (lastTradeNanos - START_NANOS) / MINUTE);
+
+			for (int sample = 0; sample < report.getSampleCount(); sample += 97) {
+				long sampleTimeNanos = report.getSampleTimeNanos(sample);
+				VolumeWeightedPrices prices = report.getVolumeWeightedPrices(sample);
+				for (String symbol : SYMBOLS) {
+					assertEquals(prices.getPrice(symbol, 5), volumeWeightedPrice(symbol, sampleTimeNanos - 5
+							* MINUTE, sampleTimeNanos), 1e-6);
+				}
+				assertEquals(report.getAllShareIndex(sample), binaryReport.getAllShareIndex(sample));
+			}
+		}
+	}
+
+	/**
+	 * Test to check trades are replayed at a multiple of the speed they were
+	 * made at.
+	 * 
+	 */
+	@Test
+	public void testReplayAtSpeed() throws IOException {
+
+		String fileName = new File(directory, "slow.bin").getPath();
+		try (BinaryTradeFileWriter writer = new BinaryTradeFileWriter(fileName)) {
+			for (int i = 0; i <= 10; i++) {
+				writer.write("TEA", START_NANOS + i * TimeUnit.SECONDS.toNanos(3), TradeType.BUY, 10, 100);
+			}
+		}
+
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(
+				ReplayTestSpringConfig.class);
+		try {
+			TradeReplayer replayer = new TradeReplayer(context.getBean(StockService.class), context
+					.getBean(SimulatedClock.class));
+			replayer.setSpeed(100);
+			ReplayReport report = replayer.replay(new BinaryTradeFileReader(fileName));
+
+			assertEquals(report.getTradeCount(), 11);
+			assertTrue(report.getElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(300), "Replayed too fast : "
+					+ report);
+		} finally {
+			context.close();
+		}
+	}
+
+	private ReplayReport replay(TradeFileReader reader, int batchSize) {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(
+				ReplayTestSpringConfig.class);
+		try {
+			TradeReplayer replayer = new TradeReplayer(context.getBean(StockService.class), context
+					.getBean(SimulatedClock.class));
+			replayer.setBatchSize(batchSize);
+			return replayer.replay(reader);
+		} finally {
+			reader.close();
+			context.close();
+		}
+	}
+
+	private double volumeWeightedPrice(String symbol, long fromTimeNanos, long toTimeNanos) {
+		long quantity = 0;
+		double totalPrice = 0;
+		for (Trade trade : trades) {
+			if (trade.getStock().getSymbol().equals(symbol) && trade.getTimeStampNanos() >= fromTimeNanos
+					&& trade.getTimeStampNanos() <= toTimeNanos) {
+				quantity += trade.getStocksQuantity();
+				totalPrice += trade.getPrice() * trade.getStocksQuantity();
+			}
+		}
+		return quantity > 0 ? totalPrice / quantity : 0.0;
+	}
+
+}
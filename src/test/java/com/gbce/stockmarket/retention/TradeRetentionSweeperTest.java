@@ -0,0 +1,193 @@
+package com.gbce.stockmarket.retention;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.testng.annotations.Test;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.dao.TradeDaoImpl;
+
+import config.TradeRetentionSpringConfig;
+
+/**
+ * TestNG Unit Test class for trade retention sweeper
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Test
+public class TradeRetentionSweeperTest {
+
+	private static final Stock TEA = new Stock("TEA", StockType.COMMON, 0, 0, 100);
+	private static final Stock GIN = new Stock("GIN", StockType.PREFERRED, 8, 0.02, 100);
+
+	/**
+	 * Test to check trades past their retention are dropped in whole chunks
+	 * of time, and trades of a stock kept forever are not dropped.
+	 * 
+	 */
+	@Test
+	public void testSweepOldTrades() {
+
+		TradeDao tradeDao = new TradeDaoImpl(1000);
+		for (int i = 0; i < 100; i++) {
+			long timeStampNanos = TimeUnit.MILLISECONDS.toNanos(100L * i);
+			tradeDao.addTrade(new Trade(TEA, timeStampNanos, TradeType.BUY, 10, 100));
+			tradeDao.addTrade(new Trade(GIN, timeStampNanos, TradeType.SELL, 10, 100));
+		}
+		Trade oldestTrade = tradeDao.getTradesForStock("TEA", null, null).iterator().next();
+
+		RetentionPolicy retentionPolicy = new RetentionPolicy(3000);
+		retentionPolicy.setRetentionMillis("gin", RetentionPolicy.KEEP_FOREVER);
+		TradeRetentionSweeper sweeper = new TradeRetentionSweeper(tradeDao, retentionPolicy);
+
+		// trades before 7250 ms are past their retention, the chunk from 7000
+		// ms is kept as it also holds newer trades
+		assertEquals(sweeper.sweep(10250), 70);
+		assertEquals(sweeper.getEvictedTrades(), 70);
+
+		Collection<Trade> teaTrades = tradeDao.getTradesForStock("TEA", null, null);
+		assertEquals(teaTrades.size(), 30);
+		assertEquals(teaTrades.iterator().next().getTimeStamp(), new Date(7000));
+		assertEquals(tradeDao.getTradesForStock("TEA", new Date(0), new Date(8000)).size(), 10);
+		assertEquals(tradeDao.getAllTradesForStock("GIN").size(), 100);
+		assertEquals(tradeDao.getAllTrades().size(), 130);
+
+		boolean evicted = false;
+		try {
+			tradeDao.getTrade(oldestTrade.getTradeId());
+		} catch (RuntimeException e) {
+			evicted = true;
+		}
+		assertTrue(evicted);
+
+		assertEquals(sweeper.sweep(10250), 0);
+	}
+
+	/**
+	 * Test to check a started sweeper drops old trades in the background,
+	 * cannot be started twice, and can be started again once stopped.
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testStartAndStop() throws InterruptedException {
+
+		TradeDao tradeDao = new TradeDaoImpl(1000);
+		addOldTrades(tradeDao);
+
+		TradeRetentionSweeper sweeper = new TradeRetentionSweeper(tradeDao, new RetentionPolicy(3000), 10);
+		assertFalse(sweeper.isRunning());
+		sweeper.start();
+		try {
+			assertTrue(sweeper.isRunning());
+			awaitEvictedTrades(sweeper, 200);
+			assertEquals(tradeDao.getAllTrades().size(), 0);
+
+			boolean startedTwice = true;
+			try {
+				sweeper.start();
+			} catch (IllegalStateException e) {
+				startedTwice = false;
+			}
+			assertFalse(startedTwice);
+		} finally {
+			sweeper.stop();
+		}
+		assertFalse(sweeper.isRunning());
+
+		// trades made before the trades already evicted are refused, so
+		// trades still within their retention are added for the restarted
+		// sweeper to drop once they have aged past it
+		Date timeStamp = new Date(System.currentTimeMillis() - 2500);
+		tradeDao.addTrade(new Trade(TEA, timeStamp, TradeType.BUY, 10, 100));
+		tradeDao.addTrade(new Trade(GIN, timeStamp, TradeType.SELL, 10, 100));
+		assertEquals(tradeDao.getAllTrades().size(), 2);
+		sweeper.start();
+		try {
+			awaitEvictedTrades(sweeper, 202);
+			assertEquals(tradeDao.getAllTrades().size(), 0);
+		} finally {
+			sweeper.stop();
+		}
+		assertFalse(sweeper.isRunning());
+	}
+
+	/**
+	 * Test to check the retention Spring configuration starts the sweeper with
+	 * the configured retention, and stops it when the context is closed.
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testSpringConfig() throws InterruptedException {
+
+		System.setProperty("gbce.retention.millis", "3000");
+		System.setProperty("gbce.retention.sweepIntervalMillis", "10");
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		TradeRetentionSweeper sweeper;
+		try {
+			context.register(TradeDaoImpl.class, TradeRetentionSpringConfig.class);
+			context.refresh();
+
+			TradeDao tradeDao = context.getBean(TradeDao.class);
+			sweeper = context.getBean(TradeRetentionSweeper.class);
+			assertTrue(sweeper.isRunning());
+			assertEquals(context.getBean(RetentionPolicy.class).getRetentionMillis("TEA"), 3000);
+
+			addOldTrades(tradeDao);
+			awaitEvictedTrades(sweeper, 200);
+		} finally {
+			context.close();
+			System.clearProperty("gbce.retention.millis");
+			System.clearProperty("gbce.retention.sweepIntervalMillis");
+		}
+		assertFalse(sweeper.isRunning());
+	}
+
+	/**
+	 * Adds a hundred trades of each stock made in the first ten seconds of
+	 * the epoch, long past any retention.
+	 * 
+	 * @param tradeDao
+	 *            Trade DAO to add the trades to
+	 */
+	private static void addOldTrades(TradeDao tradeDao) {
+		for (int i = 0; i < 100; i++) {
+			long timeStampNanos = TimeUnit.MILLISECONDS.toNanos(100L * i);
+			tradeDao.addTrade(new Trade(TEA, timeStampNanos, TradeType.BUY, 10, 100));
+			tradeDao.addTrade(new Trade(GIN, timeStampNanos, TradeType.SELL, 10, 100));
+		}
+	}
+
+	/**
+	 * Waits up to ten seconds for the sweeper to have dropped a number of
+	 * trades.
+	 * 
+	 * @param sweeper
+	 *            sweeper running in the background
+	 * @param evictedTrades
+	 *            number of trades to wait for
+	 * @throws InterruptedException
+	 */
+	private static void awaitEvictedTrades(TradeRetentionSweeper sweeper, long evictedTrades)
+			throws InterruptedException {
+		long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (sweeper.getEvictedTrades() < evictedTrades && System.nanoTime() < deadlineNanos) {
+			Thread.sleep(10);
+		}
+		assertEquals(sweeper.getEvictedTrades(), evictedTrades);
+	}
+
+}
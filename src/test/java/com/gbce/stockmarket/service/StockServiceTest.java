@@ -3,8 +3,11 @@ package com.gbce.stockmarket.service;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import org.junit.AfterClass;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,10 +16,15 @@ import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import com.gbce.stockmarket.analytics.StockRatioCalculator;
 import com.gbce.stockmarket.beans.Stock;
 import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.beans.VolumeWeightedPrices;
 import com.gbce.stockmarket.constants.TradeType;
 import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.metrics.MetricsRegistry;
+import com.gbce.stockmarket.metrics.OperationMetrics;
+import com.gbce.stockmarket.util.HighResolutionClock;
 import com.gbce.stockmarket.util.StockServiceTestUtil;
 
 import config.StockMarketTestSpringConfig;
@@ -43,6 +51,12 @@ public class StockServiceTest extends AbstractTestNGSpringContextTests {
 	@Autowired
 	private TradeDao tradeDao;
 
+	/**
+	 * Metrics registry object. Injected via Spring Auto Wiring.
+	 */
+	@Autowired
+	private MetricsRegistry metricsRegistry;
+
 	/**
 	 * Cleans up Trade database table before tests begin.
 	 * 
@@ -74,7 +88,7 @@ public class StockServiceTest extends AbstractTestNGSpringContextTests {
 		assertNotNull(stock);
 		assertEquals(stock.getParValue(), 100.0);
 
-		Trade trade = new Trade(stock, new Date(), TradeType.BUY, 20, 280);
+		Trade trade = new Trade(stock, HighResolutionClock.currentTimeNanos(), TradeType.BUY, 20, 280);
 
 		boolean tradeBooked = stockService.recordTrade(trade);
 
@@ -112,6 +126,43 @@ public class StockServiceTest extends AbstractTestNGSpringContextTests {
 
 	}
 
+	/**
+	 * Tests Dividend Yields and P/E Ratios of a grid of prices grouped by
+	 * stock match the single calculations, and invalid prices and stocks are
+	 * reported in the statuses.
+	 * 
+	 */
+	@Test
+	public void testCalculateRatiosForPriceGrid() {
+
+		String[] stockSymbols = { "POP", "GIN", "&*PP$", "TEA" };
+		int[] priceOffsets = { 0, 3, 5, 6, 8 };
+		double[] prices = { 2.0, -1.0, 8.0, 8.0, Double.NaN, 10.0, 20.0, 40.0 };
+		double[] results = new double[prices.length];
+		byte[] statuses = new byte[prices.length];
+		OperationMetrics findStockMetrics = metricsRegistry.getOperationMetrics("StockDao.findStock");
+		long findStockErrors = findStockMetrics.getErrorCount();
+
+		assertEquals(stockService.calculateDividendYields(stockSymbols, priceOffsets, prices, results, statuses), 3);
+		assertEquals(results[0], 4.0);
+		assertEquals(results[2], 1.0);
+		assertEquals(results[3], 0.25);
+		assertEquals(results[6], 0.0);
+		assertTrue(Double.isNaN(results[1]) && Double.isNaN(results[4]) && Double.isNaN(results[5]));
+		assertEquals(statuses, new byte[] { StockRatioCalculator.STATUS_OK, StockRatioCalculator.STATUS_INVALID_PRICE,
+				StockRatioCalculator.STATUS_OK, StockRatioCalculator.STATUS_OK,
+				StockRatioCalculator.STATUS_INVALID_PRICE, StockRatioCalculator.STATUS_UNKNOWN_STOCK,
+				StockRatioCalculator.STATUS_OK, StockRatioCalculator.STATUS_OK });
+		assertEquals(findStockMetrics.getErrorCount(), findStockErrors);
+
+		assertEquals(stockService.calculatePERatios(stockSymbols, priceOffsets, prices, results, statuses), 5);
+		assertEquals(results[0], stockService.calculatePERatio("POP", 2.0));
+		assertEquals(results[3], stockService.calculatePERatio("GIN", 8.0));
+		assertEquals(statuses[6], StockRatioCalculator.STATUS_ZERO_DIVIDEND);
+		assertEquals(statuses[7], StockRatioCalculator.STATUS_ZERO_DIVIDEND);
+		assertTrue(Double.isNaN(results[7]));
+	}
+
 	/**
 	 * Tests application requirement - For a given stock, Calculate Volume
 	 * Weighted Stock Price based on trades in past 5 minutes.
@@ -126,6 +177,53 @@ public class StockServiceTest extends AbstractTestNGSpringContextTests {
 
 	}
 
+	/**
+	 * Tests Volume Weighted Stock Price is calculated for trades within any
+	 * time frame, including time frames in the past.
+	 * 
+	 */
+	@Test(dependsOnMethods = "testRecordTrade")
+	public void testCalculateVolumeStockPriceForTimeFrame() {
+
+		long now = System.currentTimeMillis();
+		Date hourAgo = new Date(now - 60 * 60 * 1000L);
+		Date minuteLater = new Date(now + 60 * 1000L);
+
+		assertEquals(stockService.calculateVolumeStockPrice("TEA", hourAgo, minuteLater), 280.0);
+		assertEquals(stockService.calculateVolumeStockPrice("tea", null, null), 280.0);
+		assertEquals(stockService.calculateVolumeStockPrice("TEA", null, hourAgo), 0.0);
+		assertEquals(stockService.calculateVolumeStockPrice("GIN", hourAgo, minuteLater), 0.0);
+	}
+
+	/**
+	 * Tests Volume Weighted Stock Price is calculated for all stocks over
+	 * several time frames in a single query.
+	 * 
+	 */
+	@Test(dependsOnMethods = "testRecordTrade")
+	public void testCalculateVolumeStockPrices() {
+
+		VolumeWeightedPrices volumeWeightedPrices = stockService.calculateVolumeStockPrices(1, 5, 15, 60);
+
+		assertEquals(volumeWeightedPrices.getTimeFrameCount(), 4);
+		assertEquals(volumeWeightedPrices.getTimeInMinutes(2), 15);
+		assertTrue(volumeWeightedPrices.getStockCount() >= 5);
+		for (int timeInMinutes : new int[] { 1, 5, 15, 60 }) {
+			assertEquals(volumeWeightedPrices.getPrice("TEA", timeInMinutes), 280.0);
+			assertEquals(volumeWeightedPrices.getPrice("GIN", timeInMinutes), 0.0);
+		}
+	}
+
+	/**
+	 * Tests a time frame must be given to calculate Volume Weighted Stock Price
+	 * for all stocks.
+	 * 
+	 */
+	@Test(expectedExceptions = { RuntimeException.class })
+	public void testInvalidTimeFrameForVolumeStockPrices() {
+		stockService.calculateVolumeStockPrices(5, 0);
+	}
+
 	/**
 	 * Tests application requirement - Calculate the GBCE All Share Index using
 	 * the geometric mean of the Volume Weighted Stock Price for all stocks
@@ -140,6 +238,75 @@ public class StockServiceTest extends AbstractTestNGSpringContextTests {
 
 	}
 
+	/**
+	 * Tests a batch of trades is recorded in the trading system and taken into
+	 * account by Volume Weighted Stock Price and All Share Index.
+	 * 
+	 */
+	@Test(dependsOnMethods = { "testCalculateVolumeStockPrice", "testCalculateAllShareIndex" })
+	public void testRecordTrades() {
+
+		Stock pop = stockService.findStock("POP");
+		Stock ale = stockService.findStock("ALE");
+		long now = HighResolutionClock.currentTimeNanos();
+
+		List<Trade> trades = Arrays.asList(new Trade(pop, now, TradeType.BUY, 10, 100),
+				new Trade(ale, now, TradeType.SELL, 10, 50), new Trade(pop, now, TradeType.SELL, 30, 300));
+
+		int tradesBooked = stockService.recordTrades(trades);
+
+		assertEquals(tradesBooked, 3);
+		assertEquals(stockService.calculateVolumeStockPrice("POP", 5), 250.0);
+		assertEquals(stockService.calculateVolumeStockPrice("ALE", 5), 50.0);
+		assertEquals(stockService.calculateAllShareIndex(), 151.0);
+	}
+
+	/**
+	 * Tests an exception is thrown in case a batch of trades contains an
+	 * invalid trade, and none of the trades is recorded.
+	 * 
+	 */
+	@Test
+	public void testInvalidTradeInBatch() {
+
+		Stock joe = stockService.findStock("JOE");
+		long now = HighResolutionClock.currentTimeNanos();
+
+		List<Trade> trades = Arrays.asList(new Trade(joe, now, TradeType.BUY, 10, 100),
+				new Trade(joe, now, TradeType.BUY, 0, 100));
+
+		try {
+			stockService.recordTrades(trades);
+			fail("Batch with invalid trade should not be recorded");
+		} catch (RuntimeException e) {
+			assertEquals(stockService.calculateVolumeStockPrice("JOE", 5), 0.0);
+		}
+	}
+
+	/**
+	 * Tests an exception is thrown in case a single trade is invalid, and the
+	 * trade is not recorded.
+	 * 
+	 */
+	@Test
+	public void testInvalidTrade() {
+
+		Stock ale = stockService.findStock("ALE");
+		long now = HighResolutionClock.currentTimeNanos();
+
+		Trade[] trades = { new Trade(ale, now, TradeType.BUY, 0, 100), new Trade(ale, now, TradeType.BUY, 10, -1),
+				new Trade(ale, now, null, 10, 100), new Trade(null, now, TradeType.SELL, 10, 100) };
+
+		for (Trade trade : trades) {
+			try {
+				stockService.recordTrade(trade);
+				fail("Invalid trade should not be recorded : " + trade);
+			} catch (RuntimeException e) {
+				assertEquals(stockService.calculateVolumeStockPrice("ALE", 5), 0.0);
+			}
+		}
+	}
+
 	/**
 	 * Tests an exception is thrown in case the stock with symbol given as input
 	 * is not available in database.
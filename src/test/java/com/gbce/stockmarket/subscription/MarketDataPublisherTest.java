@@ -0,0 +1,188 @@
+package com.gbce.stockmarket.subscription;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.gbce.stockmarket.analytics.VolumeWeightedPriceEngine;
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.beans.Trade;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.constants.TradeType;
+import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.dao.TradeDaoImpl;
+
+/**
+ * TestNG Unit Test class for Market Data publisher
+ * 
+ * @author Ranjan Lal
+ *
+ */
+@Test
+public class MarketDataPublisherTest {
+
+	private static final Stock TEA = new Stock("TEA", StockType.COMMON, 0, 0, 100);
+	private static final Stock GIN = new Stock("GIN", StockType.PREFERRED, 8, 2, 100);
+
+	/**
+	 * Test to check subscribed listeners are pushed every trade and the latest
+	 * Volume Weighted Stock Price and All Share Index, and nothing once the
+	 * subscription is cancelled.
+	 * 
+	 */
+	@Test
+	public void testChangesPushedToListener() throws InterruptedException {
+
+		TradeDao tradeDao = new TradeDaoImpl();
+		VolumeWeightedPriceEngine engine = new VolumeWeightedPriceEngine();
+		tradeDao.addTradeListener(engine);
+		MarketDataPublisher publisher = new MarketDataPublisher(tradeDao, engine);
+
+		RecordingListener listener = new RecordingListener();
+		MarketDataSubscription subscription = publisher.subscribe(listener);
+
+		try {
+			tradeDao.addTrade(new Trade(TEA, new Date(), TradeType.BUY, 10, 100));
+			List<Trade> batch = new ArrayList<>();
+			batch.add(new Trade(GIN, new Date(), TradeType.SELL, 10, 400));
+			batch.add(new Trade(GIN, new Date(), TradeType.BUY, 30, 200));
+			tradeDao.addTrades(batch);
+
+			listener.awaitAllShareIndex(Math.sqrt(100.0 * 250.0));
+
+			synchronized (listener) {
+				assertEquals(listener.trades.size(), 3);
+				assertEquals(listener.lastPrice("TEA"), 100.0);
+				assertEquals(listener.lastPrice("GIN"), 250.0);
+			}
+
+			subscription.cancel();
+			assertEquals(publisher.getSubscriptionCount(), 0);
+
+			tradeDao.addTrade(new Trade(TEA, new Date(), TradeType.BUY, 10, 300));
+			Thread.sleep(100);
+
+			synchronized (listener) {
+				assertEquals(listener.trades.size(), 3);
+			}
+		} finally {
+			publisher.close();
+		}
+	}
+
+	/**
+	 * Test to check a slow listener is only pushed the latest prices, and
+	 * trades past the buffer of its subscription are dropped without holding
+	 * up recording trades.
+	 * 
+	 */
+	@Test
+	public void testSlowListenerConflated() throws InterruptedException {
+
+		TradeDao tradeDao = new TradeDaoImpl();
+		VolumeWeightedPriceEngine engine = new VolumeWeightedPriceEngine();
+		tradeDao.addTradeListener(engine);
+		MarketDataPublisher publisher = new MarketDataPublisher(tradeDao, engine);
+		publisher.setTradeBufferSize(10);
+
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		RecordingListener listener = new RecordingListener() {
+			@Override
+			public void tradeRecorded(Trade trade) {
+				blocked.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				super.tradeRecorded(trade);
+			}
+		};
+		MarketDataSubscription subscription = publisher.subscribe(listener);
+
+		try {
+			tradeDao.addTrade(new Trade(TEA, new Date(), TradeType.BUY, 10, 100));
+			assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+			for (int i = 1; i <= 100; i++) {
+				tradeDao.addTrade(new Trade(TEA, new Date(), TradeType.BUY, 10, 100 + i));
+			}
+			release.countDown();
+
+			double expectedPrice = engine.getVolumeWeightedPrice("TEA");
+			listener.awaitAllShareIndex(expectedPrice);
+			listener.awaitTrades(11);
+
+			synchronized (listener) {
+				assertEquals(subscription.getDroppedTrades(), 90);
+				assertTrue(listener.prices.size() <= 2, "Prices not conflated : " + listener.prices);
+				assertEquals(listener.lastPrice("TEA"), expectedPrice);
+			}
+		} finally {
+			publisher.close();
+		}
+	}
+
+	/**
+	 * Listener recording all changes pushed to it.
+	 */
+	private static class RecordingListener implements MarketDataListener {
+
+		final List<Trade> trades = new ArrayList<>();
+		final List<String> prices = new ArrayList<>();
+		double allShareIndex;
+
+		@Override
+		public synchronized void tradeRecorded(Trade trade) {
+			trades.add(trade);
+			notifyAll();
+		}
+
+		@Override
+		public synchronized void volumeWeightedPriceChanged(String stockSymbol, double volumeWeightedPrice) {
+			prices.add(stockSymbol + "=" + volumeWeightedPrice);
+		}
+
+		@Override
+		public synchronized void allShareIndexChanged(double allShareIndex) {
+			this.allShareIndex = allShareIndex;
+			notifyAll();
+		}
+
+		synchronized double lastPrice(String stockSymbol) {
+			for (int i = prices.size() - 1; i >= 0; i--) {
+				if (prices.get(i).startsWith(stockSymbol + "=")) {
+					return Double.parseDouble(prices.get(i).substring(stockSymbol.length() + 1));
+				}
+			}
+			return Double.NaN;
+		}
+
+		synchronized void awaitAllShareIndex(double expected) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (Math.abs(allShareIndex - expected) > 1e-9 && System.currentTimeMillis() < deadline) {
+				wait(100);
+			}
+			assertEquals(allShareIndex, expected, 1e-9);
+		}
+
+		synchronized void awaitTrades(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (trades.size() < count && System.currentTimeMillis() < deadline) {
+				wait(100);
+			}
+			wait(50);
+			assertEquals(trades.size(), count);
+		}
+
+	}
+
+}
@@ -1,10 +1,10 @@
 package com.gbce.stockmarket.util;
 
-import java.util.Date;
 import java.util.Map;
 
 import com.gbce.stockmarket.beans.Trade;
 import com.gbce.stockmarket.dao.TradeDao;
+import com.gbce.stockmarket.dao.TradeKey;
 
 /**
  * Utility class for unit tests
@@ -22,8 +22,8 @@ public class StockServiceTestUtil {
 	 *            Trade DAO object to access Trade database table.
 	 */
 	public static void cleanUpTradeDatabase(TradeDao tradeDao) {
-		Map<Date, Trade> allTrades = tradeDao.getAllTrades();
-		for (Date key : allTrades.keySet()) {
+		Map<TradeKey, Trade> allTrades = tradeDao.getAllTrades();
+		for (TradeKey key : allTrades.keySet()) {
 			tradeDao.deleteTrade(allTrades.get(key));
 		}
 	}
@@ -0,0 +1,54 @@
+package config;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+
+import com.gbce.stockmarket.beans.Stock;
+import com.gbce.stockmarket.constants.StockType;
+import com.gbce.stockmarket.replay.SimulatedClock;
+
+/**
+ * 
+ * Spring Java context configuration for TestNG unit tests replaying trades,
+ * with the components running on a simulated clock.
+ * 
+ * @author Ranjan Lal
+ * 
+ */
+@Configuration
+@ComponentScan(basePackages = "com.gbce.stockmarket")
+public class ReplayTestSpringConfig {
+
+	/**
+	 * Creates Spring Bean to represent an in-memory database table to hold
+	 * Stock Data. Initialized with sample data to be used in unit tests.
+	 * 
+	 * @return Map representing Stock data.
+	 */
+	@Bean(name = "stocksDatabase")
+	public Map<String, Stock> getStockData() {
+
+		Map<String, Stock> stocks = new ConcurrentHashMap<>();
+
+		stocks.put("TEA", new Stock("TEA", StockType.COMMON, 0, 0, 100));
+		stocks.put("POP", new Stock("POP", StockType.COMMON, 8, 0, 100));
+		stocks.put("ALE", new Stock("ALE", StockType.COMMON, 23, 0, 60));
+
+		return stocks;
+	}
+
+	/**
+	 * Creates Spring Bean of the simulated clock the components run on.
+	 * 
+	 * @return simulated clock
+	 */
+	@Bean
+	public SimulatedClock getMarketClock() {
+		return new SimulatedClock();
+	}
+
+}